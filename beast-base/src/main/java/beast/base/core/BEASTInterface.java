@@ -25,12 +25,8 @@ package beast.base.core;
 
 
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -38,7 +34,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import beast.pkgmgmt.BEASTClassLoader;
 
 public interface BEASTInterface extends Citable {
 	final static String DEFEAULT_DESCRIPTION = "Not documented!!!";
@@ -132,14 +127,8 @@ public interface BEASTInterface extends Citable {
      * @return description from @Description annotation
      */
 	default String getDescription() {
-        final Annotation[] classAnnotations = this.getClass().getAnnotations();
-        for (final Annotation annotation : classAnnotations) {
-            if (annotation instanceof Description) {
-                final Description description = (Description) annotation;
-                return description.value();
-            }
-        }
-        return "Not documented!!!";
+        final String description = InputDescriptors.of(this.getClass()).getDescription();
+        return description != null ? description : "Not documented!!!";
     }
 
 	
@@ -186,21 +175,18 @@ public interface BEASTInterface extends Citable {
         Map<String, Input> inputNames = new LinkedHashMap<>();
         
         // First, collect all Inputs
-        final Field[] fields = getClass().getFields();
-        for (final Field field : fields) {
-            if (field.getType().isAssignableFrom(Input.class)) {
-            	try {
-            		final Input<?> input = (Input<?>) field.get(this);
-            		if (inputNames.keySet().contains(input.getName())) {
-            			throw new RuntimeException("Programmer error in class " + this.getClass().getName() + ": multiple inputs with name " + input.getName() + " found (perhaps in sub and super classes)\n"
-            					+ "Classes should have unique input names");
-            		}
-            		inputNames.put(input.getName(), input);
-            		inputs.add(input);
-            	} catch (IllegalAccessException e) {
-            		// not a publicly accessible input, ignore
-            	}
-            }
+        for (final Field field : InputDescriptors.of(getClass()).getInputFields()) {
+        	try {
+        		final Input<?> input = (Input<?>) field.get(this);
+        		if (inputNames.keySet().contains(input.getName())) {
+        			throw new RuntimeException("Programmer error in class " + this.getClass().getName() + ": multiple inputs with name " + input.getName() + " found (perhaps in sub and super classes)\n"
+        					+ "Classes should have unique input names");
+        		}
+        		inputNames.put(input.getName(), input);
+        		inputs.add(input);
+        	} catch (IllegalAccessException e) {
+        		// not a publicly accessible input, ignore
+        	}
         }
         
         listAnnotatedInputs(this, inputs, inputNames);
@@ -210,109 +196,27 @@ public interface BEASTInterface extends Citable {
     
     default void listAnnotatedInputs(Object o, List<Input<?>> inputs, Map<String, Input> inputNames) {
         // Second, collect InputForAnnotatedConstructors of annotated constructor (if any)
-	    Constructor<?>[] allConstructors = o.getClass().getDeclaredConstructors();
-	    for (Constructor<?> ctor : allConstructors) {
-	    	Annotation[][] annotations = ctor.getParameterAnnotations();
-	    	List<Param> paramAnnotations = new ArrayList<>();
-	    	for (Annotation [] a0 : annotations) {
-		    	for (Annotation a : a0) {
-		    		if (a instanceof Param) {
-		    			paramAnnotations.add((Param) a);
-		    		}
-		    	}
-	    	}
-	    	Class<?>[] types  = ctor.getParameterTypes();	    	
-    		Type[] gtypes = ctor.getGenericParameterTypes();
-	    	if (types.length > 0 && paramAnnotations.size() > 0) {
-	    		int offset = 0;
-	    		if (types.length == paramAnnotations.size() + 1) {
-	    			offset = 1;
+	    for (InputDescriptors.AnnotatedParameter parameter : InputDescriptors.of(o.getClass()).getAnnotatedParameters()) {
+	    	InputForAnnotatedConstructor<?> t = new InputForAnnotatedConstructor<>(o, parameter);
+	    	if (inputNames.keySet().contains(t.getName())) {
+	    		Input input = inputNames.get(t.getName());
+	    		if (!(input instanceof InputForAnnotatedConstructor)) {
+	    			throw new RuntimeException("Programmer error in class " + this.getClass().getName() + ": multiple inputs with name " + input.getName() + " found (perhaps in sub and super classes)\n"
+	    					+ "Classes should have unique input names");	            				
 	    		}
-	    		for (int i = 0; i < paramAnnotations.size(); i++) {
-	    			Param param = paramAnnotations.get(i);
-	    			Class<?> type = types[i + offset];
-	    			Class<?> clazz = type;
-					if (type.isArray()) {
-						// nothing to do
-					} else if (type.isPrimitive()) {
-						// nothing to do
-						
-						// it's probably a primitive
-//						if (type.equals(Integer.TYPE)) {
-//							clazz = int.class;
-//						} else if (type.equals(Long.TYPE)) {
-//							clazz = long.class;
-//						} else if (type.equals(Short.TYPE)) {
-//							clazz = short.class;
-//						} else if (type.equals(Float.TYPE)) {
-//							clazz = float.class;
-//						} else if (type.equals(Double.TYPE)) {
-//							clazz = double.class;
-//						} else if (type.equals(Boolean.TYPE)) {
-//							clazz = boolean.class;
-//						} else if (type.equals(Byte.TYPE)) {
-//							clazz = byte.class;							
-//						} else if (type.equals(Character.TYPE)) {
-//							clazz = char.class;							
-//						}
-					} else {
-						try {
-							clazz = BEASTClassLoader.forName(type.getTypeName());
-						} catch (ClassNotFoundException e) {
-							e.printStackTrace();
-							throw new RuntimeException("Cannot find type " + e.getMessage());
-						}
-					}
-	    			if (clazz.isAssignableFrom(List.class)) {
-                        Type[] genericTypes2 = ((ParameterizedType) gtypes[i + offset]).getActualTypeArguments();
-                        Class<?> theClass = (Class<?>) genericTypes2[0];
-	    				InputForAnnotatedConstructor<?> t = null;
-						try {
-							t = new InputForAnnotatedConstructor<>(o, theClass, param);
-						} catch (NoSuchMethodException | SecurityException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						}
-	            		if (inputNames.keySet().contains(t.getName())) {
-	            			Input input = inputNames.get(t.getName());
-	            			if (!(input instanceof InputForAnnotatedConstructor)) {
-	                			throw new RuntimeException("Programmer error in class " + this.getClass().getName() + ": multiple inputs with name " + input.getName() + " found (perhaps in sub and super classes)\n"
-	                					+ "Classes should have unique input names");	            				
-	            			}
-	            			if (!input.equals(t)) {
-	            				throw new RuntimeException("Programmer error: @Param inputs with same name ("+ input.getName() +") should be equal to previously used annotations");
-	            			}
-	            		} else {
-	            			inputNames.put(t.getName(), t);
-	            			inputs.add(t);
-	            		}
-	    			} else {
-	    				InputForAnnotatedConstructor<?> t = null;
-						try {
-							t = new InputForAnnotatedConstructor<>(o, types[i + offset], param);
-						} catch (NoSuchMethodException | SecurityException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						}
-	            		if (inputNames.keySet().contains(t.getName())) {
-	            			Input input = inputNames.get(t.getName());
-	            			if (!(input instanceof InputForAnnotatedConstructor)) {
-	                			throw new RuntimeException("Programmer error in class " + this.getClass().getName() + ": multiple inputs with name " + input.getName() + " found (perhaps in sub and super classes)\n"
-	                					+ "Classes should have unique input names");	            				
-	            			}
-	            			if ((input.defaultValue != null && !input.defaultValue.toString().equals(t.defaultValue.toString())) ||
-	            				!input.getTipText().equals(t.getTipText())) {
-	            				throw new RuntimeException("Programmer error: @Param inputs with same name should be equal to previously used annotations");
-	            			}
-	            		} else {
-	            			inputNames.put(t.getName(), t);
-	            			inputs.add(t);
-	            		}
+	    		if (parameter.isList) {
+	    			if (!input.equals(t)) {
+	    				throw new RuntimeException("Programmer error: @Param inputs with same name ("+ input.getName() +") should be equal to previously used annotations");
 	    			}
+	    		} else if ((input.defaultValue != null && !input.defaultValue.toString().equals(t.defaultValue.toString())) ||
+	    				!input.getTipText().equals(t.getTipText())) {
+	    			throw new RuntimeException("Programmer error: @Param inputs with same name should be equal to previously used annotations");
 	    		}
+	    	} else {
+	    		inputNames.put(t.getName(), t);
+	    		inputs.add(t);
 	    	}
-		}
-
+	    }
     }
     
  
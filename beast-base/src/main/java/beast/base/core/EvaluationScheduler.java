@@ -0,0 +1,212 @@
+package beast.base.core;
+
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Shared scheduler for evaluating calculations in parallel, e.g. the distributions
+ * of a CompoundDistribution or the pattern ranges of a ThreadedTreeLikelihood.
+ * <p>
+ * Clients create a {@link Batch} of tasks once, and run (a subset of) them every
+ * time a calculation is required. Every task writes its result in its own slot, so
+ * no allocation or synchronisation on a shared accumulator is needed per evaluation.
+ * <p>
+ * The calling thread takes part in the evaluation, and helper threads are only
+ * requested while the pool has capacity left. So, when batches are nested, for instance
+ * a threaded tree likelihood inside a threaded posterior, the total number of busy threads
+ * does not exceed the number of threads in ProgramStatus.m_nThreads and
+ * the nested batch runs on the calling thread when all threads are busy.
+ * <p>
+ * Threads are platform threads by default. Set the system property
+ * beast.threads.mode to "virtual" to use virtual threads instead.
+ */
+public class EvaluationScheduler {
+
+	public enum Mode {platform, virtual}
+
+	/** a unit of work in a batch, returning a value such as a log probability **/
+	public interface Task {
+		double evaluate() throws Exception;
+	}
+
+	private static EvaluationScheduler instance;
+
+	/**
+	 * @return the scheduler shared by all clients, using ProgramStatus.m_nThreads threads
+	 */
+	public static synchronized EvaluationScheduler getInstance() {
+		if (instance == null || instance.threadCount != ProgramStatus.m_nThreads) {
+			// previous pools are left to run out, since batches may still refer to them
+			Mode mode = Mode.valueOf(System.getProperty("beast.threads.mode", Mode.platform.name()));
+			instance = new EvaluationScheduler(ProgramStatus.m_nThreads, mode);
+		}
+		return instance;
+	}
+
+	private final int threadCount;
+	private final Mode mode;
+	private final ExecutorService pool;
+	/** number of helpers currently submitted to the pool **/
+	private final AtomicInteger helperCount = new AtomicInteger();
+
+	public EvaluationScheduler(int threadCount, Mode mode) {
+		this.threadCount = Math.max(threadCount, 1);
+		this.mode = mode;
+		if (mode == Mode.virtual) {
+			pool = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("beast-evaluation-", 0).factory());
+		} else {
+			pool = Executors.newFixedThreadPool(this.threadCount, Thread.ofPlatform().name("beast-evaluation-", 0).daemon().factory());
+		}
+	}
+
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return new batch for evaluating tasks, which can be reused for every evaluation
+	 * but should not be run by more than one thread at a time
+	 */
+	public Batch newBatch(Task... tasks) {
+		return new Batch(threadCount, tasks);
+	}
+
+	/**
+	 * as newBatch(Task...), but evaluations of the batch use at most maxThreadCount threads,
+	 * including the calling thread
+	 */
+	public Batch newBatch(int maxThreadCount, Task... tasks) {
+		return new Batch(maxThreadCount, tasks);
+	}
+
+	/** reserve a slot for a helper thread, if the pool has any left **/
+	private boolean reserveHelper() {
+		int count;
+		do {
+			count = helperCount.get();
+			// the calling thread is not counted, so leave one thread for it
+			if (count >= threadCount - 1) {
+				return false;
+			}
+		} while (!helperCount.compareAndSet(count, count + 1));
+		return true;
+	}
+
+	public class Batch {
+		private final Task[] tasks;
+		private final double[] results;
+		/** indices of tasks to run in the current evaluation **/
+		private final int[] taskIndices;
+		private final int maxHelperCount;
+		private final Runnable helper = this::help;
+
+		/** counts down while tasks are claimed, so values below zero mean nothing is left to claim **/
+		private final AtomicInteger unclaimed = new AtomicInteger(-1);
+		/** number of claimed tasks that are not finished yet **/
+		private final AtomicInteger unfinished = new AtomicInteger();
+		private volatile Thread caller;
+		private volatile Throwable failure;
+
+		Batch(int maxThreadCount, Task[] tasks) {
+			this.maxHelperCount = maxThreadCount - 1;
+			this.tasks = tasks.clone();
+			this.results = new double[tasks.length];
+			this.taskIndices = new int[tasks.length];
+		}
+
+		public int getTaskCount() {
+			return tasks.length;
+		}
+
+		/** @return result of task i of the last evaluation **/
+		public double getResult(int i) {
+			return results[i];
+		}
+
+		/** evaluate all tasks **/
+		public void run() {
+			for (int i = 0; i < tasks.length; i++) {
+				taskIndices[i] = i;
+			}
+			run(tasks.length);
+		}
+
+		/**
+		 * evaluate the tasks selected by the mask; the results of other tasks
+		 * are left as they are
+		 */
+		public void run(boolean[] mask) {
+			int count = 0;
+			for (int i = 0; i < tasks.length; i++) {
+				if (mask[i]) {
+					taskIndices[count++] = i;
+				}
+			}
+			run(count);
+		}
+
+		private void run(int count) {
+			if (count == 0) {
+				return;
+			}
+			failure = null;
+			caller = Thread.currentThread();
+			unfinished.set(count);
+			// makes the tasks available to helpers, including any left from a previous evaluation
+			unclaimed.set(count);
+
+			final int helpers = Math.min(count - 1, maxHelperCount);
+			for (int i = 0; i < helpers && reserveHelper(); i++) {
+				try {
+					pool.execute(helper);
+				} catch (RejectedExecutionException e) {
+					helperCount.decrementAndGet();
+					break;
+				}
+			}
+			runTasks();
+			while (unfinished.get() > 0) {
+				LockSupport.park(this);
+			}
+			caller = null;
+
+			if (failure != null) {
+				throw new RuntimeException("Something went wrong in a parallel calculation: " + failure.getMessage(), failure);
+			}
+		}
+
+		private void help() {
+			try {
+				runTasks();
+			} finally {
+				helperCount.decrementAndGet();
+			}
+		}
+
+		/** claim and evaluate tasks till there are none left **/
+		private void runTasks() {
+			int k;
+			while ((k = unclaimed.decrementAndGet()) >= 0) {
+				final int i = taskIndices[k];
+				try {
+					results[i] = tasks[i].evaluate();
+				} catch (Throwable e) {
+					failure = e;
+				}
+				if (unfinished.decrementAndGet() == 0) {
+					LockSupport.unpark(caller);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,159 @@
+package beast.base.core;
+
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import beast.pkgmgmt.BEASTClassLoader;
+
+/**
+ * Reflection data used to list the inputs of a class, collected once per class and
+ * shared by all its instances: the public Input fields, the Param annotated parameters
+ * of its constructors with their getters and setters, and the class description.
+ * Listing inputs is frequent while parsing and initialising models, and otherwise
+ * scans fields, constructors and methods through reflection every time.
+ */
+public final class InputDescriptors {
+
+	private static final ClassValue<InputDescriptors> DESCRIPTORS = new ClassValue<>() {
+		@Override
+		protected InputDescriptors computeValue(Class<?> type) {
+			return new InputDescriptors(type);
+		}
+	};
+
+	/** @return descriptors for clazz, which are created on first use **/
+	public static InputDescriptors of(Class<?> clazz) {
+		return DESCRIPTORS.get(clazz);
+	}
+
+	/** public fields of type Input, in the order returned by Class.getFields() **/
+	private final Field[] inputFields;
+
+	/** Param annotated constructor parameters, in order of declaration, possibly with duplicates **/
+	private final AnnotatedParameter[] parameters;
+
+	private final String description;
+
+	private InputDescriptors(Class<?> clazz) {
+		List<Field> fields = new ArrayList<>();
+		for (final Field field : clazz.getFields()) {
+			if (field.getType().isAssignableFrom(Input.class)) {
+				fields.add(field);
+			}
+		}
+		inputFields = fields.toArray(new Field[0]);
+		parameters = listAnnotatedParameters(clazz);
+
+		String description = null;
+		for (final Annotation annotation : clazz.getAnnotations()) {
+			if (annotation instanceof Description) {
+				description = ((Description) annotation).value();
+				break;
+			}
+		}
+		this.description = description;
+	}
+
+	Field[] getInputFields() {
+		return inputFields;
+	}
+
+	AnnotatedParameter[] getAnnotatedParameters() {
+		return parameters;
+	}
+
+	/** @return value of the Description annotation of the class, or null if there is none **/
+	public String getDescription() {
+		return description;
+	}
+
+	private static AnnotatedParameter[] listAnnotatedParameters(Class<?> clazz) {
+		List<AnnotatedParameter> parameters = new ArrayList<>();
+		for (Constructor<?> ctor : clazz.getDeclaredConstructors()) {
+			Annotation[][] annotations = ctor.getParameterAnnotations();
+			List<Param> paramAnnotations = new ArrayList<>();
+			for (Annotation[] a0 : annotations) {
+				for (Annotation a : a0) {
+					if (a instanceof Param) {
+						paramAnnotations.add((Param) a);
+					}
+				}
+			}
+			Class<?>[] types = ctor.getParameterTypes();
+			Type[] gtypes = ctor.getGenericParameterTypes();
+			if (types.length > 0 && paramAnnotations.size() > 0) {
+				int offset = 0;
+				if (types.length == paramAnnotations.size() + 1) {
+					offset = 1;
+				}
+				for (int i = 0; i < paramAnnotations.size(); i++) {
+					Param param = paramAnnotations.get(i);
+					Class<?> type = types[i + offset];
+					Class<?> clazz2 = type;
+					if (!type.isArray() && !type.isPrimitive()) {
+						try {
+							clazz2 = BEASTClassLoader.forName(type.getTypeName());
+						} catch (ClassNotFoundException e) {
+							e.printStackTrace();
+							throw new RuntimeException("Cannot find type " + e.getMessage());
+						}
+					}
+					if (clazz2.isAssignableFrom(List.class)) {
+						Type[] genericTypes2 = ((ParameterizedType) gtypes[i + offset]).getActualTypeArguments();
+						parameters.add(new AnnotatedParameter(clazz, (Class<?>) genericTypes2[0], param, true));
+					} else {
+						parameters.add(new AnnotatedParameter(clazz, type, param, false));
+					}
+				}
+			}
+		}
+		return parameters.toArray(new AnnotatedParameter[0]);
+	}
+
+	/** Param annotated constructor parameter, with the methods of the class used to emulate an Input for it **/
+	static final class AnnotatedParameter {
+		final Class<?> theClass;
+		final Param param;
+		final boolean isList;
+		final Method getter, setter;
+		/** static method providing the default value, or null if there is none **/
+		final Method defaultValueMethod;
+
+		AnnotatedParameter(Class<?> clazz, Class<?> theClass, Param param, boolean isList) {
+			this.theClass = theClass;
+			this.param = param;
+			this.isList = isList;
+			final String name = param.name();
+			final String suffix = name.substring(0, 1).toUpperCase() + name.substring(1);
+			try {
+				getter = clazz.getMethod("get" + suffix);
+			} catch (NoSuchMethodException | SecurityException e) {
+				Log.err.println("Programmer error: when getting here an InputType was identified, but no getter for Param annotation found");
+				throw new RuntimeException(e);
+			}
+			try {
+				setter = clazz.getMethod("set" + suffix, theClass);
+			} catch (NoSuchMethodException | SecurityException e) {
+				Log.err.println("Programmer error: when getting here an InputType was identified, but no setter for Param annotation found");
+				throw new RuntimeException(e);
+			}
+			Method method = null;
+			if (param.optional()) {
+				try {
+					method = clazz.getMethod("default" + suffix, theClass);
+				} catch (NoSuchMethodException | SecurityException e) {
+					// no default value method
+				}
+			}
+			defaultValueMethod = method;
+		}
+	}
+
+}
@@ -60,7 +60,36 @@ public class InputForAnnotatedConstructor<T> extends Input<T> {
 			Log.err.println("Programmer error: when getting here an InputType was identified, but no setter for Param annotation found");
 			throw e;
 		}
-		
+
+		Method defaultValueMethod = null;
+		if (param.optional()) {
+			methodName = "default" + 
+			    	name.substring(0, 1).toUpperCase() +
+			    	name.substring(1)
+			    	//  + "List"
+			    	;
+			try {
+				defaultValueMethod = beastObject.getClass().getMethod(methodName, theClass);
+			} catch (NoSuchMethodException | SecurityException | IllegalArgumentException e) {
+				// ignore
+			}
+		}
+		init(param, defaultValueMethod);
+	}
+
+	/** create Input from methods that were already looked up for the class of beastObject **/
+	InputForAnnotatedConstructor(Object beastObject, InputDescriptors.AnnotatedParameter parameter) {
+		this.beastObject = beastObject;
+		this.theClass = parameter.theClass;
+		this.name = parameter.param.name();
+		this.rule = parameter.param.optional() ? Validate.OPTIONAL : Validate.REQUIRED;
+		this.getter = parameter.getter;
+		this.setter = parameter.setter;
+		init(parameter.param, parameter.defaultValueMethod);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void init(Param param, Method defaultValueMethod) {
 		this.tipText = param.description().trim();
 		for (Annotation annotation :getter.getAnnotations()) {
 			if (annotation.annotationType() == Description.class) {
@@ -79,21 +108,17 @@ public class InputForAnnotatedConstructor<T> extends Input<T> {
 			try {
 				this.defaultValue = (T) fromString(defaultValue, this.theClass);
 
-				methodName = "default" + 
-				    	name.substring(0, 1).toUpperCase() +
-				    	name.substring(1)
-				    	//  + "List"
-				    	;
-				try {
-					Method defaultValueMethod = beastObject.getClass().getMethod(methodName, theClass);
-					// check whether this is a static method
-					if (!Modifier.isStatic(defaultValueMethod.getModifiers())) {
-						throw new RuntimeException("Programmer error: method " + theClass.getName() + "." +  methodName + "() must be static");
+				if (defaultValueMethod != null) {
+					try {
+						// check whether this is a static method
+						if (!Modifier.isStatic(defaultValueMethod.getModifiers())) {
+							throw new RuntimeException("Programmer error: method " + theClass.getName() + "." +  defaultValueMethod.getName() + "() must be static");
+						}
+						this.defaultValue = (T) defaultValueMethod.invoke(null);
+					} catch (SecurityException | IllegalArgumentException | 
+							InvocationTargetException | IllegalAccessException e) {
+						// ignore
 					}
-					this.defaultValue = (T) defaultValueMethod.invoke(null);
-				} catch (NoSuchMethodException | SecurityException | IllegalArgumentException | 
-						InvocationTargetException | IllegalAccessException e) {
-					// ignore
 				}
 				
 			} catch (RuntimeException e) {
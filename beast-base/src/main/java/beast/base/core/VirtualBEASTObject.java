@@ -1,6 +1,5 @@
 package beast.base.core;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -72,13 +71,10 @@ public class VirtualBEASTObject extends BEASTObject {
 
 	@Override
 	public String getDescription() {
-        final Annotation[] classAnnotations = o.getClass().getAnnotations();
-        for (final Annotation annotation : classAnnotations) {
-            if (annotation instanceof Description) {
-                final Description description = (Description) annotation;
-                return description.value();
-            }
-        }		
+        final String description = InputDescriptors.of(o.getClass()).getDescription();
+        if (description != null) {
+        	return description;
+        }
 		return super.getDescription();
 	}
 
@@ -146,10 +146,15 @@ public class Alignment extends StateNode {
     protected int maxStateCount;
 
     /**
-     * state codes for the sequences *
+     * state codes for the sequences, as a read-only view on packedSites *
      */
     protected List<List<Integer>> counts = new ArrayList<>();
 
+    /**
+     * state codes for the sequences, packed site by site *
+     */
+    protected PackedSites packedSites;
+
     /**
      * data type, useful for converting String sequence to Code sequence, and back *
      */
@@ -237,6 +242,24 @@ public class Alignment extends StateNode {
             throw new IllegalArgumentException("Either a sequence input must be specified, or a map of strings must be specified");
         }
 
+        initSiteWeightsAndDataType();
+
+        // initialize the sequence list
+        sequences = sequenceInput.get();
+
+        // initialize the alignment from the given list of sequences
+        initializeWithSequenceList(sequences, true);
+
+        if (taxonSetInput.get() != null && taxonSetInput.get().getTaxonCount() > 0) {
+            sortByTaxonSet(taxonSetInput.get());
+        }
+        Log.info.println(toString(false));
+    }
+
+    /**
+     * Sets up site weights and the data type from their inputs.
+     */
+    protected void initSiteWeightsAndDataType() {
         if (siteWeightsInput.get() != null) {
             String str = siteWeightsInput.get().trim();
             String[] strs = str.split(",");
@@ -252,17 +275,6 @@ public class Alignment extends StateNode {
         } else {
             initDataType();
         }
-
-        // initialize the sequence list
-        sequences = sequenceInput.get();
-
-        // initialize the alignment from the given list of sequences
-        initializeWithSequenceList(sequences, true);
-
-        if (taxonSetInput.get() != null && taxonSetInput.get().getTaxonCount() > 0) {
-            sortByTaxonSet(taxonSetInput.get());
-        }
-        Log.info.println(toString(false));
     }
 
     /**
@@ -306,11 +318,16 @@ public class Alignment extends StateNode {
         this.sequences = sequences;
         taxaNames.clear();
         stateCounts.clear();
-        counts.clear();
+        packedSites = null;
         try {
+            int taxonNr = 0;
             for (Sequence seq : sequences) {
 
-                counts.add(seq.getSequence(m_dataType));
+                List<Integer> codes = seq.getSequence(m_dataType);
+                if (packedSites == null) {
+                    packedSites = new PackedSites(sequences.size(), codes.size());
+                }
+                packedSites.setSequence(taxonNr++, codes);
                 if (taxaNames.contains(seq.getTaxon())) {
                     throw new RuntimeException("Duplicate taxon found in alignment: " + seq.getTaxon());
                 }
@@ -326,10 +343,11 @@ public class Alignment extends StateNode {
                     stateCounts.add(m_dataType.getStateCount());
                 }
             }
-            if (counts.size() == 0) {
+            if (packedSites == null) {
                 // no sequence data
                 throw new RuntimeException("Sequence data expected, but none found");
             }
+            counts = packedSites.asLists();
         } catch (Exception e) {
             e.printStackTrace();
             throw new RuntimeException(e);
@@ -475,6 +493,10 @@ public class Alignment extends StateNode {
      * the position of the Integer List in the outer List, which corresponds
      * to the nodeNr of the corresponding leaf node and the position of the
      * taxon name in the taxaNames list.
+     * <p>
+     * The lists are a read-only view on the packed state codes, so
+     * modifying them throws an UnsupportedOperationException. Callers
+     * that need to change the codes should copy them first.
      *
      * @return integer representation of sequence alignment
      */
@@ -596,60 +618,40 @@ public class Alignment extends StateNode {
          * *
          */
     protected void calcPatterns(boolean log) {
-        int taxonCount = counts.size();
-        int siteCount = counts.get(0).size();
-
-        // convert data to transposed int array
-        int[][] data = new int[siteCount][taxonCount];
-        for (int i = 0; i < taxonCount; i++) {
-            List<Integer> sites = counts.get(i);
-            for (int j = 0; j < siteCount; j++) {
-                data[j][i] = sites.get(j);
-            }
+        if (packedSites == null || counts != packedSites.asLists()) {
+            // counts were set up by a derived class
+            packedSites = PackedSites.of(counts);
+            counts = packedSites.asLists();
         }
+        int siteCount = packedSites.getSiteCount();
 
-        // sort data
+        // find unique sites in a single pass over the data.
+        // In the case where we're using tip probabilities, we need to treat each
+        // site as a unique pattern, because it could have a unique probability vector.
+        int[] uniqueSiteIndex = new int[siteCount];
+        int[][] data = packedSites.uniqueSites(uniqueSiteIndex, usingTipLikelihoods);
+        int patterns = data.length;
+
+        // sort patterns, so they are ordered as if all sites were sorted
         SiteComparator comparator = new SiteComparator();
-        Arrays.sort(data, comparator);
-
-        // count patterns in sorted data
-        // if (siteWeights != null) the weights are recalculated below
-        int patterns = 1;
-        int[] weights = new int[siteCount];
-        weights[0] = 1;
-        for (int i = 1; i < siteCount; i++) {
-            if (usingTipLikelihoods || comparator.compare(data[i - 1], data[i]) != 0) {
-            	// In the case where we're using tip probabilities, we need to treat each 
-            	// site as a unique pattern, because it could have a unique probability vector.
-                patterns++;
-                data[patterns - 1] = data[i];
-            }
-            weights[patterns - 1]++;
+        Integer[] order = new Integer[patterns];
+        for (int i = 0; i < patterns; i++) {
+            order[i] = i;
         }
-
-        // reserve memory for patterns
-        patternWeight = new int[patterns];
-        sitePatterns = new int[patterns][taxonCount];
+        Arrays.sort(order, (i, j) -> comparator.compare(data[i], data[j]));
+        int[] rank = new int[patterns];
+        sitePatterns = new int[patterns][];
         for (int i = 0; i < patterns; i++) {
-            patternWeight[i] = weights[i];
-            sitePatterns[i] = data[i];
+            sitePatterns[i] = data[order[i]];
+            rank[order[i]] = i;
         }
 
         // find patterns for the sites
         patternIndex = new int[siteCount];
+        patternWeight = new int[patterns];
         for (int i = 0; i < siteCount; i++) {
-            int[] sites = new int[taxonCount];
-            for (int j = 0; j < taxonCount; j++) {
-                sites[j] = counts.get(j).get(i);
-            }
-            patternIndex[i] = Arrays.binarySearch(sitePatterns, sites, comparator);
-        }
-
-        if (siteWeights != null) {
-            Arrays.fill(patternWeight, 0);
-            for (int i = 0; i < siteCount; i++) {
-                patternWeight[patternIndex[i]] += siteWeights[i];
-            }
+            patternIndex[i] = rank[uniqueSiteIndex[i]];
+            patternWeight[patternIndex[i]] += siteWeights != null ? siteWeights[i] : 1;
         }
 
         // determine maximum state count
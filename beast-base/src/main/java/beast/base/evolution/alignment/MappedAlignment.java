@@ -0,0 +1,461 @@
+package beast.base.evolution.alignment;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import beast.base.core.Description;
+import beast.base.core.Input;
+import beast.base.core.Input.Validate;
+import beast.base.core.Log;
+import beast.base.evolution.datatype.DataType;
+
+
+@Description("Alignment read from a FASTA or NEXUS file. The file is memory mapped and characters are " +
+        "encoded straight into packed storage, without creating a sequence string for each taxon, " +
+        "so large alignments load quickly and with little memory.")
+public class MappedAlignment extends Alignment {
+
+    public enum Format {auto, fasta, nexus}
+
+    final public Input<String> fileNameInput = new Input<>("fileName", "name of the FASTA or NEXUS file containing the sequences", Validate.REQUIRED);
+    final public Input<Format> formatInput = new Input<>("format", "format of the file, if auto it is NEXUS when the file starts with #NEXUS and FASTA otherwise. " +
+            "The data type is taken from the dataType or userDataType input, not from the file", Format.auto, Format.values());
+
+    /** marks bytes that are not a valid character of the data type **/
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+
+    /** state code for each byte, or null if the data type does not use single character codes **/
+    private int[] codeTable;
+    /** sequences as text, only used when there is no code table **/
+    private StringBuilder[] text;
+    /** number of characters read so far for each taxon **/
+    private int[] charCounts;
+    private int taxonCount;
+    private int charCount;
+    private char matchChar;
+
+    @Override
+    public void initAndValidate() {
+        initSiteWeightsAndDataType();
+
+        taxaNames.clear();
+        stateCounts.clear();
+        packedSites = null;
+        File file = new File(fileNameInput.get());
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedBytes bytes = new MappedBytes(channel);
+            Format format = formatInput.get();
+            if (format == Format.auto) {
+                long start = bytes.skipWhitespace(0);
+                format = bytes.decode(start, Math.min(start + 6, bytes.size)).equalsIgnoreCase("#NEXUS") ? Format.nexus : Format.fasta;
+            }
+            if (format == Format.nexus) {
+                readNexus(bytes);
+            } else {
+                readFasta(bytes);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read alignment from " + file + ": " + e.getMessage(), e);
+        }
+        if (text != null) {
+            // characters could not be encoded one by one
+            for (int i = 0; i < taxonCount; i++) {
+                List<Integer> codes = m_dataType.stringToEncoding(text[i].toString());
+                text[i] = null;
+                if (packedSites == null) {
+                    packedSites = new PackedSites(taxonCount, codes.size());
+                }
+                packedSites.setSequence(i, codes);
+            }
+            text = null;
+        }
+        for (int i = 0; i < taxonCount; i++) {
+            stateCounts.add(m_dataType.getStateCount());
+        }
+        counts = packedSites.asLists();
+        charCounts = null;
+
+        sanityCheckCalcPatternsSetUpAscertainment(true);
+
+        if (taxonSetInput.get() != null && taxonSetInput.get().getTaxonCount() > 0) {
+            sortByTaxonSet(taxonSetInput.get());
+        }
+        Log.info.println(toString(false));
+    }
+
+    /**
+     * Reorders the taxa by permuting the packed state codes, since there are no sequences to sort.
+     */
+    @Override
+    public void sortByTaxonSet(TaxonSet toSortBy) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < taxaNames.size(); i++) {
+            order.add(i);
+        }
+        List<String> names = new ArrayList<>(taxaNames);
+        Collections.sort(order, (Integer o1, Integer o2) -> {
+                return Integer.compare(toSortBy.getTaxonIndex(names.get(o1)), toSortBy.getTaxonIndex(names.get(o2)));
+            }
+        );
+
+        PackedSites sorted = new PackedSites(packedSites.getTaxonCount(), packedSites.getSiteCount());
+        List<Integer> sortedStateCounts = new ArrayList<>();
+        taxaNames.clear();
+        for (int i = 0; i < order.size(); i++) {
+            int taxon = order.get(i);
+            for (int site = 0; site < sorted.getSiteCount(); site++) {
+                sorted.set(i, site, packedSites.get(taxon, site));
+            }
+            taxaNames.add(names.get(taxon));
+            sortedStateCounts.add(stateCounts.get(taxon));
+        }
+        stateCounts.clear();
+        stateCounts.addAll(sortedStateCounts);
+        packedSites = sorted;
+        counts = packedSites.asLists();
+        sanityCheckCalcPatternsSetUpAscertainment(false);
+    }
+
+    /**
+     * FASTA: a line starting with '>' holds the taxon name, following lines hold the sequence.
+     * Lines starting with ';' are comments.
+     */
+    private void readFasta(MappedBytes bytes) {
+        // first pass: find taxa and the length of the first sequence
+        int firstLength = 0;
+        Set<String> taxa = new HashSet<>();
+        for (long pos = 0; pos < bytes.size; ) {
+            long end = bytes.endOfLine(pos);
+            if (bytes.get(pos) == '>') {
+                String taxon = bytes.decode(pos + 1, end).trim();
+                if (!taxa.add(taxon)) {
+                    throw new IllegalArgumentException("Duplicate taxon found in alignment: " + taxon);
+                }
+                taxaNames.add(taxon);
+            } else if (bytes.get(pos) == ';') {
+                // comment line
+            } else if (taxaNames.size() == 1) {
+                firstLength += bytes.countNonWhitespace(pos, end);
+            } else if (taxaNames.isEmpty() && bytes.countNonWhitespace(pos, end) > 0) {
+                throw new IllegalArgumentException("Expected FASTA file to start with '>'");
+            }
+            pos = end + 1;
+        }
+        if (taxaNames.isEmpty()) {
+            throw new IllegalArgumentException("Sequence data expected, but none found");
+        }
+        startReading(taxaNames.size(), firstLength, '\0');
+
+        // second pass: encode characters
+        int taxon = -1;
+        for (long pos = 0; pos < bytes.size; ) {
+            long end = bytes.endOfLine(pos);
+            if (bytes.get(pos) == '>') {
+                checkLength(taxon);
+                taxon++;
+            } else if (taxon >= 0 && bytes.get(pos) != ';') {
+                for (long i = pos; i < end; i++) {
+                    byte b = bytes.get(i);
+                    if (!MappedBytes.isWhitespace(b)) {
+                        add(taxon, b);
+                    }
+                }
+            }
+            pos = end + 1;
+        }
+        checkLength(taxon);
+    }
+
+    /** NEXUS: the matrix command of the first DATA or CHARACTERS block, either sequential or interleaved **/
+    private void readNexus(MappedBytes bytes) {
+        long matrix = bytes.findMatrix();
+        if (matrix < 0) {
+            throw new IllegalArgumentException("Could not find matrix in NEXUS file");
+        }
+        // the header is small compared to the matrix, so is parsed as text
+        String header = bytes.decode(0, matrix).replaceAll("\\[[^\\]]*\\]", " ").toLowerCase();
+        String nchar = getLastAttValue("nchar", header);
+        String ntax = getLastAttValue("ntax", header);
+        if (nchar == null || ntax == null) {
+            throw new IllegalArgumentException("ntax and nchar attributes expected (e.g. 'dimensions ntax=12 nchar=898;')");
+        }
+        String missing = getLastAttValue("missing", header);
+        String gap = getLastAttValue("gap", header);
+        String match = getLastAttValue("matchchar", header);
+        boolean interleave = Pattern.compile("\\binterleave\\b(?!\\s*=\\s*no)").matcher(header).find();
+
+        startReading(Integer.parseInt(ntax), Integer.parseInt(nchar), match != null ? match.charAt(0) : '\0');
+        if (codeTable != null) {
+            // map to standard missing and gap chars
+            if (missing != null) {
+                codeTable[missing.charAt(0)] = codeTable[DataType.MISSING_CHAR];
+                codeTable[Character.toUpperCase(missing.charAt(0))] = codeTable[DataType.MISSING_CHAR];
+            }
+            if (gap != null) {
+                codeTable[gap.charAt(0)] = codeTable[DataType.GAP_CHAR];
+                codeTable[Character.toUpperCase(gap.charAt(0))] = codeTable[DataType.GAP_CHAR];
+            }
+        } else if (missing != null || gap != null) {
+            Log.warning.println("Missing and gap characters of " + fileNameInput.get() + " are ignored for data type " + m_dataType.getTypeDescription());
+        }
+
+        Map<String, Integer> taxonIndex = new HashMap<>();
+        long pos = matrix + "matrix".length();
+        while (true) {
+            pos = bytes.skipWhitespaceAndComments(pos);
+            if (pos >= bytes.size) {
+                throw new IllegalArgumentException("Unexpected end of file in matrix");
+            }
+            if (bytes.get(pos) == ';') {
+                break;
+            }
+
+            // taxon name
+            long start = pos;
+            String taxon;
+            byte quote = bytes.get(pos);
+            if (quote == '\'' || quote == '"') {
+                pos = bytes.indexOf(quote, pos + 1);
+                taxon = bytes.decode(start + 1, pos).trim();
+                pos++;
+            } else {
+                while (pos < bytes.size && !MappedBytes.isWhitespace(bytes.get(pos))) {
+                    pos++;
+                }
+                taxon = bytes.decode(start, pos);
+            }
+            Integer index = taxonIndex.get(taxon);
+            if (index == null) {
+                if (!interleave && taxonIndex.size() > 0) {
+                    checkLength(taxonIndex.size() - 1);
+                }
+                if (taxonIndex.size() == taxonCount) {
+                    throw new IllegalArgumentException("Wrong number of taxa: more than ntax=" + taxonCount + ", perhaps a typo in taxon " + taxon);
+                }
+                index = taxonIndex.size();
+                taxonIndex.put(taxon, index);
+                taxaNames.add(taxon);
+            }
+
+            // characters, till the end of the line if interleaved, or till all characters of the taxon are read otherwise
+            while (pos < bytes.size) {
+                byte b = bytes.get(pos);
+                if (b == ';' || (interleave && (b == '\n' || b == '\r'))) {
+                    break;
+                } else if (b == '[') {
+                    pos = bytes.skipWhitespaceAndComments(pos);
+                } else if (MappedBytes.isWhitespace(b)) {
+                    pos++;
+                } else if (!interleave && charCounts[index] == charCount) {
+                    break;
+                } else if (b == '{' || b == '(') {
+                    throw new IllegalArgumentException("Ambiguity sets are not supported for " + taxon + ", use a <data> element with a NEXUS file instead");
+                } else {
+                    add(index, b);
+                    pos++;
+                }
+            }
+        }
+        if (taxaNames.size() != taxonCount) {
+            throw new IllegalArgumentException("Wrong number of taxa: expected ntax=" + taxonCount + " but found " + taxaNames.size());
+        }
+        for (int i = 0; i < taxonCount; i++) {
+            checkLength(i);
+        }
+    }
+
+    private static String getLastAttValue(String attribute, String header) {
+        Matcher m = Pattern.compile("\\b" + attribute + "\\s*=\\s*(\\S+?)(;|\\s|$)").matcher(header);
+        String value = null;
+        while (m.find()) {
+            value = m.group(1);
+        }
+        return value;
+    }
+
+    private void startReading(int taxonCount, int charCount, char matchChar) {
+        this.taxonCount = taxonCount;
+        this.charCount = charCount;
+        this.matchChar = matchChar;
+        charCounts = new int[taxonCount];
+        codeTable = createCodeTable();
+        if (codeTable != null) {
+            packedSites = new PackedSites(taxonCount, charCount);
+        } else {
+            text = new StringBuilder[taxonCount];
+            for (int i = 0; i < taxonCount; i++) {
+                text[i] = new StringBuilder(charCount);
+            }
+        }
+    }
+
+    /**
+     * @return table with state code for every byte, or null if the data type
+     * does not map every single character to a state code
+     */
+    private int[] createCodeTable() {
+        if (!(m_dataType instanceof DataType.Base base) || base.getCodeMap() == null || base.getCodeLength() != 1) {
+            return null;
+        }
+        int[] table = new int[256];
+        Arrays.fill(table, UNKNOWN);
+        for (int c = '!'; c <= '~'; c++) {
+            try {
+                List<Integer> codes = m_dataType.stringToEncoding(String.valueOf((char) c));
+                if (codes.size() == 1) {
+                    table[c] = codes.get(0);
+                }
+            } catch (IllegalArgumentException e) {
+                // not a valid character for this data type
+            }
+        }
+        return table;
+    }
+
+    private void add(int taxon, byte b) {
+        final int site = charCounts[taxon]++;
+        if (site >= charCount && codeTable != null) {
+            throw new IllegalArgumentException("Expected sequence of length " + charCount + " for taxon " + taxaNames.get(taxon) + ", but found more characters");
+        }
+        if (text != null) {
+            text[taxon].append(b == matchChar && taxon > 0 ? text[0].charAt(site) : (char) b);
+        } else if (b == matchChar && taxon > 0) {
+            packedSites.set(taxon, site, packedSites.get(0, site));
+        } else {
+            final int code = codeTable[b & 0xff];
+            if (code == UNKNOWN) {
+                throw new IllegalArgumentException("Unknown code found in sequence of taxon " + taxaNames.get(taxon) + ": " + (char) b);
+            }
+            packedSites.set(taxon, site, code);
+        }
+    }
+
+    private void checkLength(int taxon) {
+        if (taxon >= 0 && charCounts[taxon] != charCount) {
+            throw new IllegalArgumentException("Expected sequence of length " + charCount + " instead of " + charCounts[taxon] + " for taxon " + taxaNames.get(taxon));
+        }
+    }
+
+
+    /** read-only file content, mapped in chunks since a single buffer cannot exceed 2GB **/
+    private static class MappedBytes {
+        private static final int CHUNK_BITS = 30;
+        private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+        final long size;
+        private final MappedByteBuffer[] chunks;
+
+        MappedBytes(FileChannel channel) throws IOException {
+            size = channel.size();
+            chunks = new MappedByteBuffer[(int) ((size + CHUNK_MASK) >> CHUNK_BITS)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = (long) i << CHUNK_BITS;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, 1L << CHUNK_BITS));
+            }
+        }
+
+        byte get(long pos) {
+            return chunks[(int) (pos >> CHUNK_BITS)].get((int) (pos & CHUNK_MASK));
+        }
+
+        String decode(long start, long end) {
+            byte[] b = new byte[(int) (end - start)];
+            for (int i = 0; i < b.length; i++) {
+                b[i] = get(start + i);
+            }
+            return new String(b, StandardCharsets.UTF_8);
+        }
+
+        /** @return position of the first b at or after pos, or size if there is none **/
+        long indexOf(byte b, long pos) {
+            while (pos < size && get(pos) != b) {
+                pos++;
+            }
+            return pos;
+        }
+
+        /** @return position of the first line break at or after pos, allowing for \n as well as \r **/
+        long endOfLine(long pos) {
+            while (pos < size && get(pos) != '\n' && get(pos) != '\r') {
+                pos++;
+            }
+            return pos;
+        }
+
+        static boolean isWhitespace(byte b) {
+            // bytes of multi-byte UTF-8 characters are negative
+            return b <= ' ' && b >= 0;
+        }
+
+        long skipWhitespace(long pos) {
+            while (pos < size && isWhitespace(get(pos))) {
+                pos++;
+            }
+            return pos;
+        }
+
+        /** skips whitespace and NEXUS comments, which are enclosed in square brackets **/
+        long skipWhitespaceAndComments(long pos) {
+            while (true) {
+                pos = skipWhitespace(pos);
+                if (pos < size && get(pos) == '[') {
+                    pos = indexOf((byte) ']', pos) + 1;
+                } else {
+                    return pos;
+                }
+            }
+        }
+
+        int countNonWhitespace(long start, long end) {
+            int count = 0;
+            for (long i = start; i < end; i++) {
+                if (!isWhitespace(get(i))) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /** @return position of the matrix command, or -1 if there is none **/
+        long findMatrix() {
+            final byte[] matrix = "matrix".getBytes(StandardCharsets.US_ASCII);
+            long pos = 0;
+            while (pos < size) {
+                pos = skipWhitespaceAndComments(pos);
+                long start = pos;
+                while (pos < size && !isWhitespace(get(pos)) && get(pos) != ';' && get(pos) != '[') {
+                    pos++;
+                }
+                if (pos - start == matrix.length) {
+                    boolean match = true;
+                    for (int i = 0; i < matrix.length && match; i++) {
+                        match = Character.toLowerCase(get(start + i)) == matrix[i];
+                    }
+                    if (match) {
+                        return start;
+                    }
+                }
+                if (pos == start) {
+                    pos++;
+                }
+            }
+            return -1;
+        }
+    }
+
+}
@@ -0,0 +1,262 @@
+package beast.base.evolution.alignment;
+
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * State codes of an alignment stored site by site, using as few bits per
+ * code as the codes allow: 4 bits if all codes are in the range 0-15, 8 bits
+ * if all are in the range -128-127, and 32 bits otherwise. Storage starts
+ * at 4 bits per code and is widened when a code is set that does not fit.
+ */
+public class PackedSites {
+
+    /** largest array size that Java VMs reliably allocate **/
+    private static final long MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private final int taxonCount;
+    private final int siteCount;
+    /** number of bits per code: 4, 8 or 32 **/
+    private int bits = 4;
+    private byte[] bytes;
+    private int[] ints;
+    private List<List<Integer>> lists;
+
+    public PackedSites(int taxonCount, int siteCount) {
+        this.taxonCount = taxonCount;
+        this.siteCount = siteCount;
+        final long byteCount = (cellCount() + 1) / 2;
+        if (byteCount > MAX_ARRAY_LENGTH) {
+            throw new IllegalArgumentException("Alignment of " + taxonCount + " taxa and " + siteCount +
+                    " sites is too large: more than " + 2 * MAX_ARRAY_LENGTH + " characters cannot be stored");
+        }
+        bytes = new byte[(int) byteCount];
+    }
+
+    /** pack codes given as one list per taxon, e.g. from Alignment.getCounts() **/
+    public static PackedSites of(List<List<Integer>> counts) {
+        final int siteCount = counts.get(0).size();
+        PackedSites sites = new PackedSites(counts.size(), siteCount);
+        for (int taxon = 0; taxon < counts.size(); taxon++) {
+            sites.setSequence(taxon, counts.get(taxon));
+        }
+        return sites;
+    }
+
+    public int getTaxonCount() {
+        return taxonCount;
+    }
+
+    public int getSiteCount() {
+        return siteCount;
+    }
+
+    private long cellCount() {
+        return (long) taxonCount * siteCount;
+    }
+
+    /** @return number of bits used to store a code **/
+    public int getBitsPerCode() {
+        return bits;
+    }
+
+    public void setSequence(int taxon, List<Integer> codes) {
+        if (codes.size() != siteCount) {
+            throw new IllegalArgumentException("Two sequences with different length found: " + siteCount + " != " + codes.size());
+        }
+        int site = 0;
+        for (int code : codes) {
+            set(taxon, site++, code);
+        }
+    }
+
+    public void set(int taxon, int site, int code) {
+        final long i = (long) site * taxonCount + taxon;
+        if (bits == 4 && (code < 0 || code > 15)) {
+            widen(code < Byte.MIN_VALUE || code > Byte.MAX_VALUE ? 32 : 8);
+        } else if (bits == 8 && (code < Byte.MIN_VALUE || code > Byte.MAX_VALUE)) {
+            widen(32);
+        }
+        switch (bits) {
+            case 4: {
+                final int k = (int) (i >> 1);
+                final int shift = (int) (i & 1) << 2;
+                bytes[k] = (byte) ((bytes[k] & ~(0xf << shift)) | (code << shift));
+                break;
+            }
+            case 8:
+                bytes[(int) i] = (byte) code;
+                break;
+            default:
+                ints[(int) i] = code;
+        }
+    }
+
+    public int get(int taxon, int site) {
+        final long i = (long) site * taxonCount + taxon;
+        switch (bits) {
+            case 4:
+                return (bytes[(int) (i >> 1)] >> ((int) (i & 1) << 2)) & 0xf;
+            case 8:
+                return bytes[(int) i];
+            default:
+                return ints[(int) i];
+        }
+    }
+
+    /** copy the codes of all taxa at a site into states **/
+    public void getSite(int site, int[] states) {
+        final long start = (long) site * taxonCount;
+        switch (bits) {
+            case 4:
+                for (int taxon = 0; taxon < taxonCount; taxon++) {
+                    final long i = start + taxon;
+                    states[taxon] = (bytes[(int) (i >> 1)] >> ((int) (i & 1) << 2)) & 0xf;
+                }
+                break;
+            case 8:
+                // at 8 and 32 bits there are fewer than 2^31 codes, see widen()
+                for (int taxon = 0; taxon < taxonCount; taxon++) {
+                    states[taxon] = bytes[(int) start + taxon];
+                }
+                break;
+            default:
+                System.arraycopy(ints, (int) start, states, 0, taxonCount);
+        }
+    }
+
+    private void widen(int newBits) {
+        if (cellCount() > MAX_ARRAY_LENGTH) {
+            throw new IllegalArgumentException("Alignment of " + taxonCount + " taxa and " + siteCount +
+                    " sites is too large for state codes outside 0-15: at " + newBits +
+                    " bits per code, at most " + MAX_ARRAY_LENGTH + " characters can be stored");
+        }
+        final int n = (int) cellCount();
+        if (newBits == 8) {
+            final byte[] newBytes = new byte[n];
+            for (int i = 0; i < n; i++) {
+                newBytes[i] = (byte) ((bytes[i >> 1] >> ((i & 1) << 2)) & 0xf);
+            }
+            bytes = newBytes;
+        } else {
+            ints = new int[n];
+            for (int i = 0; i < n; i++) {
+                ints[i] = bits == 4 ? (bytes[i >> 1] >> ((i & 1) << 2)) & 0xf : bytes[i];
+            }
+            bytes = null;
+        }
+        bits = newBits;
+    }
+
+    /**
+     * Deduplicate sites in a single pass, using a hash table on site contents.
+     * Unique sites are numbered in order of first occurrence.
+     *
+     * @param patternIndex for every site, is set to the number of its unique site
+     * @param eachSiteUnique if true, no sites are merged
+     * @return the unique sites, each as an array of codes by taxon
+     */
+    public int[][] uniqueSites(int[] patternIndex, boolean eachSiteUnique) {
+        int[][] patterns = new int[16][];
+        int[] hashes = new int[16];
+        int patternCount = 0;
+        // open addressing hash table containing pattern numbers + 1, so that 0 means empty
+        int[] table = new int[64];
+        int[] states = new int[taxonCount];
+        for (int site = 0; site < siteCount; site++) {
+            getSite(site, states);
+            final int hash = Arrays.hashCode(states);
+            int slot = mix(hash) & (table.length - 1);
+            int found = -1;
+            if (!eachSiteUnique) {
+                while (table[slot] != 0) {
+                    final int p = table[slot] - 1;
+                    if (hashes[p] == hash && Arrays.equals(patterns[p], states)) {
+                        found = p;
+                        break;
+                    }
+                    slot = (slot + 1) & (table.length - 1);
+                }
+            }
+            if (found < 0) {
+                if (patternCount == patterns.length) {
+                    patterns = Arrays.copyOf(patterns, patternCount * 2);
+                    hashes = Arrays.copyOf(hashes, patternCount * 2);
+                }
+                found = patternCount++;
+                patterns[found] = states.clone();
+                hashes[found] = hash;
+                if (!eachSiteUnique) {
+                    table[slot] = found + 1;
+                    if (patternCount * 2 > table.length) {
+                        table = rehash(hashes, patternCount, table.length * 2);
+                    }
+                }
+            }
+            patternIndex[site] = found;
+        }
+        return Arrays.copyOf(patterns, patternCount);
+    }
+
+    private static int[] rehash(int[] hashes, int patternCount, int size) {
+        final int[] table = new int[size];
+        for (int p = 0; p < patternCount; p++) {
+            int slot = mix(hashes[p]) & (size - 1);
+            while (table[slot] != 0) {
+                slot = (slot + 1) & (size - 1);
+            }
+            table[slot] = p + 1;
+        }
+        return table;
+    }
+
+    /** spread hash bits, since Arrays.hashCode of similar sites differ mostly in the low bits **/
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return read-only view of the codes as one list per taxon, as returned by Alignment.getCounts()
+     */
+    public List<List<Integer>> asLists() {
+        if (lists == null) {
+            lists = newListView();
+        }
+        return lists;
+    }
+
+    private List<List<Integer>> newListView() {
+        return new AbstractList<>() {
+            @Override
+            public List<Integer> get(int taxon) {
+                if (taxon < 0 || taxon >= taxonCount) {
+                    throw new IndexOutOfBoundsException(taxon);
+                }
+                return new AbstractList<>() {
+                    @Override
+                    public Integer get(int site) {
+                        if (site < 0 || site >= siteCount) {
+                            throw new IndexOutOfBoundsException(site);
+                        }
+                        return PackedSites.this.get(taxon, site);
+                    }
+
+                    @Override
+                    public int size() {
+                        return siteCount;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return taxonCount;
+            }
+        };
+    }
+
+}
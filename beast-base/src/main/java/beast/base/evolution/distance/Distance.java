@@ -1,7 +1,11 @@
 package beast.base.evolution.distance;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import beast.base.core.BEASTObject;
 import beast.base.core.Description;
+import beast.base.core.EvaluationScheduler;
+import beast.base.core.ProgramStatus;
 import beast.base.evolution.alignment.Alignment;
 import beast.base.evolution.alignment.TaxonSet;
 import beast.base.evolution.datatype.DataType;
@@ -12,6 +16,39 @@ public interface Distance {
 	/** return distance of two taxa, identified by their indices **/
 	double pairwiseDistance(int taxon1, int taxon2);
 	
+	/**
+	 * Distances between all pairs of the first taxonCount taxa as a condensed matrix,
+	 * that is, the lower triangle of the distance matrix row by row, see {@link #index(int, int)}.
+	 * Implementations that are safe to use from multiple threads can calculate rows in parallel.
+	 * 
+	 * @param taxonCount number of taxa
+	 * @return condensed distance matrix
+	 */
+	default float[] pairwiseDistances(int taxonCount) {
+		final float[] matrix = new float[matrixSize(taxonCount)];
+		for (int i = 1; i < taxonCount; i++) {
+			final int offset = index(i, 0);
+			for (int j = 0; j < i; j++) {
+				matrix[offset + j] = (float) pairwiseDistance(i, j);
+			}
+		}
+		return matrix;
+	}
+	
+	/** return position of the distance between taxa i and j in a condensed distance matrix **/
+	static int index(int i, int j) {
+		return i > j ? (int) ((long) i * (i - 1) / 2 + j) : (int) ((long) j * (j - 1) / 2 + i);
+	}
+	
+	/** return length of a condensed distance matrix for taxonCount taxa **/
+	static int matrixSize(int taxonCount) {
+		final long size = (long) taxonCount * (taxonCount - 1) / 2;
+		if (size > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Too many taxa (" + taxonCount + ") for a distance matrix");
+		}
+		return (int) size;
+	}
+	
 	
 	@Description("Provides distance between two sequences in an alignment")
 	public class Base extends BEASTObject implements Distance {
@@ -38,6 +75,7 @@ public interface Distance {
 	        dimension = patterns.getTaxonCount();
 	        dataType = patterns.getDataType();
 	        distancesKnown = false;
+	        packedStates = null;
 	    }
 	
 	
@@ -46,6 +84,25 @@ public interface Distance {
 	     */
 	    @Override
 	    public double pairwiseDistance(int taxon1, int taxon2) {
+	        return correctedDistance(observedDistance(taxon1, taxon2));
+	    }
+	
+	    /**
+	     * Correct the observed distance for multiple substitutions at a site. Distances that
+	     * follow from the observed distance only override this method instead of pairwiseDistance(),
+	     * so that pairwiseDistances() can count differences between sequences bit-parallel.
+	     * 
+	     * @param observedDistance fraction of sites where both taxa have different unambiguous states
+	     * @return distance
+	     */
+	    protected double correctedDistance(double observedDistance) {
+	        return observedDistance;
+	    }
+	
+	    /**
+	     * @return fraction of sites where both taxa have different unambiguous states
+	     */
+	    protected double observedDistance(int taxon1, int taxon2) {
 	        int state1, state2;
 	
 	        int n = patterns.getPatternCount();
@@ -75,6 +132,152 @@ public interface Distance {
 	        return distance;
 	    }
 	
+	    /**
+	     * Whether pairwiseDistance() and correctedDistance() can be called from several threads at
+	     * the same time, so that pairwiseDistances() can calculate rows in parallel. This holds for
+	     * the distances in this package, which only read the alignment and fields set in setPatterns().
+	     * Other subclasses are calculated on a single thread unless they override this method.
+	     */
+	    public boolean isThreadSafe() {
+	        return getClass() == Base.class;
+	    }
+	
+	    /**
+	     * Calculate the distances in blocks of rows, in parallel on the threads of the
+	     * EvaluationScheduler when isThreadSafe(). For data with at most four states,
+	     * like nucleotides, and distances that follow from the observed distance, differences are
+	     * counted on 64 patterns at a time, with the states packed in bits.
+	     */
+	    @Override
+	    public float[] pairwiseDistances(int taxonCount) {
+	        final float[] matrix = new float[matrixSize(taxonCount)];
+	        final boolean countBits = isObservedDistanceBased() && dataType.getStateCount() <= 4;
+	        if (countBits) {
+	            packStates();
+	        }
+	        final int blockCount = (taxonCount + ROW_BLOCK_SIZE - 1) / ROW_BLOCK_SIZE;
+	        final int threadCount = isThreadSafe() ? Math.min(ProgramStatus.m_nThreads, blockCount) : 1;
+	        if (threadCount <= 1) {
+	            for (int block = 0; block < blockCount; block++) {
+	                calculateRows(matrix, taxonCount, block, countBits);
+	            }
+	            return matrix;
+	        }
+	        // rows get longer down the matrix, so threads claim blocks till there are none left
+	        final AtomicInteger nextBlock = new AtomicInteger();
+	        final EvaluationScheduler.Task[] tasks = new EvaluationScheduler.Task[threadCount];
+	        for (int i = 0; i < threadCount; i++) {
+	            tasks[i] = () -> {
+	                int block;
+	                while ((block = nextBlock.getAndIncrement()) < blockCount) {
+	                    calculateRows(matrix, taxonCount, block, countBits);
+	                }
+	                return 0;
+	            };
+	        }
+	        EvaluationScheduler.getInstance().newBatch(tasks).run();
+	        return matrix;
+	    }
+	
+	    /** fill in the rows of the condensed matrix for one block of taxa **/
+	    private void calculateRows(float[] matrix, int taxonCount, int block, boolean countBits) {
+	        final int end = Math.min(taxonCount, (block + 1) * ROW_BLOCK_SIZE);
+	        for (int i = Math.max(1, block * ROW_BLOCK_SIZE); i < end; i++) {
+	            final int offset = index(i, 0);
+	            for (int j = 0; j < i; j++) {
+	                final double distance = countBits ?
+	                        correctedDistance(countDifferences(i, j) / sumWeight) :
+	                        pairwiseDistance(i, j);
+	                matrix[offset + j] = (float) distance;
+	            }
+	        }
+	    }
+	
+	    /** whether pairwiseDistance() is the one of this class, so only correctedDistance() may be overridden **/
+	    private boolean isObservedDistanceBased() {
+	        try {
+	            return getClass().getMethod("pairwiseDistance", int.class, int.class).getDeclaringClass() == Base.class;
+	        } catch (NoSuchMethodException e) {
+	            return false;
+	        }
+	    }
+	
+	    /**
+	     * Pack the states of every taxon in bit planes: a state is coded by two bits, in words low and high,
+	     * and a third word has the bits set for unambiguous states. Patterns are in the planes for the bits of their
+	     * weight, so the number of differences weighted by pattern weight follows from counting bits.
+	     */
+	    private synchronized void packStates() {
+	        if (packedStates != null) {
+	            return;
+	        }
+	        final int patternCount = patterns.getPatternCount();
+	        final int taxonCount = patterns.getTaxonCount();
+	        sumWeight = 0;
+	        int maxWeight = 0;
+	        for (int k = 0; k < patternCount; k++) {
+	            sumWeight += patterns.getPatternWeight(k);
+	            maxWeight = Math.max(maxWeight, patterns.getPatternWeight(k));
+	        }
+	        final int planeCount = 32 - Integer.numberOfLeadingZeros(maxWeight);
+	        planeStart = new int[planeCount + 1];
+	        final int[] planeSize = new int[planeCount];
+	        for (int k = 0; k < patternCount; k++) {
+	            final int weight = patterns.getPatternWeight(k);
+	            for (int plane = 0; plane < planeCount; plane++) {
+	                if ((weight & (1 << plane)) != 0) {
+	                    planeSize[plane]++;
+	                }
+	            }
+	        }
+	        for (int plane = 0; plane < planeCount; plane++) {
+	            planeStart[plane + 1] = planeStart[plane] + (planeSize[plane] + 63) / 64;
+	        }
+	
+	        final long[][] packed = new long[taxonCount][3 * planeStart[planeCount]];
+	        final int[] position = new int[planeCount];
+	        for (int k = 0; k < patternCount; k++) {
+	            final int weight = patterns.getPatternWeight(k);
+	            final int[] pattern = patterns.getPattern(k);
+	            for (int plane = 0; plane < planeCount; plane++) {
+	                if ((weight & (1 << plane)) != 0) {
+	                    final int word = 3 * (planeStart[plane] + position[plane] / 64);
+	                    final long bit = 1L << (position[plane] % 64);
+	                    for (int taxon = 0; taxon < taxonCount; taxon++) {
+	                        final int state = pattern[taxon];
+	                        if (!dataType.isAmbiguousCode(state) && state >= 0 && state < 4) {
+	                            if ((state & 1) != 0) {
+	                                packed[taxon][word] |= bit;
+	                            }
+	                            if ((state & 2) != 0) {
+	                                packed[taxon][word + 1] |= bit;
+	                            }
+	                            packed[taxon][word + 2] |= bit;
+	                        }
+	                    }
+	                    position[plane]++;
+	                }
+	            }
+	        }
+	        packedStates = packed;
+	    }
+	
+	    /** @return sum of weights of patterns where both taxa have different unambiguous states **/
+	    private double countDifferences(int taxon1, int taxon2) {
+	        final long[] states1 = packedStates[taxon1];
+	        final long[] states2 = packedStates[taxon2];
+	        long differences = 0;
+	        for (int plane = 0; plane + 1 < planeStart.length; plane++) {
+	            long count = 0;
+	            for (int word = 3 * planeStart[plane]; word < 3 * planeStart[plane + 1]; word += 3) {
+	                final long differ = (states1[word] ^ states2[word]) | (states1[word + 1] ^ states2[word + 1]);
+	                count += Long.bitCount(differ & states1[word + 2] & states2[word + 2]);
+	            }
+	            differences += count << plane;
+	        }
+	        return differences;
+	    }
+	
 	
 	    //
 	    // Private stuff
@@ -86,5 +289,12 @@ public interface Distance {
 	    //    private double[][] distances = null;
 	    protected Alignment patterns = null;
 	    private TaxonSet taxa = null;
+	
+	    /** number of taxa in a block of rows calculated in one go by pairwiseDistances() **/
+	    private static final int ROW_BLOCK_SIZE = 64;
+	    /** states packed by packStates(), per taxon, and the word where every plane starts **/
+	    private long[][] packedStates = null;
+	    private int[] planeStart;
+	    private double sumWeight;
 	}
 }
@@ -63,6 +63,11 @@ public class F84Distance extends Distance.Base {
         constC = (freqR * freqY);
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     /**
      * Calculate a pairwise distance
      */
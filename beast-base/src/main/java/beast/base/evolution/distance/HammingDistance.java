@@ -7,6 +7,11 @@ import beast.base.core.Description;
         "Note that unknowns are not ignored, so if both are unknowns '?' the distance is zero.")
 public class HammingDistance extends Distance.Base {
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public double pairwiseDistance(int taxon1, int taxon2) {
         double dist = 0;
@@ -49,13 +49,16 @@ public class JukesCantorDistance extends Distance.Base {
         const2 = ((double) stateCount) / (stateCount - 1);
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     /**
-     * Calculate a pairwise distance
+     * Correct the observed distance
      */
     @Override
-    public double pairwiseDistance(int i, int j) {
-        final double obsDist = super.pairwiseDistance(i, j);
-
+    protected double correctedDistance(double obsDist) {
         if (obsDist == 0.0) return 0.0;
 
         if (obsDist >= const1) {
@@ -9,6 +9,11 @@ import beast.base.core.Description;
 @Description("Calculate the distance between different microsatellite alleles")
 public class SMMDistance extends Distance.Base {
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     /**
      * constructor taking a pattern source
      *
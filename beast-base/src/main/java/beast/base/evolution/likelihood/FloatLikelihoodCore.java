@@ -0,0 +1,373 @@
+package beast.base.evolution.likelihood;
+
+import java.util.Arrays;
+
+/**
+ * Likelihood core that stores partials in single precision, halving the memory
+ * used by partials and the bandwidth needed to calculate them. Sums are accumulated
+ * in double precision, only the stored partials are rounded to float.
+ * <p>
+ * Floats underflow much sooner than doubles, so scaling is always on: whenever the
+ * largest partial of a pattern at a node drops below SCALING_THRESHOLD, the partials
+ * of that pattern are multiplied by a power of 2 so that the largest is between 0.5 and 1.
+ * Scaling by a power of 2 is exact, and its log is cheap to calculate.
+ */
+public class FloatLikelihoodCore extends LikelihoodCore {
+
+    /** scale partials of a pattern when the largest falls below 2^-40 **/
+    static final double SCALING_THRESHOLD = 0x1.0p-40;
+    private static final double LOG2 = Math.log(2.0);
+
+    protected int nrOfStates;
+    protected int nrOfNodes;
+    protected int nrOfPatterns;
+    protected int partialsSize;
+    protected int matrixSize;
+    protected int nrOfMatrices;
+
+    protected float[][][] partials;
+
+    protected int[][] states;
+
+    protected double[][][] matrices;
+
+    protected int[] currentMatrixIndex;
+    protected int[] storedMatrixIndex;
+    protected int[] currentPartialsIndex;
+    protected int[] storedPartialsIndex;
+
+    /** log of scaling factor, per buffer, node and pattern **/
+    protected double[][][] scalingFactors;
+
+    public FloatLikelihoodCore(int nrOfStates) {
+        this.nrOfStates = nrOfStates;
+    }
+
+    @Override
+    public void initialize(int nodeCount, int patternCount, int matrixCount, boolean integrateCategories, boolean useAmbiguities) {
+        if (!integrateCategories) {
+            throw new IllegalArgumentException(getClass().getSimpleName() + " only supports integrating over categories");
+        }
+        this.nrOfNodes = nodeCount;
+        this.nrOfPatterns = patternCount;
+        this.nrOfMatrices = matrixCount;
+
+        partialsSize = patternCount * nrOfStates * matrixCount;
+        partials = new float[2][nodeCount][];
+
+        currentMatrixIndex = new int[nodeCount];
+        storedMatrixIndex = new int[nodeCount];
+        currentPartialsIndex = new int[nodeCount];
+        storedPartialsIndex = new int[nodeCount];
+
+        states = new int[nodeCount][];
+
+        matrixSize = nrOfStates * nrOfStates;
+        matrices = new double[2][nodeCount][matrixCount * matrixSize];
+
+        scalingFactors = new double[2][nodeCount][patternCount];
+    }
+
+    @Override
+    public void finalize() throws java.lang.Throwable {
+        nrOfNodes = 0;
+        nrOfPatterns = 0;
+        nrOfMatrices = 0;
+
+        partials = null;
+        currentPartialsIndex = null;
+        storedPartialsIndex = null;
+        states = null;
+        matrices = null;
+        currentMatrixIndex = null;
+        storedMatrixIndex = null;
+
+        scalingFactors = null;
+    }
+
+    /**
+     * Scaling is always used, so there is nothing to switch on
+     */
+    @Override
+    public void setUseScaling(double scale) {
+    }
+
+    @Override
+    public boolean getUseScaling() {
+        return true;
+    }
+
+    @Override
+    public void createNodePartials(int nodeIndex) {
+        partials[0][nodeIndex] = new float[partialsSize];
+        partials[1][nodeIndex] = new float[partialsSize];
+    }
+
+    /**
+     * Sets partials for a node, copied for each category if given for one category only
+     */
+    @Override
+    public void setNodePartials(int nodeIndex, double[] partials) {
+        if (this.partials[0][nodeIndex] == null) {
+            createNodePartials(nodeIndex);
+        }
+        float[] nodePartials = this.partials[0][nodeIndex];
+        for (int i = 0; i < partialsSize; i++) {
+            nodePartials[i] = (float) partials[i % partials.length];
+        }
+    }
+
+    @Override
+    public void getNodePartials(int nodeIndex, double[] partialsOut) {
+        float[] nodePartials = partials[currentPartialsIndex[nodeIndex]][nodeIndex];
+        for (int i = 0; i < partialsOut.length; i++) {
+            partialsOut[i] = nodePartials[i];
+        }
+    }
+
+    @Override
+    public void setNodeStates(int nodeIndex, int[] states) {
+        if (this.states[nodeIndex] == null) {
+            this.states[nodeIndex] = new int[nrOfPatterns];
+        }
+        System.arraycopy(states, 0, this.states[nodeIndex], 0, nrOfPatterns);
+    }
+
+    @Override
+    public void getNodeStates(int nodeIndex, int[] states) {
+        System.arraycopy(this.states[nodeIndex], 0, states, 0, nrOfPatterns);
+    }
+
+    @Override
+    public void setNodeMatrixForUpdate(int nodeIndex) {
+        currentMatrixIndex[nodeIndex] = 1 - currentMatrixIndex[nodeIndex];
+    }
+
+    @Override
+    public void setNodeMatrix(int nodeIndex, int matrixIndex, double[] matrix) {
+        System.arraycopy(matrix, 0, matrices[currentMatrixIndex[nodeIndex]][nodeIndex],
+                matrixIndex * matrixSize, matrixSize);
+    }
+
+    @Override
+    public void getNodeMatrix(int nodeIndex, int matrixIndex, double[] matrix) {
+        System.arraycopy(matrices[currentMatrixIndex[nodeIndex]][nodeIndex],
+                matrixIndex * matrixSize, matrix, 0, matrixSize);
+    }
+
+    @Override
+    public void setNodePartialsForUpdate(int nodeIndex) {
+        currentPartialsIndex[nodeIndex] = 1 - currentPartialsIndex[nodeIndex];
+    }
+
+    @Override
+    public void calculatePartials(int nodeIndex1, int nodeIndex2, int nodeIndex3) {
+        float[] partials3 = partials[currentPartialsIndex[nodeIndex3]][nodeIndex3];
+        double[] matrices1 = matrices[currentMatrixIndex[nodeIndex1]][nodeIndex1];
+        double[] matrices2 = matrices[currentMatrixIndex[nodeIndex2]][nodeIndex2];
+        if (states[nodeIndex1] != null) {
+            if (states[nodeIndex2] != null) {
+                calculateStatesStatesPruning(states[nodeIndex1], matrices1, states[nodeIndex2], matrices2, partials3);
+            } else {
+                calculateStatesPartialsPruning(states[nodeIndex1], matrices1,
+                        partials[currentPartialsIndex[nodeIndex2]][nodeIndex2], matrices2, partials3);
+            }
+        } else {
+            if (states[nodeIndex2] != null) {
+                calculateStatesPartialsPruning(states[nodeIndex2], matrices2,
+                        partials[currentPartialsIndex[nodeIndex1]][nodeIndex1], matrices1, partials3);
+            } else {
+                calculatePartialsPartialsPruning(partials[currentPartialsIndex[nodeIndex1]][nodeIndex1], matrices1,
+                        partials[currentPartialsIndex[nodeIndex2]][nodeIndex2], matrices2, partials3);
+            }
+        }
+        scalePartials(nodeIndex3);
+    }
+
+    /**
+     * Calculates partial likelihoods at a node when both children have states.
+     */
+    protected void calculateStatesStatesPruning(int[] stateIndex1, double[] matrices1,
+                                                int[] stateIndex2, double[] matrices2,
+                                                float[] partials3) {
+        int v = 0;
+        for (int l = 0; l < nrOfMatrices; l++) {
+            for (int k = 0; k < nrOfPatterns; k++) {
+                int state1 = stateIndex1[k];
+                int state2 = stateIndex2[k];
+                int w = l * matrixSize;
+                for (int i = 0; i < nrOfStates; i++) {
+                    // a gap or unknown state counts as 1
+                    double p1 = state1 < nrOfStates ? matrices1[w + state1] : 1.0;
+                    double p2 = state2 < nrOfStates ? matrices2[w + state2] : 1.0;
+                    partials3[v] = (float) (p1 * p2);
+                    v++;
+                    w += nrOfStates;
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates partial likelihoods at a node when one child has states and one has partials.
+     */
+    protected void calculateStatesPartialsPruning(int[] stateIndex1, double[] matrices1,
+                                                  float[] partials2, double[] matrices2,
+                                                  float[] partials3) {
+        int u = 0;
+        int v = 0;
+        for (int l = 0; l < nrOfMatrices; l++) {
+            for (int k = 0; k < nrOfPatterns; k++) {
+                int state1 = stateIndex1[k];
+                int w = l * matrixSize;
+                for (int i = 0; i < nrOfStates; i++) {
+                    double tmp = state1 < nrOfStates ? matrices1[w + state1] : 1.0;
+                    double sum = 0.0;
+                    for (int j = 0; j < nrOfStates; j++) {
+                        sum += matrices2[w] * partials2[v + j];
+                        w++;
+                    }
+                    partials3[u] = (float) (tmp * sum);
+                    u++;
+                }
+                v += nrOfStates;
+            }
+        }
+    }
+
+    /**
+     * Calculates partial likelihoods at a node when both children have partials.
+     */
+    protected void calculatePartialsPartialsPruning(float[] partials1, double[] matrices1,
+                                                    float[] partials2, double[] matrices2,
+                                                    float[] partials3) {
+        int u = 0;
+        int v = 0;
+        for (int l = 0; l < nrOfMatrices; l++) {
+            for (int k = 0; k < nrOfPatterns; k++) {
+                int w = l * matrixSize;
+                for (int i = 0; i < nrOfStates; i++) {
+                    double sum1 = 0.0, sum2 = 0.0;
+                    for (int j = 0; j < nrOfStates; j++) {
+                        sum1 += matrices1[w] * partials1[v + j];
+                        sum2 += matrices2[w] * partials2[v + j];
+                        w++;
+                    }
+                    partials3[u] = (float) (sum1 * sum2);
+                    u++;
+                }
+                v += nrOfStates;
+            }
+        }
+    }
+
+    /**
+     * Scale the partials of patterns at a node for which the largest partial over all
+     * states and categories is below SCALING_THRESHOLD, and record the log of the scaling.
+     */
+    protected void scalePartials(int nodeIndex) {
+        float[] partials = this.partials[currentPartialsIndex[nodeIndex]][nodeIndex];
+        double[] scalingFactors = this.scalingFactors[currentPartialsIndex[nodeIndex]][nodeIndex];
+        int categoryOffset = nrOfPatterns * nrOfStates;
+
+        int u = 0;
+        for (int k = 0; k < nrOfPatterns; k++) {
+            float max = 0;
+            for (int v = u; v < partialsSize; v += categoryOffset) {
+                for (int i = 0; i < nrOfStates; i++) {
+                    max = Math.max(max, partials[v + i]);
+                }
+            }
+
+            if (max < SCALING_THRESHOLD && max > 0) {
+                // multiply by 2^-(exponent + 1), so max ends up in [0.5, 1)
+                int exponent = Math.getExponent(max) + 1;
+                float scale = Math.scalb(1.0f, -exponent);
+                for (int v = u; v < partialsSize; v += categoryOffset) {
+                    for (int i = 0; i < nrOfStates; i++) {
+                        partials[v + i] *= scale;
+                    }
+                }
+                scalingFactors[k] = exponent * LOG2;
+            } else {
+                scalingFactors[k] = 0.0;
+            }
+            u += nrOfStates;
+        }
+    }
+
+    @Override
+    public double getLogScalingFactor(int patternIndex_) {
+        double logScalingFactor = 0.0;
+        for (int i = 0; i < nrOfNodes; i++) {
+            logScalingFactor += scalingFactors[currentPartialsIndex[i]][i][patternIndex_];
+        }
+        return logScalingFactor;
+    }
+
+    @Override
+    public void integratePartials(int nodeIndex, double[] proportions, double[] outPartials) {
+        float[] inPartials = partials[currentPartialsIndex[nodeIndex]][nodeIndex];
+        int n = nrOfPatterns * nrOfStates;
+        Arrays.fill(outPartials, 0, n, 0.0);
+        for (int l = 0; l < nrOfMatrices; l++) {
+            int v = l * n;
+            for (int u = 0; u < n; u++) {
+                outPartials[u] += inPartials[v + u] * proportions[l];
+            }
+        }
+    }
+
+    /**
+     * as integratePartials(), for partials in double precision, e.g. as obtained from getNodePartials()
+     */
+    @Override
+    protected void calculateIntegratePartials(double[] inPartials, double[] proportions, double[] outPartials) {
+        int n = nrOfPatterns * nrOfStates;
+        Arrays.fill(outPartials, 0, n, 0.0);
+        for (int l = 0; l < nrOfMatrices; l++) {
+            int v = l * n;
+            for (int u = 0; u < n; u++) {
+                outPartials[u] += inPartials[v + u] * proportions[l];
+            }
+        }
+    }
+
+    @Override
+    public void calculateLogLikelihoods(double[] partials, double[] frequencies, double[] outLogLikelihoods) {
+        int v = 0;
+        for (int k = 0; k < nrOfPatterns; k++) {
+            double sum = 0.0;
+            for (int i = 0; i < nrOfStates; i++) {
+                sum += frequencies[i] * partials[v];
+                v++;
+            }
+            outLogLikelihoods[k] = Math.log(sum) + getLogScalingFactor(k);
+        }
+    }
+
+    @Override
+    public void store() {
+        System.arraycopy(currentMatrixIndex, 0, storedMatrixIndex, 0, nrOfNodes);
+        System.arraycopy(currentPartialsIndex, 0, storedPartialsIndex, 0, nrOfNodes);
+    }
+
+    @Override
+    public void unstore() {
+        System.arraycopy(storedMatrixIndex, 0, currentMatrixIndex, 0, nrOfNodes);
+        System.arraycopy(storedPartialsIndex, 0, currentPartialsIndex, 0, nrOfNodes);
+    }
+
+    @Override
+    public void restore() {
+        // swap pointers instead of copying
+        int[] tmp1 = currentMatrixIndex;
+        currentMatrixIndex = storedMatrixIndex;
+        storedMatrixIndex = tmp1;
+
+        int[] tmp2 = currentPartialsIndex;
+        currentPartialsIndex = storedPartialsIndex;
+        storedPartialsIndex = tmp2;
+    }
+
+}
@@ -27,8 +27,10 @@
 package beast.base.evolution.likelihood;
 
 import beast.base.core.Description;
+import beast.base.core.EvaluationScheduler;
 import beast.base.core.Input;
 import beast.base.core.Log;
+import beast.base.core.ProgramStatus;
 import beast.base.evolution.alignment.Alignment;
 import beast.base.evolution.branchratemodel.BranchRateModel;
 import beast.base.evolution.branchratemodel.StrictClockModel;
@@ -57,7 +59,9 @@ public class TreeLikelihood extends GenericTreeLikelihood {
     final public Input<Boolean> m_useTipLikelihoods = new Input<>("useTipLikelihoods", "flag to indicate that partial likelihoods are provided at the tips", false);
     final public Input<String> implementationInput = new Input<>("implementation", "name of class that implements this treelikelihood potentially more efficiently. "
     		+ "This class will be tried first, with the TreeLikelihood as fallback implementation. "
-    		+ "When multi-threading, multiple objects can be created.", BeagleTreeLikelihood.class.getName());
+    		+ "When multi-threading, multiple objects can be created. "
+    		+ "Alternatively, the name of a LikelihoodCore class to use instead of the default java core, "
+    		+ "e.g. beast.base.evolution.likelihood.VectorLikelihoodCore4 (requires --add-modules jdk.incubator.vector)", BeagleTreeLikelihood.class.getName());
     
     public static enum Scaling {none, always, _default};
     final public Input<Scaling> scaling = new Input<>("scaling", "type of scaling to use, one of " + Arrays.toString(Scaling.values()) + ". If not specified, the -beagle_scaling flag is used.", Scaling._default, Scaling.values());
@@ -65,6 +69,12 @@ public class TreeLikelihood extends GenericTreeLikelihood {
     final public Input<Frequencies> rootFrequenciesInput =
             new Input<>("rootFrequencies", "prior state frequencies at root, optional", Input.Validate.OPTIONAL);
 
+    final public Input<Boolean> parallelPeelingInput = new Input<>("parallelPeeling", "flag to indicate that partials of independent subtrees should be calculated concurrently. "
+    		+ "Only effective when the number of threads (-threads option) is larger than 1 and no BEAGLE instance is used", false);
+    final public Input<Integer> parallelThresholdInput = new Input<>("parallelThreshold", "minimum amount of work in a subtree for its two child subtrees to be peeled concurrently, "
+    		+ "measured as number of partials entries (patterns x states x categories) over all internal nodes to be recalculated. "
+    		+ "Smaller subtrees are peeled sequentially", 1 << 16);
+
     /**
      * calculation engine *
      */
@@ -90,6 +100,19 @@ public class TreeLikelihood extends GenericTreeLikelihood {
      */
     protected int hasDirt;
 
+    /**
+     * batches of the shared EvaluationScheduler that peel the two child subtrees of a node,
+     * indexed by node number, null when partials are calculated sequentially
+     */
+    private EvaluationScheduler.Batch[] peelingBatches;
+    /** nodes by node number, as found in the last traversal, used by the tasks of peelingBatches **/
+    private Node[] peelingNodes;
+    /** flags nodes of which partials need to be recalculated, indexed by node number **/
+    private boolean[] recalculatePartials;
+    /** number of partials entries to be recalculated in subtree under node, indexed by node number **/
+    private long[] subtreeWork;
+    private long workPerNode;
+
     /**
      * Lengths of the branches in the tree associated with each of the nodes
      * in the tree through their node  numbers. By comparing whether the
@@ -235,15 +258,47 @@ public class TreeLikelihood extends GenericTreeLikelihood {
         if (alignment.isAscertained) {
             useAscertainedSitePatterns = true;
         }
+
+        peelingBatches = null;
+        if (parallelPeelingInput.get()) {
+            if (ProgramStatus.m_nThreads > 1) {
+                final EvaluationScheduler scheduler = EvaluationScheduler.getInstance();
+                peelingNodes = new Node[nodeCount];
+                peelingBatches = new EvaluationScheduler.Batch[nodeCount];
+                for (int i = treeInput.get().getLeafNodeCount(); i < nodeCount; i++) {
+                    final int nodeNr = i;
+                    peelingBatches[i] = scheduler.newBatch(
+                            () -> {peel(peelingNodes[nodeNr].getLeft()); return 0;},
+                            () -> {peel(peelingNodes[nodeNr].getRight()); return 0;});
+                }
+                recalculatePartials = new boolean[nodeCount];
+                subtreeWork = new long[nodeCount];
+                workPerNode = (long) patterns * stateCount * m_siteModel.getCategoryCount();
+                Log.info.println("  peeling independent subtrees in parallel using up to " + scheduler.getThreadCount() + " threads");
+            } else {
+                Log.warning.println("parallelPeeling is ignored since only 1 thread is available: use the -threads option to specify more");
+            }
+        }
     }
 
     private TreeLikelihood newTreeLikelihood() throws InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, NoSuchMethodException, SecurityException, ClassNotFoundException {
 		String class_ = implementationInput.get();
-		TreeLikelihood tl = (TreeLikelihood) BEASTClassLoader.forName(class_).getConstructor().newInstance();
+		Class<?> c = BEASTClassLoader.forName(class_);
+		if (!TreeLikelihood.class.isAssignableFrom(c)) {
+			return null;
+		}
+		TreeLikelihood tl = (TreeLikelihood) c.getConstructor().newInstance();
 		return tl;
 	}
     
 	protected LikelihoodCore createLikelihoodCore(int stateCount) {
+		LikelihoodCore core = newLikelihoodCore(stateCount);
+		if (core != null) {
+			return core;
+		}
+		if (Boolean.valueOf(System.getProperty("java.single"))) {
+			return new FloatLikelihoodCore(stateCount);
+		}
 		if (stateCount == 4) {
 			return new BeerLikelihoodCore4();
 		} else {
@@ -251,6 +306,36 @@ public class TreeLikelihood extends GenericTreeLikelihood {
 		}
     }
 
+	/**
+	 * Create the LikelihoodCore named by the implementation input, if any. The class is
+	 * constructed with the state count, or with its no-argument constructor if it has none,
+	 * and should throw an IllegalArgumentException if it cannot handle the state count.
+	 * @return null if implementation does not name a LikelihoodCore, or if it cannot be
+	 * used here, for instance because a module it needs is not available
+	 */
+	private LikelihoodCore newLikelihoodCore(int stateCount) {
+		String className = implementationInput.get();
+		try {
+			Class<?> c = BEASTClassLoader.forName(className);
+			if (!LikelihoodCore.class.isAssignableFrom(c)) {
+				return null;
+			}
+			try {
+				return (LikelihoodCore) c.getConstructor(int.class).newInstance(stateCount);
+			} catch (NoSuchMethodException e) {
+				return (LikelihoodCore) c.getConstructor().newInstance();
+			}
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (InvocationTargetException e) {
+			Log.warning.println("Cannot use " + className + ": " + e.getCause().getMessage() + ". Falling back to default likelihood core.");
+		} catch (ReflectiveOperationException | LinkageError e) {
+			Log.warning.println("Cannot use " + className + " (" + e.getClass().getSimpleName() + ": " + e.getMessage() + "). "
+					+ "If it uses the Vector API, start java with --add-modules jdk.incubator.vector. Falling back to default likelihood core.");
+		}
+		return null;
+	}
+
 
     /**
      * Determine indices of m_fRootProbabilities that need to be updates
@@ -462,29 +547,14 @@ public class TreeLikelihood extends GenericTreeLikelihood {
 
     /* Assumes there IS a branch rate model as opposed to traverse() */
     protected int traverse(final Node node) {
+        if (peelingBatches != null && node.isRoot()) {
+            return traverseInParallel(node);
+        }
 
-        int update = (node.isDirty() | hasDirt);
+        int update = updateTransitionMatrices(node);
 
         final int nodeIndex = node.getNr();
 
-        final double branchRate = branchRateModel.getRateForBranch(node);
-        final double branchTime = node.getLength() * branchRate;
-
-        // First update the transition probability matrix(ices) for this branch
-        //if (!node.isRoot() && (update != Tree.IS_CLEAN || branchTime != m_StoredBranchLengths[nodeIndex])) {
-        if (!node.isRoot() && (update != Tree.IS_CLEAN || branchTime != m_branchLengths[nodeIndex])) {
-            m_branchLengths[nodeIndex] = branchTime;
-            final Node parent = node.getParent();
-            likelihoodCore.setNodeMatrixForUpdate(nodeIndex);
-            for (int i = 0; i < m_siteModel.getCategoryCount(); i++) {
-                final double jointBranchRate = m_siteModel.getRateForCategory(i, node) * branchRate;
-                substitutionModel.getTransitionProbabilities(node, parent.getHeight(), node.getHeight(), jointBranchRate, probabilities);
-                //System.out.println(node.getNr() + " " + Arrays.toString(m_fProbabilities));
-                likelihoodCore.setNodeMatrix(nodeIndex, i, probabilities);
-            }
-            update |= Tree.IS_DIRTY;
-        }
-
         // If the node is internal, update the partial likelihoods.
         if (!node.isLeaf()) {
 
@@ -515,25 +585,7 @@ public class TreeLikelihood extends GenericTreeLikelihood {
                 }
 
                 if (node.isRoot()) {
-                    // No parent this is the root of the beast.tree -
-                    // calculate the pattern likelihoods
-
-                    final double[] proportions = m_siteModel.getCategoryProportions(node);
-                    likelihoodCore.integratePartials(node.getNr(), proportions, m_fRootPartials);
-
-                    if (constantPattern != null) { // && !SiteModel.g_bUseOriginal) {
-                        proportionInvariant = m_siteModel.getProportionInvariant();
-                        // some portion of sites is invariant, so adjust root partials for this
-                        for (final int i : constantPattern) {
-                            m_fRootPartials[i] += proportionInvariant;
-                        }
-                    }
-
-                    double[] rootFrequencies = substitutionModel.getFrequencies();
-                    if (rootFrequenciesInput.get() != null) {
-                        rootFrequencies = rootFrequenciesInput.get().getFreqs();
-                    }
-                    likelihoodCore.calculateLogLikelihoods(m_fRootPartials, rootFrequencies, patternLogLikelihoods);
+                    calculateRootLogLikelihoods(node);
                 }
 
             }
@@ -541,6 +593,127 @@ public class TreeLikelihood extends GenericTreeLikelihood {
         return update;
     } // traverseWithBRM
 
+    /**
+     * Update the transition probability matrix(ices) for the branch above node, if required.
+     * @return update flag of the node, which includes IS_DIRTY if the matrices were updated
+     */
+    protected int updateTransitionMatrices(final Node node) {
+        int update = (node.isDirty() | hasDirt);
+
+        final int nodeIndex = node.getNr();
+
+        final double branchRate = branchRateModel.getRateForBranch(node);
+        final double branchTime = node.getLength() * branchRate;
+
+        // First update the transition probability matrix(ices) for this branch
+        //if (!node.isRoot() && (update != Tree.IS_CLEAN || branchTime != m_StoredBranchLengths[nodeIndex])) {
+        if (!node.isRoot() && (update != Tree.IS_CLEAN || branchTime != m_branchLengths[nodeIndex])) {
+            m_branchLengths[nodeIndex] = branchTime;
+            final Node parent = node.getParent();
+            likelihoodCore.setNodeMatrixForUpdate(nodeIndex);
+            for (int i = 0; i < m_siteModel.getCategoryCount(); i++) {
+                final double jointBranchRate = m_siteModel.getRateForCategory(i, node) * branchRate;
+                substitutionModel.getTransitionProbabilities(node, parent.getHeight(), node.getHeight(), jointBranchRate, probabilities);
+                //System.out.println(node.getNr() + " " + Arrays.toString(m_fProbabilities));
+                likelihoodCore.setNodeMatrix(nodeIndex, i, probabilities);
+            }
+            update |= Tree.IS_DIRTY;
+        }
+
+        return update;
+    }
+
+    /**
+     * Calculate the pattern log likelihoods from the partials at the root
+     */
+    protected void calculateRootLogLikelihoods(final Node root) {
+        final double[] proportions = m_siteModel.getCategoryProportions(root);
+        likelihoodCore.integratePartials(root.getNr(), proportions, m_fRootPartials);
+
+        if (constantPattern != null) { // && !SiteModel.g_bUseOriginal) {
+            proportionInvariant = m_siteModel.getProportionInvariant();
+            // some portion of sites is invariant, so adjust root partials for this
+            for (final int i : constantPattern) {
+                m_fRootPartials[i] += proportionInvariant;
+            }
+        }
+
+        double[] rootFrequencies = substitutionModel.getFrequencies();
+        if (rootFrequenciesInput.get() != null) {
+            rootFrequencies = rootFrequenciesInput.get().getFreqs();
+        }
+        likelihoodCore.calculateLogLikelihoods(m_fRootPartials, rootFrequencies, patternLogLikelihoods);
+    }
+
+    /**
+     * Traversal that calculates partials of independent subtrees concurrently.
+     * Substitution and branch rate models are not thread safe, so transition
+     * matrices are updated in a sequential first pass that also marks the nodes
+     * to be recalculated. Partials are then calculated bottom up, where the two
+     * child subtrees of a node are peeled as a batch of the EvaluationScheduler
+     * when there is enough work in them. So peeling shares its threads with
+     * other parallel calculations, and runs on the calling thread when all
+     * threads are busy. This is safe on a single likelihood core since calculating partials only
+     * writes to the buffers of the parent node.
+     */
+    protected int traverseInParallel(final Node root) {
+        final int update = markForUpdate(root);
+        if (recalculatePartials[root.getNr()]) {
+            if (!m_siteModel.integrateAcrossCategories()) {
+                throw new RuntimeException("Error TreeLikelihood 201: Site categories not supported");
+            }
+            peel(root);
+            calculateRootLogLikelihoods(root);
+        }
+        return update;
+    }
+
+    /** first pass of traverseInParallel: same as traverse, but without calculating partials **/
+    private int markForUpdate(final Node node) {
+        int update = updateTransitionMatrices(node);
+
+        final int nodeIndex = node.getNr();
+        peelingNodes[nodeIndex] = node;
+        recalculatePartials[nodeIndex] = false;
+        subtreeWork[nodeIndex] = 0;
+        if (!node.isLeaf()) {
+            final Node child1 = node.getLeft();
+            final int update1 = markForUpdate(child1);
+
+            final Node child2 = node.getRight();
+            final int update2 = markForUpdate(child2);
+
+            if (update1 != Tree.IS_CLEAN || update2 != Tree.IS_CLEAN) {
+                likelihoodCore.setNodePartialsForUpdate(nodeIndex);
+                update |= (update1 | update2);
+                if (update >= Tree.IS_FILTHY) {
+                    likelihoodCore.setNodeStatesForUpdate(nodeIndex);
+                }
+                recalculatePartials[nodeIndex] = true;
+                subtreeWork[nodeIndex] = subtreeWork[child1.getNr()] + subtreeWork[child2.getNr()] + workPerNode;
+            }
+        }
+        return update;
+    }
+
+    /** second pass of traverseInParallel: calculate partials of all marked nodes in subtree under node **/
+    private void peel(final Node node) {
+        final int nodeIndex = node.getNr();
+        if (node.isLeaf() || !recalculatePartials[nodeIndex]) {
+            return;
+        }
+        final Node child1 = node.getLeft();
+        final Node child2 = node.getRight();
+        if (subtreeWork[nodeIndex] >= parallelThresholdInput.get() &&
+                recalculatePartials[child1.getNr()] && recalculatePartials[child2.getNr()]) {
+            peelingBatches[nodeIndex].run();
+        } else {
+            peel(child1);
+            peel(child2);
+        }
+        likelihoodCore.calculatePartials(child1.getNr(), child2.getNr(), nodeIndex);
+    }
+
     /* return copy of pattern log likelihoods for each of the patterns in the alignment */
 	public double [] getPatternLogLikelihoods() {
 		if (beagle != null) {
@@ -0,0 +1,270 @@
+package beast.base.evolution.likelihood;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Nucleotide likelihood core using the (incubating) Vector API.
+ * <p>
+ * The four states of a pattern fit in a single 256 bit vector, or in two vectors on
+ * machines with 128 bit vectors. A transition matrix is applied to a partials vector
+ * as a sum over the columns of the matrix, scaled by the partials for the column's state,
+ * so no horizontal sums are needed. The columns are transposed once when a matrix is set.
+ * Sums are taken in the same order as in BeerLikelihoodCore4, so results are identical.
+ * <p>
+ * Requires the JVM to be started with --add-modules jdk.incubator.vector.
+ * Select it with implementation="beast.base.evolution.likelihood.VectorLikelihoodCore4"
+ * in the TreeLikelihood, which falls back to BeerLikelihoodCore4 when the module is missing.
+ */
+public class VectorLikelihoodCore4 extends BeerLikelihoodCore4 {
+
+    /** species for operations over contiguous arrays **/
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    /**
+     * species for the states of a pattern: the preferred species, capped at the
+     * 4 states of a pattern, so with wider vectors no lanes are left over
+     **/
+    private static final VectorSpecies<Double> STATES = SPECIES.length() >= 4 ? DoubleVector.SPECIES_256 : SPECIES;
+    /** number of states in a vector of STATES, which divides 4 **/
+    private static final int LANES = STATES.length();
+
+    /**
+     * transposed transition matrices, indexed like matrices: for each category the four
+     * columns of the matrix are contiguous, followed by a column of ones that is used for
+     * gaps and unknown states. Column j of category l starts at l * 20 + j * 4.
+     */
+    private double[][][] columns;
+
+    public VectorLikelihoodCore4() {
+        super();
+    }
+
+    public VectorLikelihoodCore4(int stateCount) {
+        this();
+        if (stateCount != 4) {
+            throw new IllegalArgumentException(getClass().getSimpleName() + " only handles 4 states, not " + stateCount);
+        }
+    }
+
+    @Override
+    public void initialize(int nodeCount, int patternCount, int matrixCount, boolean integrateCategories, boolean useAmbiguities) {
+        super.initialize(nodeCount, patternCount, matrixCount, integrateCategories, useAmbiguities);
+        columns = new double[2][nodeCount][matrixCount * 20];
+        for (double[][] c : columns) {
+            for (double[] nodeColumns : c) {
+                for (int l = 0; l < matrixCount; l++) {
+                    Arrays.fill(nodeColumns, l * 20 + 16, l * 20 + 20, 1.0);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void setNodeMatrix(int nodeIndex, int matrixIndex, double[] matrix) {
+        super.setNodeMatrix(nodeIndex, matrixIndex, matrix);
+        transpose(matrix, 0, columns[currentMatrixIndex[nodeIndex]][nodeIndex], matrixIndex * 20);
+    }
+
+    @Override
+    public void setPaddedNodeMatrices(int nodeIndex, double[] matrix) {
+        super.setPaddedNodeMatrices(nodeIndex, matrix);
+        for (int l = 0; l < nrOfMatrices; l++) {
+            transpose(matrix, l * matrixSize, columns[currentMatrixIndex[nodeIndex]][nodeIndex], l * 20);
+        }
+    }
+
+    private void transpose(double[] matrix, int w, double[] columns, int c) {
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                columns[c + j * 4 + i] = matrix[w + i * 4 + j];
+            }
+        }
+    }
+
+    /**
+     * Calculates partial likelihoods at a node, as in BeerLikelihoodCore,
+     * but from the transposed matrices.
+     */
+    @Override
+    public void calculatePartials(int nodeIndex1, int nodeIndex2, int nodeIndex3) {
+        double[] columns1 = columns[currentMatrixIndex[nodeIndex1]][nodeIndex1];
+        double[] columns2 = columns[currentMatrixIndex[nodeIndex2]][nodeIndex2];
+        double[] partials3 = partials[currentPartialsIndex[nodeIndex3]][nodeIndex3];
+        if (states[nodeIndex1] != null) {
+            if (states[nodeIndex2] != null) {
+                calculateStatesStates(states[nodeIndex1], columns1, states[nodeIndex2], columns2, partials3);
+            } else {
+                calculateStatesPartials(states[nodeIndex1], columns1,
+                        partials[currentPartialsIndex[nodeIndex2]][nodeIndex2], columns2, partials3);
+            }
+        } else {
+            if (states[nodeIndex2] != null) {
+                calculateStatesPartials(states[nodeIndex2], columns2,
+                        partials[currentPartialsIndex[nodeIndex1]][nodeIndex1], columns1, partials3);
+            } else {
+                calculatePartialsPartials(partials[currentPartialsIndex[nodeIndex1]][nodeIndex1], columns1,
+                        partials[currentPartialsIndex[nodeIndex2]][nodeIndex2], columns2, partials3);
+            }
+        }
+
+        if (useScaling) {
+            scalePartials(nodeIndex3);
+        }
+    }
+
+    /**
+     * Calculates partial likelihoods at a node when both children have states.
+     */
+    private void calculateStatesStates(int[] stateIndex1, double[] columns1,
+                                       int[] stateIndex2, double[] columns2,
+                                       double[] partials3) {
+        for (int l = 0; l < nrOfMatrices; l++) {
+            int c = l * 20;
+            for (int i = 0; i < 4; i += LANES) {
+                int v = l * nrOfPatterns * 4 + i;
+                for (int k = 0; k < nrOfPatterns; k++) {
+                    int state1 = Math.min(stateIndex1[k], 4);
+                    int state2 = Math.min(stateIndex2[k], 4);
+                    DoubleVector.fromArray(STATES, columns1, c + state1 * 4 + i)
+                            .mul(DoubleVector.fromArray(STATES, columns2, c + state2 * 4 + i))
+                            .intoArray(partials3, v);
+                    v += 4;
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates partial likelihoods at a node when one child has states and one has partials.
+     */
+    private void calculateStatesPartials(int[] stateIndex1, double[] columns1,
+                                         double[] partials2, double[] columns2,
+                                         double[] partials3) {
+        for (int l = 0; l < nrOfMatrices; l++) {
+            int c = l * 20;
+            for (int i = 0; i < 4; i += LANES) {
+                DoubleVector m0 = DoubleVector.fromArray(STATES, columns2, c + i);
+                DoubleVector m1 = DoubleVector.fromArray(STATES, columns2, c + 4 + i);
+                DoubleVector m2 = DoubleVector.fromArray(STATES, columns2, c + 8 + i);
+                DoubleVector m3 = DoubleVector.fromArray(STATES, columns2, c + 12 + i);
+
+                int v = l * nrOfPatterns * 4;
+                for (int k = 0; k < nrOfPatterns; k++) {
+                    int state1 = Math.min(stateIndex1[k], 4);
+
+                    DoubleVector sum = m0.mul(partials2[v])
+                            .add(m1.mul(partials2[v + 1]))
+                            .add(m2.mul(partials2[v + 2]))
+                            .add(m3.mul(partials2[v + 3]));
+                    // multiplying by the column of ones for gaps leaves sum unchanged
+                    DoubleVector.fromArray(STATES, columns1, c + state1 * 4 + i).mul(sum).intoArray(partials3, v + i);
+                    v += 4;
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates partial likelihoods at a node when both children have partials.
+     */
+    private void calculatePartialsPartials(double[] partials1, double[] columns1,
+                                           double[] partials2, double[] columns2,
+                                           double[] partials3) {
+        for (int l = 0; l < nrOfMatrices; l++) {
+            int c = l * 20;
+            for (int i = 0; i < 4; i += LANES) {
+                DoubleVector m10 = DoubleVector.fromArray(STATES, columns1, c + i);
+                DoubleVector m11 = DoubleVector.fromArray(STATES, columns1, c + 4 + i);
+                DoubleVector m12 = DoubleVector.fromArray(STATES, columns1, c + 8 + i);
+                DoubleVector m13 = DoubleVector.fromArray(STATES, columns1, c + 12 + i);
+                DoubleVector m20 = DoubleVector.fromArray(STATES, columns2, c + i);
+                DoubleVector m21 = DoubleVector.fromArray(STATES, columns2, c + 4 + i);
+                DoubleVector m22 = DoubleVector.fromArray(STATES, columns2, c + 8 + i);
+                DoubleVector m23 = DoubleVector.fromArray(STATES, columns2, c + 12 + i);
+
+                int v = l * nrOfPatterns * 4;
+                for (int k = 0; k < nrOfPatterns; k++) {
+                    DoubleVector sum1 = m10.mul(partials1[v])
+                            .add(m11.mul(partials1[v + 1]))
+                            .add(m12.mul(partials1[v + 2]))
+                            .add(m13.mul(partials1[v + 3]));
+                    DoubleVector sum2 = m20.mul(partials2[v])
+                            .add(m21.mul(partials2[v + 1]))
+                            .add(m22.mul(partials2[v + 2]))
+                            .add(m23.mul(partials2[v + 3]));
+                    sum1.mul(sum2).intoArray(partials3, v + i);
+                    v += 4;
+                }
+            }
+        }
+    }
+
+    /**
+     * Integrates partials across categories, vectorised over patterns and states.
+     */
+    @Override
+    protected void calculateIntegratePartials(double[] inPartials, double[] proportions, double[] outPartials) {
+        int n = nrOfPatterns * 4;
+        int bound = SPECIES.loopBound(n);
+
+        int u = 0;
+        for (; u < bound; u += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, inPartials, u).mul(proportions[0]).intoArray(outPartials, u);
+        }
+        for (; u < n; u++) {
+            outPartials[u] = inPartials[u] * proportions[0];
+        }
+
+        for (int l = 1; l < nrOfMatrices; l++) {
+            int v = l * n;
+            double proportion = proportions[l];
+            u = 0;
+            for (; u < bound; u += SPECIES.length()) {
+                DoubleVector.fromArray(SPECIES, outPartials, u)
+                        .add(DoubleVector.fromArray(SPECIES, inPartials, v + u).mul(proportion))
+                        .intoArray(outPartials, u);
+            }
+            for (; u < n; u++) {
+                outPartials[u] += inPartials[v + u] * proportion;
+            }
+        }
+    }
+
+    /**
+     * Scale the partials at a given node, as in BeerLikelihoodCore, using the
+     * maximum over the states vectors of all categories of a pattern.
+     */
+    @Override
+    protected void scalePartials(int nodeIndex) {
+        double[] partials = this.partials[currentPartialsIndex[nodeIndex]][nodeIndex];
+        double[] scalingFactors = this.scalingFactors[currentPartialsIndex[nodeIndex]][nodeIndex];
+        int categoryOffset = nrOfPatterns * 4;
+
+        int u = 0;
+        for (int i = 0; i < nrOfPatterns; i++) {
+            DoubleVector max = DoubleVector.zero(STATES);
+            for (int v = u; v < partialsSize; v += categoryOffset) {
+                for (int j = 0; j < 4; j += LANES) {
+                    max = max.max(DoubleVector.fromArray(STATES, partials, v + j));
+                }
+            }
+            double scaleFactor = max.reduceLanes(VectorOperators.MAX);
+
+            if (scaleFactor < scalingThreshold) {
+                for (int v = u; v < partialsSize; v += categoryOffset) {
+                    for (int j = 0; j < 4; j += LANES) {
+                        DoubleVector.fromArray(STATES, partials, v + j).div(scaleFactor).intoArray(partials, v + j);
+                    }
+                }
+                scalingFactors[i] = Math.log(scaleFactor);
+            } else {
+                scalingFactors[i] = 0.0;
+            }
+            u += 4;
+        }
+    }
+
+}
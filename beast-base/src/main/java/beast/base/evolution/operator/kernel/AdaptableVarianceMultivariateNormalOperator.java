@@ -65,7 +65,8 @@ public class AdaptableVarianceMultivariateNormalOperator extends KernelOperator
 			+ "For parameters that sum to a constant use LogConstrainedSumTransform  (where e.g. delta-exchange operators were used).", new ArrayList<>()); 
 	final public Input<Double> scaleFactorInput = new Input<>("scaleFactor", "start scaling factor, larger values give bolder moves (this is tuned during the run)", 1.0); 
 	final public Input<Double> coefficientInput = new Input<>("coefficient", "determines diagonal correlation for variance matrix", 1.0);
-	final public Input<Double> betaInput = new Input<>("beta", "fraction of proposal determined by non-covariance matrix");
+	final public Input<Double> betaInput = new Input<>("beta", "fraction of proposal determined by non-covariance matrix. "
+			+ "Must be 0 for incremental to take effect, since the non-covariance part makes each update of the proposal full-rank");
 	final public Input<Integer> initialInput = new Input<>("initial", "Number of proposals before covariance matrix is considered in proposal. "
 			+ "Must be larger than burnin, if specified. "
 			+ "If not specified (or < 0), the operator uses 200 * parameter dimension", -1); 
@@ -76,6 +77,12 @@ public class AdaptableVarianceMultivariateNormalOperator extends KernelOperator
     final public Input<Boolean> storeInput = new Input<>("store", "flag to indicate if covariance and mean should be stored to the state file (default true)", true);
 
     final public Input<Boolean> allowNonsenseInput = new Input<>("allowNonsense", "flag to indicate if transforms may accept nonsensical inputs eg. 0 parameters (default false)", false);
+    final public Input<Boolean> incrementalInput = new Input<>("incremental", "flag to indicate the Cholesky decomposition of the covariance matrix is updated in O(d^2) "
+    		+ "by a rank-one update when the covariance matrix is updated, instead of decomposed anew in O(d^3). "
+    		+ "This only applies when beta is 0, since otherwise the update is not rank-one, "
+    		+ "and the decomposition is done anew on every update (default false)", false);
+    final public Input<Integer> refreshEveryInput = new Input<>("refreshEvery", "if incremental, decompose the covariance matrix anew every this many updates "
+    		+ "to prevent rounding errors from accumulating (default 0, that is, never)", 0);
 
 
     public static final boolean DEBUG = false;
@@ -95,11 +102,24 @@ public class AdaptableVarianceMultivariateNormalOperator extends KernelOperator
 
     private double[][] matrix;
     private double[][] empirical;
-    private double[][] cholesky;
+    // transpose of the lower triangular Cholesky decomposition, stored by rows
+    private double[] cholesky;
+
+    private boolean incremental;
+    private int refreshEvery;
+    // whether cholesky is the decomposition of the current proposal covariance matrix
+    private boolean choleskyIsCurrent;
+    private int incrementalUpdates;
+    // the last update of the empirical covariance matrix was decay * empirical + weight * delta delta^T
+    private boolean empiricalUpdated;
+    private double decay, weight;
+    private double[] delta;
 
     // temporary storage, allocated once.
     private double[] epsilon;
-    private double[][] proposal;
+    private double[] proposal;
+    private double[] lower;
+    private double[] x, transformedX;
 
     
     
@@ -185,7 +205,17 @@ public class AdaptableVarianceMultivariateNormalOperator extends KernelOperator
         this.newMeans = new double[dim];
 
         this.epsilon = new double[dim];
-        this.proposal = new double[dim][dim];
+        this.proposal = new double[dim * dim];
+        this.lower = new double[dim * dim];
+        this.cholesky = new double[dim * dim];
+        this.delta = new double[dim];
+        this.x = new double[dim];
+        this.transformedX = new double[dim];
+        this.incremental = incrementalInput.get();
+        if (incremental && beta != 0) {
+        	Log.warning("Warning: incremental has no effect on " + getID() + " unless beta is 0 (beta = " + beta + ")");
+        }
+        this.refreshEvery = refreshEveryInput.get();
 
     	
     	
@@ -247,11 +277,11 @@ public class AdaptableVarianceMultivariateNormalOperator extends KernelOperator
         transformations = ts;
         
         
-        try {
-            cholesky = (new CholeskyDecomposition(matrix)).getL();
-        } catch (IllegalDimension illegalDimension) {
-            throw new RuntimeException("Unable to decompose matrix in AdaptableVarianceMultivariateNormalOperator");
-        }	
+        for (int i = 0; i < dim; i++) {
+        	System.arraycopy(matrix[i], 0, proposal, i * dim, dim);
+        }
+        decomposeProposal();
+        choleskyIsCurrent = false;
         
         super.initAndValidate();
 	}
@@ -326,13 +356,13 @@ public class AdaptableVarianceMultivariateNormalOperator extends KernelOperator
         }
 
         // double[] x = parameter.getDoubleValues();
-        double[] x = new double[dim];
+        final double[] x = this.x;
         for (int i = 0; i < dim; i++) {
         	x[i] = parameter.getValue(i);
         }
 
         //transform to the appropriate scale
-        double[] transformedX = new double[dim];
+        final double[] transformedX = this.transformedX;
         /*for (int i = 0; i < dim; i++) {
             transformedX[i] = transformations[i].transform(x[i]);
         }*/
@@ -371,6 +401,7 @@ public class AdaptableVarianceMultivariateNormalOperator extends KernelOperator
 
         //store MH-ratio in logq
         double logJacobian = 0.0;
+        empiricalUpdated = false;
 
         //change this: make a rule for when iterations == burnin
         if (iterations > 1 && iterations > burnin) {
@@ -395,6 +426,14 @@ public class AdaptableVarianceMultivariateNormalOperator extends KernelOperator
                     }
 
                     if (updates > 1) {
+                        // remember the update as a rank-one update, so the decomposition can follow it
+                        for (int i = 0; i < dim; i++) {
+                            delta[i] = transformedX[i] - oldMeans[i];
+                        }
+                        decay = (updates - 2.0) / (updates - 1.0);
+                        weight = 1.0 / updates;
+                        empiricalUpdated = true;
+
                         //here we can simply use the double[][] matrix
                         for (int i = 0; i < dim; i++) {
                             for (int j = i; j < dim; j++) {
@@ -447,6 +486,7 @@ public class AdaptableVarianceMultivariateNormalOperator extends KernelOperator
                         empirical[i][j] = 0.0;
                     }
                 }
+                choleskyIsCurrent = false;
 
             }
 
@@ -469,7 +509,7 @@ public class AdaptableVarianceMultivariateNormalOperator extends KernelOperator
             for (int i = 0; i < dim; i++) {
                 for (int j = 0; j < dim; j++) {
                     empirical[i][j] = 0.0;
-                    proposal[i][j] = matrix[i][j];
+                    proposal[i * dim + j] = matrix[i][j];
                 }
             }
 
@@ -487,24 +527,26 @@ public class AdaptableVarianceMultivariateNormalOperator extends KernelOperator
             }
 
             if (iterations % every == 0) {
-                // TODO: For speed, it may not be necessary to update decomposition each and every iteration
-
-                for (int i = 0; i < dim; i++) {
-                    for (int j = i; j < dim; j++) { // symmetric matrix
-                        proposal[j][i] = (1 - beta) * // constantFactor *  /* auto-tuning using scaleFactor */
-                                empirical[j][i] + beta * matrix[j][i];
-                        proposal[i][j] = proposal[j][i] ;
+                // with beta = 0 the proposal equals the empirical covariance matrix, so its
+                // decomposition can follow a rank-one update of the latter
+                if (!(incremental && beta == 0 && choleskyIsCurrent && (!empiricalUpdated || updateCholesky()))) {
+                    for (int i = 0; i < dim; i++) {
+                        for (int j = i; j < dim; j++) { // symmetric matrix
+                            proposal[j * dim + i] = (1 - beta) * // constantFactor *  /* auto-tuning using scaleFactor */
+                                    empirical[j][i] + beta * matrix[j][i];
+                            proposal[i * dim + j] = proposal[j * dim + i] ;
+                        }
                     }
-                }
 
-                // not necessary for first test phase, but will need to be performed when covariance matrix is being updated
-                try {
-                    cholesky = (new CholeskyDecomposition(proposal)).getL();
-                } catch (IllegalDimension illegalDimension) {
-                    throw new RuntimeException("Unable to decompose matrix in AdaptableVarianceMultivariateNormalOperator");
+                    // not necessary for first test phase, but will need to be performed when covariance matrix is being updated
+                    decomposeProposal();
                 }
+            } else if (empiricalUpdated) {
+                choleskyIsCurrent = false;
             }
 
+        } else if (empiricalUpdated) {
+            choleskyIsCurrent = false;
         }
 
         if (DEBUG) {
@@ -512,9 +554,10 @@ public class AdaptableVarianceMultivariateNormalOperator extends KernelOperator
         }
 
         for (int i = 0; i < dim; i++) {
+            final int row = i * dim;
             for (int j = i; j < dim; j++) {
-                transformedX[i] += cholesky[j][i] * epsilon[j];
-                // caution: decomposition returns lower triangular
+                transformedX[i] += cholesky[row + j] * epsilon[j];
+                // caution: decomposition returns lower triangular, stored here transposed
             }
         }
 
@@ -603,6 +646,40 @@ public class AdaptableVarianceMultivariateNormalOperator extends KernelOperator
 
     }
 
+    /** decompose the proposal covariance matrix anew, in the same way as CholeskyDecomposition **/
+    private void decomposeProposal() {
+        CholeskyDecomposition.decompose(proposal, lower, dim);
+        for (int i = 0; i < dim; i++) {
+            for (int j = i; j < dim; j++) {
+                cholesky[i * dim + j] = lower[j * dim + i];
+            }
+        }
+        choleskyIsCurrent = true;
+        incrementalUpdates = 0;
+    }
+
+    /**
+     * update the decomposition after the last update of the empirical covariance matrix
+     * @return false if the decomposition needs to be done anew
+     */
+    private boolean updateCholesky() {
+        if (refreshEvery > 0 && ++incrementalUpdates >= refreshEvery) {
+            return false;
+        }
+        final double scale = Math.sqrt(decay);
+        for (int i = 0; i < dim; i++) {
+            final int row = i * dim;
+            for (int j = i; j < dim; j++) {
+                cholesky[row + j] *= scale;
+            }
+        }
+        final double w = Math.sqrt(weight);
+        for (int i = 0; i < dim; i++) {
+            delta[i] *= w;
+        }
+        return CholeskyDecomposition.update(cholesky, delta, dim);
+    }
+
     public String toString() {
         return this.getClass().getSimpleName() + "(" + "parameter.getID()" + ")";
     }
@@ -630,6 +707,7 @@ public class AdaptableVarianceMultivariateNormalOperator extends KernelOperator
 //            this.iterations = lowestNumberOfSamples;
 //            this.updates = lowestNumberOfSamples;
             this.beta = 0.0;
+            choleskyIsCurrent = false;
             //set means based on provided samples, but take into account transformation(s)
             for (int i = 0; i < parameterSamples.size(); i++) {
                 for (int j = 0; j < lowestNumberOfSamples; j++) {
@@ -838,6 +916,7 @@ public class AdaptableVarianceMultivariateNormalOperator extends KernelOperator
     public final void setCovariance(double[][] covariance) {
     	for (int i = 0; i < covariance.length;i++)
     		System.arraycopy(covariance[i], 0, empirical[i], 0, covariance[i].length);
+    	choleskyIsCurrent = false;
     }
     
     @Override
@@ -970,6 +1049,7 @@ public class AdaptableVarianceMultivariateNormalOperator extends KernelOperator
                     }
                 }
     		}
+	        choleskyIsCurrent = false;
 	        super.restoreFromFile(o);  	
     	} catch (JSONException e) {
     		// failed to restore from state file
@@ -0,0 +1,321 @@
+package beast.base.evolution.tree;
+
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streaming reader for tree logs written by {@link BinaryTreeLogWriter}.
+ * Trees are decoded one at a time, so memory use does not grow with the number of trees.
+ * An incomplete last record, as left by a chain that is still running or was aborted,
+ * is ignored.
+ */
+public class BinaryTreeLogReader implements Closeable {
+
+    private final DataInputStream in;
+    private final CountingInputStream counter;
+    /** number of bytes up to the end of the last complete record read **/
+    private long validLength;
+    private final List<String> taxa;
+    private final String[] metaDataNames;
+    private final int[] dimensions;
+
+    private int nodeCount = -1;
+    private long sample;
+    private int[] parents;
+    private long[] heights;
+    private final long[][] metaData;
+
+    /** payload of the next record, valid if hasRecord is true **/
+    private byte[] record = new byte[1024];
+    private boolean hasRecord;
+    private int recordLength;
+    private int position;
+    private boolean atEnd;
+
+    public BinaryTreeLogReader(File file) throws IOException {
+        this(new FileInputStream(file));
+    }
+
+    public BinaryTreeLogReader(InputStream in) throws IOException {
+        counter = new CountingInputStream(new BufferedInputStream(in, 1 << 16));
+        this.in = new DataInputStream(counter);
+        if (this.in.readInt() != BinaryTreeLogWriter.MAGIC) {
+            this.in.close();
+            throw new IOException("Not a binary tree log");
+        }
+        final int version = this.in.readUnsignedByte();
+        if (version != BinaryTreeLogWriter.VERSION) {
+            this.in.close();
+            throw new IOException("Unsupported binary tree log version " + version);
+        }
+        final int taxonCount = readVarInt(this.in);
+        List<String> taxa = new ArrayList<>(taxonCount);
+        for (int i = 0; i < taxonCount; i++) {
+            taxa.add(this.in.readUTF());
+        }
+        this.taxa = Collections.unmodifiableList(taxa);
+        final int columnCount = readVarInt(this.in);
+        metaDataNames = new String[columnCount];
+        dimensions = new int[columnCount];
+        metaData = new long[columnCount][];
+        for (int i = 0; i < columnCount; i++) {
+            metaDataNames[i] = this.in.readUTF();
+            dimensions[i] = readVarInt(this.in);
+            metaData[i] = new long[dimensions[i]];
+        }
+        validLength = counter.count;
+    }
+
+    /** @return true if the file starts like a binary tree log **/
+    public static boolean isBinaryTreeLog(File file) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == BinaryTreeLogWriter.MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** @return number of complete trees in the file, without decoding them **/
+    public static int countTrees(File file) throws IOException {
+        try (BinaryTreeLogReader reader = new BinaryTreeLogReader(file)) {
+            int count = 0;
+            while (reader.skipRecord()) {
+                count++;
+            }
+            return count;
+        }
+    }
+
+    /** @return taxon names, in order of leaf node number **/
+    public List<String> getTaxa() {
+        return taxa;
+    }
+
+    public String[] getMetaDataNames() {
+        return metaDataNames.clone();
+    }
+
+    /** @return number of bytes of the header and complete records read so far **/
+    long getValidLength() {
+        return validLength;
+    }
+
+    int[] getDimensions() {
+        return dimensions.clone();
+    }
+
+    /** copy the decoding state after the last record read into the writer that continues the log **/
+    void copyState(BinaryTreeLogWriter writer) {
+        writer.setState(sample, nodeCount, parents, heights, metaData);
+    }
+
+    /** @return sample number of the last tree read or skipped **/
+    public long getSample() {
+        return sample;
+    }
+
+    public boolean hasNext() throws IOException {
+        return readRecord();
+    }
+
+    /**
+     * @return the next tree, with ID STATE_ followed by the sample number,
+     * leaf IDs set to the taxon names, and metadata values set on the nodes.
+     */
+    public Tree next() throws IOException {
+        decode();
+        final Node[] nodes = new Node[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            final Node node = new Node();
+            node.setNr(i);
+            node.setHeight(Double.longBitsToDouble(heights[i]));
+            if (i < taxa.size()) {
+                node.setID(taxa.get(i));
+            }
+            for (int k = 0; k < metaDataNames.length; k++) {
+                if (i < dimensions[k]) {
+                    node.setMetaData(metaDataNames[k], Double.longBitsToDouble(metaData[k][i]));
+                }
+            }
+            nodes[i] = node;
+        }
+        Node root = null;
+        for (int i = 0; i < nodeCount; i++) {
+            if (parents[i] < 0) {
+                root = nodes[i];
+            } else {
+                nodes[parents[i]].addChild(nodes[i]);
+            }
+        }
+        final Tree tree = new Tree(root);
+        tree.setID("STATE_" + sample);
+        return tree;
+    }
+
+    /**
+     * Set the metadata string of every node of a tree returned by next(), so that
+     * Newick output contains the metadata as for trees parsed from a NEXUS tree log.
+     */
+    public void setMetaDataStrings(Tree tree) {
+        final StringBuilder buf = new StringBuilder();
+        for (final Node node : tree.getNodesAsArray()) {
+            buf.setLength(0);
+            for (final String name : metaDataNames) {
+                final Object value = node.getMetaData(name);
+                if (value != null) {
+                    buf.append(buf.length() > 0 ? "," : "").append(name).append('=').append(value);
+                }
+            }
+            node.metaDataString = buf.length() > 0 ? buf.toString() : null;
+        }
+    }
+
+    /** move past the next tree without building it **/
+    public void skip() throws IOException {
+        decode();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void decode() throws IOException {
+        if (!readRecord()) {
+            throw new EOFException("No more trees");
+        }
+        position = 0;
+        sample += getVarLong();
+        final int n = (int) getVarLong();
+        if (nodeCount < 0) {
+            nodeCount = n;
+            parents = new int[n];
+            Arrays.fill(parents, -1);
+            heights = new long[n];
+        } else if (n != nodeCount) {
+            throw new IOException("Corrupt binary tree log: node count changed from " + nodeCount + " to " + n);
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            final int delta = (int) getVarLong();
+            parents[i] += (delta >>> 1) ^ -(delta & 1);
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            heights[i] ^= getVarLong();
+        }
+        for (int k = 0; k < dimensions.length; k++) {
+            for (int i = 0; i < dimensions[k]; i++) {
+                metaData[k][i] ^= getVarLong();
+            }
+        }
+        hasRecord = false;
+    }
+
+    /** read the payload of the next record, if not done yet **/
+    private boolean readRecord() throws IOException {
+        if (hasRecord) {
+            return true;
+        }
+        if (atEnd) {
+            return false;
+        }
+        try {
+            recordLength = readVarInt(in);
+            if (recordLength > record.length) {
+                record = new byte[Math.max(recordLength, 2 * record.length)];
+            }
+            in.readFully(record, 0, recordLength);
+            hasRecord = true;
+            validLength = counter.count;
+            return true;
+        } catch (EOFException e) {
+            atEnd = true;
+            return false;
+        }
+    }
+
+    /**
+     * skip the next record without decoding it, which invalidates the decoding state.
+     * The record is read rather than skipped, since a file stream can skip past its end.
+     */
+    private boolean skipRecord() throws IOException {
+        if (!readRecord()) {
+            return false;
+        }
+        hasRecord = false;
+        return true;
+    }
+
+    private long getVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position >= recordLength) {
+                throw new IOException("Corrupt binary tree log: record ends early");
+            }
+            final byte b = record[position++];
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt binary tree log: malformed number");
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt binary tree log: malformed length");
+    }
+
+    /** counts the bytes read, to find the end of the last complete record **/
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+}
@@ -0,0 +1,228 @@
+package beast.base.evolution.tree;
+
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes trees in the binary tree log format read by {@link BinaryTreeLogReader}.
+ * <p>
+ * The file starts with a header containing the magic number, format version,
+ * taxon names in order of leaf node number, and the name and dimension of every
+ * metadata column. Every sample after that is a record, prefixed by its length in
+ * bytes, with the sample number, the parent node number of every node (-1 for the root),
+ * the node heights, and the metadata values. All nodes keep their node number, so a
+ * record is encoded against the previous one: parent numbers as differences and doubles
+ * as the XOR of their bits, both as variable length integers. Unchanged parents and heights
+ * take one byte each, and no text needs to be parsed when reading the trees back.
+ */
+public class BinaryTreeLogWriter implements Closeable {
+
+    /** "BTLG" **/
+    public static final int MAGIC = 0x42544C47;
+    public static final int VERSION = 1;
+
+    private final DataOutputStream out;
+    private final int leafNodeCount;
+    private final int[] dimensions;
+
+    private int nodeCount = -1;
+    private long previousSample;
+    private int[] parents;
+    private long[] heights;
+    private long[][] metaData;
+
+    /** payload of the record being written **/
+    private byte[] buffer = new byte[1024];
+    private int length;
+
+    /**
+     * @param out stream to write to, which is buffered by the writer
+     * @param taxa taxon names, in order of leaf node number
+     * @param metaDataNames names of the metadata columns, can be empty
+     * @param dimensions number of values in every metadata column: the value
+     * for node number i is logged if i is less than the dimension
+     */
+    public BinaryTreeLogWriter(OutputStream out, List<String> taxa, List<String> metaDataNames, int[] dimensions) throws IOException {
+        if (metaDataNames.size() != dimensions.length) {
+            throw new IllegalArgumentException("Expected a dimension for every metadata column");
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        this.leafNodeCount = taxa.size();
+        this.dimensions = dimensions.clone();
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+        writeVarInt(this.out, taxa.size());
+        for (String taxon : taxa) {
+            this.out.writeUTF(taxon);
+        }
+        writeVarInt(this.out, metaDataNames.size());
+        for (int i = 0; i < dimensions.length; i++) {
+            this.out.writeUTF(metaDataNames.get(i));
+            writeVarInt(this.out, dimensions[i]);
+        }
+        metaData = new long[dimensions.length][];
+        for (int i = 0; i < dimensions.length; i++) {
+            metaData[i] = new long[dimensions[i]];
+        }
+    }
+
+    /** writer that appends records to a log of which the header is already written **/
+    private BinaryTreeLogWriter(OutputStream out, int leafNodeCount, int[] dimensions) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        this.leafNodeCount = leafNodeCount;
+        this.dimensions = dimensions;
+    }
+
+    /**
+     * Continue a log after its last complete record. An incomplete last record,
+     * as left when a run is aborted while writing, is removed from the file.
+     */
+    public static BinaryTreeLogWriter resume(File file) throws IOException {
+        final BinaryTreeLogReader reader = new BinaryTreeLogReader(file);
+        try {
+            while (reader.hasNext()) {
+                reader.skip();
+            }
+        } finally {
+            reader.close();
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(reader.getValidLength());
+        }
+        final BinaryTreeLogWriter writer = new BinaryTreeLogWriter(new FileOutputStream(file, true), reader.getTaxa().size(), reader.getDimensions());
+        reader.copyState(writer);
+        return writer;
+    }
+
+    /** remove the records after the one for the given sample, if there is one, from a log **/
+    public static void truncate(File file, long sample) throws IOException {
+        long length = -1;
+        try (BinaryTreeLogReader reader = new BinaryTreeLogReader(file)) {
+            while (reader.hasNext()) {
+                reader.skip();
+                if (reader.getSample() == sample) {
+                    length = reader.getValidLength();
+                    break;
+                }
+            }
+        }
+        if (length >= 0) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(length);
+            }
+        }
+    }
+
+    /** continue encoding after a record with the given state **/
+    void setState(long sample, int nodeCount, int[] parents, long[] heights, long[][] metaData) {
+        previousSample = sample;
+        this.nodeCount = nodeCount;
+        this.parents = parents == null ? null : parents.clone();
+        this.heights = heights == null ? null : heights.clone();
+        this.metaData = new long[metaData.length][];
+        for (int i = 0; i < metaData.length; i++) {
+            this.metaData[i] = metaData[i].clone();
+        }
+    }
+
+    /** @return number of the last sample written, or in the log that is resumed **/
+    public long getLastSample() {
+        return previousSample;
+    }
+
+    /**
+     * Write a sample.
+     *
+     * @param sample sample number, at least the number of the previous sample
+     * @param tree tree with the same leaf node count for every sample
+     * @param metaData values of every metadata column, of the dimension given to the constructor
+     */
+    public void write(long sample, TreeInterface tree, double[][] metaData) throws IOException {
+        final Node[] nodes = tree.getNodesAsArray();
+        if (tree.getLeafNodeCount() != leafNodeCount) {
+            throw new IllegalArgumentException("Expected tree with " + leafNodeCount + " leaves, not " + tree.getLeafNodeCount());
+        }
+        if (nodeCount < 0) {
+            nodeCount = nodes.length;
+            parents = new int[nodeCount];
+            Arrays.fill(parents, -1);
+            heights = new long[nodeCount];
+        } else if (nodes.length != nodeCount) {
+            throw new IllegalArgumentException("Expected tree with " + nodeCount + " nodes, not " + nodes.length);
+        }
+
+        length = 0;
+        putVarLong(sample - previousSample);
+        previousSample = sample;
+        putVarInt(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            final Node node = nodes[i];
+            final int parent = node.isRoot() ? -1 : node.getParent().getNr();
+            putVarInt(zigZag(parent - parents[i]));
+            parents[i] = parent;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            final long bits = Double.doubleToRawLongBits(nodes[i].getHeight());
+            putVarLong(bits ^ heights[i]);
+            heights[i] = bits;
+        }
+        for (int k = 0; k < dimensions.length; k++) {
+            final long[] previous = this.metaData[k];
+            for (int i = 0; i < dimensions[k]; i++) {
+                final long bits = Double.doubleToRawLongBits(metaData[k][i]);
+                putVarLong(bits ^ previous[i]);
+                previous[i] = bits;
+            }
+        }
+
+        writeVarInt(out, length);
+        out.write(buffer, 0, length);
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private static int zigZag(int i) {
+        return (i << 1) ^ (i >> 31);
+    }
+
+    private void putVarInt(int i) {
+        putVarLong(i & 0xffffffffL);
+    }
+
+    private void putVarLong(long l) {
+        if (length + 10 > buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        while ((l & ~0x7fL) != 0) {
+            buffer[length++] = (byte) ((l & 0x7f) | 0x80);
+            l >>>= 7;
+        }
+        buffer[length++] = (byte) l;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int i) throws IOException {
+        while ((i & ~0x7f) != 0) {
+            out.writeByte((i & 0x7f) | 0x80);
+            i >>>= 7;
+        }
+        out.writeByte(i);
+    }
+
+}
@@ -0,0 +1,186 @@
+package beast.base.evolution.tree;
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import beast.base.core.BEASTObject;
+import beast.base.core.Description;
+import beast.base.core.Function;
+import beast.base.core.Log;
+import beast.base.inference.Logger;
+import beast.base.inference.StateNode;
+import beast.base.spec.type.Vector;
+
+@Description("Logs trees to a compact binary file instead of NEXUS, which is faster to write and read for large trees. "
+		+ "TreeAnnotator, LogCombiner and TreeTraceAnalysis read these files like NEXUS tree logs. "
+		+ "The first item logged must be a tree, and further items are logged as metadata of the nodes, "
+		+ "where the value with index i belongs to node number i.")
+public class BinaryTreeLogger extends Logger {
+
+	private Tree tree;
+	/** Function or Vector for every metadata column **/
+	private List<Object> metaData;
+	private double[][] values;
+	private String binaryFileName;
+	private BinaryTreeLogWriter writer;
+
+	@Override
+	public void initAndValidate() {
+		super.initAndValidate();
+		if (isLoggingToStdout()) {
+			throw new IllegalArgumentException("BinaryTreeLogger requires a file name");
+		}
+		final List<BEASTObject> items = loggersInput.get();
+		if (!(items.get(0) instanceof Tree)) {
+			throw new IllegalArgumentException("The first item logged by BinaryTreeLogger should be a tree, not " + items.get(0).getClass().getName());
+		}
+		tree = (Tree) items.get(0);
+		metaData = new ArrayList<>();
+		for (int i = 1; i < items.size(); i++) {
+			final BEASTObject item = items.get(i);
+			if (!(item instanceof Function) && !(item instanceof Vector<?, ?>)) {
+				throw new IllegalArgumentException("Metadata logged by BinaryTreeLogger should be a parameter or other function, not " + item.getClass().getName());
+			}
+			metaData.add(item);
+		}
+		values = new double[metaData.size()][];
+
+		binaryFileName = fileNameInput.get();
+		if (binaryFileName.contains("$(tree)")) {
+			String treeName = "tree";
+			final String id = tree.getID();
+			if (id != null && id.indexOf(".t:") > 0) {
+				treeName = id.substring(id.indexOf(".t:") + 3);
+			}
+			binaryFileName = binaryFileName.replace("$(tree)", treeName);
+		}
+		if (System.getProperty("file.name.prefix") != null) {
+			binaryFileName = System.getProperty("file.name.prefix") + binaryFileName;
+		}
+	}
+
+	@Override
+	public void init() throws IOException {
+		final File file = new File(binaryFileName);
+		if (FILE_MODE == LogFileMode.resume && file.exists()) {
+			writer = BinaryTreeLogWriter.resume(file);
+			final long offset = writer.getLastSample();
+			if (sampleOffset > 0 && offset != sampleOffset) {
+				throw new RuntimeException("Error 401: Cannot resume: log files do not end in same sample number");
+			}
+			sampleOffset = offset;
+			Log.info.println("Appending file " + binaryFileName);
+			return;
+		}
+		if (file.exists() && (FILE_MODE == LogFileMode.only_new || FILE_MODE == LogFileMode.only_new_or_exit)) {
+			Log.err.println("Trying to write file " + binaryFileName + " but the file already exists.");
+			throw new RuntimeException("Use overwrite or resume option, or remove the file");
+		}
+
+		final List<String> taxa = new ArrayList<>();
+		for (int i = 0; i < tree.getLeafNodeCount(); i++) {
+			taxa.add(tree.getNode(i).getID());
+		}
+		final List<String> names = new ArrayList<>();
+		final int[] dimensions = new int[metaData.size()];
+		for (int i = 0; i < metaData.size(); i++) {
+			names.add(((BEASTObject) metaData.get(i)).getID());
+			dimensions[i] = getValues(i).length;
+		}
+		writer = new BinaryTreeLogWriter(new FileOutputStream(file), taxa, names, dimensions);
+		Log.info.println("Writing file " + binaryFileName);
+	}
+
+	@Override
+	public void log(long sampleNr) {
+		if ((sampleNr < 0) || (sampleNr % every > 0)) {
+			return;
+		}
+		if (sampleOffset >= 0) {
+			if (sampleNr == 0) {
+				// don't need to duplicate the last sample in the log
+				return;
+			}
+			sampleNr += sampleOffset;
+		}
+		for (int i = 0; i < metaData.size(); i++) {
+			values[i] = getValues(i);
+		}
+		try {
+			writer.write(sampleNr, (Tree) tree.getCurrent(), values);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not write to " + binaryFileName + ": " + e.getMessage(), e);
+		}
+	}
+
+	private double[] getValues(int i) {
+		Object o = metaData.get(i);
+		if (o instanceof StateNode) {
+			o = ((StateNode) o).getCurrent();
+		}
+		if (o instanceof Function) {
+			return ((Function) o).getDoubleValues();
+		}
+		final Vector<?, ?> vector = (Vector<?, ?>) o;
+		final double[] values = new double[vector.size()];
+		for (int j = 0; j < values.length; j++) {
+			values[j] = ((Number) vector.get(j)).doubleValue();
+		}
+		return values;
+	}
+
+	@Override
+	public void flush() {
+		if (writer == null) {
+			return;
+		}
+		try {
+			writer.flush();
+		} catch (IOException e) {
+			Log.err.println("Could not flush " + binaryFileName + ": " + e.getMessage());
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			writer.close();
+		} catch (IOException e) {
+			Log.err.println("Could not close " + binaryFileName + ": " + e.getMessage());
+		}
+	}
+
+	@Override
+	public long getLogOffset() throws IOException {
+		final File file = new File(binaryFileName);
+		if (!file.exists()) {
+			return 0;
+		}
+		long offset = 0;
+		try (BinaryTreeLogReader reader = new BinaryTreeLogReader(file)) {
+			while (reader.hasNext()) {
+				reader.skip();
+				offset = reader.getSample();
+			}
+		}
+		return offset;
+	}
+
+	@Override
+	public void setLogOffset(long offset) throws IOException {
+		final File file = new File(binaryFileName);
+		if (file.exists()) {
+			BinaryTreeLogWriter.truncate(file, offset);
+		}
+	}
+
+	@Override
+	public String getFileName() {
+		return binaryFileName;
+	}
+
+}
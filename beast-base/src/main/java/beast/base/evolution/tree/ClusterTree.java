@@ -374,6 +374,8 @@ public class ClusterTree extends Tree implements StateNodeInitialiser {
         final NodeX[] clusterNodes = new NodeX[taxonCount];
         if (linkType == Type.neighborjoining || linkType == Type.neighborjoining2) {
             neighborJoining(clusters, clusterID, clusterNodes);
+        } else if (linkType == Type.average) {
+            averageLinkClustering(clusters, clusterID, clusterNodes);
         } else {
             doLinkClustering(clusters, clusterID, clusterNodes);
         }
@@ -389,128 +391,37 @@ public class ClusterTree extends Tree implements StateNodeInitialiser {
     } // buildClusterer
 
     /**
-     * use neighbor joining algorithm for clustering
-     * This is roughly based on the RapidNJ simple implementation and runs at O(n^3)
-     * More efficient implementations exist, see RapidNJ (or my GPU implementation :-))
+     * use neighbor joining algorithm for clustering, with the RapidNJ search for the pair
+     * of clusters to join on a packed float distance matrix, see {@link DistanceClustering}
      *
      * @param clusters
      * @param clusterID
      * @param clusterNodes
      */
     void neighborJoining(int clusters, final List<Integer>[] clusterID, final NodeX[] clusterNodes) {
-        final int n = taxaNames.size();
-
-        final double[][] dist = new double[clusters][clusters];
-        for (int i = 0; i < clusters; i++) {
-            dist[i][i] = 0;
-            for (int j = i + 1; j < clusters; j++) {
-                dist[i][j] = getDistance0(clusterID[i], clusterID[j]);
-                dist[j][i] = dist[i][j];
-            }
-        }
-
-        final double[] separationSums = new double[n];
-        final double[] separations = new double[n];
-        final int[] nextActive = new int[n];
-
-        //calculate initial separation rows
-        for (int i = 0; i < n; i++) {
-            double sum = 0;
-            for (int j = 0; j < n; j++) {
-                sum += dist[i][j];
-            }
-            separationSums[i] = sum;
-            separations[i] = sum / (clusters - 2);
-            nextActive[i] = i + 1;
-        }
+        DistanceClustering.neighborJoining(distanceMatrix(clusters), clusters,
+                (min1, min2, dist1, dist2) -> merge(min1, min2, dist1, dist2, clusterID, clusterNodes));
+    } // neighborJoining
 
-        while (clusters > 2) {
-            // find minimum
-            int min1 = -1;
-            int min2 = -1;
-            double min = Double.MAX_VALUE;
-            {
-                int i = 0;
-                while (i < n) {
-                    final double sep1 = separations[i];
-                    final double[] row = dist[i];
-                    int j = nextActive[i];
-                    while (j < n) {
-                        final double sep2 = separations[j];
-                        final double val = row[j] - sep1 - sep2;
-                        if (val < min) {
-                            // new minimum
-                            min1 = i;
-                            min2 = j;
-                            min = val;
-                        }
-                        j = nextActive[j];
-                    }
-                    i = nextActive[i];
-                }
-            }
-            // record distance
-            final double minDistance = dist[min1][min2];
-            clusters--;
-            final double sep1 = separations[min1];
-            final double sep2 = separations[min2];
-            final double dist1 = (0.5 * minDistance) + (0.5 * (sep1 - sep2));
-            final double dist2 = (0.5 * minDistance) + (0.5 * (sep2 - sep1));
-            if (clusters > 2) {
-                // update separations  & distance
-                double newSeparationSum = 0;
-                final double mutualDistance = dist[min1][min2];
-                final double[] row1 = dist[min1];
-                final double[] row2 = dist[min2];
-                for (int i = 0; i < n; i++) {
-                    if (i == min1 || i == min2 || clusterID[i].size() == 0) {
-                        row1[i] = 0;
-                    } else {
-                        final double val1 = row1[i];
-                        final double val2 = row2[i];
-                        final double distance = (val1 + val2 - mutualDistance) / 2.0;
-                        newSeparationSum += distance;
-                        // update the separationsum of cluster i.
-                        separationSums[i] += (distance - val1 - val2);
-                        separations[i] = separationSums[i] / (clusters - 2);
-                        row1[i] = distance;
-                        dist[i][min1] = distance;
-                    }
-                }
-                separationSums[min1] = newSeparationSum;
-                separations[min1] = newSeparationSum / (clusters - 2);
-                separationSums[min2] = 0;
-                merge(min1, min2, dist1, dist2, clusterID, clusterNodes);
-                int prev = min2;
-                // since min1 < min2 we havenActiveRows[0] >= 0, so the next loop should be save
-                while (clusterID[prev].size() == 0) {
-                    prev--;
-                }
-                nextActive[prev] = nextActive[min2];
-            } else {
-                merge(min1, min2, dist1, dist2, clusterID, clusterNodes);
-                break;
-            }
-        }
+    /**
+     * Perform UPGMA (average link) clustering with a heap of nearest neighbours
+     * on a packed float distance matrix, see {@link DistanceClustering}
+     *
+     * @param clusters    number of clusters
+     * @param clusterID
+     * @param clusterNodes
+     */
+    void averageLinkClustering(int clusters, final List<Integer>[] clusterID, final NodeX[] clusterNodes) {
+        DistanceClustering.averageLinkage(distanceMatrix(clusters), clusters,
+                (min1, min2, height1, height2) -> merge(min1, min2, height1, height2, clusterID, clusterNodes));
+    } // averageLinkClustering
 
-        for (int i = 0; i < n; i++) {
-            if (clusterID[i].size() > 0) {
-                for (int j = i + 1; j < n; j++) {
-                    if (clusterID[j].size() > 0) {
-                        final double dist1 = dist[i][j];
-                        if (clusterID[i].size() == 1) {
-                            merge(i, j, dist1, 0, clusterID, clusterNodes);
-                        } else if (clusterID[j].size() == 1) {
-                            merge(i, j, 0, dist1, clusterID, clusterNodes);
-                        } else {
-                            merge(i, j, dist1 / 2.0, dist1 / 2.0, clusterID, clusterNodes);
-                        }
-                        break;
-                    }
-                }
-            }
-        }
-    } // neighborJoining
+    /**
+     * @return condensed matrix of distances between taxa, see {@link Distance#pairwiseDistances(int)}
+     */
+    float[] distanceMatrix(final int taxonCount) {
+        return distance.pairwiseDistances(taxonCount);
+    }
 
     /**
      * Perform clustering using a link method
@@ -570,8 +481,7 @@ public class ClusterTree extends Tree implements StateNodeInitialiser {
             dist2 = f;
         }
         clusterID[min1].addAll(clusterID[min2]);
-        //clusterID[min2].removeAllElements();
-        clusterID[min2].removeAll(clusterID[min2]);
+        clusterID[min2].clear();
 
         // track hierarchy
         final NodeX node = new NodeX();
@@ -0,0 +1,391 @@
+package beast.base.evolution.tree;
+
+
+import static beast.base.evolution.distance.Distance.index;
+
+import java.util.Arrays;
+
+/**
+ * Clustering of taxa on a distance matrix, for building starting trees of large data sets.
+ * <p>
+ * Distances are kept in a condensed matrix of floats, see {@link beast.base.evolution.distance.Distance#pairwiseDistances(int)},
+ * which takes a quarter of the memory of a full matrix of doubles. The matrix is overwritten during clustering.
+ * Clusters are numbered by the slot they take in the matrix, starting with one slot per taxon, and a joined cluster
+ * takes the slot with the lower number of the two clusters it joins, as in ClusterTree.merge().
+ */
+public class DistanceClustering {
+
+    /** listener to the joins made by a clustering algorithm **/
+    public interface Merger {
+        /**
+         * Called when two clusters are joined. The joined cluster takes the slot of the cluster with the lower number.
+         *
+         * @param cluster1 slot of the first cluster
+         * @param cluster2 slot of the second cluster
+         * @param value1 height of the joined cluster (average linkage) or length of the branch to the first cluster (neighbor joining)
+         * @param value2 same for the second cluster
+         */
+        void merge(int cluster1, int cluster2, double value1, double value2);
+    }
+
+    private DistanceClustering() {
+    }
+
+    /**
+     * Average link (UPGMA) clustering, using the generic algorithm of Müllner (2011):
+     * every cluster keeps its nearest neighbour among the clusters with a higher number in a heap,
+     * and a nearest neighbour is only looked for again when it may have changed and reaches the top of the heap.
+     * This takes O(n^2) time in practice.
+     * <p>
+     * Merger gets half the distance between the joined clusters as height for both clusters.
+     */
+    public static void averageLinkage(final float[] matrix, final int taxonCount, final Merger merger) {
+        final ActiveClusters active = new ActiveClusters(taxonCount);
+        final int[] size = new int[taxonCount];
+        Arrays.fill(size, 1);
+        // nearest neighbour with a higher number of every cluster, and a lower bound on the distance to it
+        final int[] neighbour = new int[taxonCount];
+        final float[] neighbourDistance = new float[taxonCount];
+        final Heap heap = new Heap(taxonCount, neighbourDistance);
+        for (int i = 0; i < taxonCount - 1; i++) {
+            findNeighbour(matrix, active, i, neighbour, neighbourDistance);
+            heap.add(i);
+        }
+
+        for (int step = 0; step < taxonCount - 1; step++) {
+            int i = heap.top();
+            while (!active.contains(neighbour[i]) || matrix[index(i, neighbour[i])] != neighbourDistance[i]) {
+                findNeighbour(matrix, active, i, neighbour, neighbourDistance);
+                if (neighbour[i] < 0) {
+                    heap.remove(i);
+                } else {
+                    heap.update(i);
+                }
+                i = heap.top();
+            }
+            final int j = neighbour[i];
+            final float dist = neighbourDistance[i];
+            merger.merge(i, j, dist / 2.0, dist / 2.0);
+
+            // cluster i becomes the joined cluster
+            active.remove(j);
+            heap.remove(j);
+            for (int k = active.first(); k >= 0; k = active.next(k)) {
+                if (k != i) {
+                    final int ik = index(i, k);
+                    matrix[ik] = (float) ((size[i] * (double) matrix[ik] + size[j] * (double) matrix[index(j, k)]) / (size[i] + size[j]));
+                    if (k < i && matrix[ik] < neighbourDistance[k]) {
+                        neighbour[k] = i;
+                        neighbourDistance[k] = matrix[ik];
+                        heap.update(k);
+                    }
+                }
+            }
+            size[i] += size[j];
+            if (active.next(i) >= 0) {
+                findNeighbour(matrix, active, i, neighbour, neighbourDistance);
+                heap.update(i);
+            } else {
+                heap.remove(i);
+            }
+        }
+    }
+
+    private static void findNeighbour(final float[] matrix, final ActiveClusters active, final int i,
+                                      final int[] neighbour, final float[] neighbourDistance) {
+        neighbour[i] = -1;
+        neighbourDistance[i] = Float.POSITIVE_INFINITY;
+        for (int k = active.next(i); k >= 0; k = active.next(k)) {
+            final float dist = matrix[index(i, k)];
+            if (dist < neighbourDistance[i]) {
+                neighbour[i] = k;
+                neighbourDistance[i] = dist;
+            }
+        }
+    }
+
+    /**
+     * Neighbor joining, with the search for the pair to join bounded as in RapidNJ (Simonsen et al. 2008):
+     * every cluster keeps the distances to the clusters that existed when it was created sorted, and the search
+     * through such a row stops as soon as the row cannot contain a better pair. Only a small part of the matrix
+     * is searched for most joins.
+     * <p>
+     * Merger gets the lengths of the branches to the joined clusters. The last two clusters are joined by a single
+     * branch, which is given to the taxon if one of them is a taxon and split evenly otherwise.
+     */
+    public static void neighborJoining(final float[] matrix, final int taxonCount, final Merger merger) {
+        final ActiveClusters active = new ActiveClusters(taxonCount);
+        final int[] size = new int[taxonCount];
+        Arrays.fill(size, 1);
+
+        // clusters get a new id when joined, so rows can tell distances to clusters that are gone
+        final int[] clusterId = new int[taxonCount];
+        final int[] slotOfCluster = new int[2 * taxonCount];
+        int nextId = taxonCount;
+        for (int i = 0; i < taxonCount; i++) {
+            clusterId[i] = i;
+            slotOfCluster[i] = i;
+        }
+
+        // sum of distances to all other clusters, and separation = sum / (clusters - 2)
+        final double[] distanceSum = new double[taxonCount];
+        for (int i = 1; i < taxonCount; i++) {
+            for (int j = 0; j < i; j++) {
+                final float dist = matrix[index(i, j)];
+                distanceSum[i] += dist;
+                distanceSum[j] += dist;
+            }
+        }
+        final double[] separation = new double[taxonCount];
+
+        // sorted rows: a taxon has the taxa with a higher number, a joined cluster all clusters present when created,
+        // so every pair of clusters is in exactly one row
+        final float[][] rowDistance = new float[taxonCount][];
+        final int[][] rowCluster = new int[taxonCount][];
+        final int[] rowStart = new int[taxonCount];
+        final int[] others = new int[taxonCount];
+        for (int i = 0; i < taxonCount; i++) {
+            for (int j = i + 1; j < taxonCount; j++) {
+                others[j - i - 1] = j;
+            }
+            sortRow(matrix, i, others, taxonCount - i - 1, clusterId, rowDistance, rowCluster);
+        }
+
+        int clusters = taxonCount;
+        while (clusters > 2) {
+            double maxSeparation = Double.NEGATIVE_INFINITY;
+            for (int k = active.first(); k >= 0; k = active.next(k)) {
+                separation[k] = distanceSum[k] / (clusters - 2);
+                maxSeparation = Math.max(maxSeparation, separation[k]);
+            }
+
+            // find the pair with minimal distance - separation1 - separation2
+            int min1 = -1;
+            int min2 = -1;
+            double min = Double.POSITIVE_INFINITY;
+            for (int i = active.first(); i >= 0; i = active.next(i)) {
+                final float[] dists = rowDistance[i];
+                final int[] ids = rowCluster[i];
+                final double sep1 = separation[i];
+                for (int e = rowStart[i]; e < dists.length; e++) {
+                    if (dists[e] - sep1 - maxSeparation >= min) {
+                        break;
+                    }
+                    final int j = slotOfCluster[ids[e]];
+                    if (j < 0) {
+                        if (e == rowStart[i]) {
+                            rowStart[i]++;
+                        }
+                        continue;
+                    }
+                    final double val = dists[e] - sep1 - separation[j];
+                    if (val < min) {
+                        min1 = i;
+                        min2 = j;
+                        min = val;
+                    }
+                }
+            }
+            if (min1 > min2) {
+                final int h = min1;
+                min1 = min2;
+                min2 = h;
+            }
+
+            final float minDistance = matrix[index(min1, min2)];
+            final double sep1 = separation[min1];
+            final double sep2 = separation[min2];
+            merger.merge(min1, min2, 0.5 * minDistance + 0.5 * (sep1 - sep2), 0.5 * minDistance + 0.5 * (sep2 - sep1));
+            clusters--;
+
+            // min1 becomes the joined cluster
+            active.remove(min2);
+            slotOfCluster[clusterId[min1]] = -1;
+            slotOfCluster[clusterId[min2]] = -1;
+            rowDistance[min2] = null;
+            rowCluster[min2] = null;
+            clusterId[min1] = nextId;
+            slotOfCluster[nextId] = min1;
+            nextId++;
+            double newDistanceSum = 0;
+            int otherCount = 0;
+            for (int k = active.first(); k >= 0; k = active.next(k)) {
+                if (k != min1) {
+                    final int index1 = index(min1, k);
+                    final float dist1 = matrix[index1];
+                    final float dist2 = matrix[index(min2, k)];
+                    final float dist = (float) ((dist1 + (double) dist2 - minDistance) / 2.0);
+                    distanceSum[k] += (double) dist - dist1 - dist2;
+                    newDistanceSum += dist;
+                    matrix[index1] = dist;
+                    others[otherCount++] = k;
+                }
+            }
+            distanceSum[min1] = newDistanceSum;
+            size[min1] += size[min2];
+            if (clusters > 2) {
+                sortRow(matrix, min1, others, otherCount, clusterId, rowDistance, rowCluster);
+                rowStart[min1] = 0;
+            }
+        }
+
+        final int i = active.first();
+        final int j = active.next(i);
+        final float dist = matrix[index(i, j)];
+        if (size[i] == 1) {
+            merger.merge(i, j, dist, 0);
+        } else if (size[j] == 1) {
+            merger.merge(i, j, 0, dist);
+        } else {
+            merger.merge(i, j, dist / 2.0, dist / 2.0);
+        }
+    }
+
+    /** set up the row of cluster i with the distances to clusters others[0..count) in increasing order **/
+    private static void sortRow(final float[] matrix, final int i, final int[] others, final int count, final int[] clusterId,
+                                final float[][] rowDistance, final int[][] rowCluster) {
+        // sort distance and cluster id together, as longs with the distance in the high bits
+        final long[] keys = new long[count];
+        for (int k = 0; k < count; k++) {
+            final int bits = Float.floatToIntBits(matrix[index(i, others[k])]);
+            // flip the bits of negative numbers so that the order of the ints is the order of the floats
+            keys[k] = ((long) (bits ^ ((bits >> 31) & 0x7fffffff)) << 32) | clusterId[others[k]];
+        }
+        Arrays.sort(keys);
+        final float[] dists = new float[count];
+        final int[] ids = new int[count];
+        for (int k = 0; k < count; k++) {
+            final int bits = (int) (keys[k] >> 32);
+            dists[k] = Float.intBitsToFloat(bits ^ ((bits >> 31) & 0x7fffffff));
+            ids[k] = (int) keys[k];
+        }
+        rowDistance[i] = dists;
+        rowCluster[i] = ids;
+    }
+
+    /** clusters that have not been joined yet, as a linked list in order of slot number **/
+    private static class ActiveClusters {
+        final int[] next;
+        final int[] prev;
+        int first;
+
+        ActiveClusters(final int count) {
+            next = new int[count];
+            prev = new int[count];
+            for (int i = 0; i < count; i++) {
+                next[i] = i + 1 < count ? i + 1 : -1;
+                prev[i] = i - 1;
+            }
+            first = count > 0 ? 0 : -1;
+        }
+
+        int first() {
+            return first;
+        }
+
+        int next(final int i) {
+            return next[i];
+        }
+
+        boolean contains(final int i) {
+            return i >= 0 && (prev[i] >= 0 || first == i);
+        }
+
+        void remove(final int i) {
+            if (prev[i] >= 0) {
+                next[prev[i]] = next[i];
+            } else {
+                first = next[i];
+            }
+            if (next[i] >= 0) {
+                prev[next[i]] = prev[i];
+            }
+            // mark as removed
+            prev[i] = -1;
+            next[i] = -1;
+        }
+    }
+
+    /** binary min heap of clusters, ordered by keys that can change while the cluster is in the heap **/
+    private static class Heap {
+        final int[] heap;
+        final int[] position;
+        final float[] key;
+        int size = 0;
+
+        Heap(final int capacity, final float[] key) {
+            heap = new int[capacity];
+            position = new int[capacity];
+            Arrays.fill(position, -1);
+            this.key = key;
+        }
+
+        int top() {
+            return heap[0];
+        }
+
+        void add(final int i) {
+            heap[size] = i;
+            position[i] = size;
+            size++;
+            siftUp(position[i]);
+        }
+
+        void update(final int i) {
+            if (position[i] < 0) {
+                add(i);
+            } else {
+                siftDown(siftUp(position[i]));
+            }
+        }
+
+        void remove(final int i) {
+            final int pos = position[i];
+            if (pos < 0) {
+                return;
+            }
+            size--;
+            position[i] = -1;
+            if (pos < size) {
+                heap[pos] = heap[size];
+                position[heap[pos]] = pos;
+                siftDown(siftUp(pos));
+            }
+        }
+
+        private int siftUp(int pos) {
+            final int i = heap[pos];
+            while (pos > 0) {
+                final int parent = (pos - 1) / 2;
+                if (key[heap[parent]] <= key[i]) {
+                    break;
+                }
+                heap[pos] = heap[parent];
+                position[heap[pos]] = pos;
+                pos = parent;
+            }
+            heap[pos] = i;
+            position[i] = pos;
+            return pos;
+        }
+
+        private void siftDown(int pos) {
+            final int i = heap[pos];
+            while (2 * pos + 1 < size) {
+                int child = 2 * pos + 1;
+                if (child + 1 < size && key[heap[child + 1]] < key[heap[child]]) {
+                    child++;
+                }
+                if (key[i] <= key[heap[child]]) {
+                    break;
+                }
+                heap[pos] = heap[child];
+                position[heap[pos]] = pos;
+                pos = child;
+            }
+            heap[pos] = i;
+            position[i] = pos;
+        }
+    }
+
+}
@@ -0,0 +1,324 @@
+package beast.base.evolution.tree;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Most recent common ancestors (MRCAs) of sets of taxa in a tree, shared by all priors
+ * on clades of the tree, see {@link Tree#getMRCAIndex()}.
+ * <p>
+ * For every clade, the MRCA is kept together with the nodes on the paths from the taxa
+ * of the clade to the MRCA. These paths, and therefore the MRCA, can only change when the
+ * parent of one of the nodes on them changes, which marks that node as filthy. So after a
+ * proposal that changes a small part of the tree, only the clades that have a filthy node on
+ * their paths are looked up again, instead of walking up the tree from every taxon of every clade.
+ * <p>
+ * Results are stored and restored together with the tree. For a tree that is not part of a
+ * state, changes are not signalled, and clades are looked up every time they are requested.
+ */
+public class MRCAIndex {
+
+    private final Tree tree;
+
+    /** clade number of the sorted taxa of a clade, so clades shared by several priors are looked up once **/
+    private final Map<List<Integer>, Integer> cladeNrs = new HashMap<>();
+    /** sorted taxa of every clade, null for clade numbers that are free for reuse **/
+    private final List<int[]> clades = new ArrayList<>();
+    /** number of registrations of every clade, see addClade() and removeClade() **/
+    private int[] registrationCount = new int[0];
+    private final BitSet freeCladeNrs = new BitSet();
+
+    /** node number of the MRCA of every clade **/
+    private int[] mrca = new int[0];
+    /** node numbers of the nodes on the paths from the taxa to the MRCA of every clade, MRCA included **/
+    private int[][] paths = new int[0][];
+    private int[] storedMRCA = new int[0];
+    private int[][] storedPaths = new int[0][];
+
+    /** clades that need to be looked up again **/
+    private final BitSet stale = new BitSet();
+    private final BitSet storedStale = new BitSet();
+    /** clades looked up since the last store **/
+    private final BitSet changed = new BitSet();
+    private boolean isStored = false;
+
+    /** for every node, the clades that have the node on their paths **/
+    private BitSet[] cladesOfNode = new BitSet[0];
+    private int nodeCount = -1;
+
+    /** whether the filthy nodes of the tree have been checked since the tree was last edited **/
+    private boolean upToDate = false;
+
+    // work space for walking up the tree: the path found so far, and the nodes visited
+    private int[] path;
+    private int pathLength;
+    private int[] visited;
+    private int visitStamp;
+
+    MRCAIndex(final Tree tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * Register a clade. Clades with the same taxa share a clade number.
+     * Every call should be matched by a call to removeClade() once the clade is no longer used.
+     *
+     * @param taxa node numbers of the leafs in the clade
+     * @return clade number for querying the index
+     */
+    public synchronized int addClade(final int[] taxa) {
+        if (taxa.length == 0) {
+            throw new IllegalArgumentException("A clade needs at least one taxon");
+        }
+        final int[] sorted = taxa.clone();
+        Arrays.sort(sorted);
+        final List<Integer> key = toKey(sorted);
+        Integer cladeNr = cladeNrs.get(key);
+        if (cladeNr == null) {
+            cladeNr = freeCladeNrs.nextSetBit(0);
+            if (cladeNr >= 0) {
+                freeCladeNrs.clear(cladeNr);
+                clades.set(cladeNr, sorted);
+            } else {
+                cladeNr = clades.size();
+                clades.add(sorted);
+                mrca = Arrays.copyOf(mrca, cladeNr + 1);
+                paths = Arrays.copyOf(paths, cladeNr + 1);
+                storedMRCA = Arrays.copyOf(storedMRCA, cladeNr + 1);
+                storedPaths = Arrays.copyOf(storedPaths, cladeNr + 1);
+                registrationCount = Arrays.copyOf(registrationCount, cladeNr + 1);
+            }
+            cladeNrs.put(key, cladeNr);
+            stale.set(cladeNr);
+            storedStale.set(cladeNr);
+        }
+        registrationCount[cladeNr]++;
+        return cladeNr;
+    }
+
+    /**
+     * Undo a registration by addClade(). Once all registrations of a clade are undone,
+     * it is no longer kept up to date, and its clade number may be reused for another clade.
+     */
+    public synchronized void removeClade(final int cladeNr) {
+        if (cladeNr < 0 || cladeNr >= clades.size() || clades.get(cladeNr) == null) {
+            throw new IllegalArgumentException("Clade " + cladeNr + " is not registered");
+        }
+        if (--registrationCount[cladeNr] > 0) {
+            return;
+        }
+        unlink(cladeNr);
+        paths[cladeNr] = null;
+        storedPaths[cladeNr] = null;
+        changed.clear(cladeNr);
+        cladeNrs.remove(toKey(clades.get(cladeNr)));
+        clades.set(cladeNr, null);
+        freeCladeNrs.set(cladeNr);
+    }
+
+    private static List<Integer> toKey(final int[] sorted) {
+        final List<Integer> key = new ArrayList<>(sorted.length);
+        for (final int taxon : sorted) {
+            key.add(taxon);
+        }
+        return key;
+    }
+
+    /**
+     * @return the MRCA of the taxa of a clade.
+     * This also brings the results of {@link #isMonophyletic(int)} and
+     * {@link #getPathNodeCount(int)} for the clade up to date.
+     */
+    public synchronized Node getMRCA(final int cladeNr) {
+        if (tree.getNodeCount() != nodeCount) {
+            reset();
+        }
+        if (tree.getState() == null) {
+            stale.set(0, clades.size());
+        } else if (!upToDate) {
+            update();
+        }
+        if (stale.get(cladeNr)) {
+            lookUp(cladeNr);
+        }
+        return tree.getNode(mrca[cladeNr]);
+    }
+
+    /** @return whether the MRCA of a clade has no other taxa below it, as of the last call to getMRCA(cladeNr) **/
+    public synchronized boolean isMonophyletic(final int cladeNr) {
+        return paths[cladeNr].length == 2 * clades.get(cladeNr).length - 1;
+    }
+
+    /** @return number of nodes on the paths from the taxa of a clade to its MRCA, as of the last call to getMRCA(cladeNr) **/
+    public synchronized int getPathNodeCount(final int cladeNr) {
+        return paths[cladeNr].length;
+    }
+
+    /** the tree is about to be edited: remember which clades are up to date **/
+    synchronized void store() {
+        changed.clear();
+        storedStale.clear();
+        storedStale.or(stale);
+        isStored = true;
+    }
+
+    /** the edits to the tree are undone: undo the look ups done since the last store **/
+    synchronized void restore() {
+        if (!isStored) {
+            invalidate();
+            return;
+        }
+        for (int cladeNr = changed.nextSetBit(0); cladeNr >= 0; cladeNr = changed.nextSetBit(cladeNr + 1)) {
+            unlink(cladeNr);
+            mrca[cladeNr] = storedMRCA[cladeNr];
+            paths[cladeNr] = storedPaths[cladeNr];
+            storedPaths[cladeNr] = null;
+            link(cladeNr);
+        }
+        changed.clear();
+        stale.clear();
+        stale.or(storedStale);
+        isStored = false;
+        upToDate = true;
+    }
+
+    /** a node of the tree is edited **/
+    void startEditing() {
+        upToDate = false;
+    }
+
+    /** should be called before the dirty flags of the nodes are reset **/
+    synchronized void setEverythingDirty(final boolean isDirty) {
+        if (isDirty) {
+            stale.set(0, clades.size());
+        } else if (!upToDate && tree.getNodeCount() == nodeCount) {
+            update();
+        }
+        upToDate = true;
+    }
+
+    /** the tree is changed without marking nodes as filthy, so no result can be relied on **/
+    synchronized void invalidate() {
+        stale.set(0, clades.size());
+        isStored = false;
+        upToDate = true;
+    }
+
+    /** mark clades with a filthy node on their paths as stale **/
+    private void update() {
+        for (int i = 0; i < nodeCount; i++) {
+            if ((tree.getNode(i).isDirty() & Tree.IS_FILTHY) != 0 && cladesOfNode[i] != null) {
+                stale.or(cladesOfNode[i]);
+            }
+        }
+        upToDate = true;
+    }
+
+    /** start afresh after the number of nodes changed **/
+    private void reset() {
+        nodeCount = tree.getNodeCount();
+        cladesOfNode = new BitSet[nodeCount];
+        Arrays.fill(paths, null);
+        Arrays.fill(storedPaths, null);
+        path = new int[nodeCount];
+        visited = new int[nodeCount];
+        visitStamp = 0;
+        invalidate();
+    }
+
+    private void lookUp(final int cladeNr) {
+        if (isStored && !changed.get(cladeNr)) {
+            changed.set(cladeNr);
+            storedMRCA[cladeNr] = mrca[cladeNr];
+            storedPaths[cladeNr] = paths[cladeNr];
+        }
+        unlink(cladeNr);
+
+        if (++visitStamp == Integer.MAX_VALUE) {
+            Arrays.fill(visited, 0);
+            visitStamp = 1;
+        }
+        pathLength = 0;
+        final int[] taxa = clades.get(cladeNr);
+        Node cur = tree.getNode(taxa[0]);
+        visit(cur);
+        for (int k = 1; k < taxa.length; k++) {
+            cur = getCommonAncestor(cur, tree.getNode(taxa[k]));
+        }
+        mrca[cladeNr] = cur.getNr();
+        paths[cladeNr] = Arrays.copyOf(path, pathLength);
+
+        link(cladeNr);
+        stale.clear(cladeNr);
+    }
+
+    private void link(final int cladeNr) {
+        if (paths[cladeNr] != null) {
+            for (final int nodeNr : paths[cladeNr]) {
+                if (cladesOfNode[nodeNr] == null) {
+                    cladesOfNode[nodeNr] = new BitSet();
+                }
+                cladesOfNode[nodeNr].set(cladeNr);
+            }
+        }
+    }
+
+    private void unlink(final int cladeNr) {
+        if (paths[cladeNr] != null) {
+            for (final int nodeNr : paths[cladeNr]) {
+                cladesOfNode[nodeNr].clear(cladeNr);
+            }
+        }
+    }
+
+    private void visit(final Node node) {
+        final int nr = node.getNr();
+        if (visited[nr] != visitStamp) {
+            visited[nr] = visitStamp;
+            path[pathLength++] = nr;
+        }
+    }
+
+    /** walk up from n1 and n2 until the paths meet, as in MRCAPrior **/
+    private Node getCommonAncestor(Node n1, Node n2) {
+        visit(n2);
+        while (n1 != n2) {
+            final double h1 = n1.getHeight();
+            final double h2 = n2.getHeight();
+            if (h1 < h2) {
+                n1 = n1.getParent();
+                visit(n1);
+            } else if (h2 < h1) {
+                n2 = n2.getParent();
+                visit(n2);
+            } else {
+                // zero length branches: advance the node that is not an ancestor of the other
+                Node n;
+                if (n1.getLength() > 0) {
+                    n = n2;
+                } else if (n2.getLength() > 0) {
+                    n = n1;
+                } else {
+                    n = n1;
+                    while (n != null && n != n2) {
+                        n = n.getParent();
+                    }
+                    n = n == n2 ? n1 : n2;
+                }
+                if (n == n1) {
+                    n = n1 = n.getParent();
+                } else {
+                    n = n2 = n.getParent();
+                }
+                visit(n);
+            }
+        }
+        return n1;
+    }
+
+}
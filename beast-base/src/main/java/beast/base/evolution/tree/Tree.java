@@ -1,5 +1,8 @@
 package beast.base.evolution.tree;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -209,6 +212,7 @@ public class Tree extends StateNode implements TreeInterface, Function, Scalable
         final Node copy = root.copy();
         listNodes(copy, m_storedNodes);
         postCache = null;
+        invalidateMRCAIndex();
     }
 
 
@@ -332,6 +336,7 @@ public class Tree extends StateNode implements TreeInterface, Function, Scalable
             tmp.setNr(root.getNr());
             m_nodes[rootPos].setNr(rootPos);
         }
+        invalidateMRCAIndex();
     }
 
     /**
@@ -502,6 +507,28 @@ public class Tree extends StateNode implements TreeInterface, Function, Scalable
 //    }
 
     protected Node[] postCache = null;
+
+    /** most recent common ancestors of clades, shared by clade priors on this tree, created on first use **/
+    protected MRCAIndex mrcaIndex = null;
+
+    /**
+     * @return index of most recent common ancestors of clades of this tree,
+     * which is kept up to date as the tree changes
+     */
+    public synchronized MRCAIndex getMRCAIndex() {
+        if (mrcaIndex == null) {
+            mrcaIndex = new MRCAIndex(this);
+        }
+        return mrcaIndex;
+    }
+
+    /** node numbers or parents changed without marking nodes filthy **/
+    protected void invalidateMRCAIndex() {
+        if (mrcaIndex != null) {
+            mrcaIndex.invalidate();
+        }
+    }
+
     @Override
 	public Node[] listNodesPostOrder(Node node, Node[] nodes) {
         if( node != null ) {
@@ -554,6 +581,7 @@ public class Tree extends StateNode implements TreeInterface, Function, Scalable
         tree.nodeCount = nodeCount;
         tree.internalNodeCount = internalNodeCount;
         tree.leafNodeCount = leafNodeCount;
+        tree.invalidateMRCAIndex();
     }
 
     /**
@@ -584,6 +612,7 @@ public class Tree extends StateNode implements TreeInterface, Function, Scalable
     public void assignFromFragile(final StateNode other) {
         // invalidate cache
         postCache = null;
+        invalidateMRCAIndex();
 
         final Tree tree = (Tree) other;
         if (m_nodes == null) {
@@ -641,6 +670,10 @@ public class Tree extends StateNode implements TreeInterface, Function, Scalable
     @Override
     public void setEverythingDirty(final boolean isDirty) {
         setSomethingIsDirty(isDirty);
+        if (mrcaIndex != null) {
+            // before the flags of the nodes are reset
+            mrcaIndex.setEverythingDirty(isDirty);
+        }
         if (!isDirty) {
             for( Node n : m_nodes ) {
                 n.isDirty = IS_CLEAN;
@@ -880,6 +913,65 @@ public class Tree extends StateNode implements TreeInterface, Function, Scalable
         initArrays();
     }
 
+    /**
+     * Writes node heights and the parent and children of every node by node number,
+     * which is what assignFromFragile() copies. Subclasses, which may keep more state,
+     * use the default representation. Since copy() always returns a Tree, a flag
+     * records which of the two representations follows.
+     */
+    @Override
+    public void toBinary(final DataOutput out) throws IOException {
+        if (getClass() != Tree.class) {
+            out.writeBoolean(false);
+            super.toBinary(out);
+            return;
+        }
+        out.writeBoolean(true);
+        out.writeInt(nodeCount);
+        for (final Node node : getNodesAsArray()) {
+            out.writeDouble(node.height);
+            out.writeInt(node.isRoot() ? -1 : node.parent.getNr());
+            out.writeInt(node.getChildCount());
+            for (final Node child : node.getChildren()) {
+                out.writeInt(child.getNr());
+            }
+        }
+    }
+
+    @Override
+    public void fromBinary(final DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            super.fromBinary(in);
+            invalidateMRCAIndex();
+            return;
+        }
+        final int count = in.readInt();
+        if (count != nodeCount) {
+            throw new IOException("Cannot restore tree " + getID() + ": expected " + nodeCount + " nodes but found " + count);
+        }
+        if (m_nodes == null) {
+            initArrays();
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            final Node node = m_nodes[i];
+            node.height = in.readDouble();
+            final int parentNr = in.readInt();
+            if (parentNr < 0) {
+                node.parent = null;
+                root = node;
+            } else {
+                node.parent = m_nodes[parentNr];
+            }
+            final int childCount = in.readInt();
+            node.children.clear();
+            for (int j = 0; j < childCount; j++) {
+                node.children.add(m_nodes[in.readInt()]);
+            }
+        }
+        postCache = null;
+        invalidateMRCAIndex();
+    }
+
     /**
      * Valuable implementation *
      */
@@ -918,6 +1010,9 @@ public class Tree extends StateNode implements TreeInterface, Function, Scalable
 
         storeNodes(0, nodeCount);
         storedRoot = m_storedNodes[root.getNr()];
+        if (mrcaIndex != null) {
+            mrcaIndex.store();
+        }
     }
 
 
@@ -973,6 +1068,9 @@ public class Tree extends StateNode implements TreeInterface, Function, Scalable
     public void startEditing(final Operator operator) {
         super.startEditing(operator);
         postCache = null;
+        if (mrcaIndex != null) {
+            mrcaIndex.startEditing();
+        }
     }
 
     @Override
@@ -1002,6 +1100,9 @@ public class Tree extends StateNode implements TreeInterface, Function, Scalable
         }
 
         postCache = null;
+        if (mrcaIndex != null) {
+            mrcaIndex.restore();
+        }
     }
 
     /**
@@ -1092,6 +1193,7 @@ public class Tree extends StateNode implements TreeInterface, Function, Scalable
         }
         m_nodes = tmp;
         nodeCount--;
+        invalidateMRCAIndex();
         if (i < leafNodeCount)
             leafNodeCount--;
         else
@@ -1109,6 +1211,7 @@ public class Tree extends StateNode implements TreeInterface, Function, Scalable
         newNode.setNr(nodeCount);
         m_nodes = tmp;
         nodeCount++;
+        invalidateMRCAIndex();
         if (newNode.getChildCount() > 0)
             internalNodeCount++;
         else
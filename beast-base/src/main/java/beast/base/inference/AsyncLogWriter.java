@@ -0,0 +1,133 @@
+package beast.base.inference;
+
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Writes the lines produced by a {@link Logger} on a background thread.
+ * <p>
+ * The thread running the chain only formats the values of the current state into a line
+ * and puts it in a bounded ring buffer. Prettifying screen output and writing to file is
+ * done by the writer thread. When the buffer is full, the chain waits for the writer,
+ * so memory use is bounded by the capacity of the buffer.
+ */
+final class AsyncLogWriter implements java.lang.Runnable {
+
+	/** a line to be written, with text to append after prettifying it for screen output **/
+	private static final class Line {
+		final String content;
+		final String suffix;
+
+		Line(String content, String suffix) {
+			this.content = content;
+			this.suffix = suffix;
+		}
+	}
+
+	/** marks that every line before it has been written **/
+	private static final class Barrier {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final boolean last;
+
+		Barrier(boolean last) {
+			this.last = last;
+		}
+	}
+
+	private final Logger logger;
+	private final BlockingQueue<Object> buffer;
+	private final Thread thread;
+	private volatile Throwable failure;
+
+	AsyncLogWriter(Logger logger, String name, int capacity) {
+		this.logger = logger;
+		buffer = new ArrayBlockingQueue<>(capacity);
+		thread = new Thread(this, "log writer " + name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** queue a line, waiting if the buffer is full **/
+	void write(String content, String suffix) {
+		checkFailure();
+		put(new Line(content, suffix));
+	}
+
+	/** wait till all lines queued so far are written, and flush the output **/
+	void flush() {
+		await(new Barrier(false));
+	}
+
+	/** write all lines queued so far and stop the writer thread **/
+	void close() {
+		await(new Barrier(true));
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void await(Barrier barrier) {
+		if (!thread.isAlive()) {
+			checkFailure();
+			return;
+		}
+		put(barrier);
+		try {
+			barrier.latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		checkFailure();
+	}
+
+	private void put(Object o) {
+		try {
+			buffer.put(o);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while logging", e);
+		}
+	}
+
+	private void checkFailure() {
+		if (failure != null) {
+			throw new RuntimeException("Could not write log: " + failure.getMessage(), failure);
+		}
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			final Object o;
+			try {
+				o = buffer.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (o instanceof Barrier) {
+				final Barrier barrier = (Barrier) o;
+				try {
+					logger.flushOutput();
+				} catch (Throwable e) {
+					failure = e;
+				}
+				barrier.latch.countDown();
+				if (barrier.last) {
+					return;
+				}
+			} else if (failure == null) {
+				final Line line = (Line) o;
+				try {
+					logger.writeLine(line.content, line.suffix);
+				} catch (Throwable e) {
+					failure = e;
+				}
+			}
+		}
+	}
+
+}
@@ -30,15 +30,11 @@ package beast.base.inference;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.RejectedExecutionException;
 
 import beast.base.core.BEASTInterface;
 import beast.base.core.Description;
+import beast.base.core.EvaluationScheduler;
 import beast.base.core.Input;
-import beast.base.core.Log;
 import beast.base.core.ProgramStatus;
 
 
@@ -63,7 +59,9 @@ public class CompoundDistribution extends Distribution {
     boolean useThreads;
     int nrOfThreads;
     boolean ignore;
-    public static ExecutorService exec;
+    /** tasks evaluating the distributions in parallel, one per distribution **/
+    EvaluationScheduler.Batch batch;
+    boolean [] isDirty;
     
     @Override
     public void initAndValidate() {
@@ -73,9 +71,6 @@ public class CompoundDistribution extends Distribution {
 		if (useThreads && maxNrOfThreadsInput.get() > 0) {
 			nrOfThreads = Math.min(maxNrOfThreadsInput.get(), ProgramStatus.m_nThreads);
 		}
-		if (useThreads) {
-		     exec = Executors.newFixedThreadPool(nrOfThreads);
-		}
 
         ignore = ignoreInput.get();
 
@@ -122,61 +117,26 @@ public class CompoundDistribution extends Distribution {
         return logP;
     }
 
-    class CoreRunnable implements java.lang.Runnable {
-        Distribution distr;
-
-        CoreRunnable(Distribution core) {
-            distr = core;
-        }
-
-        @Override
-		public void run() {
-            try {
-                if (distr.isDirtyCalculation()) {
-                    logP += distr.calculateLogP();
-                } else {
-                    logP += distr.getCurrentLogP();
-                }
-            } catch (Exception e) {
-                Log.err.println("Something went wrong in a calculation of " + distr.getID());
-                e.printStackTrace();
-                System.exit(1);
-            }
-            countDown.countDown();
-        }
-
-    } // CoreRunnable
-
-    CountDownLatch countDown;
-
     private double calculateLogPUsingThreads() {
-        try {
-
-            int dirtyDistrs = 0;
-            for (Distribution dists : pDistributions.get()) {
-                if (dists.isDirtyCalculation()) {
-                    dirtyDistrs++;
-                }
-            }
-            countDown = new CountDownLatch(dirtyDistrs);
-            // kick off the threads
-            for (Distribution dists : pDistributions.get()) {
-                if (dists.isDirtyCalculation()) {
-                    CoreRunnable coreRunnable = new CoreRunnable(dists);
-                    exec.execute(coreRunnable);
-                }
+        final List<Distribution> distributions = pDistributions.get();
+        if (batch == null || batch.getTaskCount() != distributions.size()) {
+            EvaluationScheduler.Task [] tasks = new EvaluationScheduler.Task[distributions.size()];
+            for (int i = 0; i < tasks.length; i++) {
+                final Distribution distr = distributions.get(i);
+                tasks[i] = distr::calculateLogP;
             }
-            countDown.await();
-            logP = 0;
-            for (Distribution distr : pDistributions.get()) {
-                logP += distr.getCurrentLogP();
-            }
-            return logP;
-        } catch (RejectedExecutionException | InterruptedException e) {
-            useThreads = false;
-            Log.err.println("Stop using threads: " + e.getMessage());
-            return calculateLogP();
+            batch = EvaluationScheduler.getInstance().newBatch(nrOfThreads, tasks);
+            isDirty = new boolean[tasks.length];
+        }
+        for (int i = 0; i < isDirty.length; i++) {
+            isDirty[i] = distributions.get(i).isDirtyCalculation();
         }
+        batch.run(isDirty);
+        logP = 0;
+        for (int i = 0; i < isDirty.length; i++) {
+            logP += isDirty[i] ? batch.getResult(i) : distributions.get(i).getCurrentLogP();
+        }
+        return logP;
     }
 
 
@@ -41,6 +41,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import beast.base.core.BEASTInterface;
 import beast.base.core.BEASTObject;
@@ -78,6 +79,9 @@ public class Logger extends BEASTObject {
             "Element in a log. This can be any plug in that is Loggable.",
             new ArrayList<>(), Validate.REQUIRED, Loggable.class);
     final public Input<Boolean> convertToASCIIInput = new Input<>("ascii", "whether to convert the log output to ASCII" , true);
+    final public Input<Boolean> asyncInput = new Input<>("async", "whether to write log lines on a background thread, so the chain does not wait for output. " +
+            "Lines are formatted when logged, and at most bufferSize lines are kept waiting to be written", false);
+    final public Input<Integer> bufferSizeInput = new Input<>("bufferSize", "maximum number of lines waiting to be written when logging asynchronously", 1024);
     // the file name to log to, or null, or "" if logging to stdout
     private String fileName;
 
@@ -117,6 +121,17 @@ public class Logger extends BEASTObject {
     long startLogTime = -5;
     long startSample;
 
+    /**
+     * buffer to format log lines in, reused for every sample
+     */
+    private ByteArrayOutputStream logBuffer;
+    private PrintStream logStream;
+
+    /**
+     * writer thread when logging asynchronously, null otherwise
+     */
+    private AsyncLogWriter writer;
+
     @Override
     public void initAndValidate() {
 
@@ -277,6 +292,12 @@ public class Logger extends BEASTObject {
             }
             m_out.println();
         }
+        if (asyncInput.get()) {
+            if (bufferSizeInput.get() < 1) {
+                throw new IllegalArgumentException("bufferSize should be at least 1");
+            }
+            writer = new AsyncLogWriter(this, isLoggingToStdout() ? "stdout" : fileName, bufferSizeInput.get());
+        }
     } // init
 
     /** remove indicators of partition context from header of a log file **/
@@ -651,8 +672,13 @@ public class Logger extends BEASTObject {
             sampleNr += sampleOffset;
         }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        PrintStream out = new PrintStream(baos);
+        if (logBuffer == null) {
+            logBuffer = new ByteArrayOutputStream();
+            logStream = new PrintStream(logBuffer);
+        }
+        final ByteArrayOutputStream baos = logBuffer;
+        final PrintStream out = logStream;
+        baos.reset();
 
         if (mode == LOGMODE.compound) {
             out.print((sampleNr) + "\t");
@@ -676,10 +702,8 @@ public class Logger extends BEASTObject {
         }
 
         // Include calculation speed estimate if this log is going to the terminal
+        String suffix = null;
         if ( m_out == System.out ) {
-            logContent = prettifyLogLine(logContent);
-            m_out.print(logContent);
-
             if (startLogTime < 0) {
                 if (sampleNr - sampleOffset > 6000) {
                     startLogTime++;
@@ -688,7 +712,7 @@ public class Logger extends BEASTObject {
                         startSample = sampleNr;
                     }
                 }
-                m_out.print(" --");
+                suffix = " --";
             } else {
 
                 final long logTime = System.currentTimeMillis();
@@ -697,28 +721,78 @@ public class Logger extends BEASTObject {
                         (secondsPerMSamples >= 3600 ? secondsPerMSamples / 3600 + "h" : "") +
                                 (secondsPerMSamples >= 60 ? (secondsPerMSamples % 3600) / 60 + "m" : "") +
                                 (secondsPerMSamples % 60 + "s");
-                m_out.print(" " + timePerMSamples + "/Msamples");
+                suffix = " " + timePerMSamples + "/Msamples";
             }
-            m_out.println();
+        }
 
+        if (writer != null) {
+            writer.write(logContent, suffix);
         } else {
-            m_out.println(logContent);
+            writeLine(logContent, suffix);
         }
     } // log
 
+    /**
+     * write a log line produced by log(), prettified when logging to the terminal
+     */
+    void writeLine(String logContent, String suffix) {
+        if ( m_out == System.out ) {
+            m_out.print(prettifyLogLine(logContent));
+            if (suffix != null) {
+                m_out.print(suffix);
+            }
+            m_out.println();
+        } else {
+            m_out.println(logContent);
+        }
+    }
+
+    void flushOutput() {
+        if (m_out != null) {
+            m_out.flush();
+        }
+    }
+
+    /**
+     * make sure everything logged so far is written, e.g. before the state is
+     * stored so that the log files match the state file when the chain is resumed
+     */
+    public void flush() {
+        if (writer != null) {
+            writer.flush();
+        } else {
+            flushOutput();
+        }
+    }
+
+
+    private final static Pattern DOUBLE_PATTERN = Pattern.compile("[\\d-E]+\\.[\\d-E]+");
 
-    private String prettifyLogLine(String logContent) {
-        final String[] strs = logContent.split("\t");
-        logContent = "";
-        for (final String str : strs) {
-            logContent += prettifyLogEntry(str);
+    /** format tab separated entries as String.split("\t") would split them, so trailing empty entries are dropped **/
+    String prettifyLogLine(String logContent) {
+        if (logContent.isEmpty()) {
+            return prettifyLogEntry(logContent);
         }
-        return logContent;
+        int length = logContent.length();
+        while (length > 0 && logContent.charAt(length - 1) == '\t') {
+            length--;
+        }
+        final StringBuilder buf = new StringBuilder(logContent.length() * 2);
+        int start = 0;
+        while (start < length) {
+            int end = logContent.indexOf('\t', start);
+            if (end < 0 || end > length) {
+                end = length;
+            }
+            buf.append(prettifyLogEntry(logContent.substring(start, end)));
+            start = end + 1;
+        }
+        return buf.toString();
     }
 
-    private String prettifyLogEntry(String str) {
+    String prettifyLogEntry(String str) {
         // TODO Q2R intelliJ says \\ can't be used in a range ...
-        if (str.matches("[\\d-E]+\\.[\\d-E]+")) {
+        if (DOUBLE_PATTERN.matcher(str).matches()) {
             // format as double
             if (str.contains("E")) {
                 if (str.length() > 15) {
@@ -758,6 +832,10 @@ public class Logger extends BEASTObject {
      * stop logging, produce end of log message and close file (if necessary) *
      */
     public void close() {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
         for (final Loggable m_logger : loggerList) {
             m_logger.close(m_out);
         }
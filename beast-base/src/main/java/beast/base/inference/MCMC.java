@@ -26,6 +26,7 @@ package beast.base.inference;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -41,6 +42,7 @@ import beast.base.core.Description;
 import beast.base.core.Input;
 import beast.base.core.Log;
 import beast.base.core.Input.Validate;
+import beast.base.spec.inference.util.ESS;
 import beast.base.util.Randomizer;
 
 @Description("MCMC chain. This is the main element that controls which posterior " +
@@ -103,6 +105,18 @@ public class MCMC extends Runnable {
 
     final public Input<OperatorSchedule> operatorScheduleInput = new Input<>("operatorschedule", "specify operator selection and optimisation schedule", new OperatorSchedule(), Validate.REQUIRED);
 
+    public enum StateFileFormat {xml, binary}
+
+    final public Input<StateFileFormat> stateFileFormatInput = new Input<>("stateFileFormat", "format of the state file used for resuming, " +
+            "one of " + Arrays.toString(StateFileFormat.values()) + ". Binary state files are smaller, quicker to write and written in the background. " +
+            "Either format can be resumed from.", StateFileFormat.xml, StateFileFormat.values());
+
+    final public Input<List<ESS>> essInput = new Input<>("ess", "effective sample size estimates used to stop the chain early once all of them exceed minESS. " +
+            "Estimates are updated when they are logged, so each should be logged by one of the loggers, e.g. as a column of the screen log", new ArrayList<>());
+
+    final public Input<Double> minESSInput = new Input<>("minESS", "stop the chain before chainLength is reached once the ESS of all ess inputs exceeds this value. " +
+            "Ignored when zero (default)", 0.0);
+
     /**
      * Alternative representation of operatorsInput that allows random selection
      * of operators and calculation of statistics.
@@ -226,6 +240,10 @@ public class MCMC extends Runnable {
             storeEvery = state.m_storeEvery.get();
         }
 
+        if (minESSInput.get() > 0 && essInput.get().isEmpty()) {
+            throw new IllegalArgumentException("minESS is set, but there are no ess inputs to check it against");
+        }
+
         this.state.initialise();
         this.state.setPosterior(posteriorInput.get());
 
@@ -278,6 +296,11 @@ public class MCMC extends Runnable {
     protected int burnIn;
     protected long chainLength;
     protected Distribution posterior;
+    /**
+     * inverse temperature: proposals are accepted according to the posterior to the power beta.
+     * Only heated chains in Metropolis coupled MCMC have beta < 1, see {@link ParallelMCMC}.
+     */
+    protected double beta = 1.0;
 
     protected List<Logger> loggers;
 
@@ -398,12 +421,25 @@ public class MCMC extends Runnable {
 
         Log.warning.println("End likelihood: " + oldLogLikelihood);
 //        System.err.println(state);
-        state.storeToFile(chainLength);
-        operatorSchedule.storeToFile();
+        storeStateToFile(chainLength);
+        state.awaitStateFile();
         //Randomizer.storeToFile(stateFileName);
     } // run;
 
 
+    /**
+     * store state and operator schedule to the state file so the chain can be resumed,
+     * in the format specified by stateFileFormatInput *
+     */
+    protected void storeStateToFile(final long sampleNr) throws IOException {
+        if (stateFileFormatInput.get() == StateFileFormat.binary) {
+            state.storeToBinaryFile(sampleNr, operatorSchedule.toJSON());
+        } else {
+            state.storeToFile(sampleNr);
+            operatorSchedule.storeToFile();
+        }
+    }
+
     protected void makeSureLogFilesAreSameLength() throws IOException {
     	// make sure log files all end in the same state
     	long min = -1;
@@ -465,8 +501,8 @@ public class MCMC extends Runnable {
                         if (corrections > 100) {
                             // after 100 repairs, there must be something seriously wrong with the implementation
                         	Log.err.println("Too many corrections. There is something seriously wrong that cannot be corrected");
-                            state.storeToFile(sampleNr);
-                            operatorSchedule.storeToFile();
+                            storeStateToFile(sampleNr);
+                            state.awaitStateFile();
                             System.exit(1);
                         }
                         oldLogLikelihood = state.robustlyCalcPosterior(posterior);;
@@ -474,8 +510,8 @@ public class MCMC extends Runnable {
                 } else {
                     if (isTooDifferent(logLikelihood, originalLogP)) {
                         // halt due to incorrect posterior during initial debug period
-                        state.storeToFile(sampleNr);
-                        operatorSchedule.storeToFile();
+                        storeStateToFile(sampleNr);
+                        state.awaitStateFile();
                         System.exit(1);
                     }
                 }
@@ -486,12 +522,21 @@ public class MCMC extends Runnable {
             }
             callUserFunction(sampleNr);
 
+            if (sampleNr > 0 && sampleNr < chainLength && hasSufficientESS()) {
+                Log.info.println("Stopping at sample " + sampleNr + " since all ESS estimates exceed " + minESSInput.get());
+                // ends the loop after the state is stored
+                chainLength = sampleNr;
+            }
+
             // make sure we always save just before exiting
             if (storeEvery > 0 && (sampleNr + 1) % storeEvery == 0 || sampleNr == chainLength) {
                 /*final double logLikelihood = */
                 state.robustlyCalcNonStochasticPosterior(posterior);
-                state.storeToFile(sampleNr);
-                operatorSchedule.storeToFile();
+                // write out samples still buffered by loggers, so logs are complete up to the stored state
+                for (final Logger log : loggers) {
+                    log.flush();
+                }
+                storeStateToFile(sampleNr);
             }
             
             if (posterior.getCurrentLogP() == Double.POSITIVE_INFINITY) {
@@ -503,6 +548,22 @@ public class MCMC extends Runnable {
         }
     }
 
+    /**
+     * @return true if a minimum ESS is specified and all ESS estimates exceed it
+     */
+    protected boolean hasSufficientESS() {
+        final double minESS = minESSInput.get();
+        if (minESS <= 0) {
+            return false;
+        }
+        for (final ESS ess : essInput.get()) {
+            if (!(ess.getESS() > minESS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Perform a single MCMC propose+accept/reject step.
      *
@@ -539,7 +600,7 @@ public class MCMC extends Runnable {
 
             newLogLikelihood = posterior.calculateLogP();
 
-            logAlpha = newLogLikelihood - oldLogLikelihood + logHastingsRatio; //CHECK HASTINGS
+            logAlpha = beta * (newLogLikelihood - oldLogLikelihood) + logHastingsRatio; //CHECK HASTINGS
             if (printDebugInfo) System.err.print(logAlpha + " " + newLogLikelihood + " " + oldLogLikelihood);
 
             if (logAlpha >= 0 || (logAlpha != Double.NEGATIVE_INFINITY && Randomizer.nextDouble() < Math.exp(logAlpha))) {
@@ -316,6 +316,19 @@ public class OperatorSchedule extends BEASTObject {
         PrintWriter out = new PrintWriter(new FileWriter(file, true));
 
         out.println("<!--");
+        out.print(toJSON());
+        out.println("-->");
+        out.flush();
+        out.close();
+    }
+
+    /**
+     * @return operator optimisation specific information in JSON,
+     * as stored in the state file by storeToFile() or State.storeToBinaryFile()
+     */
+    public String toJSON() {
+        StringWriter buf = new StringWriter();
+        PrintWriter out = new PrintWriter(buf);
         out.println("{\"operators\":[");
         int k = 0;
         for (Operator operator: operators) {
@@ -325,9 +338,8 @@ public class OperatorSchedule extends BEASTObject {
             }
         }
         out.println("\n]}");
-        out.println("-->");
         out.flush();
-        out.close();
+        return buf.toString();
     }
 
     /**
@@ -337,16 +349,23 @@ public class OperatorSchedule extends BEASTObject {
     public void restoreFromFile() throws IOException {
         // reads state of operator set from state file
         String xml = "";
-        final BufferedReader fin = new BufferedReader(new FileReader(stateFileName));
-        while (fin.ready()) {
-            xml += fin.readLine() + "\n";
-        }
-        fin.close();
-        int start = xml.indexOf("</itsabeastystatewerein>") + 25 + 5;
-        if (start >= xml.length() - 4) {
-        	return;
+        if (State.isBinaryStateFile(stateFileName)) {
+            xml = State.readOperatorSchedule(stateFileName);
+            if (xml == null) {
+            	return;
+            }
+        } else {
+            final BufferedReader fin = new BufferedReader(new FileReader(stateFileName));
+            while (fin.ready()) {
+                xml += fin.readLine() + "\n";
+            }
+            fin.close();
+            int start = xml.indexOf("</itsabeastystatewerein>") + 25 + 5;
+            if (start >= xml.length() - 4) {
+            	return;
+            }
+            xml = xml.substring(xml.indexOf("</itsabeastystatewerein>") + 25 + 5, xml.length() - 4);
         }
-        xml = xml.substring(xml.indexOf("</itsabeastystatewerein>") + 25 + 5, xml.length() - 4);
         try {
 	        JSONObject o = new JSONObject(xml);
 	        JSONArray operatorlist = o.getJSONArray("operators");
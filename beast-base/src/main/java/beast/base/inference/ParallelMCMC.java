@@ -0,0 +1,305 @@
+package beast.base.inference;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Phaser;
+
+import org.apache.commons.rng.UniformRandomProvider;
+
+import beast.base.core.Description;
+import beast.base.core.Input;
+import beast.base.core.Input.Validate;
+import beast.base.core.Log;
+import beast.base.parser.XMLParser;
+import beast.base.parser.XMLProducer;
+import beast.base.util.Randomizer;
+
+/**
+ * Runs several copies of an MCMC analysis in one JVM, each chain on its own thread.
+ * <p>
+ * Copies are made by writing the parsed MCMC to XML and parsing it again, so packages
+ * are loaded and data read once. Every chain gets its own random number stream, seeded
+ * from the seed of the runner plus the chain number, or with useStreams = true a block of
+ * a jumpable generator, see {@link Randomizer#createStreams(long, int)}.
+ * <p>
+ * With deltaTemperature = 0, chains are independent, and chain k writes its logs and state file
+ * to directory particle&lt;k&gt; next to the file names of the original, where LogCombiner can
+ * combine them. With deltaTemperature &gt; 0, chain k samples from the posterior to the power
+ * 1/(1+k*deltaTemperature), and every swapEvery samples the states of two chains are swapped
+ * according to the Metropolis-Hastings ratio (Metropolis coupled MCMC, or MC<sup>3</sup>).
+ * Only chain 0, the cold chain, is logged; the state files of the heated chains go to particle
+ * directories, so the analysis can be resumed. Swaps are chosen with a random number stream of
+ * their own, derived from the seed, so runs with the same seed give the same result.
+ * <p>
+ * Logger keeps the sample offset of a resumed log and the log file mode in static fields,
+ * which are shared by all chains. So independent chains, which all log to files, cannot be
+ * resumed, and are not started when any of their log files exists unless files may be overwritten.
+ */
+@Description("Runs several copies of an MCMC analysis on separate threads, either independently "
+        + "or as heated chains that swap states (Metropolis coupled MCMC)")
+public class ParallelMCMC extends Runnable {
+    final public Input<MCMC> mcmcInput = new Input<>("mcmc", "MCMC analysis to run copies of", Validate.REQUIRED);
+    final public Input<Integer> chainsInput = new Input<>("chains", "number of chains to run, each on its own thread", 2);
+    final public Input<Double> deltaTemperatureInput = new Input<>("deltaTemperature", "temperature increment of heated chains: "
+            + "chain k samples from the posterior to the power 1/(1+k*deltaTemperature). "
+            + "If zero (default) chains run independently, otherwise chains swap states and only the cold chain is logged", 0.0);
+    final public Input<Integer> swapEveryInput = new Input<>("swapEvery", "number of samples between attempts to swap the states "
+            + "of two chains, if deltaTemperature > 0", 100);
+    final public Input<Boolean> useStreamsInput = new Input<>("useStreams", "if true, every chain draws from its own block of a "
+            + "xoshiro256++ sequence without locking, otherwise (default) from its own Mersenne Twister", false);
+
+    private Chain[] chains;
+    private Phaser phaser;
+    /** used for choosing and accepting swaps, which are decided on whatever thread reaches the swap point last **/
+    private UniformRandomProvider swapRandom;
+    private int swapCount, swapAcceptCount;
+
+    /**
+     * An MCMC chain taking over the set up of a parsed and initialised MCMC.
+     * When swapping, it waits for the other chains every swapEvery samples.
+     */
+    private class Chain extends MCMC {
+        final int chainNr;
+        volatile boolean isFinished = false;
+        /** values of the state nodes taken over from another chain at the last swap point, if the swap was accepted **/
+        byte[][] swappedState;
+
+        Chain(final MCMC mcmc, final int chainNr, final double beta) {
+            for (final Input<?> input : mcmc.listInputs()) {
+                if (input.get() != null) {
+                    getInput(input.getName()).setValue(input.get(), this);
+                }
+            }
+            setID(mcmc.getID());
+            // mcmc has done the initialisation already
+            operatorSchedule = mcmc.operatorSchedule;
+            state = mcmc.state;
+            storeEvery = mcmc.storeEvery;
+            this.chainNr = chainNr;
+            this.beta = beta;
+        }
+
+        @Override
+        public void initAndValidate() {
+        }
+
+        @Override
+        protected void callUserFunction(final long sample) {
+            super.callUserFunction(sample);
+            if (isSwapping() && sample > 0 && sample % swapEveryInput.get() == 0) {
+                phaser.arriveAndAwaitAdvance();
+                if (swappedState != null) {
+                    // every chain takes over the values and recalculates its posterior on its own thread
+                    try {
+                        for (int i = 0; i < state.getNrOfStateNodes(); i++) {
+                            assign(state.getStateNode(i), swappedState[i]);
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException("Could not swap states of chains: " + e.getMessage(), e);
+                    }
+                    swappedState = null;
+                    oldLogLikelihood = state.robustlyCalcPosterior(posterior);
+                }
+            }
+        }
+
+        /** @return values of all state nodes, checking the state nodes are the same as those of another chain **/
+        byte[][] stateToBinary(final Chain other) throws IOException {
+            final byte[][] values = new byte[state.getNrOfStateNodes()][];
+            for (int i = 0; i < values.length; i++) {
+                final StateNode node = state.getStateNode(i);
+                final StateNode otherNode = other.state.getStateNode(i);
+                if (node.getID() != null && !node.getID().equals(otherNode.getID())) {
+                    throw new IllegalStateException("State nodes of chains differ: " + node.getID() + " != " + otherNode.getID());
+                }
+                values[i] = toBinary(node);
+            }
+            return values;
+        }
+    }
+
+    @Override
+    public void initAndValidate() {
+        if (chainsInput.get() < 1) {
+            throw new IllegalArgumentException("chains should be at least 1");
+        }
+        if (deltaTemperatureInput.get() < 0) {
+            throw new IllegalArgumentException("deltaTemperature should not be negative");
+        }
+        if (swapEveryInput.get() < 1) {
+            throw new IllegalArgumentException("swapEvery should be at least 1");
+        }
+    }
+
+    private boolean isSwapping() {
+        return isSwapping(chains.length);
+    }
+
+    private boolean isSwapping(final int chainCount) {
+        return deltaTemperatureInput.get() > 0 && chainCount > 1;
+    }
+
+    @Override
+    public void run() throws Exception {
+        final MCMC mcmc = mcmcInput.get();
+        final int chainCount = chainsInput.get();
+        if (!isSwapping(chainCount) && chainCount > 1 && (restoreFromFile || Logger.FILE_MODE == Logger.LogFileMode.resume)) {
+            throw new IllegalArgumentException("Independent chains cannot be resumed, since the sample offsets of "
+                    + "resumed log files are shared by all chains. Use deltaTemperature > 0, or run the chains separately");
+        }
+        final String xml = new XMLProducer().toXML(mcmc);
+        chains = new Chain[chainCount];
+        for (int k = 0; k < chainCount; k++) {
+            final MCMC copy = k == 0 ? mcmc : (MCMC) new XMLParser().parseFragment(xml, true);
+            chains[k] = new Chain(copy, k, 1.0 / (1.0 + k * deltaTemperatureInput.get()));
+            setUpFiles(chains[k]);
+        }
+
+        final long seed = Randomizer.getSeed();
+        // the last stream is used for swaps, the others by the chains if useStreams is set
+        final UniformRandomProvider[] streams = Randomizer.createStreams(seed, chainCount + 1);
+        swapRandom = streams[chainCount];
+        swapCount = 0;
+        swapAcceptCount = 0;
+        phaser = new Phaser(chainCount) {
+            @Override
+            protected boolean onAdvance(final int phase, final int registeredParties) {
+                if (registeredParties > 1) {
+                    swap();
+                }
+                return registeredParties == 0;
+            }
+        };
+
+        final Throwable[] failures = new Throwable[chainCount];
+        final Thread[] threads = new Thread[chainCount];
+        for (int k = 0; k < chainCount; k++) {
+            final Chain chain = chains[k];
+            threads[k] = new Thread(() -> {
+                try {
+                    if (useStreamsInput.get()) {
+                        Randomizer.setThreadStream(streams[chain.chainNr]);
+                    } else {
+                        Randomizer.setThreadSeed(seed + chain.chainNr);
+                    }
+                    chain.run();
+                } catch (Throwable e) {
+                    failures[chain.chainNr] = e;
+                } finally {
+                    // chains still running should not wait for this chain at swap points any more
+                    chain.isFinished = true;
+                    phaser.arriveAndDeregister();
+                }
+            }, "chain" + k);
+            threads[k].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        for (final Throwable e : failures) {
+            if (e instanceof Exception) {
+                throw (Exception) e;
+            } else if (e != null) {
+                throw new RuntimeException(e);
+            }
+        }
+        if (isSwapping()) {
+            Log.info.println("Accepted " + swapAcceptCount + " of " + swapCount + " proposed swaps between chains");
+        }
+    }
+
+    /** propose to swap the states of two chains, called by the phaser while all running chains wait **/
+    private void swap() {
+        final List<Chain> running = new ArrayList<>();
+        for (final Chain chain : chains) {
+            if (!chain.isFinished) {
+                running.add(chain);
+            }
+        }
+        if (running.size() < 2) {
+            return;
+        }
+        final int i = swapRandom.nextInt(running.size());
+        int j = swapRandom.nextInt(running.size() - 1);
+        if (j >= i) {
+            j++;
+        }
+        final Chain chain1 = running.get(i);
+        final Chain chain2 = running.get(j);
+        final double logAlpha = (chain1.beta - chain2.beta) * (chain2.oldLogLikelihood - chain1.oldLogLikelihood);
+        swapCount++;
+        if (logAlpha >= 0 || swapRandom.nextDouble() < Math.exp(logAlpha)) {
+            try {
+                chain1.swappedState = chain2.stateToBinary(chain1);
+                chain2.swappedState = chain1.stateToBinary(chain2);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not swap states of chains: " + e.getMessage(), e);
+            }
+            swapAcceptCount++;
+        }
+    }
+
+    /** point loggers and state file of a chain to its own files **/
+    private void setUpFiles(final Chain chain) throws IOException {
+        final boolean toParticleDir = chain.chainNr > 0 || !isSwapping();
+        chain.stateFileName = toParticleDir ? inParticleDir(stateFileName, chain.chainNr) : stateFileName;
+        chain.restoreFromFile = restoreFromFile;
+        makeParentDir(chain.stateFileName);
+
+        final List<Logger> loggers = chain.loggersInput.get();
+        for (final Logger logger : new ArrayList<>(loggers)) {
+            if (chain.chainNr > 0 && (isSwapping() || logger.isLoggingToStdout())) {
+                // only the cold chain is logged, and only the first chain reports to screen
+                loggers.remove(logger);
+            } else if (toParticleDir && !logger.isLoggingToStdout()) {
+                final String fileName = inParticleDir(logger.fileNameInput.get(), chain.chainNr);
+                logger.fileNameInput.setValue(fileName, logger);
+                logger.initAndValidate();
+                String prefix = System.getProperty("file.name.prefix");
+                final File file = new File(prefix == null ? fileName : prefix + fileName);
+                if (file.exists() && Logger.FILE_MODE != Logger.LogFileMode.overwrite) {
+                    // Logger would ask whether to overwrite on every chain thread at the same time
+                    throw new IllegalArgumentException("Trying to write file " + file + " but the file already exists. "
+                            + "Use the overwrite option, or remove the file");
+                }
+                makeParentDir(file.getPath());
+            }
+        }
+    }
+
+    /** @return file name with directory particle&lt;k&gt; inserted before the file name **/
+    static String inParticleDir(final String fileName, final int k) {
+        final File file = new File(fileName);
+        return new File(new File(file.getParent(), "particle" + k), file.getName()).getPath();
+    }
+
+    private static void makeParentDir(final String fileName) throws IOException {
+        final File dir = new File(fileName).getAbsoluteFile().getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory " + dir);
+        }
+    }
+
+    private static byte[] toBinary(final StateNode node) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        node.toBinary(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /** as State.restoreFromFile(): read values into a copy, then assign them to the state node **/
+    private static void assign(final StateNode node, final byte[] bytes) throws IOException {
+        final StateNode copy = node.copy();
+        copy.fromBinary(new DataInputStream(new ByteArrayInputStream(bytes)));
+        node.assignFromFragile(copy);
+    }
+
+}
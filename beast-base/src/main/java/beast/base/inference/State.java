@@ -26,15 +26,24 @@ package beast.base.inference;
 
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -67,8 +76,12 @@ public class State extends BEASTObject {
 //    public Input<Boolean> m_checkPoint =
 //            new Input<>("checkpoint", "keep saved states (every X samples).", false);
 
-  public Input<Boolean> experimentalInput = new Input<>("experimental", "Use experimental code to calculate calcNodePath.", false);
-  private boolean experimental;
+    final public Input<Integer> pathCacheSizeInput = new Input<>("pathCacheSize", "maximum number of sets of calculation nodes " +
+            "kept for combinations of state nodes changed by an operator. If the limit is reached, the least recently used set is " +
+            "removed from the cache (default 100000)", 100000);
+    /** no longer used: calculation node paths are always calculated from the calculation node graph in topological order **/
+    @Deprecated
+    public Input<Boolean> experimentalInput = new Input<>("experimental", "ignored -- retained for compatibility with older XML", false);
     /**
      * The components of the state, for instance tree and parameters.
      * This represents the current state, but a copy is kept so that when
@@ -100,6 +113,25 @@ public class State extends BEASTObject {
      */
     private String stateFileName = "state.backup.xml";
 
+    /**
+     * Binary state files start with this magic number followed by the format version,
+     * which distinguishes them from XML state files.
+     */
+    public final static int BINARY_STATE_MAGIC = 0x42535446; // "BSTF"
+    public final static int BINARY_STATE_VERSION = 1;
+
+    /** daemon thread writing binary state files, started on first use **/
+    private Thread stateFileWriter;
+    /** guards pendingStateFile, writingStateFile and stateFileWriteFailure **/
+    private final Object stateFileLock = new Object();
+    /** the one snapshot waiting to be written, replaced when a newer one arrives before it is written **/
+    private StateFileSnapshot pendingStateFile;
+    private boolean writingStateFile;
+    /** failure of the last write, or null if it succeeded **/
+    private IOException stateFileWriteFailure;
+
+    private record StateFileSnapshot(String fileName, byte[] bytes) {}
+
 
     /** The following members are involved in calculating the set of
      * CalculatioNodes that need to be notified when an operation
@@ -141,61 +173,26 @@ public class State extends BEASTObject {
     private int nrOfChangedStateNodes;
 
     /**
-     * Maps the changed states node code to
-     * the set of calculation nodes that is potentially affected by an operation *
+     * Maps the set of StateNodes changed by an operation, encoded as a bitset of StateNode
+     * indices, to the list of calculation nodes that is potentially affected by the operation.
+     * The cache is ordered by access, so that the least recently used entry is removed
+     * once the cache is full.
      */
-    Trie trie;
-    /** keeps track of number of leafs in trie **/
-    private long trieSize = 0;
-    /** upper limit on the size of the trie. If the limit is reached, 
-     * no further leafs are added and every *new* calculation node 
-     * path is recalculated from scratch 
-     */
-    private final static long TRIE_SIZE_LIMIT = 1000; 
+    private Map<BitSet, List<CalculationNode>> calcNodePathCache;
+    /** key for looking up calcNodePathCache, reused for every lookup **/
+    private final BitSet changedStateNodeKey = new BitSet();
 
     /**
-     * class for quickly finding which calculation nodes need to be updated
-     * due to state-node changes
+     * All CalculationNodes on a path from a StateNode to the posterior, in topological
+     * order, that is, inputs precede their outputs.
      */
-    class Trie {
-        List<CalculationNode> list;
-        final Trie[] children;
-
-        Trie() {
-            children = new Trie[stateNode.length];
-        }
-
-        /**
-         * get entry from Trie, return null if no entry is present yet *
-         * @param pos
-         */
-        List<CalculationNode> get(final int pos) {
-            if (pos == 0) {
-                return list;
-            }
-            final Trie child = children[changeStateNodes[pos - 1]];
-            if (child == null) {
-                return null;
-            }
-            return child.get(pos - 1);
-        }
-
-        /**
-         * set entry int Trie, create new entries if no entry is present yet *
-         */
-        void set(final List<CalculationNode> list, final int pos) {
-            if (pos == 0) {
-                this.list = list;
-                return;
-            }
-            Trie child = children[changeStateNodes[pos - 1]];
-            if (child == null) {
-                child = new Trie();
-                children[changeStateNodes[pos - 1]] = child;
-            }
-            child.set(list, pos - 1);
-        }
-    }
+    private CalculationNode[] sortedCalcNodes;
+    /** for every CalculationNode in sortedCalcNodes, the indices in sortedCalcNodes of its outputs **/
+    private int[][] calcNodeOutputs;
+    /** for every StateNode, the indices in sortedCalcNodes of its outputs **/
+    private int[][] stateNodeCalcNodeOutputs;
+    /** work space for calculateCalcNodePath() **/
+    private boolean[] isOnPath;
 
 
     @Override
@@ -225,12 +222,20 @@ public class State extends BEASTObject {
         changeStateNodes = new int[stateNode.length];
         //Arrays.fill(changeStateNodes, -1);
         nrOfChangedStateNodes = 0;
-        trie = new Trie();
-        trieSize = 0;
-        // add the empty list for the case none of the StateNodes have changed
-        trie.list = new ArrayList<>();
+        final int cacheSize = pathCacheSizeInput.get();
+        calcNodePathCache = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
 
-        experimental = experimentalInput.get();
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<BitSet, List<CalculationNode>> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        // no calculation nodes are affected till the posterior is set
+        sortedCalcNodes = new CalculationNode[0];
+        calcNodeOutputs = new int[0][];
+        stateNodeCalcNodeOutputs = new int[nrOfStateNodes][0];
+        isOnPath = new boolean[0];
     } // initialise
 
 
@@ -418,6 +423,10 @@ public class State extends BEASTObject {
      */
     public void restoreFromFile() throws SAXException, IOException, ParserConfigurationException  {
         Log.info.println("Restoring from file");
+        if (isBinaryStateFile(stateFileName)) {
+            restoreFromBinaryFile();
+            return;
+        }
         DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
         Document doc = factory.newDocumentBuilder().parse(new File(stateFileName));
         doc.normalize();
@@ -454,6 +463,198 @@ public class State extends BEASTObject {
         }
     }
 
+    /**
+     * Store the state in binary format, together with the operator schedule tuning.
+     * The state is copied into memory straight away, so the chain can continue
+     * while the copy is written to disk by a background thread. As with storeToFile(),
+     * the file is first written under a temporary name, then moved into place, so
+     * an interrupted write never leaves a partial state file behind.
+     * At most one snapshot waits to be written: when snapshots arrive faster than
+     * they can be written, a waiting snapshot is replaced by the newer one.
+     * A failed write is reported on Log.err, after which the next snapshot is
+     * written as usual; awaitStateFile() throws if the last write failed.
+     *
+     * @param sample chain state number
+     * @param operatorSchedule tuning of the operators in JSON, as produced by OperatorSchedule.toJSON(),
+     * or null if there is none
+     */
+    public void storeToBinaryFile(final long sample, final String operatorSchedule) throws IOException {
+        final StateFileSnapshot snapshot = new StateFileSnapshot(stateFileName, toBinary(sample, operatorSchedule));
+        synchronized (stateFileLock) {
+            pendingStateFile = snapshot;
+            if (stateFileWriter == null) {
+                stateFileWriter = new Thread(this::writeStateFiles, "state file writer");
+                stateFileWriter.setDaemon(true);
+                stateFileWriter.start();
+            }
+            stateFileLock.notifyAll();
+        }
+    }
+
+    /**
+     * Wait till the last state file passed to storeToBinaryFile() is written,
+     * e.g. at the end of a chain or before exiting.
+     *
+     * @throws IOException if writing the last state file failed
+     */
+    public void awaitStateFile() throws IOException {
+        synchronized (stateFileLock) {
+            try {
+                while (pendingStateFile != null || writingStateFile) {
+                    stateFileLock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (stateFileWriteFailure != null) {
+                throw new IOException(stateFileWriteFailure.getMessage(), stateFileWriteFailure);
+            }
+        }
+    }
+
+    /** body of the stateFileWriter thread **/
+    private void writeStateFiles() {
+        while (true) {
+            final StateFileSnapshot snapshot;
+            synchronized (stateFileLock) {
+                while (pendingStateFile == null) {
+                    try {
+                        stateFileLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                snapshot = pendingStateFile;
+                pendingStateFile = null;
+                writingStateFile = true;
+            }
+            IOException failure = null;
+            try {
+                writeStateFile(snapshot.fileName(), snapshot.bytes());
+            } catch (IOException e) {
+                failure = e;
+                Log.err.println("Failed to write state file " + snapshot.fileName() + ": " + e.getMessage() +
+                        " -- will try again with the next state");
+            }
+            synchronized (stateFileLock) {
+                stateFileWriteFailure = failure;
+                writingStateFile = false;
+                stateFileLock.notifyAll();
+            }
+        }
+    }
+
+    private static void writeStateFile(final String fileName, final byte[] snapshot) throws IOException {
+        final Path newStateFile = Path.of(fileName + ".new");
+        final Path stateFile = Path.of(fileName);
+        Files.write(newStateFile, snapshot);
+        try {
+            Files.move(newStateFile, stateFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(newStateFile, stateFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * convert state to binary format: a header with magic number, version and sample,
+     * followed by the ID and toBinary() representation of every state node, each
+     * prefixed by its length so that unknown state nodes can be skipped when restoring,
+     * and finally the operator schedule.
+     */
+    public byte[] toBinary(final long sample, final String operatorSchedule) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(BINARY_STATE_MAGIC);
+        out.writeInt(BINARY_STATE_VERSION);
+        out.writeLong(sample);
+        out.writeInt(stateNode.length);
+        final ByteArrayOutputStream nodeBytes = new ByteArrayOutputStream();
+        final DataOutputStream nodeOut = new DataOutputStream(nodeBytes);
+        for (final StateNode node : stateNode) {
+            nodeBytes.reset();
+            node.toBinary(nodeOut);
+            nodeOut.flush();
+            StateNode.writeString(out, node.getID() == null ? "" : node.getID());
+            out.writeInt(nodeBytes.size());
+            nodeBytes.writeTo(out);
+        }
+        out.writeBoolean(operatorSchedule != null);
+        if (operatorSchedule != null) {
+            StateNode.writeString(out, operatorSchedule);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * restore state from a file written by storeToBinaryFile() *
+     */
+    private void restoreFromBinaryFile() throws IOException {
+        try (DataInputStream in = openBinaryStateFile(stateFileName)) {
+            final int nodeCount = in.readInt();
+            for (int k = 0; k < nodeCount; k++) {
+                final String id = StateNode.readString(in);
+                final byte[] nodeBytes = new byte[in.readInt()];
+                in.readFully(nodeBytes);
+                int stateNodeIndex = 0;
+                while (stateNodeIndex < stateNode.length && !id.equals(stateNode[stateNodeIndex].getID())) {
+                    stateNodeIndex++;
+                }
+                if (stateNodeIndex < stateNode.length) {
+                    final StateNode stateNode2 = stateNode[stateNodeIndex].copy();
+                    stateNode2.fromBinary(new DataInputStream(new ByteArrayInputStream(nodeBytes)));
+                    stateNode[stateNodeIndex].assignFromFragile(stateNode2);
+                } else {
+                    Log.warning.println("Cannot restore statenode id " + id + " -- item is ignored");
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the file exists and was written by storeToBinaryFile()
+     */
+    public static boolean isBinaryStateFile(final String fileName) {
+        try (InputStream in = new FileInputStream(fileName)) {
+            final byte[] magic = new byte[4];
+            return in.readNBytes(magic, 0, 4) == 4 &&
+                    ((magic[0] & 0xff) << 24 | (magic[1] & 0xff) << 16 | (magic[2] & 0xff) << 8 | (magic[3] & 0xff)) == BINARY_STATE_MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the operator schedule stored in a binary state file, or null if there is none
+     */
+    public static String readOperatorSchedule(final String fileName) throws IOException {
+        try (DataInputStream in = openBinaryStateFile(fileName)) {
+            final int nodeCount = in.readInt();
+            for (int k = 0; k < nodeCount; k++) {
+                StateNode.readString(in);
+                in.skipNBytes(in.readInt());
+            }
+            return in.readBoolean() ? StateNode.readString(in) : null;
+        }
+    }
+
+    /** opens a binary state file and reads the header, leaving the stream at the state node count **/
+    private static DataInputStream openBinaryStateFile(final String fileName) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(Path.of(fileName))));
+        if (in.readInt() != BINARY_STATE_MAGIC) {
+            throw new IOException("File " + fileName + " is not a binary state file");
+        }
+        final int version = in.readInt();
+        if (version > BINARY_STATE_VERSION) {
+            throw new IOException("State file " + fileName + " has version " + version +
+                    ", but only versions up to " + BINARY_STATE_VERSION + " can be read. Use a newer version of BEAST to resume.");
+        }
+        // sample number
+        in.readLong();
+        return in;
+    }
+
     @Override
     public String toString() {
         if (stateNode == null) {
@@ -548,178 +749,142 @@ public class State extends BEASTObject {
                 Log.warning.println("\nWARNING: StateNode (" + stateNode[i].getID() + ") found that has no effect on posterior!\n");
             }
         }
+        sortCalculationNodes();
+        calcNodePathCache.clear();
     } // setPosterior
 
+    /**
+     * Collect all CalculationNodes on a path from any StateNode to the posterior
+     * in topological order, and record for each of these the indices of its outputs.
+     */
+    private void sortCalculationNodes() {
+        // collect calculation nodes reachable from state nodes
+        final List<CalculationNode> reachable = new ArrayList<>();
+        final Map<CalculationNode, Integer> index = new HashMap<>();
+        for (final List<CalculationNode> outputs : stateNodeOutputs) {
+            for (final CalculationNode node : outputs) {
+                if (!index.containsKey(node)) {
+                    index.put(node, reachable.size());
+                    reachable.add(node);
+                }
+            }
+        }
+        for (int k = 0; k < reachable.size(); k++) {
+            for (final BEASTInterface output : outputMap.get(reachable.get(k))) {
+                if (output instanceof CalculationNode) {
+                    final CalculationNode calcNode = (CalculationNode) output;
+                    if (!index.containsKey(calcNode)) {
+                        index.put(calcNode, reachable.size());
+                        reachable.add(calcNode);
+                    }
+                } else {
+                    throw new RuntimeException("DEVELOPER ERROR: found a"
+                            + " non-CalculatioNode ("
+                            +output.getClass().getName()
+                            +") on path between StateNode and Runnable");
+                }
+            }
+        }
+
+        // topological sort (Kahn's algorithm), keeping the order in which nodes were found where possible
+        final int n = reachable.size();
+        final int[][] outputs = new int[n][];
+        final int[] inputCount = new int[n];
+        for (int k = 0; k < n; k++) {
+            final List<BEASTInterface> list = outputMap.get(reachable.get(k));
+            outputs[k] = new int[list.size()];
+            for (int j = 0; j < list.size(); j++) {
+                outputs[k][j] = index.get(list.get(j));
+                inputCount[outputs[k][j]]++;
+            }
+        }
+        final int[] order = new int[n];
+        final int[] position = new int[n];
+        int head = 0, tail = 0;
+        for (int k = 0; k < n; k++) {
+            if (inputCount[k] == 0) {
+                order[tail++] = k;
+            }
+        }
+        while (head < tail) {
+            final int k = order[head++];
+            for (final int j : outputs[k]) {
+                if (--inputCount[j] == 0) {
+                    order[tail++] = j;
+                }
+            }
+        }
+        if (tail < n) {
+            throw new RuntimeException("DEVELOPER ERROR: cycle found in graph of CalculationNodes");
+        }
+
+        sortedCalcNodes = new CalculationNode[n];
+        for (int k = 0; k < n; k++) {
+            sortedCalcNodes[k] = reachable.get(order[k]);
+            position[order[k]] = k;
+        }
+        calcNodeOutputs = new int[n][];
+        for (int k = 0; k < n; k++) {
+            final int[] o = outputs[order[k]];
+            calcNodeOutputs[k] = new int[o.length];
+            for (int j = 0; j < o.length; j++) {
+                calcNodeOutputs[k][j] = position[o[j]];
+            }
+        }
+        stateNodeCalcNodeOutputs = new int[stateNode.length][];
+        for (int i = 0; i < stateNode.length; i++) {
+            stateNodeCalcNodeOutputs[i] = new int[stateNodeOutputs[i].size()];
+            for (int j = 0; j < stateNodeOutputs[i].size(); j++) {
+                stateNodeCalcNodeOutputs[i][j] = position[index.get(stateNodeOutputs[i].get(j))];
+            }
+        }
+        isOnPath = new boolean[n];
+    } // sortCalculationNodes
+
     /**
      * return current set of calculation nodes based on the set of StateNodes that have changed *
      */
     public List<CalculationNode> getCurrentCalculationNodes() {
-        List<CalculationNode> calcNodes = trie.get(nrOfChangedStateNodes);
+        changedStateNodeKey.clear();
+        for (int k = 0; k < nrOfChangedStateNodes; k++) {
+            changedStateNodeKey.set(changeStateNodes[k]);
+        }
+        List<CalculationNode> calcNodes = calcNodePathCache.get(changedStateNodeKey);
         if (calcNodes != null) {
             // the list is pre-calculated
             return calcNodes;
         }
         // we need to calculate the list of CalculationNodes now
-        try {
-            calcNodes = calculateCalcNodePath();
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
-        }
-
-        if (trieSize < TRIE_SIZE_LIMIT) {
-        	trie.set(calcNodes, nrOfChangedStateNodes);
-        	trieSize++;
-        } else {
-        	if (trieSize == TRIE_SIZE_LIMIT) {
-        		Log.debug("Trie size limit reached");
-        		trieSize++;
-        	}
-        }
-//    	System.err.print(java.util.Arrays.toString(changeStateNodes) + ":");
-//    	for (CalculationNode node : calcNodes) {
-//    		Log.warning.print(node.getID() + " ");
-//    	}
-//    	System.err.println();
-
+        calcNodes = calculateCalcNodePath();
+        calcNodePathCache.put((BitSet) changedStateNodeKey.clone(), calcNodes);
         return calcNodes;
     } // getCurrentCalculationNodes
 
 
     /**
      * Collect all CalculationNodes on a path from any StateNode that is changed (as
-     * indicated by m_changedStateNodeCode) to the posterior. Return the list in
-     * partial order as determined by the BEASTObjects input relations.
-     * @throws IllegalAccessException 
-     * @throws IllegalArgumentException 
-     */
-    private List<CalculationNode> calculateCalcNodePath() throws IllegalArgumentException, IllegalAccessException {
-    	if (experimental) {
-    		return calculateCalcNodePath2();
-    	}
-    	
-        final List<CalculationNode> calcNodes = new ArrayList<>();
-//    	for (int i = 0; i < stateNode.length; i++) {
-//    		if (m_changedStateNodeCode.get(i)) {
-        for (int k = 0; k < nrOfChangedStateNodes; k++) {
-            int i = changeStateNodes[k];
-            // go grab the path to the Runnable
-            // first the outputs of the StateNodes that is changed
-            boolean progress = false;
-            for (CalculationNode node : stateNodeOutputs[i]) {
-                if (!calcNodes.contains(node)) {
-                    calcNodes.add(node);
-                    progress = true;
-                }
-            }
-            // next the path following the outputs
-            while (progress) {
-                progress = false;
-                // loop over beastObjects till no more beastObjects can be added
-                // efficiency is no issue here, assuming the graph remains 
-                // constant
-                for (int calcNodeIndex = 0; calcNodeIndex < calcNodes.size(); calcNodeIndex++) {
-                    CalculationNode node = calcNodes.get(calcNodeIndex);
-                    for (BEASTInterface output : outputMap.get(node)) {
-                        if (output instanceof CalculationNode) {
-                            final CalculationNode calcNode = (CalculationNode) output;
-                            if (!calcNodes.contains(calcNode)) {
-                                calcNodes.add(calcNode);
-                                progress = true;
-                            }
-                        } else {
-                            throw new RuntimeException("DEVELOPER ERROR: found a"
-                                    + " non-CalculatioNode ("
-                                    +output.getClass().getName()
-                                    +") on path between StateNode and Runnable");
-                        }
-                    }
-                }
-            }
-//    		}
-        }
-
-        // put calc nodes in partial order
-        for (int i = 0; i < calcNodes.size(); i++) {
-            CalculationNode node = calcNodes.get(i);
-            List<BEASTInterface> inputList = node.listActiveBEASTObjects();
-            for (int j = calcNodes.size() - 1; j > i; j--) {
-                if (inputList.contains(calcNodes.get(j))) {
-                    // swap
-                    final CalculationNode node2 = calcNodes.get(j);
-                    calcNodes.set(j, node);
-                    calcNodes.set(i, node2);
-                    j = 0;
-                    i--;
-                }
-            }
-        }
-
-        return calcNodes;
-    } // calculateCalcNodePath
-
-    /** optimised version of calculateCalcNodePath -- needs testing **/
-    private List<CalculationNode> calculateCalcNodePath2() {
-        final List<CalculationNode> calcNodes = new ArrayList<>();
-        final Set<CalculationNode> seen = new HashSet<>();
-        
-        boolean progress = false;
-        for (int k = 0; k < nrOfChangedStateNodes; k++) {
-            int i = changeStateNodes[k];
-            // go grab the path to the Runnable
-            // first the outputs of the StateNodes that is changed
-            for (CalculationNode node : stateNodeOutputs[i]) {
-                if (!seen.contains(node)) {
-                	calcNodes.add(node);
-                    seen.add(node);
-                    progress = true;
-                }
-            }
-        }
-        
-        // next the path following the outputs
-        if (progress) {
-            progress = false;
-            // loop over beastObjects till no more beastObjects can be added
-            // efficiency is no issue here, assuming the graph remains 
-            // constant
-            for (int calcNodeIndex = 0; calcNodeIndex < calcNodes.size(); calcNodeIndex++) {
-                CalculationNode node = calcNodes.get(calcNodeIndex);
-                for (BEASTInterface output : outputMap.get(node)) {
-                    if (output instanceof CalculationNode) {
-                        final CalculationNode calcNode = (CalculationNode) output;
-                        if (!seen.contains(calcNode)) {
-                            calcNodes.add(calcNode);
-                            seen.add(calcNode);
-                            progress = true;
-                        }
-                    } else {
-                        throw new RuntimeException("DEVELOPER ERROR: found a"
-                                + " non-CalculatioNode ("
-                                +output.getClass().getName()
-                                +") on path between StateNode and Runnable");
-                    }
-                }
+     * indicated by changedStateNodeKey) to the posterior. Since sortedCalcNodes is in topological
+     * order, a single pass over sortedCalcNodes suffices, and the list is in partial order as
+     * determined by the BEASTObjects input relations.
+     */
+    private List<CalculationNode> calculateCalcNodePath() {
+        for (int i = changedStateNodeKey.nextSetBit(0); i >= 0; i = changedStateNodeKey.nextSetBit(i + 1)) {
+            for (final int k : stateNodeCalcNodeOutputs[i]) {
+                isOnPath[k] = true;
             }
         }
-
-        // put calc nodes in partial order
-        for (int i = calcNodes.size()-1; i > 0; i--) {
-            CalculationNode node = calcNodes.get(i);
-            Set<BEASTInterface> outputs = node.getOutputs();
-            for (int j = 0; j < i; j++) {
-                if (outputs.contains(calcNodes.get(j))) {
-                    // swap
-                    final CalculationNode node2 = calcNodes.get(j);
-                    calcNodes.set(j, node);
-                    calcNodes.set(i, node2);
-                    i++;
-                    break;
+        final List<CalculationNode> path = new ArrayList<>();
+        for (int k = 0; k < sortedCalcNodes.length; k++) {
+            if (isOnPath[k]) {
+                path.add(sortedCalcNodes[k]);
+                for (final int j : calcNodeOutputs[k]) {
+                    isOnPath[j] = true;
                 }
+                isOnPath[k] = false;
             }
         }
-        return calcNodes;
-	}
+        return path;
+    } // calculateCalcNodePath
 
 	public double robustlyCalcPosterior(final Distribution posterior) {
         store(-1);
@@ -1,9 +1,17 @@
 package beast.base.inference;
 
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
 import beast.base.core.BEASTInterface;
@@ -149,6 +157,47 @@ public abstract class StateNode extends CalculationNode implements Loggable, Clo
      */
     public abstract void fromXML(Node node);
 
+    /**
+     * stores a state node in binary format, to be restored by fromBinary().
+     * By default, this writes the XML representation produced by toXML(), so
+     * state nodes only need to override this (and fromBinary()) if a more
+     * compact representation is available.
+     */
+    public void toBinary(DataOutput out) throws IOException {
+        writeString(out, toXML());
+    }
+
+    /**
+     * for restoring a state that was stored using toBinary() above.
+     * This is called on a copy of the state node, which is assigned
+     * to the state node through assignFromFragile() afterwards.
+     */
+    public void fromBinary(DataInput in) throws IOException {
+        final String xml = readString(in);
+        try {
+            final Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                    .parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+            doc.normalize();
+            fromXML(doc.getDocumentElement());
+        } catch (Exception e) {
+            throw new IOException("Cannot restore statenode " + getID() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /** write a string of arbitrary length, unlike DataOutput.writeUTF() which is limited to 64K **/
+    public static void writeString(DataOutput out, String str) throws IOException {
+        final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** read a string written by writeString() **/
+    public static String readString(DataInput in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
 
 //    /**
 //     * @return true if this node is acting as a random variable, false if this node is fixed and effectively data.
@@ -4,6 +4,9 @@ package beast.base.inference.parameter;
 import beast.base.core.Description;
 import beast.base.core.Input;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.PrintStream;
 
 
@@ -94,6 +97,40 @@ public class IntegerParameter extends Parameter.Base<Integer> {
     }
 
 
+    /**
+     * Writes the same information as toString(), as primitives.
+     * Subclasses, which may keep more state, use the default representation.
+     */
+    @Override
+    public void toBinary(final DataOutput out) throws IOException {
+        if (getClass() != IntegerParameter.class) {
+            super.toBinary(out);
+            return;
+        }
+        out.writeInt(values.length);
+        out.writeInt(minorDimension);
+        out.writeInt(m_fLower);
+        out.writeInt(m_fUpper);
+        for (final Integer value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    @Override
+    public void fromBinary(final DataInput in) throws IOException {
+        if (getClass() != IntegerParameter.class) {
+            super.fromBinary(in);
+            return;
+        }
+        values = new Integer[in.readInt()];
+        minorDimension = in.readInt();
+        setLower(in.readInt());
+        setUpper(in.readInt());
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+    }
+
     @Override
     void fromXML(int dimension, String lower, String upper, String[] valueStrings) {
         setLower(Integer.parseInt(lower));
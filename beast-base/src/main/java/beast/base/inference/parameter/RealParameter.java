@@ -5,6 +5,9 @@ import beast.base.core.Description;
 import beast.base.core.Input;
 import beast.base.inference.Scalable;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.PrintStream;
 
 /**
@@ -125,6 +128,40 @@ public class RealParameter extends Parameter.Base<Double> implements Scalable {
         return sum;
     }
 
+    /**
+     * Writes the same information as toString(), as primitives.
+     * Subclasses, which may keep more state, use the default representation.
+     */
+    @Override
+    public void toBinary(final DataOutput out) throws IOException {
+        if (getClass() != RealParameter.class) {
+            super.toBinary(out);
+            return;
+        }
+        out.writeInt(values.length);
+        out.writeInt(minorDimension);
+        out.writeDouble(m_fLower);
+        out.writeDouble(m_fUpper);
+        for (final Double value : values) {
+            out.writeDouble(value);
+        }
+    }
+
+    @Override
+    public void fromBinary(final DataInput in) throws IOException {
+        if (getClass() != RealParameter.class) {
+            super.fromBinary(in);
+            return;
+        }
+        values = new Double[in.readInt()];
+        minorDimension = in.readInt();
+        setLower(in.readDouble());
+        setUpper(in.readDouble());
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readDouble();
+        }
+    }
+
     @Override
     void fromXML(final int dimension, final String lower, final String upper, final String[] valuesString) {
         setLower(Double.parseDouble(lower));
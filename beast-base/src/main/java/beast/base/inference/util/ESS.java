@@ -2,6 +2,7 @@ package beast.base.inference.util;
 
 import beast.base.core.*;
 import beast.base.core.Input.Validate;
+import beast.base.trace.AutoCorrelation;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
@@ -157,102 +158,36 @@ public class ESS extends BEASTObject implements Loggable {
         return trace.length / (ACT(trace, sampleInterval) / sampleInterval);
     }
 
+    public static double calcESS(double[] trace) {
+        return AutoCorrelation.analysis(trace, MAX_LAG).getESS();
+    }
+
+    /**
+     * Autocovariances are calculated by FFT, or by AutoCorrelation.getDefaultMethod() in general,
+     * so the result can differ from earlier versions by rounding only.
+     */
     public static double ACT(Double[] trace, int sampleInterval) {
-        /** sum of trace, excluding burn-in **/
-        double sum = 0.0;
-        /** keep track of sums of trace(i)*trace(i_+ lag) for all lags, excluding burn-in  **/
-        double[] squareLaggedSums = new double[MAX_LAG];
-        double[] autoCorrelation = new double[MAX_LAG];
-        for (int i = 0; i < trace.length; i++) {
-            sum += trace[i];
-            // calculate mean
-            final double mean = sum / (i + 1);
+        return ACT(toPrimitive(trace), sampleInterval);
+    }
 
-            // calculate auto correlation for selected lag times
-            // sum1 = \sum_{start ... totalSamples-lag-1} trace
-            double sum1 = sum;
-            // sum2 = \sum_{start+lag ... totalSamples-1} trace
-            double sum2 = sum;
-            for (int lagIndex = 0; lagIndex < Math.min(i + 1, MAX_LAG); lagIndex++) {
-                squareLaggedSums[lagIndex] = squareLaggedSums[lagIndex] + trace[i - lagIndex] * trace[i];
-                // The following line is the same approximation as in Tracer
-                // (valid since mean *(samples - lag), sum1, and sum2 are approximately the same)
-                // though a more accurate estimate would be
-                // autoCorrelation[lag] = m_fSquareLaggedSums.get(lag) - sum1 * sum2
-                autoCorrelation[lagIndex] = squareLaggedSums[lagIndex] - (sum1 + sum2) * mean + mean * mean * (i + 1 - lagIndex);
-                autoCorrelation[lagIndex] /= (i + 1 - lagIndex);
-                sum1 -= trace[i - lagIndex];
-                sum2 -= trace[lagIndex];
-            }
-        }
+    public static double ACT(double[] trace, int sampleInterval) {
+        return AutoCorrelation.analysis(trace, MAX_LAG).getACT(sampleInterval);
+    }
 
-        final int maxLag = Math.min(trace.length, MAX_LAG);
-        double integralOfACFunctionTimes2 = 0.0;
-        for (int lagIndex = 0; lagIndex < maxLag; lagIndex++) //{
-            if (lagIndex == 0) //{
-                integralOfACFunctionTimes2 = autoCorrelation[0];
-            else if (lagIndex % 2 == 0)
-                // fancy stopping criterion - see main comment in Tracer code of BEAST 1
-                if (autoCorrelation[lagIndex - 1] + autoCorrelation[lagIndex] > 0) //{
-                    integralOfACFunctionTimes2 += 2.0 * (autoCorrelation[lagIndex - 1] + autoCorrelation[lagIndex]);
-                else
-                    // stop
-                    break;
-        //}
-        //}
-        //}
+    public static double stdErrorOfMean(Double[] trace, int sampleInterval) {
+        return stdErrorOfMean(toPrimitive(trace), sampleInterval);
+    }
 
-        // auto correlation time
-        return sampleInterval * integralOfACFunctionTimes2 / autoCorrelation[0];
+    public static double stdErrorOfMean(double[] trace, int sampleInterval) {
+        return AutoCorrelation.analysis(trace, MAX_LAG).getStdErrorOfMean();
     }
 
-    public static double stdErrorOfMean(Double[] trace, int sampleInterval) {
-        /** sum of trace, excluding burn-in **/
-        double sum = 0.0;
-        /** keep track of sums of trace(i)*trace(i_+ lag) for all lags, excluding burn-in  **/
-        double[] squareLaggedSums = new double[MAX_LAG];
-        double[] autoCorrelation = new double[MAX_LAG];
+    private static double[] toPrimitive(Double[] trace) {
+        double[] values = new double[trace.length];
         for (int i = 0; i < trace.length; i++) {
-            sum += trace[i];
-            // calculate mean
-            final double mean = sum / (i + 1);
-
-            // calculate auto correlation for selected lag times
-            // sum1 = \sum_{start ... totalSamples-lag-1} trace
-            double sum1 = sum;
-            // sum2 = \sum_{start+lag ... totalSamples-1} trace
-            double sum2 = sum;
-            for (int lagIndex = 0; lagIndex < Math.min(i + 1, MAX_LAG); lagIndex++) {
-                squareLaggedSums[lagIndex] = squareLaggedSums[lagIndex] + trace[i - lagIndex] * trace[i];
-                // The following line is the same approximation as in Tracer
-                // (valid since mean *(samples - lag), sum1, and sum2 are approximately the same)
-                // though a more accurate estimate would be
-                // autoCorrelation[lag] = m_fSquareLaggedSums.get(lag) - sum1 * sum2
-                autoCorrelation[lagIndex] = squareLaggedSums[lagIndex] - (sum1 + sum2) * mean + mean * mean * (i + 1 - lagIndex);
-                autoCorrelation[lagIndex] /= (i + 1 - lagIndex);
-                sum1 -= trace[i - lagIndex];
-                sum2 -= trace[lagIndex];
-            }
+            values[i] = trace[i];
         }
-
-        final int maxLag = Math.min(trace.length, MAX_LAG);
-        double integralOfACFunctionTimes2 = 0.0;
-        for (int lagIndex = 0; lagIndex < maxLag; lagIndex++) //{
-            if (lagIndex == 0) //{
-                integralOfACFunctionTimes2 = autoCorrelation[0];
-            else if (lagIndex % 2 == 0)
-                // fancy stopping criterion - see main comment in Tracer code of BEAST 1
-                if (autoCorrelation[lagIndex - 1] + autoCorrelation[lagIndex] > 0) //{
-                    integralOfACFunctionTimes2 += 2.0 * (autoCorrelation[lagIndex - 1] + autoCorrelation[lagIndex]);
-                else
-                    // stop
-                    break;
-        //}
-        //}
-        //}
-
-        // auto correlation time
-        return Math.sqrt(integralOfACFunctionTimes2 / trace.length);
+        return values;
     }
 
 } // class ESS
@@ -63,4 +63,59 @@ public class CholeskyDecomposition {
 
 	}
 
+	/**
+	 * Decompose the n x n matrix a, stored by rows, into the lower triangular
+	 * l, stored by rows, without allocating. Gives the same result as the constructor.
+	 * @return whether a is symmetric positive definite
+	 */
+	public static boolean decompose(double[] a, double[] l, int n) {
+		boolean isspd = true;
+		for (int j = 0; j < n; j++) {
+			final int rowj = j * n;
+			double d = 0.0;
+			for (int k = 0; k < j; k++) {
+				final int rowk = k * n;
+				double s = 0.0;
+				for (int i = 0; i < k; i++) {
+					s += l[rowk + i] * l[rowj + i];
+				}
+				l[rowj + k] = s = (a[rowj + k] - s) / l[rowk + k];
+				d = d + s * s;
+				isspd = isspd & (a[rowk + j] == a[rowj + k]);
+			}
+			d = a[rowj + j] - d;
+			isspd = isspd & (d > 0.0);
+			l[rowj + j] = Math.sqrt(Math.max(d, 0.0));
+			for (int k = j + 1; k < n; k++) {
+				l[rowj + k] = 0.0;
+			}
+		}
+		return isspd;
+	}
+
+	/**
+	 * Rank-one update in O(n^2) of the upper triangular factor u of A = u^T u,
+	 * stored by rows (that is, the transpose of L stored by rows), to the factor of A + x x^T.
+	 * @param x is overwritten
+	 * @return false if the update failed, e.g. because u is singular, in which case u is invalid
+	 */
+	public static boolean update(double[] u, double[] x, int n) {
+		for (int k = 0; k < n; k++) {
+			final int rowk = k * n;
+			final double ukk = u[rowk + k];
+			final double r = Math.sqrt(ukk * ukk + x[k] * x[k]);
+			if (!(ukk > 0.0) || !(r < Double.POSITIVE_INFINITY)) {
+				return false;
+			}
+			final double c = r / ukk;
+			final double s = x[k] / ukk;
+			u[rowk + k] = r;
+			for (int i = k + 1; i < n; i++) {
+				u[rowk + i] = (u[rowk + i] + s * x[i]) / c;
+				x[i] = c * x[i] - s * u[rowk + i];
+			}
+		}
+		return true;
+	}
+
 }
@@ -117,7 +117,9 @@ public class BeastMain {
                         // RRB: not sure what effect this option has
                         new Arguments.IntegerOption("errors", "Specify maximum number of numerical errors before stopping"),
                         new Arguments.IntegerOption("threads", "The number of computational threads to use (default 1), -1 for number of cores"),
+                        new Arguments.Option("virtual_threads", "Use virtual threads instead of platform threads for threaded calculations"),
                         new Arguments.Option("java", "Use Java only, no native implementations"),
+                        new Arguments.Option("java_single", "Use Java only, with single precision partials"),
                         new Arguments.Option("noerr", "Suppress all output to standard error"),
                         new Arguments.StringOption("loglevel", "LEVEL", "error,warning,info,debug,trace"),
                         new Arguments.IntegerOption("instances", "divide site patterns amongst number of threads (use with -threads option)"),
@@ -202,6 +204,11 @@ public class BeastMain {
             useJava = true;
         }
 
+        if (arguments.hasOption("java_single")) {
+            useJava = true;
+            System.setProperty("java.single", "true");
+        }
+
         if (arguments.hasOption("prefix")) {
             fileNamePrefix = arguments.getStringOption("prefix");
         }
@@ -277,6 +284,9 @@ public class BeastMain {
         	threadCount = Runtime.getRuntime().availableProcessors();
         	Log.warning.println("Setting number of threads to " + threadCount);
         }
+        if (arguments.hasOption("virtual_threads")) {
+            System.setProperty("beast.threads.mode", "virtual");
+        }
 
         if (arguments.hasOption("seed")) {
             seed = arguments.getLongOption("seed");
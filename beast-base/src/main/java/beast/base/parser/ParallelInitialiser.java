@@ -0,0 +1,217 @@
+package beast.base.parser;
+
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.commons.rng.simple.RandomSource;
+
+import beast.base.core.BEASTInterface;
+import beast.base.core.Input;
+import beast.base.inference.StateNode;
+import beast.base.inference.StateNodeInitialiser;
+import beast.base.util.Randomizer;
+
+/**
+ * Calls initAndValidate on parsed BEAST objects concurrently where their inputs allow.
+ * <p>
+ * Objects are expected in the order the parser created them, so every object comes after
+ * the objects in its inputs. An object is initialised once all of the objects in its inputs
+ * are initialised, so independent parts of a model, like the alignments and tree likelihoods
+ * of different partitions, are initialised at the same time on a fork-join pool.
+ * <p>
+ * State nodes and state node initialisers are initialised on the calling thread in the
+ * original order, since they may draw random numbers and Randomizer keeps a generator per
+ * thread: this keeps starting states the same as with sequential initialisation.
+ * Other objects may draw random numbers too, so each of them draws from a random number
+ * stream of its own, derived from the seed and its position in the list. Their draws then
+ * do not depend on which worker thread initialises them, or in which order.
+ */
+class ParallelInitialiser {
+
+	/** thrown when initAndValidate fails, identifying the object by its position in the list **/
+	static class InitialisationException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		private final int index;
+
+		InitialisationException(int index, Throwable cause) {
+			super(cause.getMessage(), cause);
+			this.index = index;
+		}
+
+		int getIndex() {
+			return index;
+		}
+	}
+
+	private final List<? extends BEASTInterface> objects;
+	/** indices of objects that have object i as input **/
+	private final List<List<Integer>> dependents;
+	/** number of inputs of object i that are not initialised yet **/
+	private final AtomicIntegerArray pending;
+	private final boolean[] serial;
+	private final ForkJoinPool pool;
+	/** seed of the calling thread, from which the streams of objects initialised on the pool are derived **/
+	private final long seed;
+
+	private final Object lock = new Object();
+	private int finishedCount;
+	private int failedIndex = -1;
+	private Throwable failure;
+
+	private ParallelInitialiser(List<? extends BEASTInterface> objects, int threadCount) {
+		this.objects = objects;
+		final int n = objects.size();
+		dependents = new ArrayList<>(n);
+		pending = new AtomicIntegerArray(n);
+		serial = new boolean[n];
+
+		// object -> position of its last occurrence so far
+		Map<BEASTInterface, Integer> index = new IdentityHashMap<>();
+		for (int i = 0; i < n; i++) {
+			dependents.add(new ArrayList<>());
+			final BEASTInterface o = objects.get(i);
+			List<Integer> inputs = new ArrayList<>();
+			addDependency(index.get(o), inputs);
+			for (Input<?> input : o.getInputs().values()) {
+				final Object value = input.get();
+				if (value instanceof BEASTInterface) {
+					addDependency(index.get(value), inputs);
+				} else if (value instanceof List<?>) {
+					for (Object item : (List<?>) value) {
+						if (item instanceof BEASTInterface) {
+							addDependency(index.get(item), inputs);
+						}
+					}
+				}
+			}
+			for (int j : inputs) {
+				dependents.get(j).add(i);
+			}
+			pending.set(i, inputs.size());
+			serial[i] = o instanceof StateNode || o instanceof StateNodeInitialiser;
+			index.put(o, i);
+		}
+		pool = new ForkJoinPool(threadCount);
+		seed = Randomizer.getSeed();
+	}
+
+	private static void addDependency(Integer i, List<Integer> inputs) {
+		if (i != null && !inputs.contains(i)) {
+			inputs.add(i);
+		}
+	}
+
+	/**
+	 * Call initAndValidate on all objects, using up to threadCount threads.
+	 * When initialisation fails, objects that are not started yet are skipped,
+	 * and the failure with the lowest index is reported.
+	 */
+	static void initAndValidate(List<? extends BEASTInterface> objects, int threadCount) throws InitialisationException {
+		new ParallelInitialiser(objects, threadCount).run();
+	}
+
+	private void run() throws InitialisationException {
+		final int n = objects.size();
+		try {
+			for (int i = 0; i < n; i++) {
+				if (!serial[i] && pending.get(i) == 0) {
+					submit(i);
+				}
+			}
+			for (int i = 0; i < n; i++) {
+				if (serial[i]) {
+					synchronized (lock) {
+						while (pending.get(i) > 0 && failure == null) {
+							lock.wait();
+						}
+						if (failure != null) {
+							break;
+						}
+					}
+					initialise(i);
+				}
+			}
+			synchronized (lock) {
+				while (finishedCount < n && failure == null) {
+					lock.wait();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			fail(-1, e);
+		} finally {
+			pool.shutdown();
+			try {
+				// let objects that are being initialised finish before reporting
+				pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized (lock) {
+			if (failure instanceof Error) {
+				throw (Error) failure;
+			}
+			if (failure != null) {
+				throw new InitialisationException(failedIndex, failure);
+			}
+		}
+	}
+
+	private void submit(int i) {
+		try {
+			pool.execute(() -> {
+				Randomizer.setThreadStream(RandomSource.XO_SHI_RO_256_PP.create(new long[] {seed, i}));
+				try {
+					initialise(i);
+				} finally {
+					Randomizer.setThreadStream(null);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// only after a failure, when the pool is shut down
+		}
+	}
+
+	private void initialise(int i) {
+		synchronized (lock) {
+			if (failure != null) {
+				return;
+			}
+		}
+		try {
+			objects.get(i).initAndValidate();
+		} catch (Throwable e) {
+			fail(i, e);
+			return;
+		}
+		for (int j : dependents.get(i)) {
+			if (pending.decrementAndGet(j) == 0 && !serial[j]) {
+				submit(j);
+			}
+		}
+		synchronized (lock) {
+			finishedCount++;
+			lock.notifyAll();
+		}
+	}
+
+	private void fail(int i, Throwable e) {
+		synchronized (lock) {
+			if (failure == null || (i >= 0 && i < failedIndex)) {
+				failure = e;
+				failedIndex = i;
+			}
+			lock.notifyAll();
+		}
+	}
+
+}
@@ -243,6 +243,10 @@ public class XMLParser {
 	java.util.Map<String,String> parserDefinitions;
 	boolean hasParserDefinitionsFromFile = false;
 
+    public void setParallelInitialisation(boolean parallelInitialisation) {
+        this.parallelInitialisation = parallelInitialisation;
+    }
+
     public HashMap<String, String> getElement2ClassMap() {
         return element2ClassMap;
     }
@@ -256,6 +260,14 @@ public class XMLParser {
      */
     boolean needsInitialisation = true;
 
+    /**
+     * Flag to indicate initAndValidate should be called on independent beast objects
+     * concurrently, using ProgramStatus.m_nThreads threads. Off by default, since not
+     * every initAndValidate is guaranteed to be safe to run alongside others.
+     * Can be switched on by setting the system property beast.parser.parallel to true.
+     */
+    boolean parallelInitialisation = Boolean.valueOf(System.getProperty("beast.parser.parallel"));
+
     /**
      * when parsing XML, missing inputs can be assigned default values through
      * a RequiredInputProvider
@@ -514,6 +526,16 @@ public class XMLParser {
     } // parseTemplate
 
     private void initBEASTObjects() throws XMLParserException {
+    	if (parallelInitialisation && ProgramStatus.m_nThreads > 1) {
+    		try {
+    			ParallelInitialiser.initAndValidate(beastObjectsWaitingToInit, ProgramStatus.m_nThreads);
+    		} catch (ParallelInitialiser.InitialisationException e) {
+    			e.getCause().printStackTrace();
+    			Node node = e.getIndex() >= 0 ? nodesWaitingToInit.get(e.getIndex()) : null;
+    			throw new XMLParserException(node, "validate and intialize error: " + e.getMessage(), 110);
+    		}
+    		return;
+    	}
     	Node node = null;
         try {
         	for (int i = 0; i < beastObjectsWaitingToInit.size(); i++) {
@@ -36,13 +36,10 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.RejectedExecutionException;
 
 import beast.base.core.BEASTInterface;
 import beast.base.core.Description;
+import beast.base.core.EvaluationScheduler;
 import beast.base.core.Input;
 import beast.base.core.Log;
 import beast.base.core.ProgramStatus;
@@ -96,13 +93,12 @@ public class ThreadedTreeLikelihood extends GenericTreeLikelihood {
     /** calculation engine **/
     private TreeLikelihood [] treelikelihood;
 
-    private ExecutorService pool = null;
-    private final List<Callable<Double>> likelihoodCallers = new ArrayList<Callable<Double>>();
+    /** tasks evaluating the likelihoods in parallel, one per thread **/
+    private EvaluationScheduler.Batch batch = null;
 
     
     /** number of threads to use, changes when threading causes problems **/
     private int threadCount;
-    private double [] logPByThread;
 	
 	
 	// specified a set ranges of patterns assigned to each thread
@@ -123,8 +119,6 @@ public class ThreadedTreeLikelihood extends GenericTreeLikelihood {
         if (instanceCount != null && instanceCount.length() > 0) {
         	threadCount = Integer.parseInt(instanceCount);
         }
-        
-        logPByThread = new double[threadCount];
 
     	// sanity check: alignment should have same #taxa as tree
     	if (alignment.getTaxonCount() != treeInput.get().getLeafNodeCount()) {
@@ -152,7 +146,6 @@ public class ThreadedTreeLikelihood extends GenericTreeLikelihood {
     		treelikelihood[0].getOutputs().add(this);
     		likelihoodsInput.get().add(treelikelihood[0]);
     	} else {
-        	pool = Executors.newFixedThreadPool(threadCount);
     		
         	calcPatternPoints(alignment.getSiteCount());
         	for (int i = 0; i < threadCount; i++) {
@@ -185,8 +178,12 @@ public class ThreadedTreeLikelihood extends GenericTreeLikelihood {
                         "scaling", scalingInput.get() + ""
         				);
         		
-        		likelihoodCallers.add(new TreeLikelihoodCaller(treelikelihood[i], i));
         	}
+        	EvaluationScheduler.Task [] tasks = new EvaluationScheduler.Task[threadCount];
+        	for (int i = 0; i < threadCount; i++) {
+        		tasks[i] = treelikelihood[i]::calculateLogP;
+        	}
+        	batch = EvaluationScheduler.getInstance().newBatch(threadCount, tasks);
     	}
     }
     
@@ -282,45 +279,15 @@ public class ThreadedTreeLikelihood extends GenericTreeLikelihood {
 		return logP;
     }
 
-    class TreeLikelihoodCaller implements Callable<Double> {
-        private final TreeLikelihood likelihood;
-        private final int threadNr;
-
-        public TreeLikelihoodCaller(TreeLikelihood likelihood, int threadNr) {
-            this.likelihood = likelihood;
-            this.threadNr = threadNr;
-        }
-
-        public Double call() throws Exception {
-  		  	try {
-	            logPByThread[threadNr] = likelihood.calculateLogP();
-  		  	} catch (Exception e) {
-  		  		System.err.println("Something went wrong in thread " + threadNr);
-				e.printStackTrace();
-				System.exit(0);
-			}
-            return logPByThread[threadNr];
-        }
-
-    }
-
-	
-	
     private double calculateLogPByBeagle() {
-		try {
-			if (threadCount > 1) {
-                pool.invokeAll(likelihoodCallers);
-
-		    	logP = 0;
-		    	for (double f : logPByThread) {
-		    		logP += f;
-		    	}
-			} else {
-				logP = treelikelihood[0].calculateLogP();
-			}
-		} catch (RejectedExecutionException | InterruptedException e) {
-			e.printStackTrace();
-			System.exit(0);
+		if (threadCount > 1) {
+			batch.run();
+	    	logP = 0;
+	    	for (int i = 0; i < threadCount; i++) {
+	    		logP += batch.getResult(i);
+	    	}
+		} else {
+			logP = treelikelihood[0].calculateLogP();
 		}
 		return logP;
 	}
@@ -8,6 +8,7 @@ import beast.base.core.Input.Validate;
 import beast.base.core.Log;
 import beast.base.evolution.alignment.TaxonSet;
 import beast.base.evolution.speciation.SpeciesTreeDistribution;
+import beast.base.evolution.tree.MRCAIndex;
 import beast.base.evolution.tree.MRCAPrior;
 import beast.base.evolution.tree.Node;
 import beast.base.evolution.tree.Tree;
@@ -86,6 +87,10 @@ public class CalibratedYuleModel extends SpeciesTreeDistribution {
     // integer is the "node index" of the taxon in the tree, that is tree.getNode(xclades[i][k]) is the node for the k'th taxon of the i'th point.
     private int[][] xclades;
 
+    // MRCA index of the tree the clades are registered with, and the clade number of xclades[i] in that index
+    private MRCAIndex mrcaIndex;
+    private int[] cladeNrs;
+
     // taxaPartialOrder[i] contains all clades immediately preceding the i'th clade under clade partial ordering.
     // (i'th clade is orderedCalibrations[i]/xclades[i]). clades are given as their index into orderedCalibrations (and so into xclades as well).
     private int[][] taxaPartialOrder;
@@ -104,6 +109,7 @@ public class CalibratedYuleModel extends SpeciesTreeDistribution {
         super.initAndValidate();
 
         type = correctionTypeInput.get();
+        removeClades();
 
         final TreeInterface tree = treeInput.get();
 
@@ -441,10 +447,10 @@ public class CalibratedYuleModel extends SpeciesTreeDistribution {
             final int[] taxk = xclades[k];
             if (taxk.length > 1) {
                 //  find MRCA of taxa
-                c = getCommonAncestor(tree, taxk);
+                c = getCommonAncestor(tree, k);
 
                 // only monophyletics clades can be calibrated
-                if (getLeafCount(c) != taxk.length) {
+                if (!isMonophyletic(tree, k, c)) {
                     return Double.NEGATIVE_INFINITY;
                 }
             } else {
@@ -865,6 +871,44 @@ public class CalibratedYuleModel extends SpeciesTreeDistribution {
         return cur;
     }
 
+    /**
+     * MRCA of the taxa of the k'th calibration. For a Tree, it is looked up in the MRCA index
+     * shared with other clade priors, which only walks the tree again if the topology changed near the clade.
+     */
+    private Node getCommonAncestor(final TreeInterface tree, final int k) {
+        if (!(tree instanceof Tree)) {
+            return getCommonAncestor(tree, xclades[k]);
+        }
+        final MRCAIndex index = ((Tree) tree).getMRCAIndex();
+        if (index != mrcaIndex) {
+            removeClades();
+            cladeNrs = new int[xclades.length];
+            for (int i = 0; i < xclades.length; i++) {
+                cladeNrs[i] = index.addClade(xclades[i]);
+            }
+            mrcaIndex = index;
+        }
+        return index.getMRCA(cladeNrs[k]);
+    }
+
+    /** undo the registration of the calibrated clades in the MRCA index, e.g. before the calibrations change **/
+    private void removeClades() {
+        if (mrcaIndex != null) {
+            for (final int cladeNr : cladeNrs) {
+                mrcaIndex.removeClade(cladeNr);
+            }
+            mrcaIndex = null;
+        }
+    }
+
+    /** @return whether c, as returned by getCommonAncestor(tree, k), is the root of a clade with only the taxa of the k'th calibration **/
+    private boolean isMonophyletic(final TreeInterface tree, final int k, final Node c) {
+        if (tree instanceof Tree && ((Tree) tree).getMRCAIndex() == mrcaIndex) {
+            return mrcaIndex.isMonophyletic(cladeNrs[k]);
+        }
+        return getLeafCount(c) == xclades[k].length;
+    }
+
     /**
      * Count number of leaves in subtree whose root is node.
      *
@@ -901,7 +945,7 @@ public class CalibratedYuleModel extends SpeciesTreeDistribution {
                 final int[] taxk = xclades[k];
                 if (taxk.length > 1) {
                     //  find MRCA of taxa
-                    c = getCommonAncestor(tree, taxk);
+                    c = getCommonAncestor(tree, k);
                 } else {
                     c = tree.getNode(taxk[0]);
                 }
@@ -5,6 +5,7 @@ import beast.base.core.Description;
 import beast.base.core.Input;
 import beast.base.core.Input.Validate;
 import beast.base.evolution.alignment.TaxonSet;
+import beast.base.evolution.tree.MRCAIndex;
 import beast.base.evolution.tree.Node;
 import beast.base.evolution.tree.Tree;
 import beast.base.inference.Distribution;
@@ -64,9 +65,14 @@ public class MRCAPrior extends Distribution {
     public boolean useOriginate = false;
     
     protected boolean initialised = false;
+    // number of the taxon set in the MRCA index of the tree, -1 if not registered yet
+    protected int cladeNr = -1;
+    // index the taxon set is registered in
+    private MRCAIndex mrcaIndex;
 
     @Override
     public void initAndValidate() {
+        removeClade();
         dist = distInput.get();
         tree = treeInput.get();
         final List<String> taxaNames = new ArrayList<>();
@@ -112,8 +118,15 @@ public class MRCAPrior extends Distribution {
     protected boolean [] nodesTraversed;
     protected int nseen;
 
+    /**
+     * Walk up from n1 and n2 till the paths meet, marking the nodes passed in nodesTraversed.
+     * getCommonAncestor() no longer uses this, but looks the MRCA up in {@link MRCAIndex#getMRCA(int)}.
+     */
     protected Node getCommonAncestor(Node n1, Node n2) {
         // assert n1.getTree() == n2.getTree();
+        if (nodesTraversed == null || nodesTraversed.length != tree.getNodeCount()) {
+            nodesTraversed = new boolean[tree.getNodeCount()];
+        }
         if( ! nodesTraversed[n1.getNr()] ) {
             nodesTraversed[n1.getNr()] = true;
             nseen += 1;
@@ -184,19 +197,28 @@ public class MRCAPrior extends Distribution {
         if (!initialised) {
             initialise();
         }
-        nodesTraversed = new boolean[tree.getNodeCount()];
-        Node n = getCommonAncestorInternal();
+        // the index only walks the tree again if the topology changed near the clade
+        final MRCAIndex index = tree.getMRCAIndex();
+        if (cladeNr < 0 || mrcaIndex != index) {
+            removeClade();
+            cladeNr = index.addClade(taxonIndex);
+            mrcaIndex = index;
+        }
+        Node n = index.getMRCA(cladeNr);
+        nseen = index.getPathNodeCount(cladeNr);
+        // as before the index was used, a later walk with getCommonAncestor(n1, n2) starts afresh
+        nodesTraversed = null;
         assert ! (useRoot && !n.isRoot() ) ;
         return n;
     }
 
-    private Node getCommonAncestorInternal() {
-        Node cur = tree.getNode(taxonIndex[0]);
-
-        for (int k = 1; k < taxonIndex.length; ++k) {
-            cur = getCommonAncestor(cur, tree.getNode(taxonIndex[k]));
+    /** undo the registration of the taxon set in the MRCA index, so the index does not keep it up to date any more **/
+    private void removeClade() {
+        if (cladeNr >= 0 && mrcaIndex != null) {
+            mrcaIndex.removeClade(cladeNr);
         }
-        return cur;
+        cladeNr = -1;
+        mrcaIndex = null;
     }
 
     @Override
@@ -288,6 +310,7 @@ public class MRCAPrior extends Distribution {
                 taxonIndex[i] = i;
             }
         }
+        removeClade();
         initialised = true;
  	}
 
@@ -74,6 +74,11 @@ public class Beta extends ScalarDistribution<RealScalar<UnitInterval>, Double> {
         return logP;
     }
 
+    @Override
+    public double logDensity(double[] x, int from, int to, double[] logP) {
+        return logDensity(getApacheDistribution(), x, from, to, logP); // refresh once for all values
+    }
+
     @Override
 	public List<Double> sample() {
         if (sampler == null) {
@@ -3,6 +3,10 @@ package beast.base.spec.inference.distribution;
 import beast.base.core.Description;
 import beast.base.core.Input;
 import beast.base.spec.domain.Domain;
+import beast.base.spec.inference.parameter.IntVectorParam;
+import beast.base.spec.inference.parameter.RealVectorParam;
+import beast.base.spec.type.IntVector;
+import beast.base.spec.type.RealVector;
 import beast.base.spec.type.Scalar;
 import beast.base.spec.type.Vector;
 
@@ -32,6 +36,26 @@ public class IID<V extends Vector<?, T>,
 
     protected ScalarDistribution<?, T> dist;
 
+    // true if the bulk logDensity of dist gives the same densities as dist.calcLogP,
+    // so that elements of real and integer vectors can be evaluated without boxing
+    private boolean bulkDensity;
+    // reused buffers holding the parameter values, resized when the dimension changes
+    private double[] doubleValues;
+    private int[] intValues;
+
+    // log density of every element of param, so that after a proposal only the
+    // elements that changed need to be recalculated
+    private double[] elementLogP;
+    private double[] storedElementLogP;
+    // indices of elementLogP that changed since the last store(), or all of them if allElementsChanged
+    private int[] changedElements;
+    private int changedElementCount;
+    private boolean allElementsChanged = true;
+    // true if param tracks which of its elements changed
+    private boolean tracksDirtyElements;
+    // set in requiresRecalculation() when only elements of param changed
+    private boolean updateDirtyElements = false;
+
     public IID() {}
 
     public IID(V param, ScalarDistribution<?, T> dist) {
@@ -51,6 +75,10 @@ public class IID<V extends Vector<?, T>,
         super.initAndValidate();
         if (param == null)
             throw new IllegalArgumentException("IID requires param, but it is null ! ");
+        // subclasses such as CompoundRealScalarParam do not keep per element dirtiness
+        tracksDirtyElements = param.getClass() == RealVectorParam.class || param.getClass() == IntVectorParam.class;
+        bulkDensity = (param instanceof RealVector<?> || param instanceof IntVector<?>)
+                && hasBulkDensity(dist, param instanceof IntVector<?>);
         // Note: the param dim can be changed after this init,
         // for example, RandomLocalClockModel will reset rates dimension given tree during model init.
     }
@@ -58,10 +86,205 @@ public class IID<V extends Vector<?, T>,
     // when param is vector, dist is univariate, then apply dist to each dim.
     @Override
     public double calculateLogP() {
-        logP = this.calcLogP(param.getElements());
+        final int n = param.size();
+        if (canUpdateDirtyElements(n)) {
+            logP = updateDirtyElements(n);
+            return logP;
+        }
+
+        refresh(); // this make sure distribution parameters are updated if they are sampled during MCMC
+        if (tracksDirtyElements && (elementLogP == null || elementLogP.length != n)) {
+            elementLogP = new double[n];
+        }
+        allElementsChanged = true;
+        if (bulkDensity) {
+            logP = bulkLogP(0, n, tracksDirtyElements ? elementLogP : null);
+            return logP;
+        }
+        logP = 0.0;
+        for (int i = 0; i < n; i++) {
+            final double l = dist.calcLogP(param.get(i));
+            if (tracksDirtyElements) {
+                elementLogP[i] = l;
+            }
+            logP += l;
+        }
         return logP;
     }
 
+    /**
+     * @return whether only the dirty elements of param need to be recalculated,
+     * which is the case during MCMC when the base distribution did not change
+     * and the dimension of param is the same as at the last calculation
+     */
+    private boolean canUpdateDirtyElements(int n) {
+        final boolean canUpdate = updateDirtyElements && elementLogP != null && elementLogP.length == n;
+        updateDirtyElements = false;
+        return canUpdate;
+    }
+
+    private double updateDirtyElements(int n) {
+        if (changedElements == null || changedElements.length != n) {
+            changedElements = new int[n];
+            allElementsChanged = true;
+        }
+        double logP = this.logP;
+        for (int i = 0; i < n; i++) {
+            if (isDirty(i)) {
+                if (bulkDensity) {
+                    // evaluate the run of dirty elements starting at i at once
+                    int end = i + 1;
+                    while (end < n && isDirty(end)) {
+                        end++;
+                    }
+                    for (int k = i; k < end; k++) {
+                        logP -= elementLogP[k];
+                    }
+                    logP += bulkLogP(i, end, elementLogP);
+                    for (int k = i; k < end; k++) {
+                        elementChanged(k, n);
+                    }
+                    i = end - 1;
+                } else {
+                    final double l = dist.calcLogP(param.get(i));
+                    logP += l - elementLogP[i];
+                    elementLogP[i] = l;
+                    elementChanged(i, n);
+                }
+            }
+        }
+        if (Double.isNaN(logP)) {
+            // an element going from or to -infinity makes the running sum NaN
+            logP = 0.0;
+            for (double l : elementLogP) {
+                logP += l;
+            }
+        }
+        return logP;
+    }
+
+    private void elementChanged(int i, int n) {
+        if (!allElementsChanged) {
+            if (changedElementCount == n) {
+                allElementsChanged = true;
+            } else {
+                changedElements[changedElementCount++] = i;
+            }
+        }
+    }
+
+    /**
+     * @return sum of log densities of elements from (inclusive) to to (exclusive) of param,
+     * which are read as primitives, also stored in logP unless it is null
+     */
+    private double bulkLogP(int from, int to, double[] logP) {
+        final int n = param.size();
+        if (param instanceof RealVector<?> vector) {
+            if (doubleValues == null || doubleValues.length != n) {
+                doubleValues = new double[n];
+            }
+            for (int i = from; i < to; i++) {
+                doubleValues[i] = vector.get(i);
+            }
+            return dist.logDensity(doubleValues, from, to, logP);
+        }
+        final IntVector<?> vector = (IntVector<?>) param;
+        if (intValues == null || intValues.length != n) {
+            intValues = new int[n];
+        }
+        for (int i = from; i < to; i++) {
+            intValues[i] = vector.get(i);
+        }
+        return dist.logDensity(intValues, from, to, logP);
+    }
+
+    /**
+     * @return whether the bulk logDensity of dist is at least as specialised as its calcLogP(T),
+     * so it cannot bypass a subclass that overrides only calcLogP(T)
+     */
+    static boolean hasBulkDensity(ScalarDistribution<?, ?> dist, boolean integer) {
+        final Class<?> calcLogP = declaringClass(dist.getClass(), "calcLogP", Object.class);
+        if (calcLogP == ScalarDistribution.class) {
+            return true;
+        }
+        Class<?> bulk = declaringClass(dist.getClass(), "logDensity",
+                integer ? int[].class : double[].class, int.class, int.class, double[].class);
+        if (bulk == ScalarDistribution.class) {
+            // the default bulk method evaluates every element with logDensity(double)
+            bulk = declaringClass(dist.getClass(), "logDensity", double.class);
+        }
+        return calcLogP.isAssignableFrom(bulk);
+    }
+
+    private static Class<?> declaringClass(Class<?> cls, String name, Class<?>... parameterTypes) {
+        for (Class<?> c = cls; c != null; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod(name, parameterTypes);
+                return c;
+            } catch (NoSuchMethodException e) {
+                // not declared here, try the superclass
+            }
+        }
+        throw new IllegalArgumentException("No method " + name + " in " + cls.getName());
+    }
+
+    private boolean isDirty(int i) {
+        if (param instanceof RealVectorParam<?> p) {
+            return p.isDirty(i);
+        }
+        return ((IntVectorParam<?>) param).isDirty(i);
+    }
+
+    @Override
+    protected boolean requiresRecalculation() {
+        // if the base distribution is not dirty, only elements of param changed
+        updateDirtyElements = tracksDirtyElements && !dist.somethingIsDirty();
+        return true;
+    }
+
+    @Override
+    public void store() {
+        if (elementLogP != null) {
+            // only the elements that changed since the last store need to be copied
+            if (storedElementLogP == null || storedElementLogP.length != elementLogP.length) {
+                storedElementLogP = elementLogP.clone();
+            } else if (allElementsChanged) {
+                System.arraycopy(elementLogP, 0, storedElementLogP, 0, elementLogP.length);
+            } else {
+                for (int k = 0; k < changedElementCount; k++) {
+                    final int i = changedElements[k];
+                    storedElementLogP[i] = elementLogP[i];
+                }
+            }
+        }
+        allElementsChanged = false;
+        changedElementCount = 0;
+        super.store();
+    }
+
+    @Override
+    public void restore() {
+        if (allElementsChanged) {
+            final double[] tmp = elementLogP;
+            elementLogP = storedElementLogP;
+            storedElementLogP = tmp;
+        } else {
+            for (int k = 0; k < changedElementCount; k++) {
+                final int i = changedElements[k];
+                elementLogP[i] = storedElementLogP[i];
+            }
+            changedElementCount = 0;
+        }
+        updateDirtyElements = false;
+        super.restore();
+    }
+
+    @Override
+    protected void accept() {
+        updateDirtyElements = false;
+        super.accept();
+    }
+
     @Override
 	public void refresh() {
         dist.refresh();
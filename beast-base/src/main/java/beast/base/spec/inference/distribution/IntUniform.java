@@ -77,6 +77,11 @@ public class IntUniform extends ScalarDistribution<IntScalar<Int>, Integer> { //
         return logP;
     }
 
+    @Override
+    public double logDensity(int[] x, int from, int to, double[] logP) {
+        return logProbability(getApacheDistribution(), x, from, to, logP); // refresh once for all values
+    }
+
     @Override
 	public List<Integer> sample() {
         if (sampler == null) {
@@ -101,9 +101,104 @@ public abstract class ScalarDistribution<S extends Scalar<?,T>, T>
      * @return The log-scale pdf at point x.
      */
     public double logDensity(double x) {
+    	Object dist = getApacheDistribution();
+
+    	if (dist instanceof ContinuousDistribution cd) {
+    		return cd.logDensity(x);
+    	} else  if (dist instanceof DiscreteDistribution dd) {
+    		return dd.logProbability((int) x);
+    	}
     	return Math.log(density(x));
     }
 
+    /**
+     * Sum of log densities over a range of values, without boxing.
+     * Note that this bypasses {@link #calcLogP(Object)}, so subclasses overriding only
+     * that method should not be evaluated through this method.
+     *
+     * @param x array of points at which the density should be computed
+     * @param from first index in x, inclusive
+     * @param to last index in x, exclusive
+     * @return the sum of the log-scale pdf at points x[from] ... x[to-1]
+     */
+    public double logDensity(double[] x, int from, int to) {
+    	return logDensity(x, from, to, null);
+    }
+
+    /**
+     * As {@link #logDensity(double[], int, int)}, but also stores the log density of
+     * every x[i] in logP[i], unless logP is null.
+     * Subclasses wrapping an Apache distribution override this to refresh
+     * distribution parameters only once, instead of once for every value.
+     */
+    public double logDensity(double[] x, int from, int to, double[] logP) {
+    	double sum = 0.0;
+    	for (int i = from; i < to; i++) {
+    		double l = logDensity(x[i]);
+    		if (logP != null) {
+    			logP[i] = l;
+    		}
+    		sum += l;
+    	}
+    	return sum;
+    }
+
+    /**
+     * @see #logDensity(double[], int, int)
+     * @param x array of points at which the probability should be computed
+     * @param from first index in x, inclusive
+     * @param to last index in x, exclusive
+     * @return the sum of the log-scale probabilities at points x[from] ... x[to-1]
+     */
+    public double logDensity(int[] x, int from, int to) {
+    	return logDensity(x, from, to, null);
+    }
+
+    /**
+     * @see #logDensity(double[], int, int, double[])
+     */
+    public double logDensity(int[] x, int from, int to, double[] logP) {
+    	double sum = 0.0;
+    	for (int i = from; i < to; i++) {
+    		double l = logDensity(x[i]);
+    		if (logP != null) {
+    			logP[i] = l;
+    		}
+    		sum += l;
+    	}
+    	return sum;
+    }
+
+    /**
+     * Sums log densities over a range of values for a single, already refreshed,
+     * Apache distribution. Helper for overrides of {@link #logDensity(double[], int, int, double[])}.
+     */
+    protected static double logDensity(ContinuousDistribution dist, double[] x, int from, int to, double[] logP) {
+    	double sum = 0.0;
+    	for (int i = from; i < to; i++) {
+    		double l = dist.logDensity(x[i]);
+    		if (logP != null) {
+    			logP[i] = l;
+    		}
+    		sum += l;
+    	}
+    	return sum;
+    }
+
+    /**
+     * @see #logDensity(ContinuousDistribution, double[], int, int, double[])
+     */
+    protected static double logProbability(DiscreteDistribution dist, int[] x, int from, int to, double[] logP) {
+    	double sum = 0.0;
+    	for (int i = from; i < to; i++) {
+    		double l = dist.logProbability(x[i]);
+    		if (logP != null) {
+    			logP[i] = l;
+    		}
+    		sum += l;
+    	}
+    	return sum;
+    }
 
     /**
      * Returns the cumulative distribution function (CDF) value at point x.
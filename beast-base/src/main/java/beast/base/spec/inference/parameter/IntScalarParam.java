@@ -7,6 +7,9 @@ import beast.base.spec.domain.Int;
 import beast.base.spec.type.IntScalar;
 import org.w3c.dom.Node;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.PrintStream;
 
 /**
@@ -180,6 +183,24 @@ public class IntScalarParam<D extends Int> extends StateNode implements IntScala
 
     //*** for resume ***
 
+    @Override
+    public void toBinary(final DataOutput out) throws IOException {
+        if (getClass() != IntScalarParam.class) {
+            super.toBinary(out);
+            return;
+        }
+        out.writeInt(get());
+    }
+
+    @Override
+    public void fromBinary(final DataInput in) throws IOException {
+        if (getClass() != IntScalarParam.class) {
+            super.fromBinary(in);
+            return;
+        }
+        set(in.readInt());
+    }
+
     @Override
     public void fromXML(Node node) {
         ParameterUtils.parseParameter(node, this);
@@ -8,6 +8,9 @@ import beast.base.spec.domain.Int;
 import beast.base.spec.type.IntVector;
 import org.w3c.dom.Node;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -495,6 +498,35 @@ public class IntVectorParam<D extends Int> extends KeyVectorParam<Integer> imple
         return ParameterUtils.paramToString(this);
     }
 
+    /**
+     * Writes the values only, since bounds are derived from the domain.
+     * Subclasses, which may keep more state, use the default representation.
+     */
+    @Override
+    public void toBinary(final DataOutput out) throws IOException {
+        if (getClass() != IntVectorParam.class) {
+            super.toBinary(out);
+            return;
+        }
+        out.writeInt(values.length);
+        for (final int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    @Override
+    public void fromBinary(final DataInput in) throws IOException {
+        if (getClass() != IntVectorParam.class) {
+            super.fromBinary(in);
+            return;
+        }
+        // this may change dimension
+        values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+    }
+
     @Override
     public void fromXML(final Node node) {
         ParameterUtils.parseParameter(node, this);
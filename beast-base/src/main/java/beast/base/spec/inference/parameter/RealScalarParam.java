@@ -9,6 +9,9 @@ import beast.base.spec.domain.Real;
 import beast.base.spec.type.RealScalar;
 import org.w3c.dom.Node;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.PrintStream;
 
 /**
@@ -207,6 +210,24 @@ public class RealScalarParam<D extends Real> extends StateNode implements RealSc
 
     //*** for resume ***
 
+    @Override
+    public void toBinary(final DataOutput out) throws IOException {
+        if (getClass() != RealScalarParam.class) {
+            super.toBinary(out);
+            return;
+        }
+        out.writeDouble(get());
+    }
+
+    @Override
+    public void fromBinary(final DataInput in) throws IOException {
+        if (getClass() != RealScalarParam.class) {
+            super.fromBinary(in);
+            return;
+        }
+        set(in.readDouble());
+    }
+
     @Override
     public void fromXML(Node node) {
         ParameterUtils.parseParameter(node, this);
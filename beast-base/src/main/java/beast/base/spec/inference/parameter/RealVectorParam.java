@@ -8,6 +8,9 @@ import beast.base.spec.domain.Real;
 import beast.base.spec.type.RealVector;
 import org.w3c.dom.Node;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -436,6 +439,7 @@ public class RealVectorParam<D extends Real> extends KeyVectorParam<Double> impl
                 continue;
 
             values[i] *= scale;
+            isDirty[i] = true;
             nScaled += 1;
 
             if (! isValid(values[i]))
@@ -535,6 +539,35 @@ public class RealVectorParam<D extends Real> extends KeyVectorParam<Double> impl
         return ParameterUtils.paramToString(this);
     }
 
+    /**
+     * Writes the values only, since bounds are derived from the domain.
+     * Subclasses, which may keep more state, use the default representation.
+     */
+    @Override
+    public void toBinary(final DataOutput out) throws IOException {
+        if (getClass() != RealVectorParam.class) {
+            super.toBinary(out);
+            return;
+        }
+        out.writeInt(values.length);
+        for (final double value : values) {
+            out.writeDouble(value);
+        }
+    }
+
+    @Override
+    public void fromBinary(final DataInput in) throws IOException {
+        if (getClass() != RealVectorParam.class) {
+            super.fromBinary(in);
+            return;
+        }
+        // this may change dimension
+        values = new double[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readDouble();
+        }
+    }
+
     @Override
     public void fromXML(final Node node) {
         ParameterUtils.parseParameter(node, this);
@@ -8,9 +8,12 @@ import beast.base.core.Loggable;
 import beast.base.spec.type.Scalar;
 import beast.base.spec.type.Tensor;
 import beast.base.spec.type.Vector;
+import beast.base.trace.AutoCorrelation;
+import beast.base.trace.BatchMeans;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 
@@ -19,15 +22,22 @@ import java.util.List;
 /**
  * Computes and logs the effective sample size (ESS) of a parameter or distribution
  * during an MCMC run. Uses the same autocorrelation-based criterion as Tracer,
- * with a 10% burn-in.
+ * with a 10% burn-in, or batch means with bounded memory. The estimate can
+ * be used by MCMC to stop the chain once it is large enough.
  */
 @Description("Report effective sample size of a parameter or log values from a distribution. " +
-        "This uses the same criterion as Tracer and assumes 10% burn in.")
+        "By default, this uses the same criterion as Tracer and assumes 10% burn in.")
 public class ESS extends BEASTObject implements Loggable {
     // If Vector, then only compute ESS for the 1st element
     final public Input<Tensor> functionInput =
             new Input<>("arg", "value (e.g. parameter or distribution) to report ESS for", Validate.REQUIRED);
 
+    public enum Method {tracer, batchMeans}
+
+    final public Input<Method> methodInput = new Input<>("method", "method of estimating the ESS, one of " + Arrays.toString(Method.values()) +
+            ". tracer (default) uses the same criterion as Tracer, but keeps the whole trace and takes time proportional to up to " + MAX_LAG + " lags per update. " +
+            "batchMeans uses batch means, taking constant memory and time per update", Method.tracer, Method.values());
+
     /**
      * values from which the ESS is calculated *
      */
@@ -40,11 +50,19 @@ public class ESS extends BEASTObject implements Loggable {
      * keep track of sums of trace(i)*trace(i_+ lag) for all lags, excluding burn-in  *
      */
     protected List<Double> squareLaggedSums;
+    /**
+     * online estimator when method is batchMeans, otherwise null *
+     */
+    protected BatchMeans batchMeans;
+
+    protected double ess = 0;
+    protected long lastSample = Long.MIN_VALUE;
 
     @Override
     public void initAndValidate() {
         trace = new ArrayList<>();
         squareLaggedSums = new ArrayList<>();
+        batchMeans = methodInput.get() == Method.batchMeans ? new BatchMeans() : null;
     }
 
     @Override
@@ -72,6 +90,36 @@ public class ESS extends BEASTObject implements Loggable {
 
     @Override
     public void log(final long sample, PrintStream out) {
+        update(sample);
+        String str = ess + "";
+        str = str.substring(0, str.indexOf('.') + 2);
+        out.print(str + "\t");
+    } // log
+
+    /**
+     * Add the current value to the trace, unless it was already added for this sample,
+     * so the estimate can be shared between a logger and the stop criterion of MCMC.
+     */
+    public void update(final long sample) {
+        if (sample <= lastSample) {
+            return;
+        }
+        lastSample = sample;
+        final double doubleValue = getValue();
+        if (batchMeans != null) {
+            batchMeans.add(doubleValue);
+            ess = batchMeans.getESS();
+        } else {
+            ess = tracerESS(doubleValue);
+        }
+    }
+
+    /** @return ESS as of the last update **/
+    public double getESS() {
+        return ess;
+    }
+
+    private double getValue() {
         //final Double newValue = functionInput.get().getArrayValue();
         // original code only takes the 1st element if value is a vector
         Tensor tensor = functionInput.get();
@@ -84,13 +132,15 @@ public class ESS extends BEASTObject implements Loggable {
             throw new UnsupportedOperationException("ESS supports only Vector or Scalar ! But get " + tensor.getClass());
 
         // convert to Double
-        final double doubleValue;
         if (newValue instanceof Number number) {
-            doubleValue = number.doubleValue();
+            return number.doubleValue();
         } else if (newValue instanceof Boolean booleanValue) {
-            doubleValue = booleanValue ? 1.0 : 0.0;
+            return booleanValue ? 1.0 : 0.0;
         } else
             throw  new IllegalArgumentException("The value type is not supported : " + newValue);
+    }
+
+    private double tracerESS(final double doubleValue) {
         sum += doubleValue;
         trace.add(doubleValue);
 
@@ -157,11 +207,8 @@ public class ESS extends BEASTObject implements Loggable {
         final double act = integralOfACFunctionTimes2 / autoCorrelation[0];
 
         // effective sample size
-        final double ess = sampleCount / act;
-        String str = ess + "";
-        str = str.substring(0, str.indexOf('.') + 2);
-        out.print(str + "\t");
-    } // log
+        return sampleCount / act;
+    } // tracerESS
 
     @Override
     public void close(PrintStream out) {
@@ -183,102 +230,36 @@ public class ESS extends BEASTObject implements Loggable {
         return trace.length / (ACT(trace, sampleInterval) / sampleInterval);
     }
 
-    public static double ACT(Double[] trace, int sampleInterval) {
-        /** sum of trace, excluding burn-in **/
-        double sum = 0.0;
-        /** keep track of sums of trace(i)*trace(i_+ lag) for all lags, excluding burn-in  **/
-        double[] squareLaggedSums = new double[MAX_LAG];
-        double[] autoCorrelation = new double[MAX_LAG];
-        for (int i = 0; i < trace.length; i++) {
-            sum += trace[i];
-            // calculate mean
-            final double mean = sum / (i + 1);
-
-            // calculate auto correlation for selected lag times
-            // sum1 = \sum_{start ... totalSamples-lag-1} trace
-            double sum1 = sum;
-            // sum2 = \sum_{start+lag ... totalSamples-1} trace
-            double sum2 = sum;
-            for (int lagIndex = 0; lagIndex < Math.min(i + 1, MAX_LAG); lagIndex++) {
-                squareLaggedSums[lagIndex] = squareLaggedSums[lagIndex] + trace[i - lagIndex] * trace[i];
-                // The following line is the same approximation as in Tracer
-                // (valid since mean *(samples - lag), sum1, and sum2 are approximately the same)
-                // though a more accurate estimate would be
-                // autoCorrelation[lag] = m_fSquareLaggedSums.get(lag) - sum1 * sum2
-                autoCorrelation[lagIndex] = squareLaggedSums[lagIndex] - (sum1 + sum2) * mean + mean * mean * (i + 1 - lagIndex);
-                autoCorrelation[lagIndex] /= (i + 1 - lagIndex);
-                sum1 -= trace[i - lagIndex];
-                sum2 -= trace[lagIndex];
-            }
-        }
+    public static double calcESS(double[] trace) {
+        return AutoCorrelation.analysis(trace, MAX_LAG).getESS();
+    }
 
-        final int maxLag = Math.min(trace.length, MAX_LAG);
-        double integralOfACFunctionTimes2 = 0.0;
-        for (int lagIndex = 0; lagIndex < maxLag; lagIndex++) //{
-            if (lagIndex == 0) //{
-                integralOfACFunctionTimes2 = autoCorrelation[0];
-            else if (lagIndex % 2 == 0)
-                // fancy stopping criterion - see main comment in Tracer code of BEAST 1
-                if (autoCorrelation[lagIndex - 1] + autoCorrelation[lagIndex] > 0) //{
-                    integralOfACFunctionTimes2 += 2.0 * (autoCorrelation[lagIndex - 1] + autoCorrelation[lagIndex]);
-                else
-                    // stop
-                    break;
-        //}
-        //}
-        //}
+    /**
+     * Autocovariances are calculated by FFT, or by AutoCorrelation.getDefaultMethod() in general,
+     * so the result can differ from earlier versions by rounding only.
+     */
+    public static double ACT(Double[] trace, int sampleInterval) {
+        return ACT(toPrimitive(trace), sampleInterval);
+    }
 
-        // auto correlation time
-        return sampleInterval * integralOfACFunctionTimes2 / autoCorrelation[0];
+    public static double ACT(double[] trace, int sampleInterval) {
+        return AutoCorrelation.analysis(trace, MAX_LAG).getACT(sampleInterval);
     }
 
     public static double stdErrorOfMean(Double[] trace, int sampleInterval) {
-        /** sum of trace, excluding burn-in **/
-        double sum = 0.0;
-        /** keep track of sums of trace(i)*trace(i_+ lag) for all lags, excluding burn-in  **/
-        double[] squareLaggedSums = new double[MAX_LAG];
-        double[] autoCorrelation = new double[MAX_LAG];
-        for (int i = 0; i < trace.length; i++) {
-            sum += trace[i];
-            // calculate mean
-            final double mean = sum / (i + 1);
-
-            // calculate auto correlation for selected lag times
-            // sum1 = \sum_{start ... totalSamples-lag-1} trace
-            double sum1 = sum;
-            // sum2 = \sum_{start+lag ... totalSamples-1} trace
-            double sum2 = sum;
-            for (int lagIndex = 0; lagIndex < Math.min(i + 1, MAX_LAG); lagIndex++) {
-                squareLaggedSums[lagIndex] = squareLaggedSums[lagIndex] + trace[i - lagIndex] * trace[i];
-                // The following line is the same approximation as in Tracer
-                // (valid since mean *(samples - lag), sum1, and sum2 are approximately the same)
-                // though a more accurate estimate would be
-                // autoCorrelation[lag] = m_fSquareLaggedSums.get(lag) - sum1 * sum2
-                autoCorrelation[lagIndex] = squareLaggedSums[lagIndex] - (sum1 + sum2) * mean + mean * mean * (i + 1 - lagIndex);
-                autoCorrelation[lagIndex] /= (i + 1 - lagIndex);
-                sum1 -= trace[i - lagIndex];
-                sum2 -= trace[lagIndex];
-            }
-        }
+        return stdErrorOfMean(toPrimitive(trace), sampleInterval);
+    }
 
-        final int maxLag = Math.min(trace.length, MAX_LAG);
-        double integralOfACFunctionTimes2 = 0.0;
-        for (int lagIndex = 0; lagIndex < maxLag; lagIndex++) //{
-            if (lagIndex == 0) //{
-                integralOfACFunctionTimes2 = autoCorrelation[0];
-            else if (lagIndex % 2 == 0)
-                // fancy stopping criterion - see main comment in Tracer code of BEAST 1
-                if (autoCorrelation[lagIndex - 1] + autoCorrelation[lagIndex] > 0) //{
-                    integralOfACFunctionTimes2 += 2.0 * (autoCorrelation[lagIndex - 1] + autoCorrelation[lagIndex]);
-                else
-                    // stop
-                    break;
-        //}
-        //}
-        //}
+    public static double stdErrorOfMean(double[] trace, int sampleInterval) {
+        return AutoCorrelation.analysis(trace, MAX_LAG).getStdErrorOfMean();
+    }
 
-        // auto correlation time
-        return Math.sqrt(integralOfACFunctionTimes2 / trace.length);
+    private static double[] toPrimitive(Double[] trace) {
+        double[] values = new double[trace.length];
+        for (int i = 0; i < trace.length; i++) {
+            values[i] = trace[i];
+        }
+        return values;
     }
 
 } // class ESS
@@ -0,0 +1,281 @@
+package beast.base.trace;
+
+
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Autocorrelation analysis of a trace, giving the auto correlation time (ACT),
+ * effective sample size (ESS) and standard error of the mean with the same
+ * criterion as Tracer: autocovariances are summed in pairs of consecutive lags
+ * until the sum of a pair becomes negative, or MAX_LAG is reached.
+ * <p>
+ * Autocovariances are calculated for all lags at once with a fast Fourier transform
+ * in O(n log n) time. The direct O(n * MAX_LAG) calculation is kept as a reference.
+ */
+public class AutoCorrelation {
+
+    public enum Method {fft, direct}
+
+    public static final int MAX_LAG = 2000;
+
+    private static Method defaultMethod = Method.fft;
+
+    /** set the method used when none is specified, e.g. Method.direct to reproduce earlier results **/
+    public static void setDefaultMethod(Method method) {
+        defaultMethod = method;
+    }
+
+    public static Method getDefaultMethod() {
+        return defaultMethod;
+    }
+
+    /** bit reversal permutation and twiddle factors by transform size, soft so that large tables can be reclaimed **/
+    private static final Map<Integer, SoftReference<FFTTables>> fftTables = new ConcurrentHashMap<>();
+
+    /** most recent analysis done through analysis(), with a copy of the values it was done for **/
+    private static volatile Analysis lastAnalysis;
+
+    private record Analysis(double[] values, int maxLag, Method method, AutoCorrelation autoCorrelation) {
+    }
+
+    private final int sampleCount;
+    /** autocovariance by lag, as far as it is calculated **/
+    private final double[] autoCovariance;
+    /** twice the area under the autocovariance function up to the cut off lag **/
+    private double integratedAutoCovariance;
+    private int cutoffLag;
+
+    /**
+     * @param values the trace, with burn-in removed
+     * @param maxLag the maximum number of lags to consider
+     */
+    public AutoCorrelation(double[] values, int maxLag) {
+        this(values, maxLag, defaultMethod);
+    }
+
+    public AutoCorrelation(double[] values, int maxLag, Method method) {
+        sampleCount = values.length;
+        maxLag = Math.min(maxLag, values.length);
+        autoCovariance = method == Method.fft ? fftAutoCovariance(values, maxLag) : directAutoCovariance(values, maxLag);
+        integrate(maxLag);
+    }
+
+    private void integrate(int maxLag) {
+        cutoffLag = maxLag;
+        for (int lag = 0; lag < maxLag; lag++) {
+            if (lag == 0) {
+                integratedAutoCovariance = autoCovariance[0];
+            } else if (lag % 2 == 0) {
+                // fancy stopping criterion -- see comment in ESS
+                if (autoCovariance[lag - 1] + autoCovariance[lag] > 0) {
+                    integratedAutoCovariance += 2.0 * (autoCovariance[lag - 1] + autoCovariance[lag]);
+                } else {
+                    // stop
+                    cutoffLag = lag;
+                    break;
+                }
+            }
+        }
+    }
+
+    /** @return autocovariance at lag lag, for lag up to maxLag **/
+    public double getAutoCovariance(int lag) {
+        return autoCovariance[lag];
+    }
+
+    public double getIntegratedAutoCovariance() {
+        return integratedAutoCovariance;
+    }
+
+    /** @return lag at which summing autocovariances stopped **/
+    public int getCutoffLag() {
+        return cutoffLag;
+    }
+
+    /** @return auto correlation time in units of the sample interval **/
+    public double getACT(long sampleInterval) {
+        return sampleInterval * integratedAutoCovariance / autoCovariance[0];
+    }
+
+    public double getESS() {
+        return sampleCount / (integratedAutoCovariance / autoCovariance[0]);
+    }
+
+    public double getStdErrorOfMean() {
+        return Math.sqrt(integratedAutoCovariance / sampleCount);
+    }
+
+    /**
+     * Analysis of values with the default method, reusing the previous analysis
+     * when it was for the same values, as when the ESS, ACT and standard error
+     * of a trace are requested one after another.
+     *
+     * @param values the trace, with burn-in removed
+     * @param maxLag the maximum number of lags to consider
+     */
+    public static AutoCorrelation analysis(double[] values, int maxLag) {
+        final Method method = defaultMethod;
+        final Analysis last = lastAnalysis;
+        if (last != null && last.maxLag == maxLag && last.method == method && Arrays.equals(last.values, values)) {
+            return last.autoCorrelation;
+        }
+        final AutoCorrelation autoCorrelation = new AutoCorrelation(values, maxLag, method);
+        lastAnalysis = new Analysis(values.clone(), maxLag, method, autoCorrelation);
+        return autoCorrelation;
+    }
+
+    /**
+     * Analyse traces in parallel, one per column.
+     *
+     * @param traces the traces, null entries are skipped
+     * @param maxLag maximum number of lags to consider
+     * @return analysis for each trace, or null where the trace is null
+     */
+    public static AutoCorrelation[] analyse(double[][] traces, int maxLag) {
+        final Method method = defaultMethod;
+        AutoCorrelation[] result = new AutoCorrelation[traces.length];
+        IntStream.range(0, traces.length).parallel().forEach(i -> {
+            if (traces[i] != null) {
+                result[i] = new AutoCorrelation(traces[i], maxLag, method);
+            }
+        });
+        return result;
+    }
+
+    /** reference implementation, summing products for every lag **/
+    static double[] directAutoCovariance(double[] values, int maxLag) {
+        final int samples = values.length;
+        final double mean = mean(values);
+        double[] gamma = new double[maxLag];
+        for (int lag = 0; lag < maxLag; lag++) {
+            for (int j = 0; j < samples - lag; j++) {
+                final double del1 = values[j] - mean;
+                final double del2 = values[j + lag] - mean;
+                gamma[lag] += (del1 * del2);
+            }
+            gamma[lag] /= (samples - lag);
+        }
+        return gamma;
+    }
+
+    /**
+     * Autocovariances from the power spectrum of the centred values, which are
+     * padded with zeros to at least twice their length to avoid wrap-around.
+     */
+    static double[] fftAutoCovariance(double[] values, int maxLag) {
+        final int samples = values.length;
+        final double mean = mean(values);
+        int n = 1;
+        while (n < 2 * samples - 1) {
+            n <<= 1;
+        }
+        double[] re = new double[n];
+        double[] im = new double[n];
+        for (int i = 0; i < samples; i++) {
+            re[i] = values[i] - mean;
+        }
+        fft(re, im, false);
+        for (int i = 0; i < re.length; i++) {
+            re[i] = re[i] * re[i] + im[i] * im[i];
+            im[i] = 0;
+        }
+        fft(re, im, true);
+        double[] gamma = new double[maxLag];
+        for (int lag = 0; lag < maxLag; lag++) {
+            gamma[lag] = re[lag] / re.length / (samples - lag);
+        }
+        return gamma;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    /** permutation and twiddle factors for a transform of size n **/
+    private static class FFTTables {
+        /** pairs of an index and its bit reversal that swap places, listed once each **/
+        final int[] swapFrom, swapTo;
+        final double[] cos, sin;
+
+        FFTTables(int n) {
+            int swaps = 0;
+            int[] reversed = new int[n];
+            for (int i = 1, j = 0; i < n; i++) {
+                int bit = n >> 1;
+                for (; (j & bit) != 0; bit >>= 1) {
+                    j ^= bit;
+                }
+                j ^= bit;
+                reversed[i] = j;
+                if (i < j) {
+                    swaps++;
+                }
+            }
+            swapFrom = new int[swaps];
+            swapTo = new int[swaps];
+            for (int i = 1, k = 0; i < n; i++) {
+                if (i < reversed[i]) {
+                    swapFrom[k] = i;
+                    swapTo[k++] = reversed[i];
+                }
+            }
+            // twiddle factors from a table rather than by recurrence, which loses precision for long traces
+            cos = new double[n / 2];
+            sin = new double[n / 2];
+            for (int k = 0; k < n / 2; k++) {
+                cos[k] = Math.cos(2 * Math.PI * k / n);
+                sin[k] = Math.sin(2 * Math.PI * k / n);
+            }
+        }
+    }
+
+    private static FFTTables fftTables(int n) {
+        SoftReference<FFTTables> ref = fftTables.get(n);
+        FFTTables tables = ref == null ? null : ref.get();
+        if (tables == null) {
+            tables = new FFTTables(n);
+            fftTables.put(n, new SoftReference<>(tables));
+        }
+        return tables;
+    }
+
+    /** in place radix-2 Cooley-Tukey transform; the length must be a power of 2 **/
+    private static void fft(double[] re, double[] im, boolean inverse) {
+        final int n = re.length;
+        final FFTTables tables = fftTables(n);
+        // bit reversal permutation
+        final int[] swapFrom = tables.swapFrom, swapTo = tables.swapTo;
+        for (int k = 0; k < swapFrom.length; k++) {
+            final int i = swapFrom[k], j = swapTo[k];
+            double t = re[i]; re[i] = re[j]; re[j] = t;
+            t = im[i]; im[i] = im[j]; im[j] = t;
+        }
+        final double[] cos = tables.cos;
+        final double[] sin = tables.sin;
+        final double sign = inverse ? 1 : -1;
+        for (int len = 2; len <= n; len <<= 1) {
+            final int step = n / len;
+            for (int i = 0; i < n; i += len) {
+                for (int k = 0; k < len / 2; k++) {
+                    final int a = i + k, b = a + len / 2;
+                    final double wRe = cos[k * step], wIm = sign * sin[k * step];
+                    final double vRe = re[b] * wRe - im[b] * wIm;
+                    final double vIm = re[b] * wIm + im[b] * wRe;
+                    re[b] = re[a] - vRe;
+                    im[b] = im[a] - vIm;
+                    re[a] += vRe;
+                    im[a] += vIm;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+package beast.base.trace;
+
+
+/**
+ * Online estimate of the effective sample size (ESS) by the method of batch means,
+ * using memory bounded by the number of batches instead of the trace length.
+ * <p>
+ * Values are added to consecutive batches of equal size. Once all batches are
+ * filled, neighbouring batches are merged and the batch size doubles, so there
+ * are always between maxBatchCount/2 and maxBatchCount batches. The ESS is the
+ * number of samples times the variance of the trace divided by the batch size
+ * times the variance of the batch means. Like the ESS logger, the first 10% of
+ * the trace is removed as burn-in, in whole batches.
+ */
+public class BatchMeans {
+
+    public static final int DEFAULT_BATCH_COUNT = 64;
+
+    private final int maxBatchCount;
+    private long batchSize = 1;
+    /** number of batches that are full **/
+    private int batchCount;
+    private final double[] sums;
+    private final double[] squareSums;
+    /** number of values in the batch being filled **/
+    private long count;
+    private long totalSamples;
+
+    public BatchMeans() {
+        this(DEFAULT_BATCH_COUNT);
+    }
+
+    /** @param maxBatchCount maximum number of batches, must be even and at least 4 **/
+    public BatchMeans(int maxBatchCount) {
+        if (maxBatchCount < 4 || maxBatchCount % 2 != 0) {
+            throw new IllegalArgumentException("maxBatchCount must be even and at least 4, not " + maxBatchCount);
+        }
+        this.maxBatchCount = maxBatchCount;
+        sums = new double[maxBatchCount];
+        squareSums = new double[maxBatchCount];
+    }
+
+    public void add(double value) {
+        sums[batchCount] += value;
+        squareSums[batchCount] += value * value;
+        totalSamples++;
+        if (++count == batchSize) {
+            count = 0;
+            if (++batchCount == maxBatchCount) {
+                merge();
+            }
+        }
+    }
+
+    /** merge neighbouring batches so that half of the batches become available **/
+    private void merge() {
+        for (int i = 0; i < maxBatchCount / 2; i++) {
+            sums[i] = sums[2 * i] + sums[2 * i + 1];
+            squareSums[i] = squareSums[2 * i] + squareSums[2 * i + 1];
+        }
+        for (int i = maxBatchCount / 2; i < maxBatchCount; i++) {
+            sums[i] = 0;
+            squareSums[i] = 0;
+        }
+        batchCount = maxBatchCount / 2;
+        batchSize *= 2;
+    }
+
+    public long getSampleCount() {
+        return totalSamples;
+    }
+
+    public long getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return ESS of the full batches after removing 10% burn-in,
+     * or 0 if there are too few batches to estimate the variance of the batch means
+     */
+    public double getESS() {
+        // skip batches that are (partly) in the first 10% of the trace
+        final int start = (int) ((totalSamples / 10 + batchSize - 1) / batchSize);
+        final int batches = batchCount - start;
+        if (batches < 2) {
+            return 0;
+        }
+        double sum = 0, squareSum = 0;
+        for (int i = start; i < batchCount; i++) {
+            sum += sums[i];
+            squareSum += squareSums[i];
+        }
+        final double n = (double) batches * batchSize;
+        final double mean = sum / n;
+        final double variance = squareSum / n - mean * mean;
+        double batchVariance = 0;
+        for (int i = start; i < batchCount; i++) {
+            final double d = sums[i] / batchSize - mean;
+            batchVariance += d * d;
+        }
+        batchVariance /= (batches - 1);
+        if (batchVariance <= 0) {
+            return variance <= 0 ? 0 : n;
+        }
+        // batch means of independent samples have variance variance/batchSize, giving an ESS of n
+        return Math.min(n, n * variance / (batchSize * batchVariance));
+    }
+
+}
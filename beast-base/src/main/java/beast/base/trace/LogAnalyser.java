@@ -102,8 +102,10 @@ public class LogAnalyser extends Runnable {
 
         if (m_bReport.get()) tracesTittleReport(traces, m_bDisplayAll.get());
 
+        // traces are analysed in parallel, before reporting in order
+        List<TraceStatistics> statistics = traces.analyseTraces();
         for (int i = 0; i < traces.getTraceCount(); i++) {
-            TraceStatistics distribution = traces.analyseTrace(i);
+            TraceStatistics distribution = statistics.get(i);
             traceStatisticsList.add(distribution);
 
             for (Expectation expectation : m_pExpectations.get()) {
@@ -5,9 +5,12 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.stream.IntStream;
 
 /**
  * A class that stores a set of traces from a single chain
@@ -22,7 +25,28 @@ public class LogFileTraces {
     protected final String name;
 
     private final List<String> tracesNameList = new ArrayList<String>();
-    protected List<List<Double>> valuesList = new ArrayList<List<Double>>();
+    /** values by trace, as primitives to keep the memory footprint of long logs small **/
+    protected double[][] values = new double[0][];
+    /** number of values in each trace **/
+    protected int valueCount = 0;
+    /**
+     * values by trace, as a view of values that can be read and set but not added to
+     * @deprecated use values and valueCount
+     */
+    @Deprecated
+    protected List<List<Double>> valuesList = new AbstractList<>() {
+        @Override
+        public List<Double> get(int index) {
+            return traceView(index);
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+    };
+    /** statistics by trace, calculated on demand for the current burn-in **/
+    private TraceStatistics[] statistics = new TraceStatistics[0];
     private long burnIn = -1;
     private long firstState = -1;
     private long lastState = -1;
@@ -90,6 +114,9 @@ public class LogFileTraces {
     }
 
     public void setBurnIn(long burnIn) {
+        if (burnIn != this.burnIn) {
+            Arrays.fill(statistics, null);
+        }
         this.burnIn = burnIn;
     }
 
@@ -114,10 +141,11 @@ public class LogFileTraces {
         for (int i = 0; i < labels.length; i++) {
             labels[i] = tokens.nextToken();
             tracesNameList.add(labels[i]);
-            valuesList.add(new ArrayList<Double>());
         }
 
         int traceCount = getTraceCount();
+        values = new double[traceCount][1024];
+        statistics = new TraceStatistics[traceCount];
 
         boolean firstState = true;
 
@@ -151,9 +179,14 @@ public class LogFileTraces {
                 throw new TraceException("State " + state + ":Expected real value in column " + reader.getLineNumber());
             }
 
+            if (traceCount > 0 && valueCount == values[0].length) {
+                for (int i = 0; i < traceCount; i++) {
+                    values[i] = Arrays.copyOf(values[i], valueCount * 2);
+                }
+            }
             for (int i = 0; i < traceCount; i++) {
                 if (tokens.hasMoreTokens()) {
-                    Double v;
+                    double v;
                     String value = tokens.nextToken();
                     // deal with boolean in string
                     if ("true".equalsIgnoreCase(value)) {
@@ -169,13 +202,14 @@ public class LogFileTraces {
                                     + (i + 1) + " (Line " + reader.getLineNumber() + ")");
                         }
                     }
-                    valuesList.get(i).add(v);
+                    values[i][valueCount] = v;
                 } else {
                     reader.close();
                     throw new TraceException("State " + state + ": missing values at line " + reader.getLineNumber());
                 }
             }
 
+            valueCount++;
             tokens = reader.tokenizeLine();
         }
 
@@ -206,16 +240,58 @@ public class LogFileTraces {
         return true;
     }
 
+    /**
+     * @return statistics of the trace after burn-in, which are kept until the burn-in or values change
+     */
     public TraceStatistics analyseTrace(int index) {
-    	int start = (int) (getBurnIn() / getStepSize());
+        TraceStatistics traceStatistics = statistics[index];
+        if (traceStatistics == null) {
+            int start = (int) (getBurnIn() / getStepSize());
 
-        List<Double> values = valuesList.get(index).subList(start, valuesList.get(index).size());
-        double[] doubleValues = new double[values.size()];
-        for (int i = 0; i < values.size(); i++) {
-            doubleValues[i] = values.get(i);
+            double[] doubleValues = Arrays.copyOfRange(values[index], start, valueCount);
+
+            traceStatistics = new TraceStatistics(doubleValues, getStepSize());
+            statistics[index] = traceStatistics;
         }
+        return traceStatistics;
+    }
 
-        return new TraceStatistics(doubleValues, getStepSize());
+    /**
+     * analyse all traces, in parallel since traces are independent
+     *
+     * @return statistics by trace index
+     */
+    public List<TraceStatistics> analyseTraces() {
+        return IntStream.range(0, getTraceCount()).parallel().mapToObj(this::analyseTrace).toList();
+    }
+
+    private List<Double> traceView(int trace) {
+        return new AbstractList<>() {
+            @Override
+            public Double get(int index) {
+                return values[trace][checkIndex(index)];
+            }
+
+            @Override
+            public Double set(int index, Double value) {
+                final double old = values[trace][checkIndex(index)];
+                values[trace][index] = value;
+                statistics[trace] = null;
+                return old;
+            }
+
+            @Override
+            public int size() {
+                return valueCount;
+            }
+
+            private int checkIndex(int index) {
+                if (index < 0 || index >= valueCount) {
+                    throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + valueCount);
+                }
+                return index;
+            }
+        };
     }
 
     public String getTraceName(int i) {
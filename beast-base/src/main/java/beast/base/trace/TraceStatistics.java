@@ -9,7 +9,7 @@ import beast.base.util.HeapSort;
  * @author Walter Xie
  */
 public class TraceStatistics {
-    private static final int MAX_LAG = 2000;
+    private static final int MAX_LAG = AutoCorrelation.MAX_LAG;
     private boolean isValid = true;
     private boolean hasGeometricMean = false;
 
@@ -31,10 +31,17 @@ public class TraceStatistics {
     }
 
     public TraceStatistics(double[] values, long stepSize) {
+        this(values, stepSize, AutoCorrelation.getDefaultMethod());
+    }
+
+    /**
+     * @param method how autocovariances are calculated, AutoCorrelation.Method.direct reproduces earlier results
+     */
+    public TraceStatistics(double[] values, long stepSize, AutoCorrelation.Method method) {
         this(values);
 
         if (isValid) {
-            analyseCorrelationContinuous(values, stepSize);
+            analyseCorrelationContinuous(values, stepSize, method);
         }
     }
 
@@ -93,56 +100,24 @@ public class TraceStatistics {
      *
      * @param values   the values
      * @param stepSize the sampling frequency of the values
+     * @param method   how autocovariances are calculated
      */
-    private void analyseCorrelationContinuous(double[] values, long stepSize) {
+    private void analyseCorrelationContinuous(double[] values, long stepSize, AutoCorrelation.Method method) {
 
         final int samples = values.length;
-        int maxLag = Math.min(samples - 1, MAX_LAG);
-
-        double[] gammaStat = new double[maxLag];
-        //double[] varGammaStat = new double[maxLag];
-        double varStat = 0.0;
-        //double varVarStat = 0.0;
-        //double assVarCor = 1.0;
-        //double del1, del2;
-
-        for (int lag = 0; lag < maxLag; lag++) {
-            for (int j = 0; j < samples - lag; j++) {
-                final double del1 = values[j] - mean;
-                final double del2 = values[j + lag] - mean;
-                gammaStat[lag] += (del1 * del2);
-                //varGammaStat[lag] += (del1*del1*del2*del2);
-            }
-
-            gammaStat[lag] /= (samples - lag);
-            //varGammaStat[lag] /= ((double) samples-lag);
-            //varGammaStat[lag] -= (gammaStat[0] * gammaStat[0]);
-
-            if (lag == 0) {
-                varStat = gammaStat[0];
-                //varVarStat = varGammaStat[0];
-                //assVarCor = 1.0;
-            } else if (lag % 2 == 0) {
-                // fancy stopping criterion :)
-                if (gammaStat[lag - 1] + gammaStat[lag] > 0) {
-                    varStat += 2.0 * (gammaStat[lag - 1] + gammaStat[lag]);
-                    // varVarStat += 2.0*(varGammaStat[lag-1] + varGammaStat[lag]);
-                    // assVarCor  += 2.0*((gammaStat[lag-1] * gammaStat[lag-1]) + (gammaStat[lag] * gammaStat[lag])) / (gammaStat[0] * gammaStat[0]);
-                }
-                // stop
-                else
-                    maxLag = lag;
-            }
-        }
+        final AutoCorrelation autoCorrelation = new AutoCorrelation(values, Math.min(samples - 1, MAX_LAG), method);
+        final double varStat = autoCorrelation.getIntegratedAutoCovariance();
+        final double gamma0 = autoCorrelation.getAutoCovariance(0);
+        final int maxLag = autoCorrelation.getCutoffLag();
 
         // standard error of mean
-        stdErrorOfMean = Math.sqrt(varStat / samples);
+        stdErrorOfMean = autoCorrelation.getStdErrorOfMean();
         // auto correlation time
-        autoCorrelationTime = stepSize * varStat / gammaStat[0];
+        autoCorrelationTime = autoCorrelation.getACT(stepSize);
         // effective sample size
         ESS = (stepSize * samples) / autoCorrelationTime;
         // standard deviation of autocorrelation time
-        stdevAutoCorrelationTime = (2.0 * Math.sqrt(2.0 * (2.0 * (maxLag + 1)) / samples) * (varStat / gammaStat[0]) * stepSize);
+        stdevAutoCorrelationTime = (2.0 * Math.sqrt(2.0 * (2.0 * (maxLag + 1)) / samples) * (varStat / gamma0) * stepSize);
 
         isValid = true;
     }
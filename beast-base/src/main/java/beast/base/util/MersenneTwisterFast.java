@@ -487,15 +487,18 @@ public class MersenneTwisterFast implements Serializable {
     }
 
     /**
-     * Shuffles an array. Shuffles numberOfShuffles times
+     * Shuffles an array by swapping two distinct elements numberOfShuffles times
      */
     public final void shuffle(int[] array, int numberOfShuffles) {
         int i, j, temp, l = array.length;
+        if (l < 2) {
+            return;
+        }
         for (int shuffle = 0; shuffle < numberOfShuffles; shuffle++) {
             do {
                 i = nextInt(l);
                 j = nextInt(l);
-            } while (i != j);
+            } while (i == j);
             temp = array[j];
             array[j] = array[i];
             array[i] = temp;
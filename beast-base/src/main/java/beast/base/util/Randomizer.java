@@ -52,6 +52,15 @@ package beast.base.util;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.commons.rng.JumpableUniformRandomProvider;
+import org.apache.commons.rng.UniformRandomProvider;
+import org.apache.commons.rng.sampling.distribution.AhrensDieterMarsagliaTsangGammaSampler;
+import org.apache.commons.rng.sampling.distribution.ContinuousSampler;
+import org.apache.commons.rng.sampling.distribution.DiscreteSampler;
+import org.apache.commons.rng.sampling.distribution.PoissonSampler;
+import org.apache.commons.rng.sampling.distribution.ZigguratSampler;
+import org.apache.commons.rng.simple.RandomSource;
+
 /**
  * Handy utility functions which have some Mathematical relevance.
  *
@@ -83,7 +92,7 @@ public class Randomizer {
      */
     public static int randomChoice(double[] cf) {
 
-        double U = random().nextDouble();
+        double U = nextDouble();
 
         int s;
         if (U <= cf[0]) {
@@ -130,7 +139,7 @@ public class Randomizer {
      *             Negative integer if something is wrong.
      */
     public static int binarySearchSampling(double[] cpd) {
-        double U = random().nextDouble();
+        double U = nextDouble();
 
         if (U <= cpd[0])
             return 0;
@@ -164,7 +173,7 @@ public class Randomizer {
      */
     public static int randomChoicePDF(double[] pdf) {
 
-        double U = random().nextDouble() * getTotal(pdf);
+        double U = nextDouble() * getTotal(pdf);
         for (int i = 0; i < pdf.length; i++) {
 
             U -= pdf[i];
@@ -218,6 +227,96 @@ public class Randomizer {
 
     }
 
+    // ===================== Thread-confined random number streams ===========
+
+    /**
+     * A generator used by one thread only, together with samplers drawing from it.
+     * Gamma and Poisson samplers are kept for the last parameters they were created for,
+     * since callers tend to draw repeatedly with the same parameters.
+     * Access does not need to be synchronized.
+     */
+    private static final class Stream {
+        final UniformRandomProvider rng;
+        final ContinuousSampler gaussian;
+
+        private double gammaAlpha = Double.NaN, gammaLambda = Double.NaN;
+        private ContinuousSampler gamma;
+        private double poissonMean = Double.NaN;
+        private DiscreteSampler poisson;
+
+        Stream(final UniformRandomProvider rng) {
+            this.rng = rng;
+            this.gaussian = ZigguratSampler.NormalizedGaussian.of(rng);
+        }
+
+        ContinuousSampler gamma(final double alpha, final double lambda) {
+            if (gamma == null || alpha != gammaAlpha || lambda != gammaLambda) {
+                gamma = AhrensDieterMarsagliaTsangGammaSampler.of(rng, alpha, 1.0 / lambda);
+                gammaAlpha = alpha;
+                gammaLambda = lambda;
+            }
+            return gamma;
+        }
+
+        DiscreteSampler poisson(final double mean) {
+            if (poisson == null || mean != poissonMean) {
+                poisson = PoissonSampler.of(rng, mean);
+                poissonMean = mean;
+            }
+            return poisson;
+        }
+    }
+
+    private static final ThreadLocal<Stream> threadStream = new ThreadLocal<>();
+    /** set once any thread uses its own stream, so the default path skips the thread local look up until then **/
+    private static volatile boolean streamsInUse = false;
+
+    /** @return stream of the current thread, or null if the thread uses the shared Mersenne Twister **/
+    private static Stream stream() {
+        return streamsInUse ? threadStream.get() : null;
+    }
+
+    /**
+     * Let the current thread draw all its random numbers from its own generator instead of the
+     * Mersenne Twister shared by all threads. Draws are then not synchronized, and their sequence
+     * does not depend on what other threads draw. Randomizer.setSeed() does not affect the stream.
+     *
+     * @param rng generator for the current thread only, or null to go back to the Mersenne Twister
+     */
+    public static void setThreadStream(UniformRandomProvider rng) {
+        if (rng == null) {
+            threadStream.remove();
+        } else {
+            streamsInUse = true;
+            threadStream.set(new Stream(rng));
+        }
+    }
+
+    /** @return generator set for the current thread, or null if the thread uses the Mersenne Twister **/
+    public static UniformRandomProvider getThreadStream() {
+        final Stream stream = stream();
+        return stream == null ? null : stream.rng;
+    }
+
+    /**
+     * Create generators for threads or chains that run in parallel, see setThreadStream().
+     * The generators are non-overlapping blocks of one xoshiro256++ sequence, each 2^128 numbers
+     * long, so results are reproducible from the seed and streams are independent.
+     *
+     * @param seed seed of the sequence
+     * @param count number of generators
+     * @return array of count generators
+     */
+    public static UniformRandomProvider[] createStreams(long seed, int count) {
+        final JumpableUniformRandomProvider rng = (JumpableUniformRandomProvider) RandomSource.XO_SHI_RO_256_PP.create(seed);
+        final UniformRandomProvider[] streams = new UniformRandomProvider[count];
+        for (int i = 0; i < count; i++) {
+            // jump() returns a copy of the current state and advances rng past the block of the copy
+            streams[i] = rng.jump();
+        }
+        return streams;
+    }
+
     // ===================== (Synchronized) Static access methods to the private random instance ===========
 
     /**
@@ -243,10 +342,24 @@ public class Randomizer {
         }
     }
 
+    /**
+     * Seed the random number generator of the current thread only, so that
+     * threads running chains in parallel get reproducible, independent streams.
+     */
+    public static void setThreadSeed(long seed) {
+        synchronized (random) {
+            random().setSeed(seed);
+        }
+    }
+
     /**
      * Access a default instance of this class, access is synchronized
      */
     public static byte nextByte() {
+        final Stream stream = stream();
+        if (stream != null) {
+            return (byte) (stream.rng.nextInt() >>> 24);
+        }
         synchronized (random) {
             return random().nextByte();
         }
@@ -256,6 +369,10 @@ public class Randomizer {
      * Access a default instance of this class, access is synchronized
      */
     public static boolean nextBoolean() {
+        final Stream stream = stream();
+        if (stream != null) {
+            return stream.rng.nextBoolean();
+        }
         synchronized (random) {
             return random().nextBoolean();
         }
@@ -265,6 +382,11 @@ public class Randomizer {
      * Access a default instance of this class, access is synchronized
      */
     public static void nextBytes(byte[] bs) {
+        final Stream stream = stream();
+        if (stream != null) {
+            stream.rng.nextBytes(bs);
+            return;
+        }
         synchronized (random) {
             random().nextBytes(bs);
         }
@@ -274,6 +396,10 @@ public class Randomizer {
      * Access a default instance of this class, access is synchronized
      */
     public static char nextChar() {
+        final Stream stream = stream();
+        if (stream != null) {
+            return (char) (stream.rng.nextInt() >>> 16);
+        }
         synchronized (random) {
             return random().nextChar();
         }
@@ -286,6 +412,10 @@ public class Randomizer {
      * @return sample
      */
     public static double nextGaussian() {
+        final Stream stream = stream();
+        if (stream != null) {
+            return stream.gaussian.sample();
+        }
         synchronized (random) {
             return random().nextGaussian();
         }
@@ -301,6 +431,10 @@ public class Randomizer {
      * @return sample
      */
     public static double nextGamma(double alpha, double lambda) {
+        final Stream stream = stream();
+        if (stream != null) {
+            return stream.gamma(alpha, lambda).sample();
+        }
         synchronized (random) {
             return random().nextGamma(alpha, lambda);
         }
@@ -314,6 +448,10 @@ public class Randomizer {
      * @return sample (as double for historical reasons)
      */
     public static long nextPoisson(double lambda) {
+        final Stream stream = stream();
+        if (stream != null) {
+            return stream.poisson(lambda).sample();
+        }
         synchronized (random) {
             return random().nextPoisson(lambda);
         }
@@ -325,6 +463,10 @@ public class Randomizer {
      * @return a pseudo random double precision floating point number in [01)
      */
     public static double nextDouble() {
+        final Stream stream = stream();
+        if (stream != null) {
+            return stream.rng.nextDouble();
+        }
         synchronized (random) {
             return random().nextDouble();
         }
@@ -345,6 +487,10 @@ public class Randomizer {
      * @return number drawn from distribution
      */
     public static double nextExponential(double lambda) {
+        final Stream stream = stream();
+        if (stream != null) {
+            return -1.0 * Math.log(1 - stream.rng.nextDouble()) / lambda;
+        }
         synchronized (random) {
             return -1.0 * Math.log(1 - random().nextDouble()) / lambda;
         }
@@ -361,10 +507,8 @@ public class Randomizer {
      * @return number drawn from distribution
      */
     public static long nextGeometric(double p) {
-        synchronized (random) {
-            double lambda = -Math.log(1.0-p);
-            return Math.round(Math.floor(nextExponential(lambda)));
-        }
+        double lambda = -Math.log(1.0-p);
+        return Math.round(Math.floor(nextExponential(lambda)));
     }
 
     /**
@@ -374,6 +518,10 @@ public class Randomizer {
      * @return sample
      */
     public static float nextFloat() {
+        final Stream stream = stream();
+        if (stream != null) {
+            return stream.rng.nextFloat();
+        }
         synchronized (random) {
             return random().nextFloat();
         }
@@ -387,6 +535,10 @@ public class Randomizer {
      * @return sample
      */
     public static long nextLong() {
+        final Stream stream = stream();
+        if (stream != null) {
+            return stream.rng.nextLong();
+        }
         synchronized (random) {
             return random().nextLong();
         }
@@ -401,6 +553,10 @@ public class Randomizer {
      * @return sample
      */
     public static short nextShort() {
+        final Stream stream = stream();
+        if (stream != null) {
+            return (short) (stream.rng.nextInt() >>> 16);
+        }
         synchronized (random) {
             return random().nextShort();
         }
@@ -414,6 +570,10 @@ public class Randomizer {
      * @return sample
      */
     public static int nextInt() {
+        final Stream stream = stream();
+        if (stream != null) {
+            return stream.rng.nextInt();
+        }
         synchronized (random) {
             return random().nextInt();
         }
@@ -427,6 +587,10 @@ public class Randomizer {
      * @return sample
      */
     public static int nextInt(int n) {
+        final Stream stream = stream();
+        if (stream != null) {
+            return stream.rng.nextInt(n);
+        }
         synchronized (random) {
             return random().nextInt(n);
         }
@@ -463,17 +627,40 @@ public class Randomizer {
      * @param array
      */
     public static void shuffle(int[] array) {
+        final Stream stream = stream();
+        if (stream != null) {
+            permute(stream.rng, array);
+            return;
+        }
         synchronized (random) {
             random().shuffle(array);
         }
     }
 
     /**
-     * Shuffles an array in place. Shuffles numberOfShuffles times
+     * Shuffles an array in place by swapping two distinct elements numberOfShuffles times
      * @param array
      * @param numberOfShuffles
      */
     public static void shuffle(int[] array, int numberOfShuffles) {
+        if (array.length < 2) {
+            return;
+        }
+        final Stream stream = stream();
+        if (stream != null) {
+            // as MersenneTwisterFast.shuffle(int[], int)
+            int i, j, temp, l = array.length;
+            for (int shuffle = 0; shuffle < numberOfShuffles; shuffle++) {
+                do {
+                    i = stream.rng.nextInt(l);
+                    j = stream.rng.nextInt(l);
+                } while (i == j);
+                temp = array[j];
+                array[j] = array[i];
+                array[i] = temp;
+            }
+            return;
+        }
         synchronized (random) {
             random().shuffle(array, numberOfShuffles);
         }
@@ -486,6 +673,10 @@ public class Randomizer {
      * @return array
      */
     public static int[] shuffled(int l) {
+        final Stream stream = stream();
+        if (stream != null) {
+            return permuted(stream.rng, l);
+        }
         synchronized (random) {
             return random().shuffled(l);
         }
@@ -500,6 +691,13 @@ public class Randomizer {
      * @return array
      */
     public static int[] sampleIndicesWithReplacement(int l) {
+        final Stream stream = stream();
+        if (stream != null) {
+            int[] result = new int[l];
+            for (int i = 0; i < l; i++)
+                result[i] = stream.rng.nextInt(l);
+            return result;
+        }
         synchronized (random) {
             int[] result = new int[l];
             for (int i = 0; i < l; i++)
@@ -514,6 +712,11 @@ public class Randomizer {
      * @param array
      */
     public static void permute(int[] array) {
+        final Stream stream = stream();
+        if (stream != null) {
+            permute(stream.rng, array);
+            return;
+        }
         synchronized (random) {
             random().permute(array);
         }
@@ -526,11 +729,35 @@ public class Randomizer {
      * @return array containing permuted indices
      */
     public static int[] permuted(int l) {
+        final Stream stream = stream();
+        if (stream != null) {
+            return permuted(stream.rng, l);
+        }
         synchronized (random) {
             return random().permuted(l);
         }
     }
 
+    /** as MersenneTwisterFast.permute(int[]) **/
+    private static void permute(UniformRandomProvider rng, int[] array) {
+        int l = array.length;
+        for (int i = 0; i < l; i++) {
+            int index = rng.nextInt(l - i) + i;
+            int temp = array[index];
+            array[index] = array[i];
+            array[i] = temp;
+        }
+    }
+
+    private static int[] permuted(UniformRandomProvider rng, int l) {
+        int[] array = new int[l];
+        for (int i = 0; i < l; i++) {
+            array[i] = i;
+        }
+        permute(rng, array);
+        return array;
+    }
+
     static int m_nIDNr = 0;
 
     static public int nextIDNr() {
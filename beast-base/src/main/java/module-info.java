@@ -21,6 +21,9 @@ open module beast.base {
     requires org.antlr.antlr4.runtime;
     requires beagle;
 
+    // Optional: only needed by VectorLikelihoodCore4, run with --add-modules jdk.incubator.vector
+    requires static jdk.incubator.vector;
+
     // Export all packages
     exports beast.base;
     exports beast.base.core;
@@ -101,6 +104,7 @@ open module beast.base {
         beast.base.evolution.TreeWithMetaDataLogger,
         beast.base.evolution.alignment.Alignment,
         beast.base.evolution.alignment.FilteredAlignment,
+        beast.base.evolution.alignment.MappedAlignment,
         beast.base.evolution.alignment.Sequence,
         beast.base.evolution.alignment.Taxon,
         beast.base.evolution.alignment.TaxonSet,
@@ -180,6 +184,7 @@ open module beast.base {
         beast.base.evolution.substitutionmodel.TN93,
         beast.base.evolution.substitutionmodel.TVM,
         beast.base.evolution.substitutionmodel.WAG,
+        beast.base.evolution.tree.BinaryTreeLogger,
         beast.base.evolution.tree.ClusterTree,
         beast.base.evolution.tree.MRCAPrior,
         beast.base.evolution.tree.Node,
@@ -202,6 +207,7 @@ open module beast.base {
         beast.base.inference.Logger,
         beast.base.inference.MCMC,
         beast.base.inference.OperatorSchedule,
+        beast.base.inference.ParallelMCMC,
         beast.base.inference.State,
         beast.base.inference.distribution.Beta,
         beast.base.inference.distribution.ChiSquare,
@@ -0,0 +1,140 @@
+package beast.base.evolution.likelihood;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import beast.base.evolution.alignment.Alignment;
+import beast.base.evolution.tree.Tree;
+import beast.base.spec.domain.PositiveReal;
+import beast.base.spec.evolution.likelihood.TreeLikelihood;
+import beast.base.spec.evolution.sitemodel.SiteModel;
+import beast.base.spec.evolution.substitutionmodel.Frequencies;
+import beast.base.spec.evolution.substitutionmodel.HKY;
+import beast.base.spec.inference.parameter.RealScalarParam;
+import test.beast.BEASTTestCase;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+/**
+ * Checks the single precision core against BeerLikelihoodCore, up to float accuracy.
+ */
+public class FloatLikelihoodCoreTest {
+
+    static final int PATTERNS = 53;
+    static final int CATEGORIES = 3;
+
+    @Test
+    public void testPruning() {
+        for (int stateCount : new int[]{4, 20}) {
+            for (boolean useAmbiguities : new boolean[]{false, true}) {
+                // a caterpillar of 60 tips: partials drop far below the smallest float
+                // towards the root, so this only works when scaling is applied
+                int tipCount = 60;
+                LikelihoodCore expected = new BeerLikelihoodCore(stateCount);
+                LikelihoodCore actual = new FloatLikelihoodCore(stateCount);
+                setUp(expected, stateCount, tipCount, useAmbiguities);
+                setUp(actual, stateCount, tipCount, useAmbiguities);
+                expected.setUseScaling(1.01);
+
+                for (LikelihoodCore core : new LikelihoodCore[]{expected, actual}) {
+                    core.calculatePartials(0, 1, tipCount);
+                    for (int i = 2; i < tipCount; i++) {
+                        core.calculatePartials(i, tipCount + i - 2, tipCount + i - 1);
+                    }
+                }
+
+                int root = 2 * tipCount - 2;
+                double[] proportions = {0.2, 0.3, 0.5};
+                double[] frequencies = new double[stateCount];
+                Arrays.fill(frequencies, 1.0 / stateCount);
+                double[] expectedLogP = logLikelihoods(expected, root, stateCount, proportions, frequencies);
+                double[] actualLogP = logLikelihoods(actual, root, stateCount, proportions, frequencies);
+                for (int k = 0; k < PATTERNS; k++) {
+                    assertEquals(expectedLogP[k], actualLogP[k], 1e-4 * Math.abs(expectedLogP[k]));
+                }
+
+                // integrating partials in double precision gives the same root partials
+                double[] nodePartials = new double[PATTERNS * stateCount * CATEGORIES];
+                actual.getNodePartials(root, nodePartials);
+                double[] integrated = new double[PATTERNS * stateCount];
+                actual.calculateIntegratePartials(nodePartials, proportions, integrated);
+                double[] rootPartials = new double[PATTERNS * stateCount];
+                actual.integratePartials(root, proportions, rootPartials);
+                assertArrayEquals(rootPartials, integrated, 0.0);
+            }
+        }
+    }
+
+    private double[] logLikelihoods(LikelihoodCore core, int root, int stateCount, double[] proportions, double[] frequencies) {
+        double[] rootPartials = new double[PATTERNS * stateCount];
+        core.integratePartials(root, proportions, rootPartials);
+        double[] logP = new double[PATTERNS];
+        core.calculateLogLikelihoods(rootPartials, frequencies, logP);
+        return logP;
+    }
+
+    private void setUp(LikelihoodCore core, int stateCount, int tipCount, boolean useAmbiguities) {
+        Random random = new Random(123);
+        int nodeCount = 2 * tipCount - 1;
+        core.initialize(nodeCount, PATTERNS, CATEGORIES, true, useAmbiguities);
+        for (int node = 0; node < tipCount; node++) {
+            if (useAmbiguities) {
+                double[] partials = new double[PATTERNS * stateCount];
+                for (int i = 0; i < partials.length; i++) {
+                    partials[i] = random.nextDouble();
+                }
+                core.setNodePartials(node, partials);
+            } else {
+                int[] states = new int[PATTERNS];
+                for (int i = 0; i < PATTERNS; i++) {
+                    // stateCount is a gap
+                    states[i] = random.nextInt(stateCount + 1);
+                }
+                core.setNodeStates(node, states);
+            }
+        }
+        for (int node = 0; node < nodeCount - 1; node++) {
+            for (int category = 0; category < CATEGORIES; category++) {
+                double[] matrix = new double[stateCount * stateCount];
+                for (int i = 0; i < matrix.length; i++) {
+                    matrix[i] = random.nextDouble() / stateCount;
+                }
+                core.setNodeMatrix(node, category, matrix);
+            }
+        }
+        for (int node = tipCount; node < nodeCount; node++) {
+            core.createNodePartials(node);
+        }
+    }
+
+    @Test
+    public void testTreeLikelihood() throws Exception {
+        Alignment data = BEASTTestCase.getAlignment();
+        Tree tree = BEASTTestCase.getTree(data);
+
+        Frequencies freqs = new Frequencies();
+        freqs.initByName("data", data);
+
+        HKY hky = new HKY();
+        hky.initByName("kappa", new RealScalarParam<>(38.82974, PositiveReal.INSTANCE),
+                "frequencies", freqs);
+
+        SiteModel siteModel = new SiteModel();
+        siteModel.initByName("mutationRate", new RealScalarParam<>(1.0, PositiveReal.INSTANCE), "gammaCategoryCount", 4,
+                "shape", new RealScalarParam<>(0.137064, PositiveReal.INSTANCE),
+                "substModel", hky);
+
+        System.setProperty("java.only", "true");
+        TreeLikelihood likelihood = new TreeLikelihood();
+        likelihood.initByName("data", data, "tree", tree, "siteModel", siteModel,
+                "singlePrecision", true);
+        assertInstanceOf(FloatLikelihoodCore.class, likelihood.getLikelihoodCore());
+        // same as TreeLikelihoodTest.testHKY85GLikelihood, up to float accuracy
+        assertEquals(-1789.7593576610134, likelihood.calculateLogP(), 1e-3);
+    }
+
+}
@@ -0,0 +1,182 @@
+package beast.base.evolution.likelihood;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import beast.base.evolution.alignment.Alignment;
+import beast.base.evolution.tree.Tree;
+import beast.base.spec.domain.PositiveReal;
+import beast.base.spec.evolution.likelihood.TreeLikelihood;
+import beast.base.spec.evolution.sitemodel.SiteModel;
+import beast.base.spec.evolution.substitutionmodel.Frequencies;
+import beast.base.spec.evolution.substitutionmodel.HKY;
+import beast.base.spec.inference.parameter.RealScalarParam;
+import test.beast.BEASTTestCase;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+/**
+ * Checks the Vector API core gives the same results as BeerLikelihoodCore4.
+ * Surefire runs with --add-modules jdk.incubator.vector.
+ */
+public class VectorLikelihoodCore4Test {
+
+    static final int PATTERNS = 37;
+    static final int CATEGORIES = 3;
+
+    @Test
+    public void testPruning() {
+        for (boolean useAmbiguities : new boolean[]{false, true}) {
+            for (boolean useScaling : new boolean[]{false, true}) {
+                LikelihoodCore expected = new BeerLikelihoodCore4();
+                LikelihoodCore actual = new VectorLikelihoodCore4(4);
+                setUp(expected, useAmbiguities, useScaling);
+                setUp(actual, useAmbiguities, useScaling);
+
+                // tips 0-3 on caterpillar tree ((((0,1)4,2)5,3)6), which exercises states/states
+                // and states/partials pruning, or partials/partials pruning with ambiguities
+                for (LikelihoodCore core : new LikelihoodCore[]{expected, actual}) {
+                    core.calculatePartials(0, 1, 4);
+                    core.calculatePartials(2, 4, 5);
+                    core.calculatePartials(3, 5, 6);
+                }
+                for (int node = 4; node < 7; node++) {
+                    assertArrayEquals(partials(expected, node), partials(actual, node), 0.0);
+                }
+
+                double[] proportions = {0.2, 0.3, 0.5};
+                double[] expectedRoot = new double[PATTERNS * 4];
+                double[] actualRoot = new double[PATTERNS * 4];
+                expected.integratePartials(6, proportions, expectedRoot);
+                actual.integratePartials(6, proportions, actualRoot);
+                assertArrayEquals(expectedRoot, actualRoot, 0.0);
+
+                for (int i = 0; i < PATTERNS; i++) {
+                    assertEquals(expected.getLogScalingFactor(i), actual.getLogScalingFactor(i), 0.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRestoreMatrices() {
+        LikelihoodCore expected = new BeerLikelihoodCore4();
+        LikelihoodCore actual = new VectorLikelihoodCore4(4);
+        setUp(expected, false, false);
+        setUp(actual, false, false);
+
+        double[] matrix = new double[16];
+        for (int i = 0; i < 16; i++) {
+            matrix[i] = i / 16.0;
+        }
+        for (LikelihoodCore core : new LikelihoodCore[]{expected, actual}) {
+            core.store();
+            core.setNodeMatrixForUpdate(0);
+            core.setNodeMatrix(0, 1, matrix);
+            core.calculatePartials(0, 1, 4);
+        }
+        assertArrayEquals(partials(expected, 4), partials(actual, 4), 0.0);
+
+        // transposed matrices go back with the matrices
+        for (LikelihoodCore core : new LikelihoodCore[]{expected, actual}) {
+            core.restore();
+            core.calculatePartials(0, 1, 4);
+        }
+        assertArrayEquals(partials(expected, 4), partials(actual, 4), 0.0);
+    }
+
+    private void setUp(LikelihoodCore core, boolean useAmbiguities, boolean useScaling) {
+        Random random = new Random(123);
+        core.initialize(7, PATTERNS, CATEGORIES, true, useAmbiguities);
+        if (useScaling) {
+            core.setUseScaling(1.01);
+        }
+        for (int node = 0; node < 4; node++) {
+            if (useAmbiguities) {
+                double[] partials = new double[PATTERNS * 4];
+                for (int i = 0; i < partials.length; i++) {
+                    // tiny values so that scaling kicks in
+                    partials[i] = random.nextDouble() * (useScaling ? 1e-60 : 1.0);
+                }
+                core.setNodePartials(node, partials);
+            } else {
+                int[] states = new int[PATTERNS];
+                for (int i = 0; i < PATTERNS; i++) {
+                    // 4 is a gap
+                    states[i] = random.nextInt(5);
+                }
+                core.setNodeStates(node, states);
+            }
+        }
+        for (int node = 0; node < 6; node++) {
+            for (int category = 0; category < CATEGORIES; category++) {
+                double[] matrix = new double[16];
+                for (int i = 0; i < 16; i++) {
+                    matrix[i] = random.nextDouble();
+                }
+                core.setNodeMatrix(node, category, matrix);
+            }
+        }
+        for (int node = 4; node < 7; node++) {
+            core.createNodePartials(node);
+        }
+    }
+
+    private double[] partials(LikelihoodCore core, int node) {
+        double[] partials = new double[PATTERNS * 4 * CATEGORIES];
+        core.getNodePartials(node, partials);
+        return partials;
+    }
+
+    @Test
+    public void testTreeLikelihood() throws Exception {
+        Alignment data = BEASTTestCase.getAlignment();
+        Tree tree = BEASTTestCase.getTree(data);
+
+        Frequencies freqs = new Frequencies();
+        freqs.initByName("data", data);
+
+        HKY hky = new HKY();
+        hky.initByName("kappa", new RealScalarParam<>(38.82974, PositiveReal.INSTANCE),
+                "frequencies", freqs);
+
+        SiteModel siteModel = new SiteModel();
+        siteModel.initByName("mutationRate", new RealScalarParam<>(1.0, PositiveReal.INSTANCE), "gammaCategoryCount", 4,
+                "shape", new RealScalarParam<>(0.137064, PositiveReal.INSTANCE),
+                "substModel", hky);
+
+        TreeLikelihood likelihood = new TreeLikelihood();
+        likelihood.initByName("data", data, "tree", tree, "siteModel", siteModel,
+                "implementation", VectorLikelihoodCore4.class.getName());
+        assertInstanceOf(VectorLikelihoodCore4.class, likelihood.getLikelihoodCore());
+        // same as TreeLikelihoodTest.testHKY85GLikelihood
+        assertEquals(-1789.7593576610134, likelihood.calculateLogP(), BEASTTestCase.PRECISION);
+    }
+
+    @Test
+    public void testLegacyTreeLikelihood() throws Exception {
+        Alignment data = BEASTTestCase.getAlignment();
+        Tree tree = BEASTTestCase.getTree(data);
+
+        beast.base.evolution.substitutionmodel.Frequencies freqs = new beast.base.evolution.substitutionmodel.Frequencies();
+        freqs.initByName("data", data);
+
+        beast.base.evolution.substitutionmodel.HKY hky = new beast.base.evolution.substitutionmodel.HKY();
+        hky.initByName("kappa", "38.82974", "frequencies", freqs);
+
+        beast.base.evolution.sitemodel.SiteModel siteModel = new beast.base.evolution.sitemodel.SiteModel();
+        siteModel.initByName("mutationRate", "1.0", "gammaCategoryCount", 4,
+                "shape", "0.137064",
+                "substModel", hky);
+
+        beast.base.evolution.likelihood.TreeLikelihood likelihood = new beast.base.evolution.likelihood.TreeLikelihood();
+        likelihood.initByName("data", data, "tree", tree, "siteModel", siteModel,
+                "implementation", VectorLikelihoodCore4.class.getName());
+        assertInstanceOf(VectorLikelihoodCore4.class, likelihood.getLikelihoodCore());
+        assertEquals(-1789.7593576610134, likelihood.calculateLogP(), BEASTTestCase.PRECISION);
+    }
+
+}
@@ -0,0 +1,34 @@
+package beast.base.inference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Screen log lines must be formatted the same as when the line was
+ * split into entries with String.split().
+ */
+public class LoggerPrettifyTest {
+
+    @Test
+    public void testSameAsSplit() {
+        Logger logger = new Logger();
+        String[] lines = {
+                "1000\t-1234.5678\t0.001\t1.0E-5\ttrue\t",
+                "1000\t-1234.5678\t0.001",
+                "0\t\t12\t\t",
+                "a-very-long-entry-name-over-fifteen\t-1.23456789012345E-10\t",
+                "\t1.5\t",
+                "\t\t",
+                ""
+        };
+        for (String line : lines) {
+            String expected = "";
+            for (String str : line.split("\t")) {
+                expected += logger.prettifyLogEntry(str);
+            }
+            assertEquals(expected, logger.prettifyLogLine(line), line);
+        }
+    }
+
+}
@@ -0,0 +1,254 @@
+package beast.base.spec.inference.distribution;
+
+import beast.base.spec.domain.NonNegativeInt;
+import beast.base.spec.domain.NonNegativeReal;
+import beast.base.spec.domain.PositiveReal;
+import beast.base.spec.domain.Real;
+import beast.base.spec.inference.parameter.IntVectorParam;
+import beast.base.spec.inference.parameter.RealScalarParam;
+import beast.base.spec.inference.parameter.RealVectorParam;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks IID gives the same result as summing the per-element log densities,
+ * also when only changed elements are recalculated.
+ */
+public class IIDTest {
+
+    static final double[] VALUES = {0.3, 1.7, 2.2, 0.01, 5.5, 1.0};
+
+    @Test
+    public void testRealVector() {
+        LogNormal logNormal = new LogNormal();
+        logNormal.initByName("M", new RealScalarParam<>(0.5, Real.INSTANCE),
+                "S", new RealScalarParam<>(1.2, PositiveReal.INSTANCE));
+        RealVectorParam<PositiveReal> param = new RealVectorParam<>(VALUES, PositiveReal.INSTANCE);
+        IID<?, ?, Double> iid = new IID<>(param, logNormal);
+
+        double expected = 0.0;
+        for (double x : VALUES) {
+            expected += logNormal.calcLogP(x);
+        }
+        assertEquals(expected, iid.calculateLogP(), 0.0);
+        assertEquals(expected, logNormal.logDensity(VALUES, 0, VALUES.length), 0.0);
+
+        // distribution parameters changed after the first calculation
+        ((RealScalarParam<Real>) logNormal.MParameterInput.get()).set(-1.0);
+        expected = 0.0;
+        for (double x : VALUES) {
+            expected += logNormal.calcLogP(x);
+        }
+        assertEquals(expected, iid.calculateLogP(), 0.0);
+
+        // dimension changed after the first calculation
+        param.setDimension(3);
+        expected = 0.0;
+        for (int i = 0; i < 3; i++) {
+            expected += logNormal.calcLogP(param.get(i));
+        }
+        assertEquals(expected, iid.calculateLogP(), 0.0);
+    }
+
+    @Test
+    public void testRealVectorDefaultPath() {
+        // OffsetReal does not wrap an Apache distribution, so uses the element-wise default
+        Normal normal = new Normal();
+        normal.initByName("mean", new RealScalarParam<>(1.0, Real.INSTANCE),
+                "sigma", new RealScalarParam<>(2.0, PositiveReal.INSTANCE));
+        OffsetReal offset = new OffsetReal(normal, 3.0);
+        RealVectorParam<Real> param = new RealVectorParam<>(VALUES, Real.INSTANCE);
+        IID<?, ?, Double> iid = new IID<>(param, offset);
+
+        double expected = 0.0;
+        for (double x : VALUES) {
+            expected += offset.calcLogP(x);
+        }
+        assertEquals(expected, iid.calculateLogP(), 0.0);
+    }
+
+    @Test
+    public void testOverriddenCalcLogP() {
+        // a subclass overriding only calcLogP(T) must be used for every element
+        Normal normal = new Normal() {
+            @Override
+            protected double calcLogP(Double value) {
+                return -value;
+            }
+        };
+        normal.initByName("mean", new RealScalarParam<>(1.0, Real.INSTANCE),
+                "sigma", new RealScalarParam<>(2.0, PositiveReal.INSTANCE));
+        RealVectorParam<Real> param = new RealVectorParam<>(VALUES, Real.INSTANCE);
+        IID<?, ?, Double> iid = new IID<>(param, normal);
+        double expected = 0.0;
+        for (double x : VALUES) {
+            expected -= x;
+        }
+        assertEquals(expected, iid.calculateLogP(), 1e-12);
+
+        step(iid, param, 1, 4.0);
+        assertEquals(expected - 4.0 + VALUES[1], iid.getCurrentLogP(), 1e-12);
+    }
+
+    @Test
+    public void testRestoreAfterAccept() {
+        LogNormal logNormal = new LogNormal();
+        logNormal.initByName("M", new RealScalarParam<>(0.5, Real.INSTANCE),
+                "S", new RealScalarParam<>(1.2, PositiveReal.INSTANCE));
+        RealVectorParam<PositiveReal> param = new RealVectorParam<>(VALUES, PositiveReal.INSTANCE);
+        IID<?, ?, Double> iid = new IID<>(param, logNormal);
+        iid.calculateLogP();
+
+        // accepted changes must be stored before the next proposal is rejected
+        for (int i = 0; i < VALUES.length; i++) {
+            step(iid, param, i, 0.5 + i);
+            iid.accept();
+            param.setEverythingDirty(false);
+            double acceptedLogP = iid.getCurrentLogP();
+
+            step(iid, param, (i + 1) % VALUES.length, 9.0);
+            param.restore();
+            iid.restore();
+            param.setEverythingDirty(false);
+            assertEquals(acceptedLogP, iid.getCurrentLogP(), 0.0);
+            assertEquals(fullLogP(logNormal, param), acceptedLogP, 1e-12);
+        }
+
+        // the element log densities kept after the rejections are still right
+        step(iid, param, 3, 2.5);
+        assertEquals(fullLogP(logNormal, param), iid.getCurrentLogP(), 1e-12);
+    }
+
+    @Test
+    public void testIncrementalRecalculation() {
+        LogNormal logNormal = new LogNormal();
+        logNormal.initByName("M", new RealScalarParam<>(0.5, Real.INSTANCE),
+                "S", new RealScalarParam<>(1.2, PositiveReal.INSTANCE));
+        RealVectorParam<PositiveReal> param = new RealVectorParam<>(VALUES, PositiveReal.INSTANCE);
+        IID<?, ?, Double> iid = new IID<>(param, logNormal);
+        double initialLogP = iid.calculateLogP();
+
+        // propose a change to one element, as MCMC does, and reject it
+        step(iid, param, 2, 3.3);
+        assertEquals(fullLogP(logNormal, param), iid.getCurrentLogP(), 1e-12);
+        param.restore();
+        iid.restore();
+        param.setEverythingDirty(false);
+        assertEquals(initialLogP, iid.getCurrentLogP(), 0.0);
+
+        // the element log densities must be restored too: accept the next proposals
+        step(iid, param, 4, 0.7);
+        iid.accept();
+        param.setEverythingDirty(false);
+        step(iid, param, 0, 1.9);
+        iid.accept();
+        param.setEverythingDirty(false);
+        assertEquals(fullLogP(logNormal, param), iid.getCurrentLogP(), 1e-12);
+
+        // scaling changes every element
+        iid.store();
+        param.scale(1.5);
+        iid.requiresRecalculation();
+        iid.calculateLogP();
+        iid.accept();
+        param.setEverythingDirty(false);
+        assertEquals(fullLogP(logNormal, param), iid.getCurrentLogP(), 1e-12);
+    }
+
+    @Test
+    public void testIncrementalRecalculationZeroDensity() {
+        // with shape 2, the density at 0 is 0
+        Gamma gamma = new Gamma();
+        gamma.initByName("alpha", new RealScalarParam<>(2.0, PositiveReal.INSTANCE),
+                "theta", new RealScalarParam<>(1.0, PositiveReal.INSTANCE));
+        RealVectorParam<NonNegativeReal> param = new RealVectorParam<>(new double[]{0.5, 1.5, 1.0}, NonNegativeReal.INSTANCE);
+        IID<?, ?, Double> iid = new IID<>(param, gamma);
+        iid.calculateLogP();
+
+        step(iid, param, 1, 0.0);
+        iid.accept();
+        param.setEverythingDirty(false);
+        assertEquals(Double.NEGATIVE_INFINITY, iid.getCurrentLogP(), 0.0);
+
+        // -infinity - -infinity must not leave the sum NaN
+        step(iid, param, 1, 1.5);
+        assertEquals(fullLogP(gamma, param), iid.getCurrentLogP(), 1e-12);
+    }
+
+    /** change element i of param and recalculate iid, as happens in an MCMC step **/
+    private void step(IID<?, ?, Double> iid, RealVectorParam<?> param, int i, double value) {
+        iid.store();
+        param.set(i, value);
+        iid.requiresRecalculation();
+        iid.calculateLogP();
+    }
+
+    private double fullLogP(ScalarDistribution<?, Double> dist, RealVectorParam<?> param) {
+        double logP = 0.0;
+        for (int i = 0; i < param.size(); i++) {
+            logP += dist.calcLogP(param.get(i));
+        }
+        return logP;
+    }
+
+    @Test
+    public void testIntVector() {
+        int[] values = {0, 3, 1, 7, 2};
+        Poisson poisson = new Poisson();
+        poisson.initByName("lambda", new RealScalarParam<>(2.5, NonNegativeReal.INSTANCE));
+        IntVectorParam<NonNegativeInt> param = new IntVectorParam<>(values, NonNegativeInt.INSTANCE);
+        IID<?, ?, Integer> iid = new IID<>(param, poisson);
+
+        double expected = 0.0;
+        for (int x : values) {
+            expected += poisson.calcLogP(x);
+        }
+        assertEquals(expected, iid.calculateLogP(), 0.0);
+    }
+
+    @Test
+    public void testBulkDensity() {
+        // elements are evaluated in bulk, and after a proposal only the run of changed elements
+        int[] evaluated = new int[1];
+        Normal normal = new Normal() {
+            @Override
+            public double logDensity(double[] x, int from, int to, double[] logP) {
+                evaluated[0] += to - from;
+                return super.logDensity(x, from, to, logP);
+            }
+        };
+        normal.initByName("mean", new RealScalarParam<>(1.0, Real.INSTANCE),
+                "sigma", new RealScalarParam<>(2.0, PositiveReal.INSTANCE));
+        RealVectorParam<Real> param = new RealVectorParam<>(VALUES, Real.INSTANCE);
+        IID<?, ?, Double> iid = new IID<>(param, normal);
+        assertEquals(fullLogP(normal, param), iid.calculateLogP(), 1e-12);
+        assertEquals(VALUES.length, evaluated[0]);
+
+        param.setEverythingDirty(false);
+        evaluated[0] = 0;
+        iid.store();
+        param.set(2, 0.5);
+        param.set(3, -0.5);
+        iid.requiresRecalculation();
+        iid.calculateLogP();
+        assertEquals(2, evaluated[0]);
+        assertEquals(fullLogP(normal, param), iid.getCurrentLogP(), 1e-12);
+
+        assertTrue(IID.hasBulkDensity(new Normal(), false));
+        assertTrue(IID.hasBulkDensity(new Poisson(), true));
+        // calcLogP and logDensity(double) are overridden together
+        assertTrue(IID.hasBulkDensity(new OffsetReal(), false));
+        assertTrue(IID.hasBulkDensity(new InverseGamma(), false));
+        // calcLogP is overridden below the bulk method
+        assertFalse(IID.hasBulkDensity(new Normal() {
+            @Override
+            protected double calcLogP(Double value) {
+                return -value;
+            }
+        }, false));
+    }
+
+}
@@ -0,0 +1,108 @@
+package beast.base.spec.inference.util;
+
+import beast.base.inference.Logger;
+import beast.base.inference.MCMC;
+import beast.base.inference.State;
+import beast.base.inference.operator.kernel.KernelDistribution;
+import beast.base.spec.domain.PositiveReal;
+import beast.base.spec.domain.Real;
+import beast.base.spec.inference.distribution.Normal;
+import beast.base.spec.inference.operator.RealRandomWalkOperator;
+import beast.base.spec.inference.parameter.RealScalarParam;
+import beast.base.spec.type.RealScalar;
+import beast.base.trace.AutoCorrelation;
+import beast.base.trace.BatchMeans;
+import beast.base.util.Randomizer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ESSTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testBatchMeans() {
+        // AR(1) trace with autocorrelation 0.9
+        Random random = new Random(42);
+        int n = 200000;
+        double[] values = new double[n];
+        BatchMeans batchMeans = new BatchMeans();
+        double v = 0;
+        for (int i = 0; i < n; i++) {
+            v = 0.9 * v + random.nextGaussian();
+            values[i] = v;
+            batchMeans.add(v);
+        }
+        assertEquals(n, batchMeans.getSampleCount());
+        // memory stays bounded: at most DEFAULT_BATCH_COUNT batches
+        assertTrue(batchMeans.getBatchSize() * BatchMeans.DEFAULT_BATCH_COUNT >= n);
+
+        double[] burnedIn = new double[n - n / 10];
+        System.arraycopy(values, n / 10, burnedIn, 0, burnedIn.length);
+        double expected = new AutoCorrelation(burnedIn, AutoCorrelation.MAX_LAG).getESS();
+        assertEquals(expected, batchMeans.getESS(), 0.3 * expected);
+
+        // independent samples
+        BatchMeans independent = new BatchMeans();
+        for (int i = 0; i < n; i++) {
+            independent.add(random.nextGaussian());
+        }
+        assertEquals(0.9 * n, independent.getESS(), 0.3 * n);
+
+        assertThrows(IllegalArgumentException.class, () -> new BatchMeans(5));
+    }
+
+    @Test
+    public void testStopAtMinESS() throws Exception {
+        Randomizer.setSeed(127);
+
+        RealScalarParam<Real> param = new RealScalarParam<>(0.0, Real.INSTANCE);
+        param.setID("parameter");
+        RealScalar<Real> mean = new RealScalarParam<>(1.0, Real.INSTANCE);
+        RealScalar<PositiveReal> sigma = new RealScalarParam<>(1.0, PositiveReal.INSTANCE);
+        Normal prior = new Normal(param, mean, sigma);
+
+        State state = new State();
+        state.initByName("stateNode", param);
+
+        RealRandomWalkOperator operator = new RealRandomWalkOperator();
+        KernelDistribution.Mirror kdist = new KernelDistribution.Mirror();
+        kdist.initByName("initial", 500, "burnin", 500);
+        operator.initByName("weight", "1", "scalar", param,
+                "kernelDistribution", kdist, "scaleFactor", 1.0, "optimise", true);
+
+        ESS ess = new ESS();
+        ess.initByName("arg", param, "method", ESS.Method.batchMeans);
+
+        Path log = dir.resolve("ess.log");
+        Logger logger = new Logger();
+        logger.initByName("fileName", log.toString(), "logEvery", 100, "log", ess);
+
+        long chainLength = 100000000L;
+        MCMC mcmc = new MCMC();
+        mcmc.initByName(
+                "chainLength", chainLength,
+                "state", state,
+                "distribution", prior,
+                "operator", operator,
+                "logger", logger,
+                "ess", ess,
+                "minESS", 200.0
+        );
+        mcmc.run();
+
+        assertTrue(ess.getESS() > 200);
+        long rows = Files.readAllLines(log).stream().filter(line -> !line.startsWith("#") && !line.startsWith("Sample")).count();
+        assertTrue(rows > 1 && rows * 100 < chainLength / 100, "chain was not stopped early: " + rows + " samples logged");
+    }
+
+}
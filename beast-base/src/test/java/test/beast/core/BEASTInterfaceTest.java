@@ -1,6 +1,7 @@
 package test.beast.core;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -15,6 +16,8 @@ import beast.base.core.Citation;
 import beast.base.core.Description;
 import beast.base.core.Input;
 import beast.base.core.Input.Validate;
+import beast.base.core.InputDescriptors;
+import test.beast.core.PrimitiveBeastObject.Enumeration;
 
 
 public class BEASTInterfaceTest  {
@@ -184,5 +187,35 @@ public class BEASTInterfaceTest  {
 		
 	}
 	
+	@Test
+	public void testInputDescriptors() {
+		// descriptors are shared by all instances of a class, inputs are not
+		assertSame(InputDescriptors.of(BEASTi.class), InputDescriptors.of(BEASTi.class));
+		assertEquals("class that impements BEASTInterface but is not a BEASTObject", InputDescriptors.of(BEASTi.class).getDescription());
+		assertEquals(null, InputDescriptors.of(Object.class).getDescription());
+
+		BEASTi o1 = new BEASTi();
+		BEASTi o2 = new BEASTi();
+		List<Input<?>> inputs1 = o1.listInputs();
+		List<Input<?>> inputs2 = o2.listInputs();
+		assertEquals(2, inputs1.size());
+		assertSame(o1.msgInput, inputs1.get(0));
+		assertSame(o1.beastiInput, inputs1.get(1));
+		assertSame(o2.msgInput, inputs2.get(0));
+
+		// annotated inputs get and set values of their own object
+		PrimitiveBeastObject p1 = new PrimitiveBeastObject(1, Enumeration.one);
+		PrimitiveBeastObject p2 = new PrimitiveBeastObject(2, Enumeration.two);
+		assertEquals(1, p1.getInput("i").get());
+		assertEquals(2, p2.getInput("i").get());
+		p2.getInput("i").set(3);
+		assertEquals(1, p1.getI());
+		assertEquals(3, p2.getI());
+		List<String> names1 = new ArrayList<>(), names2 = new ArrayList<>();
+		p1.listInputs().forEach(input -> names1.add(input.getName()));
+		p2.listInputs().forEach(input -> names2.add(input.getName()));
+		assertEquals(names1, names2);
+	}
+	
 	
 }
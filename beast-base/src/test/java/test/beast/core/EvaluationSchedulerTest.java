@@ -0,0 +1,136 @@
+package test.beast.core;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import beast.base.core.EvaluationScheduler;
+import beast.base.core.ProgramStatus;
+import beast.base.evolution.alignment.Alignment;
+import beast.base.evolution.tree.Tree;
+import beast.base.inference.CompoundDistribution;
+import beast.base.inference.State;
+import beast.base.spec.domain.PositiveReal;
+import beast.base.spec.evolution.likelihood.ThreadedTreeLikelihood;
+import beast.base.spec.evolution.sitemodel.SiteModel;
+import beast.base.spec.evolution.substitutionmodel.Frequencies;
+import beast.base.spec.evolution.substitutionmodel.HKY;
+import beast.base.spec.inference.parameter.RealScalarParam;
+import test.beast.BEASTTestCase;
+
+
+public class EvaluationSchedulerTest {
+
+	@Test
+	public void testBatch() {
+		for (EvaluationScheduler.Mode mode : EvaluationScheduler.Mode.values()) {
+			EvaluationScheduler scheduler = new EvaluationScheduler(4, mode);
+			AtomicInteger evaluations = new AtomicInteger();
+			EvaluationScheduler.Task [] tasks = new EvaluationScheduler.Task[10];
+			for (int i = 0; i < tasks.length; i++) {
+				final int k = i;
+				tasks[i] = () -> {evaluations.incrementAndGet(); return k * k;};
+			}
+			EvaluationScheduler.Batch batch = scheduler.newBatch(tasks);
+
+			// the batch is reused for every evaluation
+			for (int repeat = 0; repeat < 1000; repeat++) {
+				batch.run();
+			}
+			assertEquals(10000, evaluations.get());
+			for (int i = 0; i < tasks.length; i++) {
+				assertEquals(i * i, batch.getResult(i), 0.0);
+			}
+
+			// only the selected tasks are evaluated
+			evaluations.set(0);
+			boolean [] mask = new boolean[10];
+			mask[3] = true;
+			mask[7] = true;
+			batch.run(mask);
+			assertEquals(2, evaluations.get());
+		}
+	}
+
+	@Test
+	public void testNestedBatches() {
+		EvaluationScheduler scheduler = new EvaluationScheduler(3, EvaluationScheduler.Mode.platform);
+		EvaluationScheduler.Batch [] inner = new EvaluationScheduler.Batch[4];
+		EvaluationScheduler.Task [] outerTasks = new EvaluationScheduler.Task[inner.length];
+		for (int i = 0; i < inner.length; i++) {
+			final EvaluationScheduler.Batch batch = scheduler.newBatch(() -> 1.0, () -> 2.0, () -> 3.0);
+			inner[i] = batch;
+			outerTasks[i] = () -> {
+				batch.run();
+				return batch.getResult(0) + batch.getResult(1) + batch.getResult(2);
+			};
+		}
+		EvaluationScheduler.Batch outer = scheduler.newBatch(outerTasks);
+		// all threads can be busy with outer tasks, in which case inner batches run on the calling thread
+		for (int repeat = 0; repeat < 1000; repeat++) {
+			outer.run();
+			for (int i = 0; i < inner.length; i++) {
+				assertEquals(6.0, outer.getResult(i), 0.0);
+			}
+		}
+	}
+
+	@Test
+	public void testFailure() {
+		EvaluationScheduler scheduler = new EvaluationScheduler(2, EvaluationScheduler.Mode.platform);
+		EvaluationScheduler.Batch batch = scheduler.newBatch(() -> 1.0, () -> {throw new IllegalStateException("failed task");});
+		RuntimeException e = assertThrows(RuntimeException.class, batch::run);
+		assertTrue(e.getCause() instanceof IllegalStateException);
+	}
+
+	@Test
+	public void testThreadedLikelihoods() throws Exception {
+		int threads = ProgramStatus.m_nThreads;
+		ProgramStatus.m_nThreads = 3;
+		try {
+			ThreadedTreeLikelihood likelihood1 = newThreadedTreeLikelihood();
+			ThreadedTreeLikelihood likelihood2 = newThreadedTreeLikelihood();
+			// same as TreeLikelihoodTest.testHKY85GLikelihood
+			assertEquals(-1789.7593576610134, likelihood1.calculateLogP(), 1e-6);
+
+			// threaded likelihoods nested in a threaded compound distribution
+			CompoundDistribution posterior = new CompoundDistribution();
+			posterior.initByName("distribution", likelihood1, "distribution", likelihood2, "useThreads", true);
+			State state = new State();
+			state.initByName("stateNode", likelihood1.treeInput.get(), "stateNode", likelihood2.treeInput.get());
+			state.initialise();
+			state.setPosterior(posterior);
+			// makes both likelihoods dirty, so they are calculated in parallel
+			assertEquals(2 * -1789.7593576610134, state.robustlyCalcPosterior(posterior), 1e-6);
+		} finally {
+			ProgramStatus.m_nThreads = threads;
+		}
+	}
+
+	private ThreadedTreeLikelihood newThreadedTreeLikelihood() throws Exception {
+		Alignment data = BEASTTestCase.getAlignment();
+		Tree tree = BEASTTestCase.getTree(data);
+
+		Frequencies freqs = new Frequencies();
+		freqs.initByName("data", data);
+
+		HKY hky = new HKY();
+		hky.initByName("kappa", new RealScalarParam<>(38.82974, PositiveReal.INSTANCE),
+				"frequencies", freqs);
+
+		SiteModel siteModel = new SiteModel();
+		siteModel.initByName("mutationRate", new RealScalarParam<>(1.0, PositiveReal.INSTANCE), "gammaCategoryCount", 4,
+				"shape", new RealScalarParam<>(0.137064, PositiveReal.INSTANCE),
+				"substModel", hky);
+
+		ThreadedTreeLikelihood likelihood = new ThreadedTreeLikelihood();
+		likelihood.initByName("data", data, "tree", tree, "siteModel", siteModel);
+		return likelihood;
+	}
+
+}
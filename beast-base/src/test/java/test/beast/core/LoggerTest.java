@@ -94,6 +94,38 @@ public class LoggerTest {
         assertEquals(Integer.toString(rI), sp[0], "check beast.log 1st sample");
     }
 
+    @Test
+    public void testAsyncFileLog() throws Exception {
+        RealParameter param = new RealParameter(new Double[]{0.3, 0.7});
+        File f_sync = File.createTempFile("sync", ".log");
+        File f_async = File.createTempFile("async", ".log");
+        f_sync.deleteOnExit();
+        f_async.deleteOnExit();
+        Logger.FILE_MODE = Logger.LogFileMode.overwrite;
+
+        Logger syncLogger = new Logger();
+        syncLogger.initByName("fileName", f_sync.getPath(), "log", param);
+        Logger asyncLogger = new Logger();
+        // a small buffer, so the chain has to wait for the writer at times
+        asyncLogger.initByName("fileName", f_async.getPath(), "log", param, "async", true, "bufferSize", 4);
+        syncLogger.init();
+        asyncLogger.init();
+        for (int i = 0; i < 1000; i++) {
+            param.setValue(0, i / 7.0);
+            syncLogger.log(i);
+            asyncLogger.log(i);
+            if (i == 500) {
+                // everything logged so far is in the file after a flush
+                asyncLogger.flush();
+                assertEquals(502, java.nio.file.Files.readAllLines(f_async.toPath()).size());
+            }
+        }
+        syncLogger.close();
+        asyncLogger.close();
+
+        assertEquals(java.nio.file.Files.readAllLines(f_sync.toPath()), java.nio.file.Files.readAllLines(f_async.toPath()));
+    }
+
     @Test
     public void testScreenLog() throws Exception {
         logger = new Logger();
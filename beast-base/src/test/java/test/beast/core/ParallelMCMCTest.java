@@ -0,0 +1,168 @@
+package test.beast.core;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import beast.base.inference.Logger;
+import beast.base.inference.MCMC;
+import beast.base.inference.ParallelMCMC;
+import beast.base.inference.State;
+import beast.base.inference.distribution.Normal;
+import beast.base.inference.distribution.Prior;
+import beast.base.inference.operator.RealRandomWalkOperator;
+import beast.base.inference.parameter.RealParameter;
+import beast.base.util.Randomizer;
+
+public class ParallelMCMCTest {
+
+    @TempDir
+    Path dir;
+
+    /** gives access to the protected static Logger.sampleOffset **/
+    private static class LoggerGlobals extends Logger {
+        static void reset() {
+            Logger.sampleOffset = -1;
+        }
+    }
+
+    @BeforeEach
+    public void setUp() {
+        // JVM-wide globals that other tests may leave set
+        System.clearProperty("file.name.prefix");
+        Logger.FILE_MODE = Logger.LogFileMode.overwrite;
+        LoggerGlobals.reset();
+    }
+
+    /** MCMC sampling x from a standard normal with mean 1, logging x to file x.log **/
+    private MCMC normalMCMC(long chainLength) {
+        // bounds set through inputs, so copies of the model have them too
+        RealParameter x = new RealParameter();
+        x.initByName("value", "0.0", "lower", Double.NEGATIVE_INFINITY, "upper", Double.POSITIVE_INFINITY);
+        x.setID("x");
+        Normal normal = new Normal();
+        normal.initByName("mean", "1.0", "sigma", "1.0");
+        normal.setID("normal");
+        Prior prior = new Prior();
+        prior.initByName("x", x, "distr", normal);
+        prior.setID("prior");
+        State state = new State();
+        state.initByName("stateNode", x);
+        state.setID("state");
+        RealRandomWalkOperator operator = new RealRandomWalkOperator();
+        operator.initByName("weight", 1.0, "parameter", x, "windowSize", 2.0);
+        operator.setID("randomWalk");
+        Logger logger = new Logger();
+        logger.initByName("fileName", dir.resolve("x.log").toString(), "logEvery", 100, "log", x);
+        logger.setID("tracelog");
+        MCMC mcmc = new MCMC();
+        mcmc.initByName("chainLength", chainLength, "state", state, "distribution", prior, "operator", operator, "logger", logger);
+        mcmc.setID("mcmc");
+        return mcmc;
+    }
+
+    private List<Double> readTrace(File file) throws IOException {
+        List<Double> values = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath())) {
+            if (!line.startsWith("#") && !line.startsWith("Sample")) {
+                values.add(Double.parseDouble(line.split("\t")[1]));
+            }
+        }
+        return values;
+    }
+
+    @Test
+    public void testIndependentChains() throws Exception {
+        Randomizer.setSeed(123);
+        ParallelMCMC runner = new ParallelMCMC();
+        runner.initByName("mcmc", normalMCMC(1000), "chains", 2);
+        runner.setStateFile(dir.resolve("test.state").toString(), false);
+        runner.run();
+
+        File log0 = dir.resolve("particle0").resolve("x.log").toFile();
+        File log1 = dir.resolve("particle1").resolve("x.log").toFile();
+        List<Double> trace0 = readTrace(log0);
+        List<Double> trace1 = readTrace(log1);
+        assertEquals(11, trace0.size());
+        assertEquals(11, trace1.size());
+        // every chain has its own random number stream
+        assertNotEquals(trace0, trace1);
+        assertTrue(dir.resolve("particle0").resolve("test.state").toFile().exists());
+        assertTrue(dir.resolve("particle1").resolve("test.state").toFile().exists());
+        assertFalse(dir.resolve("x.log").toFile().exists());
+    }
+
+    @Test
+    public void testCoupledChains() throws Exception {
+        Randomizer.setSeed(127);
+        ParallelMCMC runner = new ParallelMCMC();
+        runner.initByName("mcmc", normalMCMC(200000), "chains", 3, "deltaTemperature", 1.0, "swapEvery", 10);
+        runner.setStateFile(dir.resolve("test.state").toString(), false);
+        runner.run();
+
+        // only the cold chain is logged, and heated chains, which have larger variance,
+        // should not have leaked into it through the swaps
+        List<Double> trace = readTrace(dir.resolve("x.log").toFile());
+        assertEquals(2001, trace.size());
+        assertFalse(dir.resolve("particle1").resolve("x.log").toFile().exists());
+        assertTrue(dir.resolve("particle2").resolve("test.state").toFile().exists());
+        double mean = trace.stream().mapToDouble(d -> d).average().getAsDouble();
+        double variance = trace.stream().mapToDouble(d -> (d - mean) * (d - mean)).sum() / (trace.size() - 1);
+        assertEquals(1.0, mean, 0.15);
+        assertEquals(1.0, variance, 0.15);
+    }
+
+    @Test
+    public void testCoupledChainsAreReproducible() throws Exception {
+        List<List<Double>> traces = new ArrayList<>();
+        for (int run = 0; run < 2; run++) {
+            Randomizer.setSeed(127);
+            ParallelMCMC runner = new ParallelMCMC();
+            runner.initByName("mcmc", normalMCMC(10000), "chains", 3, "deltaTemperature", 1.0, "swapEvery", 10);
+            runner.setStateFile(dir.resolve("test.state").toString(), false);
+            runner.run();
+            traces.add(readTrace(dir.resolve("x.log").toFile()));
+        }
+        // swaps are drawn from a stream derived from the seed, whichever thread decides them
+        assertEquals(traces.get(0), traces.get(1));
+    }
+
+    @Test
+    public void testIndependentChainsCannotResume() throws Exception {
+        Randomizer.setSeed(123);
+        ParallelMCMC runner = new ParallelMCMC();
+        runner.initByName("mcmc", normalMCMC(1000), "chains", 2);
+        runner.setStateFile(dir.resolve("test.state").toString(), true);
+        assertThrows(IllegalArgumentException.class, runner::run);
+    }
+
+    @Test
+    public void testIndependentChainsDoNotOverwriteLogs() throws Exception {
+        Randomizer.setSeed(123);
+        ParallelMCMC runner = new ParallelMCMC();
+        runner.initByName("mcmc", normalMCMC(1000), "chains", 2);
+        runner.setStateFile(dir.resolve("test.state").toString(), false);
+        runner.run();
+
+        Logger.FILE_MODE = Logger.LogFileMode.only_new;
+        ParallelMCMC rerun = new ParallelMCMC();
+        rerun.initByName("mcmc", normalMCMC(1000), "chains", 2);
+        rerun.setStateFile(dir.resolve("test.state").toString(), false);
+        assertThrows(IllegalArgumentException.class, rerun::run);
+    }
+
+}
@@ -0,0 +1,191 @@
+package test.beast.core;
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import beast.base.evolution.tree.Tree;
+import beast.base.inference.CalculationNode;
+import beast.base.inference.CompoundDistribution;
+import beast.base.inference.State;
+import beast.base.inference.distribution.Normal;
+import beast.base.inference.distribution.Prior;
+import beast.base.inference.parameter.IntegerParameter;
+import beast.base.inference.parameter.RealParameter;
+import beast.base.spec.domain.Int;
+import beast.base.spec.domain.PositiveReal;
+import beast.base.spec.inference.parameter.BoolVectorParam;
+import beast.base.spec.inference.parameter.IntScalarParam;
+import beast.base.spec.inference.parameter.RealVectorParam;
+
+
+public class StateTest {
+
+	@TempDir
+	Path dir;
+
+	RealParameter realParameter;
+	IntegerParameter integerParameter;
+	RealVectorParam<PositiveReal> realVector;
+	IntScalarParam<Int> intScalar;
+	BoolVectorParam boolVector;
+	Tree tree;
+
+	State setUpState(String stateFile) {
+		realParameter = new RealParameter(new Double[] {1.5, 2.5, 3.5});
+		realParameter.setID("realParameter");
+		integerParameter = new IntegerParameter(new Integer[] {1, 2});
+		integerParameter.setID("integerParameter");
+		realVector = new RealVectorParam<>(new double[] {0.1, 0.2, 0.3, 0.4}, PositiveReal.INSTANCE);
+		realVector.setID("realVector");
+		intScalar = new IntScalarParam<>(7, Int.INSTANCE);
+		intScalar.setID("intScalar");
+		// does not override toBinary(), so uses the XML representation
+		boolVector = new BoolVectorParam(new boolean[] {true, false, true});
+		boolVector.setID("boolVector");
+		tree = new Tree("((A:1.0,B:1.0):1.0,(C:0.5,D:0.5):1.5):0.0;");
+		tree.setID("tree");
+
+		State state = new State();
+		state.initByName("stateNode", realParameter, "stateNode", integerParameter, "stateNode", realVector,
+				"stateNode", intScalar, "stateNode", boolVector, "stateNode", tree);
+		state.initialise();
+		state.setStateFileName(stateFile);
+		return state;
+	}
+
+	@Test
+	public void testBinaryStateFile() throws Exception {
+		String stateFile = new File(dir.toFile(), "state.binary").getPath();
+		State state = setUpState(stateFile);
+		String newick = tree.getRoot().toNewick();
+		String schedule = "{\"operators\":[\n]}\n";
+
+		state.storeToBinaryFile(100, schedule);
+		state.awaitStateFile();
+		assertTrue(State.isBinaryStateFile(stateFile));
+		assertFalse(new File(stateFile + ".new").exists());
+		assertEquals(schedule, State.readOperatorSchedule(stateFile));
+
+		// change every state node
+		realParameter.setValue(1, 10.0);
+		integerParameter.setValue(0, 5);
+		realVector.setDimension(2);
+		realVector.set(1, 9.0);
+		intScalar.set(-3);
+		boolVector.set(1, true);
+		Tree other = new Tree("(((A:0.5,C:0.5):1.0,B:1.5):2.0,D:3.5):0.0;");
+		other.setID("tree");
+		tree.assignFrom(other);
+
+		state.restoreFromFile();
+		assertArrayEquals(new Double[] {1.5, 2.5, 3.5}, realParameter.getValues());
+		assertArrayEquals(new Integer[] {1, 2}, integerParameter.getValues());
+		assertArrayEquals(new double[] {0.1, 0.2, 0.3, 0.4}, realVector.getValues(), 0.0);
+		assertEquals(7, intScalar.get());
+		assertFalse(boolVector.get(1));
+		assertEquals(newick, tree.getRoot().toNewick());
+		assertEquals(2.0, tree.getRoot().getHeight(), 0.0);
+	}
+
+	@Test
+	public void testBinaryStateFileWriteFailure() throws Exception {
+		String stateFile = new File(dir.toFile(), "missing/state.binary").getPath();
+		State state = setUpState(stateFile);
+		state.storeToBinaryFile(100, null);
+		assertThrows(IOException.class, state::awaitStateFile);
+
+		// the next state is written once the file can be written again
+		new File(dir.toFile(), "missing").mkdir();
+		for (int i = 1; i <= 100; i++) {
+			state.storeToBinaryFile(100 + i, null);
+		}
+		state.awaitStateFile();
+		assertTrue(State.isBinaryStateFile(stateFile));
+		DataInputStream in = new DataInputStream(new FileInputStream(stateFile));
+		in.readInt();
+		in.readInt();
+		assertEquals(200, in.readLong());
+		in.close();
+	}
+
+	@Test
+	public void testXMLStateFileStillRestores() throws Exception {
+		String stateFile = new File(dir.toFile(), "state.xml").getPath();
+		State state = setUpState(stateFile);
+		state.storeToFile(100);
+		assertFalse(State.isBinaryStateFile(stateFile));
+		assertTrue(Files.readString(Path.of(stateFile)).startsWith("<itsabeastystatewerein"));
+
+		realParameter.setValue(1, 10.0);
+		intScalar.set(-3);
+		state.restoreFromFile();
+		assertEquals(2.5, realParameter.getValue(1), 0.0);
+		assertEquals(7, intScalar.get());
+	}
+
+	@Test
+	public void testCalculationNodePaths() {
+		RealParameter x = new RealParameter("1.0");
+		RealParameter y = new RealParameter("1.0");
+		Normal normalX = new Normal();
+		normalX.initByName("mean", "0.0", "sigma", "1.0");
+		Prior priorX = new Prior();
+		priorX.initByName("x", x, "distr", normalX);
+		// x is also the mean of the distribution of y
+		Normal normalY = new Normal();
+		normalY.initByName("mean", x, "sigma", "1.0");
+		Prior priorY = new Prior();
+		priorY.initByName("x", y, "distr", normalY);
+		CompoundDistribution posterior = new CompoundDistribution();
+		posterior.initByName("distribution", priorY, "distribution", priorX);
+
+		State state = new State();
+		state.initByName("stateNode", x, "stateNode", y);
+		state.initialise();
+		state.setPosterior(posterior);
+
+		state.store(0);
+		x.setValue(2.0);
+		List<CalculationNode> path = state.getCurrentCalculationNodes();
+		assertEquals(4, path.size());
+		assertTrue(path.contains(priorX));
+		assertTrue(path.indexOf(normalY) < path.indexOf(priorY));
+		assertSame(posterior, path.get(3));
+		assertSame(path, state.getCurrentCalculationNodes());
+		state.setEverythingDirty(false);
+
+		state.store(1);
+		y.setValue(2.0);
+		assertEquals(List.of(priorY, posterior), state.getCurrentCalculationNodes());
+		state.setEverythingDirty(false);
+
+		// the order in which state nodes are changed does not matter
+		state.store(2);
+		y.setValue(3.0);
+		x.setValue(3.0);
+		List<CalculationNode> pathXY = state.getCurrentCalculationNodes();
+		assertEquals(path, pathXY);
+		state.setEverythingDirty(false);
+		state.store(3);
+		x.setValue(4.0);
+		y.setValue(4.0);
+		assertSame(pathXY, state.getCurrentCalculationNodes());
+	}
+
+}
@@ -0,0 +1,129 @@
+package test.beast.evolution.alignment;
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import beast.base.evolution.alignment.Alignment;
+import beast.base.evolution.alignment.PackedSites;
+import beast.base.evolution.alignment.Sequence;
+
+/** test pattern compression of Alignment and the packed storage of state codes **/
+public class AlignmentTest {
+
+    @Test
+    public void testPatterns() {
+        Sequence s1 = new Sequence("s1", "ACGTTGCA-ACGTN?A");
+        Sequence s2 = new Sequence("s2", "ACGTTGCAAACGTAAA");
+        Sequence s3 = new Sequence("s3", "CCGTTGCA-ACTTRCA");
+
+        Alignment data = new Alignment();
+        data.initByName("sequence", s1, "sequence", s2, "sequence", s3, "dataType", "nucleotide");
+        assertPatternsAsSortedSites(data, null);
+
+        Alignment weighted = new Alignment();
+        weighted.initByName("sequence", s1, "sequence", s2, "sequence", s3, "dataType", "nucleotide",
+                "weights", "1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16");
+        int[] weights = new int[16];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = i + 1;
+        }
+        assertPatternsAsSortedSites(weighted, weights);
+    }
+
+    /** patterns must be the same as those found by sorting all sites, as done previously **/
+    private void assertPatternsAsSortedSites(Alignment data, int[] weights) {
+        List<List<Integer>> counts = data.getCounts();
+        int siteCount = data.getSiteCount();
+        int[][] sites = new int[siteCount][counts.size()];
+        for (int i = 0; i < siteCount; i++) {
+            for (int j = 0; j < counts.size(); j++) {
+                sites[i][j] = counts.get(j).get(i);
+            }
+        }
+        int[][] sorted = sites.clone();
+        Arrays.sort(sorted, Arrays::compare);
+        List<int[]> expected = new ArrayList<>();
+        for (int[] site : sorted) {
+            if (expected.isEmpty() || !Arrays.equals(expected.get(expected.size() - 1), site)) {
+                expected.add(site);
+            }
+        }
+
+        assertEquals(expected.size(), data.getPatternCount());
+        int[] expectedWeights = new int[expected.size()];
+        for (int i = 0; i < siteCount; i++) {
+            int pattern = data.getPatternIndex(i);
+            assertArrayEquals(sites[i], data.getPattern(pattern));
+            expectedWeights[pattern] += weights == null ? 1 : weights[i];
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), data.getPattern(i));
+            assertEquals(expectedWeights[i], data.getPatternWeight(i));
+        }
+    }
+
+    @Test
+    public void testPackedSites() {
+        PackedSites sites = new PackedSites(3, 5);
+        for (int taxon = 0; taxon < 3; taxon++) {
+            for (int site = 0; site < 5; site++) {
+                sites.set(taxon, site, (taxon + site) % 4);
+            }
+        }
+        assertEquals(4, sites.getBitsPerCode());
+        assertEquals(2, sites.get(1, 1));
+        assertEquals(List.of(2, 3, 0, 1, 2), sites.asLists().get(2));
+
+        // codes that do not fit widen the storage, but keep the codes set before
+        sites.set(0, 0, 17);
+        assertEquals(8, sites.getBitsPerCode());
+        sites.set(1, 4, -1000);
+        assertEquals(32, sites.getBitsPerCode());
+        assertEquals(17, sites.get(0, 0));
+        assertEquals(-1000, sites.get(1, 4));
+        assertEquals(List.of(2, 3, 0, 1, 2), sites.asLists().get(2));
+
+        // sites 1 and 5 are the same, as are sites 2 and 4
+        PackedSites duplicates = PackedSites.of(List.of(List.of(1, 2, 3, 2, 1), List.of(0, 1, 0, 1, 0)));
+        int[] index = new int[5];
+        int[][] unique = duplicates.uniqueSites(index, false);
+        assertEquals(3, unique.length);
+        assertArrayEquals(new int[] {0, 1, 2, 1, 0}, index);
+        assertArrayEquals(new int[] {3, 0}, unique[2]);
+        assertEquals(5, duplicates.uniqueSites(index, true).length);
+    }
+
+    @Test
+    public void testPackedSitesTooLarge() {
+        // 10^10 codes do not fit in a byte array even at 4 bits per code
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new PackedSites(100000, 100000));
+        assertTrue(e.getMessage().contains("too large"));
+    }
+
+    @Test
+    public void testCountsAreReadOnly() {
+        Sequence s1 = new Sequence("s1", "ACGT");
+        Sequence s2 = new Sequence("s2", "ACGA");
+
+        Alignment data = new Alignment();
+        data.initByName("sequence", s1, "sequence", s2, "dataType", "nucleotide");
+        List<List<Integer>> counts = data.getCounts();
+        assertThrows(UnsupportedOperationException.class, () -> counts.get(0).set(0, 1));
+        assertThrows(UnsupportedOperationException.class, () -> counts.add(new ArrayList<>()));
+
+        List<Integer> copy = new ArrayList<>(counts.get(1));
+        copy.set(3, 3);
+        assertEquals(List.of(0, 1, 2, 3), copy);
+        assertEquals(List.of(0, 1, 2, 0), counts.get(1));
+    }
+
+}
@@ -0,0 +1,95 @@
+package test.beast.evolution.alignment;
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import beast.base.evolution.alignment.Alignment;
+import beast.base.evolution.alignment.MappedAlignment;
+import beast.base.evolution.alignment.Sequence;
+import beast.base.evolution.alignment.Taxon;
+import beast.base.evolution.alignment.TaxonSet;
+import beast.base.parser.NexusParser;
+
+/** test MappedAlignment gives the same alignment as NexusParser and sequence inputs **/
+public class MappedAlignmentTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testNexus() throws Exception {
+        String dirName = System.getProperty("user.dir") + "/beast.base/examples/nexus";
+        // sequential with match characters and \r line breaks, interleaved, and upper case commands
+        for (String fileName : new String[] {"primate-mtDNA.nex", "Darwins-finches.nex", "47.nex"}) {
+            File file = new File(dirName, fileName);
+            NexusParser parser = new NexusParser();
+            parser.parseFile(file);
+            Alignment expected = parser.m_alignment;
+
+            MappedAlignment alignment = new MappedAlignment();
+            alignment.initByName("fileName", file.getPath());
+            assertSameAlignment(expected, alignment);
+        }
+    }
+
+    @Test
+    public void testFasta() throws Exception {
+        Path file = dir.resolve("test.fasta");
+        Files.writeString(file, "; comment\r\n>human\r\nACGTAC\r\ngtAC-?\r\n\r\n>chimp\r\nACGTACGTNNRY\r\n>gorilla\r\nACG\r\nTTCGTACCA\r\n");
+
+        MappedAlignment alignment = new MappedAlignment();
+        alignment.initByName("fileName", file.toString());
+
+        Alignment expected = new Alignment();
+        expected.initByName("sequence", new Sequence("human", "ACGTACgtAC-?"),
+                "sequence", new Sequence("chimp", "ACGTACGTNNRY"),
+                "sequence", new Sequence("gorilla", "ACGTTCGTACCA"),
+                "dataType", "nucleotide");
+        assertSameAlignment(expected, alignment);
+
+        // taxa in the order of a taxon set
+        List<Taxon> taxa = new ArrayList<>();
+        for (String taxon : new String[] {"gorilla", "human", "chimp"}) {
+            taxa.add(new Taxon(taxon));
+        }
+        TaxonSet taxonSet = new TaxonSet(taxa);
+        MappedAlignment sorted = new MappedAlignment();
+        sorted.initByName("fileName", file.toString(), "taxa", taxonSet);
+        expected.sortByTaxonSet(taxonSet);
+        assertSameAlignment(expected, sorted);
+    }
+
+    @Test
+    public void testInvalidFasta() throws Exception {
+        Path file = dir.resolve("invalid.fasta");
+        Files.writeString(file, ">human\nACGTAC\n>chimp\nACGTA\n");
+        MappedAlignment alignment = new MappedAlignment();
+        assertThrows(RuntimeException.class, () -> alignment.initByName("fileName", file.toString()));
+
+        Files.writeString(file, ">human\nACGTAC\n>chimp\nACGTAJ\n");
+        MappedAlignment alignment2 = new MappedAlignment();
+        assertThrows(RuntimeException.class, () -> alignment2.initByName("fileName", file.toString()));
+    }
+
+    private void assertSameAlignment(Alignment expected, Alignment alignment) {
+        assertEquals(expected.getTaxaNames(), alignment.getTaxaNames());
+        assertEquals(expected.getCounts(), alignment.getCounts());
+        assertEquals(expected.getPatternCount(), alignment.getPatternCount());
+        for (int i = 0; i < expected.getPatternCount(); i++) {
+            assertArrayEquals(expected.getPattern(i), alignment.getPattern(i));
+            assertEquals(expected.getPatternWeight(i), alignment.getPatternWeight(i));
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+package test.beast.evolution.distance;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+
+import beast.base.core.ProgramStatus;
+import beast.base.evolution.alignment.Alignment;
+import beast.base.evolution.alignment.Sequence;
+import beast.base.evolution.distance.Distance;
+import beast.base.evolution.distance.F84Distance;
+import beast.base.evolution.distance.HammingDistance;
+import beast.base.evolution.distance.JukesCantorDistance;
+import test.beast.BEASTTestCase;
+
+/** the condensed distance matrix should have the same distances as pairwiseDistance() **/
+public class DistanceTest {
+
+    /** alignment with ambiguous characters and patterns of various weights, so with more than one bit plane **/
+    private Alignment randomAlignment(int taxonCount) {
+        Random random = new Random(127);
+        final String characters = "ACGTACGTACGT-NR";
+        String[] columns = new String[300];
+        for (int k = 0; k < columns.length; k++) {
+            StringBuilder column = new StringBuilder();
+            for (int i = 0; i < taxonCount; i++) {
+                column.append(characters.charAt(random.nextInt(characters.length())));
+            }
+            columns[k] = column.toString();
+        }
+        StringBuilder[] sequences = new StringBuilder[taxonCount];
+        for (int i = 0; i < taxonCount; i++) {
+            sequences[i] = new StringBuilder();
+        }
+        for (int site = 0; site < 3000; site++) {
+            String column = columns[random.nextInt(random.nextBoolean() ? columns.length : 10)];
+            for (int i = 0; i < taxonCount; i++) {
+                sequences[i].append(column.charAt(i));
+            }
+        }
+        List<Sequence> seqs = new ArrayList<>();
+        for (int i = 0; i < taxonCount; i++) {
+            seqs.add(new Sequence("taxon" + i, sequences[i].toString()));
+        }
+        return new Alignment(seqs, "nucleotide");
+    }
+
+    private void assertMatrixEquals(Distance.Base distance, Alignment alignment) {
+        distance.setPatterns(alignment);
+        final int taxonCount = alignment.getTaxonCount();
+        float[] matrix = distance.pairwiseDistances(taxonCount);
+        assertEquals(taxonCount * (taxonCount - 1) / 2, matrix.length);
+        for (int i = 0; i < taxonCount; i++) {
+            for (int j = 0; j < i; j++) {
+                assertEquals((float) distance.pairwiseDistance(i, j), matrix[Distance.index(i, j)]);
+                assertEquals(Distance.index(i, j), Distance.index(j, i));
+            }
+        }
+    }
+
+    @Test
+    public void testPairwiseDistances() throws Exception {
+        for (Alignment alignment : new Alignment[]{BEASTTestCase.getAlignment(), randomAlignment(30)}) {
+            // observed distance and Jukes Cantor count differences bit-parallel, the others do not
+            assertMatrixEquals(new Distance.Base(), alignment);
+            assertMatrixEquals(new JukesCantorDistance(), alignment);
+            assertMatrixEquals(new F84Distance(), alignment);
+            assertMatrixEquals(new HammingDistance(), alignment);
+        }
+    }
+
+    @Test
+    public void testPairwiseDistancesInParallel() throws Exception {
+        // enough taxa for several blocks of rows
+        Alignment alignment = randomAlignment(200);
+        int threads = ProgramStatus.m_nThreads;
+        try {
+            ProgramStatus.m_nThreads = 4;
+            assertMatrixEquals(new JukesCantorDistance(), alignment);
+            assertMatrixEquals(new F84Distance(), alignment);
+
+            // subclasses that do not declare themselves thread safe are calculated on the calling thread
+            Set<Thread> threadsUsed = ConcurrentHashMap.newKeySet();
+            HammingDistance distance = new HammingDistance() {
+                @Override
+                public boolean isThreadSafe() {
+                    return false;
+                }
+
+                @Override
+                public double pairwiseDistance(int taxon1, int taxon2) {
+                    threadsUsed.add(Thread.currentThread());
+                    return super.pairwiseDistance(taxon1, taxon2);
+                }
+            };
+            distance.setPatterns(alignment);
+            distance.pairwiseDistances(alignment.getTaxonCount());
+            assertEquals(Set.of(Thread.currentThread()), threadsUsed);
+        } finally {
+            ProgramStatus.m_nThreads = threads;
+        }
+    }
+}
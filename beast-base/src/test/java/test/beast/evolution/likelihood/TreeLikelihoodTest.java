@@ -1,19 +1,28 @@
 package test.beast.evolution.likelihood;
 
 
+import beast.base.core.ProgramStatus;
 import beast.base.evolution.alignment.Alignment;
 import beast.base.evolution.alignment.Sequence;
 import beast.base.evolution.datatype.UserDataType;
+import beast.base.evolution.likelihood.BeerLikelihoodCore4;
+import beast.base.evolution.likelihood.LikelihoodCore;
 import beast.base.evolution.likelihood.TreeLikelihood;
 import beast.base.evolution.sitemodel.SiteModel;
 import beast.base.evolution.substitutionmodel.*;
 import beast.base.evolution.tree.Tree;
 import beast.base.inference.parameter.RealParameter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import test.beast.BEASTTestCase;
 import test.beast.evolution.alignment.UncertainAlignmentTest;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * This test mimics the testLikelihood.xml file from Beast 1, which compares Beast 1 results to PAUP results.
@@ -29,6 +38,23 @@ public class TreeLikelihoodTest  {
         super();
     }
 
+    /** value of the java.only property before the test, which newTreeLikelihood() sets **/
+    private String javaOnly;
+
+    @BeforeEach
+    public void saveJavaOnly() {
+        javaOnly = System.getProperty("java.only");
+    }
+
+    @AfterEach
+    public void restoreJavaOnly() {
+        if (javaOnly == null) {
+            System.clearProperty("java.only");
+        } else {
+            System.setProperty("java.only", javaOnly);
+        }
+    }
+
     protected TreeLikelihood newTreeLikelihood() {
     	System.setProperty("java.only","true");
         return new TreeLikelihood();
@@ -231,6 +257,84 @@ public class TreeLikelihoodTest  {
         assertEquals(logP, -1789.7593576610134, BEASTTestCase.PRECISION);
     }
 
+    @Test
+    public void testHKY85GParallelPeeling() throws Exception {
+        // same model as testHKY85GLikelihood, with subtrees peeled in parallel
+        Alignment data = BEASTTestCase.getAlignment();
+        Tree tree = BEASTTestCase.getTree(data);
+
+        Frequencies freqs = new Frequencies();
+        freqs.initByName("data", data);
+
+        HKY hky = new HKY();
+        hky.initByName("kappa", "38.82974", "frequencies", freqs);
+
+        SiteModel siteModel = new SiteModel();
+        siteModel.initByName("mutationRate", "1.0", "gammaCategoryCount", 4,
+                "shape", "0.137064",
+                "substModel", hky);
+
+        int threads = ProgramStatus.m_nThreads;
+        try {
+            ProgramStatus.m_nThreads = 4;
+            TreeLikelihood likelihood = newTreeLikelihood();
+            // threshold of 0 forks at every internal node
+            likelihood.initByName("data", data, "tree", tree, "siteModel", siteModel,
+                    "parallelPeeling", true, "parallelThreshold", 0);
+            assertEquals(-1789.7593576610134, likelihood.calculateLogP(), BEASTTestCase.PRECISION);
+
+            likelihood.initByName("data", data, "tree", tree, "siteModel", siteModel,
+                    "parallelPeeling", true, "parallelThreshold", Integer.MAX_VALUE);
+            assertEquals(-1789.7593576610134, likelihood.calculateLogP(), BEASTTestCase.PRECISION);
+        } finally {
+            ProgramStatus.m_nThreads = threads;
+        }
+    }
+
+    @Test
+    public void testParallelPeelingUsesThreads() throws Exception {
+        // balanced tree, so that both children of the root and of its left child are internal nodes
+        Alignment data = BEASTTestCase.getAlignment();
+        Tree tree = BEASTTestCase.getTree(data, "(((human:0.02,chimp:0.02):0.01,(bonobo:0.03,gorilla:0.03):0.01):0.03,"
+                + "(orangutan:0.06,siamang:0.07):0.01);");
+
+        SiteModel siteModel = new SiteModel();
+        siteModel.initByName("mutationRate", "1.0", "gammaCategoryCount", 1, "substModel", new JukesCantor());
+
+        TreeLikelihood likelihood = newTreeLikelihood();
+        likelihood.initByName("data", data, "tree", tree, "siteModel", siteModel);
+        double expectedLogP = likelihood.calculateLogP();
+
+        int threads = ProgramStatus.m_nThreads;
+        try {
+            ProgramStatus.m_nThreads = 4;
+            Set<Thread> peelingThreads = ConcurrentHashMap.newKeySet();
+            likelihood = new TreeLikelihood() {
+                @Override
+                protected LikelihoodCore createLikelihoodCore(int stateCount) {
+                    return new BeerLikelihoodCore4() {
+                        @Override
+                        public void calculatePartials(int nodeIndex1, int nodeIndex2, int nodeIndex3) {
+                            peelingThreads.add(Thread.currentThread());
+                            // give helper threads the time to pick up the sibling subtree
+                            long end = System.currentTimeMillis() + 1000;
+                            while (peelingThreads.size() < 2 && System.currentTimeMillis() < end) {
+                                Thread.onSpinWait();
+                            }
+                            super.calculatePartials(nodeIndex1, nodeIndex2, nodeIndex3);
+                        }
+                    };
+                }
+            };
+            likelihood.initByName("data", data, "tree", tree, "siteModel", siteModel,
+                    "parallelPeeling", true, "parallelThreshold", 0);
+            assertEquals(expectedLogP, likelihood.calculateLogP(), BEASTTestCase.PRECISION);
+            assertTrue(peelingThreads.size() > 1);
+        } finally {
+            ProgramStatus.m_nThreads = threads;
+        }
+    }
+
     @Test
     public void testHKY85ILikelihood() throws Exception {
         // Set up HKY85+I model: estimated freqs, kappa = 38.564672, 0 gamma categories, prop invariant = 0.701211
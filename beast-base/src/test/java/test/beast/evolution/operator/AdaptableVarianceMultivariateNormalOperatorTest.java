@@ -0,0 +1,62 @@
+package test.beast.evolution.operator;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import beast.base.evolution.operator.kernel.AdaptableVarianceMultivariateNormalOperator;
+import beast.base.inference.OperatorSchedule;
+import beast.base.inference.operator.kernel.Transform;
+import beast.base.inference.parameter.RealParameter;
+import beast.base.util.Randomizer;
+
+public class AdaptableVarianceMultivariateNormalOperatorTest {
+
+    /** proposals of the incremental mode should be the same as when decomposing the covariance matrix every time **/
+    @Test
+    public void testIncremental() {
+        double[][] full = propose(false, 0);
+        double[][] incremental = propose(true, 0);
+        double[][] refreshed = propose(true, 25);
+        for (int k = 0; k < full.length; k++) {
+            for (int i = 0; i < full[k].length; i++) {
+                assertEquals(full[k][i], incremental[k][i], 1e-8);
+                assertEquals(full[k][i], refreshed[k][i], 1e-8);
+            }
+        }
+    }
+
+    private double[][] propose(boolean incremental, int refreshEvery) {
+        int dim = 5;
+        RealParameter parameter = new RealParameter(new Double[dim]);
+        Transform.NoTransform transform = new Transform.NoTransform();
+        transform.initByName("f", parameter);
+        AdaptableVarianceMultivariateNormalOperator operator = new AdaptableVarianceMultivariateNormalOperator();
+        operator.initByName("weight", 1.0, "transformations", transform, "beta", 0.0,
+                "burnin", 20, "initial", 50, "incremental", incremental, "refreshEvery", refreshEvery);
+        operator.setOperatorSchedule(new OperatorSchedule());
+
+        // make sure the generator of this thread exists, so every run gets the same seed
+        Randomizer.nextDouble();
+        Randomizer.setSeed(123);
+        // correlated states for the operator to learn from
+        Random random = new Random(1);
+        double[][] proposals = new double[300][dim];
+        for (int k = 0; k < proposals.length; k++) {
+            double shared = random.nextGaussian();
+            for (int i = 0; i < dim; i++) {
+                parameter.setValue(i, shared + (i + 1) * random.nextGaussian());
+            }
+            operator.proposal();
+            for (int i = 0; i < dim; i++) {
+                proposals[k][i] = parameter.getValue(i);
+            }
+            operator.accept();
+        }
+        return proposals;
+    }
+
+}
@@ -0,0 +1,209 @@
+package test.beast.evolution.tree;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import beast.base.evolution.tree.BinaryTreeLogReader;
+import beast.base.evolution.tree.BinaryTreeLogWriter;
+import beast.base.evolution.tree.BinaryTreeLogger;
+import beast.base.evolution.tree.Node;
+import beast.base.evolution.tree.Tree;
+import beast.base.inference.Logger;
+import beast.base.inference.parameter.RealParameter;
+
+/** test trees written to a binary tree log are read back exactly **/
+public class BinaryTreeLogTest {
+
+    @TempDir
+    Path dir;
+
+    final static int TAXON_COUNT = 20;
+
+    /** gives access to the protected static Logger.sampleOffset **/
+    private static class LoggerGlobals extends Logger {
+        static void reset() {
+            Logger.sampleOffset = -1;
+        }
+    }
+
+    @BeforeEach
+    public void setUp() {
+        // JVM-wide globals that other tests may leave set
+        System.clearProperty("file.name.prefix");
+        Logger.FILE_MODE = Logger.LogFileMode.only_new;
+        LoggerGlobals.reset();
+    }
+
+    /** random tree built by joining random pairs of lineages **/
+    private Tree randomTree(Random random, List<String> taxa) {
+        List<Node> lineages = new ArrayList<>();
+        for (int i = 0; i < taxa.size(); i++) {
+            Node leaf = new Node(taxa.get(i));
+            leaf.setNr(i);
+            leaf.setHeight(random.nextInt(3) == 0 ? random.nextDouble() : 0);
+            lineages.add(leaf);
+        }
+        int nr = taxa.size();
+        double height = 1;
+        while (lineages.size() > 1) {
+            Node left = lineages.remove(random.nextInt(lineages.size()));
+            Node right = lineages.remove(random.nextInt(lineages.size()));
+            Node parent = new Node();
+            parent.setNr(nr++);
+            height += random.nextDouble();
+            parent.setHeight(height);
+            parent.addChild(left);
+            parent.addChild(right);
+            lineages.add(parent);
+        }
+        return new Tree(lineages.get(0));
+    }
+
+    private List<String> taxa() {
+        List<String> taxa = new ArrayList<>();
+        for (int i = 0; i < TAXON_COUNT; i++) {
+            taxa.add("taxon" + i);
+        }
+        return taxa;
+    }
+
+    private void assertSameTree(Tree expected, Tree tree) {
+        assertEquals(expected.getNodeCount(), tree.getNodeCount());
+        for (int i = 0; i < expected.getNodeCount(); i++) {
+            Node node = expected.getNode(i);
+            Node node2 = tree.getNode(i);
+            assertEquals(node.getHeight(), node2.getHeight(), 0);
+            assertEquals(node.isRoot() ? -1 : node.getParent().getNr(), node2.isRoot() ? -1 : node2.getParent().getNr());
+            if (node.isLeaf()) {
+                assertEquals(node.getID(), node2.getID());
+            }
+        }
+    }
+
+    @Test
+    public void testWriteRead() throws IOException {
+        Random random = new Random(7);
+        List<String> taxa = taxa();
+        File file = dir.resolve("test.trees").toFile();
+        List<Tree> trees = new ArrayList<>();
+        List<double[][]> metaData = new ArrayList<>();
+        try (BinaryTreeLogWriter writer = new BinaryTreeLogWriter(new FileOutputStream(file), taxa, Arrays.asList("rate", "leafTrait"), new int[] {2 * TAXON_COUNT - 2, TAXON_COUNT})) {
+            for (int i = 0; i < 50; i++) {
+                // repeat some trees, so unchanged values are encoded too
+                Tree tree = i % 5 == 4 ? trees.get(i - 1) : randomTree(random, taxa);
+                double[][] values = new double[2][];
+                values[0] = random.doubles(2 * TAXON_COUNT - 2).toArray();
+                values[1] = new double[TAXON_COUNT];
+                trees.add(tree);
+                metaData.add(values);
+                writer.write(1000L * i, tree, values);
+            }
+        }
+
+        assertTrue(BinaryTreeLogReader.isBinaryTreeLog(file));
+        assertEquals(50, BinaryTreeLogReader.countTrees(file));
+        try (BinaryTreeLogReader reader = new BinaryTreeLogReader(file)) {
+            assertEquals(taxa, reader.getTaxa());
+            assertEquals(Arrays.asList("rate", "leafTrait"), Arrays.asList(reader.getMetaDataNames()));
+            int i = 0;
+            while (reader.hasNext()) {
+                if (i % 3 == 1) {
+                    reader.skip();
+                } else {
+                    Tree tree = reader.next();
+                    assertEquals("STATE_" + (1000L * i), tree.getID());
+                    assertSameTree(trees.get(i), tree);
+                    for (int j = 0; j < tree.getNodeCount(); j++) {
+                        Object rate = tree.getNode(j).getMetaData("rate");
+                        if (j < 2 * TAXON_COUNT - 2) {
+                            assertEquals(metaData.get(i)[0][j], (Double) rate, 0);
+                        } else {
+                            assertEquals(null, rate);
+                        }
+                    }
+                }
+                assertEquals(1000L * i, reader.getSample());
+                i++;
+            }
+            assertEquals(50, i);
+        }
+
+        // an incomplete last record is ignored, and removed when resuming
+        long length = file.length();
+        try (RandomAccessFile f = new RandomAccessFile(file, "rw")) {
+            f.setLength(length - 3);
+        }
+        assertEquals(49, BinaryTreeLogReader.countTrees(file));
+        try (BinaryTreeLogWriter writer = BinaryTreeLogWriter.resume(file)) {
+            assertEquals(48000, writer.getLastSample());
+            writer.write(49000, trees.get(49), metaData.get(49));
+        }
+        assertEquals(length, file.length());
+        try (BinaryTreeLogReader reader = new BinaryTreeLogReader(file)) {
+            for (int i = 0; i < 49; i++) {
+                reader.skip();
+            }
+            assertSameTree(trees.get(49), reader.next());
+            assertFalse(reader.hasNext());
+        }
+
+        BinaryTreeLogWriter.truncate(file, 10000);
+        assertEquals(11, BinaryTreeLogReader.countTrees(file));
+    }
+
+    @Test
+    public void testLogger() throws IOException {
+        Tree tree = randomTree(new Random(11), taxa());
+        tree.setID("Tree.t:test");
+        RealParameter rates = new RealParameter("1.0");
+        rates.setID("rates");
+        rates.setDimension(2 * TAXON_COUNT - 2);
+        File file = dir.resolve("$(tree).trees").toFile();
+
+        BinaryTreeLogger logger = new BinaryTreeLogger();
+        logger.initByName("fileName", file.getPath(), "log", tree, "log", rates, "logEvery", 10);
+        logger.init();
+        File logFile = dir.resolve("test.trees").toFile();
+        for (int i = 0; i <= 100; i++) {
+            rates.setValue(i % rates.getDimension(), (double) i);
+            logger.log(i);
+            if (i == 50) {
+                // as when MCMC stores the state, all trees logged so far are in the file
+                logger.flush();
+                assertEquals(6, BinaryTreeLogReader.countTrees(logFile));
+            }
+        }
+        logger.close();
+
+        assertEquals(logFile.getPath(), logger.getFileName());
+        assertEquals(11, BinaryTreeLogReader.countTrees(logFile));
+        assertEquals(100, logger.getLogOffset());
+        try (BinaryTreeLogReader reader = new BinaryTreeLogReader(logFile)) {
+            Tree last = null;
+            while (reader.hasNext()) {
+                last = reader.next();
+            }
+            assertSameTree(tree, last);
+            assertEquals(100.0, last.getNode(100 % rates.getDimension()).getMetaData("rates"));
+            reader.setMetaDataStrings(last);
+            assertEquals("rates=100.0", last.getNode(100 % rates.getDimension()).metaDataString);
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+package test.beast.evolution.tree;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import beast.base.evolution.alignment.Alignment;
+import beast.base.evolution.distance.Distance;
+import beast.base.evolution.tree.ClusterTree;
+import beast.base.evolution.tree.DistanceClustering;
+import beast.base.evolution.tree.Node;
+import test.beast.BEASTTestCase;
+
+/** clustering should recover trees from the distances between their tips **/
+public class DistanceClusteringTest {
+
+    final static int TAXON_COUNT = 200;
+
+    /** tree of clusters joined in random order, with path lengths between all tips **/
+    private double[][] randomTreeDistances(Random random, boolean ultrametric) {
+        List<List<Integer>> clusters = new ArrayList<>();
+        List<Double> heights = new ArrayList<>();
+        double[] depth = new double[TAXON_COUNT];
+        double[][] dist = new double[TAXON_COUNT][TAXON_COUNT];
+        for (int i = 0; i < TAXON_COUNT; i++) {
+            List<Integer> cluster = new ArrayList<>();
+            cluster.add(i);
+            clusters.add(cluster);
+            heights.add(0.0);
+        }
+        double height = 0;
+        while (clusters.size() > 1) {
+            height += random.nextDouble();
+            int k = random.nextInt(clusters.size());
+            List<Integer> cluster1 = clusters.remove(k);
+            double height1 = heights.remove(k);
+            k = random.nextInt(clusters.size());
+            List<Integer> cluster2 = clusters.remove(k);
+            double height2 = heights.remove(k);
+            // branch lengths, which for ultrametric trees follow from the heights
+            double length1 = ultrametric ? height - height1 : 0.1 + random.nextDouble();
+            double length2 = ultrametric ? height - height2 : 0.1 + random.nextDouble();
+            for (int i : cluster1) {
+                depth[i] += length1;
+            }
+            for (int j : cluster2) {
+                depth[j] += length2;
+            }
+            for (int i : cluster1) {
+                for (int j : cluster2) {
+                    dist[i][j] = depth[i] + depth[j];
+                    dist[j][i] = dist[i][j];
+                }
+            }
+            cluster1.addAll(cluster2);
+            clusters.add(cluster1);
+            heights.add(height);
+        }
+        return dist;
+    }
+
+    private float[] packedMatrix(double[][] dist) {
+        float[] matrix = new float[TAXON_COUNT * (TAXON_COUNT - 1) / 2];
+        for (int i = 0; i < TAXON_COUNT; i++) {
+            for (int j = 0; j < i; j++) {
+                matrix[Distance.index(i, j)] = (float) dist[i][j];
+            }
+        }
+        return matrix;
+    }
+
+    /** taxa of every cluster with their distance to the root of the cluster **/
+    private List<List<Integer>> clusters = new ArrayList<>();
+    private double[] depth;
+
+    private void startClusters() {
+        clusters.clear();
+        for (int i = 0; i < TAXON_COUNT; i++) {
+            List<Integer> cluster = new ArrayList<>();
+            cluster.add(i);
+            clusters.add(cluster);
+        }
+        depth = new double[TAXON_COUNT];
+    }
+
+    private void join(int i, int j, double length1, double length2) {
+        assertEquals(false, clusters.get(i).isEmpty());
+        assertEquals(false, clusters.get(j).isEmpty());
+        for (int k : clusters.get(i)) {
+            depth[k] += length1;
+        }
+        for (int k : clusters.get(j)) {
+            depth[k] += length2;
+        }
+        int min = Math.min(i, j);
+        int max = Math.max(i, j);
+        clusters.get(min).addAll(clusters.get(max));
+        clusters.get(max).clear();
+    }
+
+    @Test
+    public void testAverageLinkage() {
+        Random random = new Random(127);
+        double[][] dist = randomTreeDistances(random, true);
+        startClusters();
+        double[][] found = new double[TAXON_COUNT][TAXON_COUNT];
+        DistanceClustering.averageLinkage(packedMatrix(dist), TAXON_COUNT, (i, j, height1, height2) -> {
+            assertEquals(height1, height2);
+            for (int a : clusters.get(i)) {
+                for (int b : clusters.get(j)) {
+                    found[a][b] = 2 * height1;
+                    found[b][a] = 2 * height1;
+                }
+            }
+            join(i, j, 0, 0);
+        });
+        assertEquals(TAXON_COUNT, clusters.get(0).size());
+        for (int i = 0; i < TAXON_COUNT; i++) {
+            for (int j = 0; j < TAXON_COUNT; j++) {
+                assertEquals(dist[i][j], found[i][j], 1e-4 * dist[i][j]);
+            }
+        }
+    }
+
+    @Test
+    public void testNeighborJoining() {
+        Random random = new Random(127);
+        double[][] dist = randomTreeDistances(random, false);
+        startClusters();
+        double[][] found = new double[TAXON_COUNT][TAXON_COUNT];
+        DistanceClustering.neighborJoining(packedMatrix(dist), TAXON_COUNT, (i, j, length1, length2) -> {
+            for (int a : clusters.get(i)) {
+                for (int b : clusters.get(j)) {
+                    found[a][b] = depth[a] + length1 + depth[b] + length2;
+                    found[b][a] = found[a][b];
+                }
+            }
+            join(i, j, length1, length2);
+        });
+        assertEquals(TAXON_COUNT, clusters.get(0).size());
+        // the tree is additive, so neighbor joining recovers it with all branch lengths
+        for (int i = 0; i < TAXON_COUNT; i++) {
+            for (int j = 0; j < TAXON_COUNT; j++) {
+                assertEquals(dist[i][j], found[i][j], 1e-3 * dist[i][j]);
+            }
+        }
+    }
+
+    @Test
+    public void testClusterTree() throws Exception {
+        Alignment alignment = BEASTTestCase.getAlignment();
+        ClusterTree tree = new ClusterTree();
+        tree.initByName("clusterType", "upgma", "taxa", alignment);
+        String expectedNewick = "((((human:0.0190309,(chimp:0.0085605,bonobo:0.0085605):0.0104703):0.0079623,gorilla:0.0269931):0.0191974,orangutan:0.0461905):0.0072142,siamang:0.0534048):0.0";
+        assertEquals(expectedNewick, toNewick(tree.getRoot()));
+
+        tree = new ClusterTree();
+        tree.initByName("clusterType", "neighborjoining", "taxa", alignment);
+        assertEquals(11, tree.getNodeCount());
+        for (Node node : tree.getNodesAsArray()) {
+            if (!node.isRoot()) {
+                assertEquals(true, node.getLength() > 0);
+            }
+        }
+    }
+
+    private String toNewick(Node node) {
+        String length = String.format(Locale.US, "%.7f", node.getLength()).replaceAll("0+$", "");
+        if (node.isLeaf()) {
+            return node.getID() + ":" + length;
+        }
+        return "(" + toNewick(node.getLeft()) + "," + toNewick(node.getRight()) + "):" + (node.isRoot() ? "0.0" : length);
+    }
+}
@@ -0,0 +1,163 @@
+package test.beast.evolution.tree;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import beast.base.evolution.operator.Exchange;
+import beast.base.evolution.operator.SubtreeSlide;
+import beast.base.evolution.operator.WilsonBalding;
+import beast.base.evolution.tree.MRCAIndex;
+import beast.base.evolution.tree.Node;
+import beast.base.evolution.tree.Tree;
+import beast.base.evolution.tree.TreeParser;
+import beast.base.inference.Operator;
+import beast.base.inference.State;
+import beast.base.util.Randomizer;
+
+/** test the MRCA index against a lookup from scratch while topology proposals are accepted and rejected **/
+public class MRCAIndexTest {
+
+    final static int TAXON_COUNT = 16;
+
+    private String randomNewick(Random random) {
+        List<String> lineages = new ArrayList<>();
+        List<Double> heights = new ArrayList<>();
+        for (int i = 0; i < TAXON_COUNT; i++) {
+            lineages.add("t" + i);
+            heights.add(0.0);
+        }
+        double height = 0;
+        while (lineages.size() > 1) {
+            height += random.nextDouble();
+            final int i = random.nextInt(lineages.size());
+            final String left = lineages.remove(i) + ":" + (height - heights.remove(i));
+            final int j = random.nextInt(lineages.size());
+            final String right = lineages.remove(j) + ":" + (height - heights.remove(j));
+            lineages.add("(" + left + "," + right + ")");
+            heights.add(height);
+        }
+        return lineages.get(0) + ";";
+    }
+
+    private void collectLeafs(Node node, Set<Integer> leafs) {
+        if (node.isLeaf()) {
+            leafs.add(node.getNr());
+        }
+        for (Node child : node.getChildren()) {
+            collectLeafs(child, leafs);
+        }
+    }
+
+    /** checks the index for every clade, by looking for the lowest ancestor of the first taxon with all taxa below it **/
+    private void assertIndexCorrect(Tree tree, MRCAIndex index, List<int[]> clades, List<Integer> cladeNrs) {
+        for (int i = 0; i < clades.size(); i++) {
+            final int[] clade = clades.get(i);
+            Set<Integer> expected = new HashSet<>();
+            for (int taxon : clade) {
+                expected.add(taxon);
+            }
+            Node mrca = tree.getNode(clade[0]);
+            Set<Integer> leafs = new HashSet<>();
+            collectLeafs(mrca, leafs);
+            while (!leafs.containsAll(expected)) {
+                mrca = mrca.getParent();
+                leafs.clear();
+                collectLeafs(mrca, leafs);
+            }
+            assertEquals(mrca.getNr(), index.getMRCA(cladeNrs.get(i)).getNr());
+            assertEquals(leafs.size() == clade.length, index.isMonophyletic(cladeNrs.get(i)));
+        }
+    }
+
+    @Test
+    public void testProposals() {
+        Random random = new Random(123);
+        Randomizer.setSeed(123);
+        TreeParser tree = new TreeParser();
+        tree.initByName("newick", randomNewick(random), "IsLabelledNewick", true, "adjustTipHeights", false);
+        State state = new State();
+        state.initByName("stateNode", tree);
+        state.initialise();
+
+        List<Operator> operators = new ArrayList<>();
+        Exchange narrow = new Exchange();
+        narrow.initByName("tree", tree, "weight", 1.0);
+        operators.add(narrow);
+        Exchange wide = new Exchange();
+        wide.initByName("tree", tree, "isNarrow", false, "weight", 1.0);
+        operators.add(wide);
+        WilsonBalding wilsonBalding = new WilsonBalding();
+        wilsonBalding.initByName("tree", tree, "weight", 1.0);
+        operators.add(wilsonBalding);
+        SubtreeSlide subtreeSlide = new SubtreeSlide();
+        subtreeSlide.initByName("tree", tree, "weight", 1.0);
+        operators.add(subtreeSlide);
+
+        // random clades, including single taxa and clades registered twice
+        MRCAIndex index = tree.getMRCAIndex();
+        List<int[]> clades = new ArrayList<>();
+        List<Integer> cladeNrs = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            int[] clade = random.ints(0, TAXON_COUNT).distinct().limit(1 + random.nextInt(TAXON_COUNT - 1)).toArray();
+            clades.add(clade);
+            cladeNrs.add(index.addClade(clade));
+        }
+        clades.add(clades.get(0).clone());
+        cladeNrs.add(index.addClade(clades.get(0)));
+        assertEquals(cladeNrs.get(0), cladeNrs.get(clades.size() - 1));
+
+        state.setEverythingDirty(true);
+        assertIndexCorrect(tree, index, clades, cladeNrs);
+        state.setEverythingDirty(false);
+
+        for (int i = 0; i < 2000; i++) {
+            state.store(i);
+            final double logHR = operators.get(random.nextInt(operators.size())).proposal();
+            if (random.nextBoolean()) {
+                // not every step queries the index, as for a prior that is not evaluated after a rejected proposal
+                assertIndexCorrect(tree, index, clades, cladeNrs);
+            }
+            if (logHR != Double.NEGATIVE_INFINITY && random.nextBoolean()) {
+                state.acceptCalculationNodes();
+            } else {
+                state.restore();
+            }
+            state.setEverythingDirty(false);
+            if (random.nextInt(4) == 0) {
+                assertIndexCorrect(tree, index, clades, cladeNrs);
+            }
+        }
+        assertIndexCorrect(tree, index, clades, cladeNrs);
+    }
+
+    @Test
+    public void testRemoveClade() {
+        TreeParser tree = new TreeParser();
+        tree.initByName("newick", randomNewick(new Random(7)), "IsLabelledNewick", true, "adjustTipHeights", false);
+        MRCAIndex index = tree.getMRCAIndex();
+        int[] clade1 = {0, 3, 5};
+        int[] clade2 = {2, 7};
+        int cladeNr = index.addClade(clade1);
+        assertEquals(cladeNr, index.addClade(clade1));
+
+        // the clade stays registered till every registration is undone
+        index.removeClade(cladeNr);
+        assertIndexCorrect(tree, index, List.of(clade1), List.of(cladeNr));
+        index.removeClade(cladeNr);
+        assertThrows(IllegalArgumentException.class, () -> index.removeClade(cladeNr));
+
+        // the clade number is reused
+        assertEquals(cladeNr, index.addClade(clade2));
+        assertIndexCorrect(tree, index, List.of(clade2), List.of(cladeNr));
+    }
+
+}
@@ -2,6 +2,7 @@ package test.beast.integration;
 
 import beast.base.inference.Logger;
 import beast.base.inference.MCMC;
+import beast.base.inference.State;
 import beast.base.parser.XMLParser;
 import beast.base.util.Randomizer;
 import org.junit.jupiter.api.BeforeEach;
@@ -65,6 +66,15 @@ public class ResumeTest {
 
     @Test
     public void test_ThatXmlExamplesResume() throws Exception {
+        testResume(MCMC.StateFileFormat.xml);
+    }
+
+    @Test
+    public void test_ThatXmlExamplesResumeFromBinaryStateFile() throws Exception {
+        testResume(MCMC.StateFileFormat.binary);
+    }
+
+    private void testResume(MCMC.StateFileFormat format) throws Exception {
         Randomizer.setSeed(127);
         final String stateFile = "tmp.state";
 
@@ -77,7 +87,7 @@ public class ResumeTest {
 
             // --- initial run ---
             System.out.println("Processing " + fileName);
-            runMcmc(fileName, xmlFileName, stateFile, Logger.LogFileMode.overwrite, false);
+            runMcmc(fileName, xmlFileName, stateFile, format, Logger.LogFileMode.overwrite, false);
             System.out.println("Done " + fileName);
 
             // assert 1: state file must exist and record the correct checkpoint position
@@ -86,9 +96,13 @@ public class ResumeTest {
             String prefix = System.getProperty("file.name.prefix");
             File sf = new File(prefix + stateFile);
             assertTrue(sf.exists(), sf.getAbsolutePath() + ": state file missing after initial run");
-            String stateXml = Files.readString(sf.toPath());
-            assertTrue(stateXml.contains("sample='" + CHAIN_LENGTH + "'"),
-                    xmlFileName + ": state file should record sample=" + CHAIN_LENGTH);
+            if (format == MCMC.StateFileFormat.binary) {
+                assertTrue(State.isBinaryStateFile(sf.getPath()), xmlFileName + ": state file should be binary");
+            } else {
+                String stateXml = Files.readString(sf.toPath());
+                assertTrue(stateXml.contains("sample='" + CHAIN_LENGTH + "'"),
+                        xmlFileName + ": state file should record sample=" + CHAIN_LENGTH);
+            }
 
             // assert 2: exactly one .log file per output dir — multiple would indicate
             // an unexpected logger or a namespace collision between XMLs
@@ -103,7 +117,7 @@ public class ResumeTest {
 
             // --- resume ---
             System.out.println("Resuming " + fileName);
-            runMcmc(fileName, xmlFileName, stateFile, Logger.LogFileMode.resume, true);
+            runMcmc(fileName, xmlFileName, stateFile, format, Logger.LogFileMode.resume, true);
             System.out.println("Done " + fileName);
 
             // assert 4: resumed run appended at least one further sample
@@ -120,7 +134,7 @@ public class ResumeTest {
         }
     }
 
-    private void runMcmc(String fileName, String xmlFileName, String stateFile,
+    private void runMcmc(String fileName, String xmlFileName, String stateFile, MCMC.StateFileFormat format,
                          Logger.LogFileMode fileMode, boolean resuming) throws Exception {
         Logger.FILE_MODE = fileMode;
         beast.base.inference.Runnable runable = new XMLParser().parseFile(new File(fileName));
@@ -129,6 +143,7 @@ public class ResumeTest {
                 xmlFileName + ": expected an MCMC runnable, cannot test resume");
         mcmc.setInputValue("preBurnin", 0);
         mcmc.setInputValue("chainLength", CHAIN_LENGTH);
+        mcmc.setInputValue("stateFileFormat", format);
         for (Logger logger : mcmc.loggersInput.get()) {
             logger.initByName("logEvery", LOG_EVERY);
         }
@@ -10,6 +10,7 @@ import beast.base.evolution.alignment.Alignment;
 import beast.base.evolution.alignment.Taxon;
 import beast.base.evolution.alignment.TaxonSet;
 import beast.base.evolution.tree.MRCAPrior;
+import beast.base.evolution.tree.Node;
 import beast.base.evolution.tree.TreeParser;
 import beast.base.inference.distribution.Exponential;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -85,6 +86,44 @@ public class MRCAPriorTest  {
         assertEquals( "mrca.age(test.originate)\t", log);
     }
 
+    @Test
+    public void testReinitialise() throws Exception {
+        Alignment data = BEASTTestCase.getAlignment();
+        TreeParser tree = new TreeParser();
+        tree.initByName("taxa", data,
+                "newick", "((human:0.024003,(chimp:0.010772,bonobo:0.010772):0.013231):0.012035," +
+                "(gorilla:0.024003,(orangutan:0.010772,siamang:0.010772):0.013231):0.012035);",
+                "IsLabelledNewick", true);
+        TaxonSet set1 = new TaxonSet();
+        set1.initByName("taxon", taxon("human"), "taxon", taxon("chimp"));
+        TaxonSet set2 = new TaxonSet();
+        set2.initByName("taxon", taxon("gorilla"), "taxon", taxon("siamang"));
+
+        MRCAPrior prior = new MRCAPrior();
+        prior.initByName("tree", tree, "taxonset", set1, "monophyletic", true);
+        assertEquals(Double.NEGATIVE_INFINITY, prior.calculateLogP(), 0);
+        prior.initByName("tree", tree, "taxonset", set2, "monophyletic", true);
+        assertEquals(Double.NEGATIVE_INFINITY, prior.calculateLogP(), 0);
+        // the first taxon set is no longer registered, so its clade number was reused for the second
+        assertEquals(1, tree.getMRCAIndex().addClade(new int[] {0, 1, 2}));
+
+        // subclasses can still walk up the tree themselves
+        MRCAPrior walker = new MRCAPrior() {
+            @Override
+            public Node getCommonAncestor() {
+                return getCommonAncestor(tree.getNode(0), tree.getNode(1));
+            }
+        };
+        walker.initByName("tree", tree, "taxonset", set1);
+        assertEquals(tree.getRoot().getLeft(), walker.getCommonAncestor());
+    }
+
+    private Taxon taxon(String id) {
+        Taxon taxon = new Taxon();
+        taxon.setID(id);
+        return taxon;
+    }
+
     @Test
     public void testMRCATimePrior() throws Exception {
         Alignment data = BEASTTestCase.getAlignment();
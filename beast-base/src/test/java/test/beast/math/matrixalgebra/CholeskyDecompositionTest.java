@@ -0,0 +1,96 @@
+package test.beast.math.matrixalgebra;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import beast.base.math.matrixalgebra.CholeskyDecomposition;
+
+public class CholeskyDecompositionTest {
+
+    /** random symmetric positive definite matrix **/
+    private double[][] randomSPD(Random random, int n) {
+        double[][] b = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                b[i][j] = random.nextGaussian();
+            }
+        }
+        double[][] a = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                for (int k = 0; k < n; k++) {
+                    a[i][j] += b[i][k] * b[j][k];
+                }
+            }
+            a[i][i] += 0.1;
+        }
+        return a;
+    }
+
+    private double[] flatten(double[][] a) {
+        int n = a.length;
+        double[] flat = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(a[i], 0, flat, i * n, n);
+        }
+        return flat;
+    }
+
+    @Test
+    public void testDecompose() throws Exception {
+        Random random = new Random(1);
+        int n = 7;
+        double[][] a = randomSPD(random, n);
+        double[][] expected = new CholeskyDecomposition(a).getL();
+        double[] l = new double[n * n];
+        assertTrue(CholeskyDecomposition.decompose(flatten(a), l, n));
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                // same operations, so exactly the same result
+                assertEquals(expected[i][j], l[i * n + j], 0.0);
+            }
+        }
+        a[0][1] = -a[0][1];
+        assertFalse(CholeskyDecomposition.decompose(flatten(a), l, n));
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        Random random = new Random(2);
+        int n = 6;
+        double[][] a = randomSPD(random, n);
+        double[] u = new double[n * n];
+        double[] l = new double[n * n];
+        CholeskyDecomposition.decompose(flatten(a), l, n);
+        for (int i = 0; i < n; i++) {
+            for (int j = i; j < n; j++) {
+                u[i * n + j] = l[j * n + i];
+            }
+        }
+
+        for (int k = 0; k < 20; k++) {
+            double[] x = new double[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = random.nextGaussian();
+                for (int j = 0; j <= i; j++) {
+                    a[i][j] += x[i] * x[j];
+                    a[j][i] = a[i][j];
+                }
+            }
+            assertTrue(CholeskyDecomposition.update(u, x, n));
+        }
+        double[][] expected = new CholeskyDecomposition(a).getL();
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                assertEquals(expected[i][j], j <= i ? u[j * n + i] : 0.0, 1e-10 * expected[i][i]);
+            }
+        }
+    }
+
+}
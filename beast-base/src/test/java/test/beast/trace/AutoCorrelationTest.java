@@ -0,0 +1,90 @@
+package test.beast.trace;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import beast.base.inference.util.ESS;
+import beast.base.trace.AutoCorrelation;
+import beast.base.trace.TraceStatistics;
+
+/** test the FFT autocorrelation analysis gives the same results as the direct calculation **/
+public class AutoCorrelationTest {
+
+    /** AR(1) trace with autocorrelation 0.9 **/
+    private double[] trace(int n) {
+        Random random = new Random(42);
+        double[] values = new double[n];
+        double v = 0;
+        for (int i = 0; i < n; i++) {
+            v = 0.9 * v + random.nextGaussian();
+            values[i] = v;
+        }
+        return values;
+    }
+
+    @Test
+    public void testFFTMatchesDirect() {
+        for (int n : new int[] {2, 3, 17, 1000, 5000}) {
+            double[] values = trace(n);
+            AutoCorrelation fft = new AutoCorrelation(values, AutoCorrelation.MAX_LAG, AutoCorrelation.Method.fft);
+            AutoCorrelation direct = new AutoCorrelation(values, AutoCorrelation.MAX_LAG, AutoCorrelation.Method.direct);
+            assertEquals(direct.getCutoffLag(), fft.getCutoffLag());
+            for (int lag = 0; lag < Math.min(n, AutoCorrelation.MAX_LAG); lag++) {
+                assertEquals(direct.getAutoCovariance(lag), fft.getAutoCovariance(lag), 1e-9 * direct.getAutoCovariance(0));
+            }
+            assertEquals(direct.getESS(), fft.getESS(), 1e-9 * direct.getESS());
+        }
+    }
+
+    @Test
+    public void testESS() {
+        // values calculated by the direct implementation of ESS and TraceStatistics this replaces
+        double[] values = trace(5000);
+        List<Double> list = new ArrayList<>();
+        Double[] boxed = new Double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            list.add(values[i]);
+            boxed[i] = values[i];
+        }
+        assertEquals(260.74175376101897, ESS.calcESS(list), 1e-9);
+        assertEquals(191.76061861510357, ESS.ACT(boxed, 10), 1e-9);
+        assertEquals(0.14532117371071598, ESS.stdErrorOfMean(boxed, 10), 1e-12);
+
+        TraceStatistics statistics = new TraceStatistics(values, 10);
+        assertEquals(260.7417537610179, statistics.getESS(), 1e-9);
+        assertEquals(191.76061861510433, statistics.getAutoCorrelationTime(), 1e-9);
+        assertEquals(0.14532117371071596, statistics.getStdErrorOfMean(), 1e-12);
+        assertEquals(64.17537770348157, statistics.getStdevAutoCorrelationTime(), 1e-9);
+    }
+
+    @Test
+    public void testAnalyse() {
+        double[][] traces = {trace(100), null, trace(3000)};
+        AutoCorrelation[] result = AutoCorrelation.analyse(traces, AutoCorrelation.MAX_LAG);
+        assertEquals(null, result[1]);
+        assertEquals(new AutoCorrelation(traces[2], AutoCorrelation.MAX_LAG).getESS(), result[2].getESS(), 0);
+    }
+
+    @Test
+    public void testAnalysisIsReused() {
+        double[] values = trace(1000);
+        AutoCorrelation analysis = AutoCorrelation.analysis(values, AutoCorrelation.MAX_LAG);
+        assertSame(analysis, AutoCorrelation.analysis(values.clone(), AutoCorrelation.MAX_LAG));
+        assertEquals(new AutoCorrelation(values, AutoCorrelation.MAX_LAG).getESS(), analysis.getESS(), 0);
+
+        // changing the values, even in place, gives a new analysis
+        values[0] += 1;
+        assertNotSame(analysis, AutoCorrelation.analysis(values, AutoCorrelation.MAX_LAG));
+        assertEquals(new AutoCorrelation(values, AutoCorrelation.MAX_LAG).getESS(),
+                AutoCorrelation.analysis(values, AutoCorrelation.MAX_LAG).getESS(), 0);
+    }
+
+}
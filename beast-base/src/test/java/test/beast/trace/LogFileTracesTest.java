@@ -0,0 +1,94 @@
+package test.beast.trace;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import beast.base.trace.LogFileTraces;
+import beast.base.trace.TraceStatistics;
+
+/** traces are analysed once per burn-in, and stay available through the deprecated valuesList **/
+public class LogFileTracesTest {
+
+    static class Traces extends LogFileTraces {
+        Traces() {
+            super("test", null);
+        }
+
+        @SuppressWarnings("deprecation")
+        List<List<Double>> valuesList() {
+            return valuesList;
+        }
+    }
+
+    private Traces traces() throws Exception {
+        Random random = new Random(42);
+        StringBuilder log = new StringBuilder("Sample\tx\ty\n");
+        double x = 0;
+        for (int i = 0; i < 2000; i++) {
+            x = 0.9 * x + random.nextGaussian();
+            log.append(i * 10).append('\t').append(x).append('\t').append(random.nextDouble()).append('\n');
+        }
+        Traces traces = new Traces();
+        traces.loadTraces(new StringReader(log.toString()));
+        return traces;
+    }
+
+    @Test
+    public void testAnalyseTraceIsCached() throws Exception {
+        Traces traces = traces();
+        TraceStatistics statistics = traces.analyseTrace(0);
+        assertSame(statistics, traces.analyseTrace(0));
+        assertSame(statistics, traces.analyseTraces().get(0));
+
+        traces.setBurnIn(5000);
+        TraceStatistics afterBurnIn = traces.analyseTrace(0);
+        assertNotSame(statistics, afterBurnIn);
+        assertEquals(new TraceStatistics(valuesAfter(traces, 0, 500), 10).getESS(), afterBurnIn.getESS(), 0);
+    }
+
+    @Test
+    public void testValuesList() throws Exception {
+        Traces traces = traces();
+        List<List<Double>> valuesList = traces.valuesList();
+        assertEquals(2, valuesList.size());
+        assertEquals(2000, valuesList.get(0).size());
+        // the view reads the same values that are analysed
+        int start = (int) (traces.getBurnIn() / traces.getStepSize());
+        assertEquals(mean(valuesAfter(traces, 0, start)), traces.analyseTrace(0).getMean(), 1e-12);
+        assertThrows(IndexOutOfBoundsException.class, () -> valuesList.get(0).get(2000));
+        assertThrows(UnsupportedOperationException.class, () -> valuesList.get(0).add(0.0));
+
+        // setting a value invalidates the statistics of its trace
+        TraceStatistics statistics = traces.analyseTrace(1);
+        valuesList.get(1).set(1999, 100.0);
+        assertNotSame(statistics, traces.analyseTrace(1));
+        assertEquals(100.0, traces.analyseTrace(1).getMaximum(), 0);
+    }
+
+    private double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    private double[] valuesAfter(Traces traces, int trace, int start) {
+        List<Double> values = traces.valuesList().get(trace);
+        double[] result = new double[values.size() - start];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(start + i);
+        }
+        return result;
+    }
+
+}
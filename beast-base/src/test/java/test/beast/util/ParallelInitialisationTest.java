@@ -0,0 +1,121 @@
+package test.beast.util;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import beast.base.core.BEASTInterface;
+import beast.base.core.BEASTObject;
+import beast.base.core.Input;
+import beast.base.core.ProgramStatus;
+import beast.base.inference.MCMC;
+import beast.base.parser.XMLParser;
+import beast.base.parser.XMLParserException;
+import beast.base.util.Randomizer;
+import beast.pkgmgmt.BEASTClassLoader;
+import test.beast.integration.XMLPathUtil;
+
+/** test initialising parsed objects concurrently gives the same model as sequential initialisation **/
+public class ParallelInitialisationTest {
+
+    @Test
+    public void testSameModel() throws Exception {
+        File file = new File(XMLPathUtil.resolveExamplesDir() + "/legacy/testMultipleAlignments_randomTaxaOrder.xml");
+        int threads = ProgramStatus.m_nThreads;
+        ProgramStatus.m_nThreads = 4;
+        try {
+            double expected = posterior(file, false);
+            for (int i = 0; i < 5; i++) {
+                assertEquals(expected, posterior(file, true), 0);
+            }
+        } finally {
+            ProgramStatus.m_nThreads = threads;
+        }
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        String xml = "<beast version='2.7' namespace='beast.base.evolution.alignment:beast.base.inference.parameter'>"
+                + "<parameter id='p' spec='RealParameter' value='1.0'/>"
+                + "<run spec='beast.base.evolution.alignment.Alignment' id='data' dataType='nucleotide'>"
+                + "<sequence taxon='a' value='ACGT'/><sequence taxon='b' value='ACG'/>"
+                + "</run></beast>";
+        int threads = ProgramStatus.m_nThreads;
+        ProgramStatus.m_nThreads = 4;
+        try {
+            XMLParser parser = new XMLParser();
+            parser.setParallelInitialisation(true);
+            assertThrows(XMLParserException.class, () -> parser.parseFragment(xml, true));
+        } finally {
+            ProgramStatus.m_nThreads = threads;
+        }
+    }
+
+    /** object that is not a state node but draws a random number when initialised **/
+    public static class RandomObject extends BEASTObject {
+        final public Input<List<RandomObject>> othersInput = new Input<>("other", "objects initialised before this one", new ArrayList<>());
+
+        double value;
+
+        @Override
+        public void initAndValidate() {
+            value = Randomizer.nextDouble();
+        }
+    }
+
+    @Test
+    public void testRandomDrawsAreReproducible() throws Exception {
+        StringBuilder xml = new StringBuilder("<run spec='" + RandomObject.class.getName() + "' id='root'>");
+        for (int i = 0; i < 16; i++) {
+            xml.append("<other spec='" + RandomObject.class.getName() + "' id='object" + i + "'/>");
+        }
+        xml.append("</run>");
+        int threads = ProgramStatus.m_nThreads;
+        ProgramStatus.m_nThreads = 4;
+        // the parser only creates registered classes, so register RandomObject for this test only
+        Map<String, Set<String>> service = Map.of(BEASTInterface.class.getName(), Set.of(RandomObject.class.getName()));
+        BEASTClassLoader.addService(BEASTInterface.class.getName(), RandomObject.class.getName(), "BEAST.base");
+        try {
+            List<Double> expected = randomValues(xml.toString());
+            for (int i = 0; i < 5; i++) {
+                assertEquals(expected, randomValues(xml.toString()));
+            }
+        } finally {
+            BEASTClassLoader.delService(service, "BEAST.base");
+            ProgramStatus.m_nThreads = threads;
+        }
+    }
+
+    private List<Double> randomValues(String xml) throws Exception {
+        Randomizer.nextDouble();
+        Randomizer.setSeed(127);
+        XMLParser parser = new XMLParser();
+        parser.setParallelInitialisation(true);
+        RandomObject root = (RandomObject) parser.parseFragment(xml, true);
+        List<Double> values = new ArrayList<>();
+        for (RandomObject o : root.othersInput.get()) {
+            values.add(o.value);
+        }
+        values.add(root.value);
+        return values;
+    }
+
+    private double posterior(File file, boolean parallel) throws Exception {
+        // draw from this thread's generator first, so setSeed applies to it
+        Randomizer.nextDouble();
+        Randomizer.setSeed(127);
+        XMLParser parser = new XMLParser();
+        parser.setParallelInitialisation(parallel);
+        MCMC mcmc = (MCMC) parser.parseFile(file);
+        return mcmc.startStateInput.get().robustlyCalcPosterior(mcmc.posteriorInput.get());
+    }
+
+}
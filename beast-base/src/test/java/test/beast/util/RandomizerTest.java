@@ -1,11 +1,19 @@
 package test.beast.util;
 
+import java.util.Arrays;
+
+import org.apache.commons.rng.UniformRandomProvider;
+import org.apache.commons.rng.sampling.distribution.AhrensDieterMarsagliaTsangGammaSampler;
+import org.apache.commons.rng.sampling.distribution.PoissonSampler;
 import org.junit.jupiter.api.Test;
 
 import beast.base.util.DiscreteStatistics;
 import beast.base.util.Randomizer;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 public class RandomizerTest {
 
@@ -32,4 +40,120 @@ public class RandomizerTest {
         assertEquals(1.133148, DiscreteStatistics.mean(vals2), 1e-3);
         assertEquals( 0.3646959, DiscreteStatistics.variance(vals2), 1e-3);
     }
+
+    private double[] draw(int n) {
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = Randomizer.nextDouble();
+        }
+        return values;
+    }
+
+    @Test
+    public void threadStreamTest() throws InterruptedException {
+        // the default Mersenne Twister sequence, after the generator of this thread is created
+        Randomizer.nextDouble();
+        Randomizer.setSeed(127);
+        double[] expectedMT = draw(100);
+
+        // threads with their own stream draw reproducibly, whatever the other threads do
+        final int threadCount = 4;
+        double[][] expected = new double[threadCount][];
+        UniformRandomProvider[] streams = Randomizer.createStreams(127, threadCount);
+        for (int k = 0; k < threadCount; k++) {
+            expected[k] = new double[1000];
+            for (int i = 0; i < 1000; i++) {
+                expected[k][i] = streams[k].nextDouble();
+            }
+        }
+        double[][] values = new double[threadCount][];
+        double[] meanGamma = new double[threadCount];
+        UniformRandomProvider[] threadStreams = Randomizer.createStreams(127, threadCount);
+        Thread[] threads = new Thread[threadCount];
+        for (int k = 0; k < threadCount; k++) {
+            final int thread = k;
+            threads[k] = new Thread(() -> {
+                Randomizer.setThreadStream(threadStreams[thread]);
+                values[thread] = draw(1000);
+                for (int i = 0; i < 100000; i++) {
+                    meanGamma[thread] += Randomizer.nextGamma(2.0, 4.0) / 100000;
+                }
+            });
+            threads[k].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int k = 0; k < threadCount; k++) {
+            assertArrayEquals(expected[k], values[k]);
+            assertEquals(0.5, meanGamma[k], 5e-3);
+        }
+        assertFalse(values[0][0] == values[1][0]);
+
+        // threads without a stream still get the Mersenne Twister sequence
+        assertNull(Randomizer.getThreadStream());
+        Randomizer.setSeed(127);
+        assertArrayEquals(expectedMT, draw(100));
+
+        Randomizer.setThreadStream(Randomizer.createStreams(127, 1)[0]);
+        assertEquals(expected[0][0], Randomizer.nextDouble());
+        Randomizer.setThreadStream(null);
+        Randomizer.setSeed(127);
+        assertArrayEquals(expectedMT, draw(100));
+    }
+
+    @Test
+    public void threadStreamSamplerTest() {
+        // samplers kept between draws give the same sequence as new samplers for every draw
+        double[][] parameters = {{2.0, 4.0}, {2.0, 4.0}, {0.5, 1.0}, {2.0, 4.0}, {50.0, 1.0}, {50.0, 1.0}};
+        UniformRandomProvider rng = Randomizer.createStreams(127, 1)[0];
+        double[] expected = new double[parameters.length * 2];
+        for (int i = 0; i < parameters.length; i++) {
+            expected[2 * i] = AhrensDieterMarsagliaTsangGammaSampler.of(rng, parameters[i][0], 1.0 / parameters[i][1]).sample();
+            expected[2 * i + 1] = PoissonSampler.of(rng, parameters[i][0]).sample();
+        }
+
+        Randomizer.setThreadStream(Randomizer.createStreams(127, 1)[0]);
+        try {
+            double[] values = new double[parameters.length * 2];
+            for (int i = 0; i < parameters.length; i++) {
+                values[2 * i] = Randomizer.nextGamma(parameters[i][0], parameters[i][1]);
+                values[2 * i + 1] = Randomizer.nextPoisson(parameters[i][0]);
+            }
+            assertArrayEquals(expected, values);
+        } finally {
+            Randomizer.setThreadStream(null);
+        }
+    }
+
+    @Test
+    public void shuffleTest() {
+        int[] identity = new int[10];
+        for (int i = 0; i < identity.length; i++) {
+            identity[i] = i;
+        }
+        Randomizer.setSeed(127);
+        int[] array = identity.clone();
+        Randomizer.shuffle(array, 1);
+        assertFalse(Arrays.equals(identity, array));
+        int[] sorted = array.clone();
+        Arrays.sort(sorted);
+        assertArrayEquals(identity, sorted);
+
+        Randomizer.setThreadStream(Randomizer.createStreams(127, 1)[0]);
+        try {
+            array = identity.clone();
+            Randomizer.shuffle(array, 1);
+            assertFalse(Arrays.equals(identity, array));
+            sorted = array.clone();
+            Arrays.sort(sorted);
+            assertArrayEquals(identity, sorted);
+
+            // nothing to swap
+            Randomizer.shuffle(new int[1], 10);
+        } finally {
+            Randomizer.setThreadStream(null);
+        }
+        Randomizer.shuffle(new int[1], 10);
+    }
 }
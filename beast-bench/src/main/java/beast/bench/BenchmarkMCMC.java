@@ -0,0 +1,66 @@
+package beast.bench;
+
+import beast.base.core.Description;
+import beast.base.inference.MCMC;
+import beast.base.inference.Operator;
+import beast.base.inference.State;
+import beast.base.inference.StateNodeInitialiser;
+
+import java.util.ArrayList;
+
+/**
+ * MCMC that exposes single propose/accept/reject steps so that they can be
+ * timed without the surrounding loop, loggers and state file handling.
+ */
+@Description("MCMC that can be stepped one proposal at a time from a benchmark harness")
+public class BenchmarkMCMC extends MCMC {
+
+    private long sampleNr;
+
+    /**
+     * Create a steppable chain for the model of the parsed MCMC. The original
+     * run element is only used as a source of inputs.
+     */
+    public static BenchmarkMCMC of(MCMC mcmc) {
+        BenchmarkMCMC chain = new BenchmarkMCMC();
+        chain.chainLengthInput.setValue(Long.MAX_VALUE, chain);
+        chain.posteriorInput.setValue(mcmc.posteriorInput.get(), chain);
+        for (Operator operator : mcmc.operatorsInput.get()) {
+            chain.operatorsInput.setValue(operator, chain);
+        }
+        for (StateNodeInitialiser initialiser : mcmc.initialisersInput.get()) {
+            chain.initialisersInput.setValue(initialiser, chain);
+        }
+        chain.operatorScheduleInput.get().initAndValidate();
+        chain.initAndValidate();
+        chain.prepare();
+        return chain;
+    }
+
+    /**
+     * Does what run() does before entering the main loop
+     */
+    private void prepare() {
+        state.initAndValidate();
+        state.setEverythingDirty(true);
+        posterior = posteriorInput.get();
+        oldLogLikelihood = state.robustlyCalcPosterior(posterior);
+        state.storeCalculationNodes();
+        loggers = new ArrayList<>();
+        sampleNr = 0;
+    }
+
+    /**
+     * Perform a single MCMC step
+     * @return the log posterior after the step
+     */
+    public double step() {
+        propagateState(sampleNr++);
+        return oldLogLikelihood;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+}
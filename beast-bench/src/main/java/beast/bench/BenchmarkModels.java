@@ -0,0 +1,107 @@
+package beast.bench;
+
+import beast.base.core.BEASTInterface;
+import beast.base.inference.MCMC;
+import beast.base.parser.XMLParser;
+import beast.base.util.Randomizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Canned models for the benchmark harnesses.
+ * <p>
+ * The model itself lives in the {@code hky.xml} resource; the alignment is
+ * simulated here from a fixed seed so that every run of a benchmark with the same
+ * taxa and site count sees exactly the same data, tree and operator sequence.
+ */
+public class BenchmarkModels {
+
+    /** seed used for both the alignment and the BEAST Randomizer */
+    public static final long SEED = 127;
+
+    private static final String NUCLEOTIDES = "ACGT";
+
+    /** per site probability that a taxon differs from the ancestral sequence */
+    private static final double MUTATION_PROBABILITY = 0.1;
+
+    /**
+     * Parsed benchmark model: the MCMC run element plus all objects by ID
+     */
+    public static class Model {
+        public final MCMC mcmc;
+        public final Map<String, BEASTInterface> idMap;
+
+        Model(MCMC mcmc, Map<String, BEASTInterface> idMap) {
+            this.mcmc = mcmc;
+            this.idMap = idMap;
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T extends BEASTInterface> T get(String id) {
+            BEASTInterface o = idMap.get(id);
+            if (o == null) {
+                throw new IllegalArgumentException("Benchmark model has no object with id " + id);
+            }
+            return (T) o;
+        }
+    }
+
+    /**
+     * Parse the canned HKY+G4 coalescent model for an alignment with given
+     * number of taxa and sites.
+     */
+    public static Model hky(int taxonCount, int siteCount) throws Exception {
+        Randomizer.setSeed(SEED);
+
+        Map<String, String> parserDefinitions = new HashMap<>();
+        parserDefinitions.put("sequences", simulateSequences(taxonCount, siteCount, new Random(SEED)));
+
+        File file = copyResource("hky.xml");
+        try {
+            XMLParser parser = new XMLParser(parserDefinitions);
+            MCMC mcmc = (MCMC) parser.parseFile(file);
+            return new Model(mcmc, parser.getIDMap());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Create sequence elements for taxa t0...t(n-1). Sequences are mutated copies of a
+     * random ancestral sequence, so that not every site is a unique pattern.
+     */
+    static String simulateSequences(int taxonCount, int siteCount, Random random) {
+        char[] ancestor = new char[siteCount];
+        for (int i = 0; i < siteCount; i++) {
+            ancestor[i] = NUCLEOTIDES.charAt(random.nextInt(4));
+        }
+        StringBuilder b = new StringBuilder();
+        char[] sequence = new char[siteCount];
+        for (int taxon = 0; taxon < taxonCount; taxon++) {
+            for (int i = 0; i < siteCount; i++) {
+                sequence[i] = random.nextDouble() < MUTATION_PROBABILITY ? NUCLEOTIDES.charAt(random.nextInt(4)) : ancestor[i];
+            }
+            b.append("<sequence taxon=\"t").append(taxon).append("\" value=\"").append(sequence).append("\"/>\n");
+        }
+        return b.toString();
+    }
+
+    private static File copyResource(String name) throws IOException {
+        File file = File.createTempFile("beast-bench", ".xml");
+        try (InputStream in = BenchmarkModels.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("Could not find benchmark model " + name);
+            }
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+}
@@ -0,0 +1,147 @@
+package beast.bench;
+
+import beast.base.evolution.likelihood.BeerLikelihoodCore;
+import beast.base.evolution.likelihood.BeerLikelihoodCore4;
+import beast.base.evolution.likelihood.LikelihoodCore;
+import beast.base.evolution.likelihood.VectorLikelihoodCore4;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Peeling kernels of the Java likelihood cores on a cherry: two tips (nodes 0 and 1)
+ * with parent node 2, for nucleotide, amino acid and codon state spaces.
+ * <p>
+ * Implementation {@code beer} uses the scalar java cores, {@code specialised} uses the
+ * optimised core for the state count where there is one, e.g. the Vector API core for 4 states.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class LikelihoodCoreBenchmark {
+
+    @Param({"4", "20", "61"})
+    public int stateCount;
+
+    @Param({"100", "1000", "10000"})
+    public int patternCount;
+
+    @Param({"4"})
+    public int categoryCount;
+
+    @Param({"beer", "specialised"})
+    public String implementation;
+
+    /** tips are given as states */
+    private LikelihoodCore statesCore;
+    /** tips are given as partials, as when ambiguities are used */
+    private LikelihoodCore partialsCore;
+
+    private double[] proportions;
+    private double[] frequencies;
+    private double[] rootPartials;
+    private double[] patternLogLikelihoods;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(BenchmarkModels.SEED);
+        statesCore = createCore(random, false);
+        partialsCore = createCore(random, true);
+
+        proportions = new double[categoryCount];
+        Arrays.fill(proportions, 1.0 / categoryCount);
+        frequencies = new double[stateCount];
+        Arrays.fill(frequencies, 1.0 / stateCount);
+        rootPartials = new double[patternCount * stateCount];
+        patternLogLikelihoods = new double[patternCount];
+
+        // make sure node 2 and the root partials hold values for the root benchmarks
+        partialsCore.calculatePartials(0, 1, 2);
+        partialsCore.integratePartials(2, proportions, rootPartials);
+    }
+
+    private LikelihoodCore createCore(Random random, boolean useAmbiguities) {
+        LikelihoodCore core = newCore();
+        core.initialize(3, patternCount, categoryCount, true, useAmbiguities);
+        for (int node = 0; node < 2; node++) {
+            if (useAmbiguities) {
+                double[] partials = new double[patternCount * stateCount];
+                for (int i = 0; i < partials.length; i++) {
+                    partials[i] = random.nextDouble();
+                }
+                core.setNodePartials(node, partials);
+            } else {
+                int[] states = new int[patternCount];
+                for (int i = 0; i < patternCount; i++) {
+                    states[i] = random.nextInt(stateCount);
+                }
+                core.setNodeStates(node, states);
+            }
+            double[] matrix = randomTransitionMatrix(random);
+            for (int category = 0; category < categoryCount; category++) {
+                core.setNodeMatrix(node, category, matrix);
+            }
+        }
+        core.createNodePartials(2);
+        return core;
+    }
+
+    private LikelihoodCore newCore() {
+        if (implementation.equals("specialised") && stateCount == 4) {
+            return new VectorLikelihoodCore4();
+        }
+        return stateCount == 4 ? new BeerLikelihoodCore4() : new BeerLikelihoodCore(stateCount);
+    }
+
+    private double[] randomTransitionMatrix(Random random) {
+        double[] matrix = new double[stateCount * stateCount];
+        for (int i = 0; i < stateCount; i++) {
+            double sum = 0;
+            for (int j = 0; j < stateCount; j++) {
+                matrix[i * stateCount + j] = random.nextDouble() + (i == j ? stateCount : 0);
+                sum += matrix[i * stateCount + j];
+            }
+            for (int j = 0; j < stateCount; j++) {
+                matrix[i * stateCount + j] /= sum;
+            }
+        }
+        return matrix;
+    }
+
+    @Benchmark
+    public LikelihoodCore calculatePartialsStatesStates() {
+        statesCore.calculatePartials(0, 1, 2);
+        return statesCore;
+    }
+
+    @Benchmark
+    public LikelihoodCore calculatePartialsPartialsPartials() {
+        partialsCore.calculatePartials(0, 1, 2);
+        return partialsCore;
+    }
+
+    @Benchmark
+    public double[] integratePartials() {
+        partialsCore.integratePartials(2, proportions, rootPartials);
+        return rootPartials;
+    }
+
+    @Benchmark
+    public double[] calculateLogLikelihoods() {
+        partialsCore.calculateLogLikelihoods(rootPartials, frequencies, patternLogLikelihoods);
+        return patternLogLikelihoods;
+    }
+
+}
@@ -0,0 +1,43 @@
+package beast.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Complete MCMC steps (operator proposal, posterior recalculation and
+ * accept/reject) on the canned HKY+G4 coalescent model.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class MCMCBenchmark {
+
+    @Param({"16", "64", "256"})
+    public int taxonCount;
+
+    @Param({"300", "3000"})
+    public int siteCount;
+
+    private BenchmarkMCMC mcmc;
+
+    @Setup
+    public void setup() throws Exception {
+        mcmc = BenchmarkMCMC.of(BenchmarkModels.hky(taxonCount, siteCount).mcmc);
+    }
+
+    @Benchmark
+    public double propagateState() {
+        return mcmc.step();
+    }
+
+}
@@ -0,0 +1,59 @@
+package beast.bench;
+
+import beast.base.evolution.tree.Tree;
+import beast.base.inference.CalculationNode;
+import beast.base.inference.State;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+
+/**
+ * Book keeping done by the State on every MCMC step: storing and restoring the
+ * tree, and finding the calculation nodes affected by a change.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class StateBenchmark {
+
+    @Param({"16", "256", "1024"})
+    public int taxonCount;
+
+    private Tree tree;
+    private State state;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkModels.Model model = BenchmarkModels.hky(taxonCount, 100);
+        tree = model.get("tree");
+        state = BenchmarkMCMC.of(model.mcmc).getState();
+    }
+
+    /** Tree.store() is called through startEditing, as an operator does */
+    @Benchmark
+    public Tree treeStoreRestore() {
+        tree.startEditing(null);
+        tree.restore();
+        return tree;
+    }
+
+    @Benchmark
+    public List<CalculationNode> getCurrentCalculationNodes() {
+        state.store(0);
+        tree.startEditing(null);
+        List<CalculationNode> nodes = state.getCurrentCalculationNodes();
+        state.restore();
+        return nodes;
+    }
+
+}
@@ -0,0 +1,101 @@
+package beast.bench;
+
+import beast.base.spec.domain.NonNegativeReal;
+import beast.base.spec.domain.PositiveReal;
+import beast.base.spec.evolution.substitutionmodel.Frequencies;
+import beast.base.spec.evolution.substitutionmodel.GeneralSubstitutionModel;
+import beast.base.spec.evolution.substitutionmodel.HKY;
+import beast.base.spec.inference.parameter.RealScalarParam;
+import beast.base.spec.inference.parameter.RealVectorParam;
+import beast.base.spec.inference.parameter.SimplexParam;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Transition probability matrices for HKY and the general substitution model,
+ * with and without recomputing the eigen decomposition of the rate matrix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SubstitutionModelBenchmark {
+
+    /** number of states of the general substitution model */
+    @Param({"4", "20", "61"})
+    public int stateCount;
+
+    private HKY hky;
+    private RecomputingSubstitutionModel gsm;
+    private double[] hkyMatrix;
+    private double[] gsmMatrix;
+    private double distance = 0.01;
+
+    /** exposes the flag that forces the eigen decomposition to be recalculated */
+    static class RecomputingSubstitutionModel extends GeneralSubstitutionModel {
+        void invalidate() {
+            updateMatrix = true;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        Random random = new Random(BenchmarkModels.SEED);
+
+        Frequencies freqs = new Frequencies();
+        freqs.initByName("frequencies", new SimplexParam(new double[]{0.3, 0.2, 0.2, 0.3}), "estimate", false);
+        hky = new HKY();
+        hky.initByName("kappa", new RealScalarParam<>(2.0, PositiveReal.INSTANCE), "frequencies", freqs);
+        hkyMatrix = new double[4 * 4];
+
+        double[] pi = new double[stateCount];
+        Arrays.fill(pi, 1.0 / stateCount);
+        double[] rates = new double[stateCount * (stateCount - 1)];
+        for (int i = 0; i < rates.length; i++) {
+            rates[i] = 0.1 + random.nextDouble();
+        }
+        Frequencies gsmFreqs = new Frequencies();
+        gsmFreqs.initByName("frequencies", new SimplexParam(pi), "estimate", false);
+        gsm = new RecomputingSubstitutionModel();
+        gsm.initByName("frequencies", gsmFreqs, "rates", new RealVectorParam<>(rates, NonNegativeReal.INSTANCE));
+        gsmMatrix = new double[stateCount * stateCount];
+    }
+
+    /** vary the branch length so that nothing can be cached between calls */
+    private double nextDistance() {
+        distance = distance > 1.0 ? 0.01 : distance * 1.1;
+        return distance;
+    }
+
+    @Benchmark
+    public double[] hkyTransitionProbabilities() {
+        hky.getTransitionProbabilities(null, nextDistance(), 0, 1, hkyMatrix);
+        return hkyMatrix;
+    }
+
+    @Benchmark
+    public double[] gsmTransitionProbabilities() {
+        gsm.getTransitionProbabilities(null, nextDistance(), 0, 1, gsmMatrix);
+        return gsmMatrix;
+    }
+
+    @Benchmark
+    public double[] gsmTransitionProbabilitiesWithEigenDecomposition() {
+        gsm.invalidate();
+        gsm.getTransitionProbabilities(null, nextDistance(), 0, 1, gsmMatrix);
+        return gsmMatrix;
+    }
+
+}
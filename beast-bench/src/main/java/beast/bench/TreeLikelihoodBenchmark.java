@@ -0,0 +1,77 @@
+package beast.bench;
+
+import beast.base.evolution.tree.Node;
+import beast.base.evolution.tree.Tree;
+import beast.base.inference.State;
+import beast.base.spec.evolution.likelihood.TreeLikelihood;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+
+/**
+ * TreeLikelihood traversals on the canned HKY+G4 model: a full traversal where
+ * every node is recalculated, and the partial traversal that follows a change to
+ * a single node height, which is what most tree operators cause.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TreeLikelihoodBenchmark {
+
+    @Param({"16", "64", "256"})
+    public int taxonCount;
+
+    @Param({"300", "3000"})
+    public int siteCount;
+
+    private TreeLikelihood treeLikelihood;
+    private Tree tree;
+    private State state;
+    private Random random;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkModels.Model model = BenchmarkModels.hky(taxonCount, siteCount);
+        treeLikelihood = model.get("treeLikelihood");
+        tree = model.get("tree");
+        state = BenchmarkMCMC.of(model.mcmc).getState();
+        random = new Random(BenchmarkModels.SEED);
+    }
+
+    @Benchmark
+    public double fullTraversal() {
+        tree.setEverythingDirty(true);
+        double logP = treeLikelihood.calculateLogP();
+        tree.setEverythingDirty(false);
+        return logP;
+    }
+
+    @Benchmark
+    public double singleNodeTraversal() {
+        Node node = tree.getNode(tree.getLeafNodeCount() + random.nextInt(tree.getInternalNodeCount()));
+
+        state.store(0);
+        tree.startEditing(null);
+        node.makeDirty(Tree.IS_DIRTY);
+        state.storeCalculationNodes();
+        state.checkCalculationNodesDirtiness();
+        double logP = treeLikelihood.calculateLogP();
+
+        // reject, as MCMC would
+        state.restore();
+        state.restoreCalculationNodes();
+        state.setEverythingDirty(false);
+        return logP;
+    }
+
+}
@@ -19,7 +19,7 @@ import beastfx.app.util.Utils;
 import beast.base.core.BEASTVersion2;
 import beast.base.core.Log;
 import beast.base.parser.OutputUtils;
-import beast.base.spec.inference.util.ESS;
+import beast.base.trace.AutoCorrelation;
 import beast.base.util.CollectionUtils;
 
 
@@ -306,6 +306,17 @@ public class LogAnalyser {
         m_fACT = new Double[items];
         m_fGeometricMean = new Double[items];
         int sampleInterval = (int) (m_fTraces[0][1] - m_fTraces[0][0]);
+        // autocorrelation analysis dominates, so is done for all columns in parallel up front
+        double[][] traces = new double[items][];
+        for (int i = 1; i < items; i++) {
+            if (matchesTags(tags, i) && (m_types[i] == type.REAL || m_types[i] == type.INTEGER)) {
+                traces[i] = new double[m_fTraces[i].length];
+                for (int k = 0; k < traces[i].length; k++) {
+                    traces[i][k] = m_fTraces[i][k];
+                }
+            }
+        }
+        AutoCorrelation[] autoCorrelations = AutoCorrelation.analyse(traces, AutoCorrelation.MAX_LAG);
         for (int i = 1; i < items; i++) {
         	if (matchesTags(tags, i)) {
 	            // calc mean and standard deviation
@@ -343,8 +354,8 @@ public class LogAnalyser {
 	                m_f95HPDup[i] = sorted[hpdIndex + n];
 
 	                // calc effective sample size
-	                m_fACT[i] = ESS.ACT(m_fTraces[i], sampleInterval);
-	                m_fStdError[i] = ESS.stdErrorOfMean(trace, sampleInterval);
+	                m_fACT[i] = autoCorrelations[i].getACT(sampleInterval);
+	                m_fStdError[i] = autoCorrelations[i].getStdErrorOfMean();
 	                m_fESS[i] = trace.length / (m_fACT[i] / sampleInterval);
 
 	                // calc geometric mean
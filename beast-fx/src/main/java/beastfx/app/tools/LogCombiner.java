@@ -4,6 +4,8 @@ package beastfx.app.tools;
 
 import beast.base.core.BEASTVersion2;
 import beast.base.core.Log;
+import beast.base.evolution.tree.BinaryTreeLogReader;
+import beast.base.evolution.tree.Tree;
 
 import java.io.*;
 import java.text.DecimalFormat;
@@ -249,6 +251,12 @@ public class LogCombiner extends LogAnalyser {
         int k = 0;
         long state = -1;
         for (String fileName : logs) {
+            if (BinaryTreeLogReader.isBinaryTreeLog(new File(fileName))) {
+                m_bIsTreeLog = true;
+                state = readBinaryTreeLogFile(fileName, burnIns[k], state);
+                k++;
+                continue;
+            }
             BufferedReader fin = new BufferedReader(new FileReader(fileName));
             String str = fin.readLine();
             if (str.toUpperCase().startsWith("#NEXUS")) {
@@ -310,17 +318,7 @@ public class LogCombiner extends LogAnalyser {
                     String str2 = str.substring(11, str.indexOf("=")).trim();
                     str2 = str2.split("\\s")[0];
                     long logState = Long.parseLong(str2);
-                    if (m_nSampleInterval < 0 && prevLogState >= 0) {
-                        // need to renumber
-                    	if (m_nResample < 0 && includeEvery <= 0) {
-                    		m_nSampleInterval = (int) (logState - prevLogState);
-                    	} else if (m_nResample >= 0){
-                    		m_nSampleInterval = m_nResample;
-                    	} else { // includeEvery > 0
-                    		m_nSampleInterval = includeEvery * (int) (logState - prevLogState);
-                    		m_nResample = m_nSampleInterval; 
-                    	}
-                   }
+                    updateSampleInterval(logState, prevLogState);
                     prevLogState = logState;
                 	
                 	if (logState % m_nResample == 0 || m_nResample < 0) {
@@ -344,6 +342,69 @@ public class LogCombiner extends LogAnalyser {
         return state;
     } // readTreeLogFile
 
+    /** determine the interval at which samples are renumbered from the first two samples of a tree log **/
+    private void updateSampleInterval(long logState, long prevLogState) {
+        if (m_nSampleInterval < 0 && prevLogState >= 0) {
+            // need to renumber
+            if (m_nResample < 0 && includeEvery <= 0) {
+                m_nSampleInterval = (int) (logState - prevLogState);
+            } else if (m_nResample >= 0) {
+                m_nSampleInterval = m_nResample;
+            } else { // includeEvery > 0
+                m_nSampleInterval = includeEvery * (int) (logState - prevLogState);
+                m_nResample = m_nSampleInterval;
+            }
+        }
+    }
+
+    /** converts a binary tree log, as written by BinaryTreeLogger, to NEXUS trees **/
+    protected long readBinaryTreeLogFile(String fileName, int burnInPercentage, long state) throws IOException {
+        log("\nLoading " + fileName);
+        int data = BinaryTreeLogReader.countTrees(new File(fileName));
+        int burnIn = data * burnInPercentage / 100;
+        int total = data - burnIn;
+        logln(" skipping " + burnIn + " trees\n\n" + BAR);
+
+        BinaryTreeLogReader reader = new BinaryTreeLogReader(new File(fileName));
+        for (int i = 0; i < burnIn; i++) {
+            reader.skip();
+        }
+        data = -1;
+        long prevLogState = -1;
+        int reported = 0;
+        while (reader.hasNext()) {
+            Tree tree = reader.next();
+            data++;
+            if (!preAmpleIsPrinted) {
+                ByteArrayOutputStream preAmble = new ByteArrayOutputStream();
+                tree.init(new PrintStream(preAmble));
+                m_out.println(preAmble.toString());
+                preAmpleIsPrinted = true;
+            }
+            long logState = reader.getSample();
+            updateSampleInterval(logState, prevLogState);
+            prevLogState = logState;
+
+            if (logState % m_nResample == 0 || m_nResample < 0) {
+                if (state < 0) {
+                    state = 0;
+                } else {
+                    state += m_nSampleInterval;
+                }
+                reader.setMetaDataStrings(tree);
+                m_out.print("tree STATE_" + state + " = " + format(tree.getRoot().toSortedNewick(new int[1], true)) + ";");
+                m_out.println();
+            }
+            while (reported < 81 && 1000.0 * reported < 81000.0 * (data + 1)/ total) {
+                log("*");
+                reported++;
+            }
+        }
+        reader.close();
+        logln("");
+        return state;
+    } // readBinaryTreeLogFile
+
     private void printCombinedLogs() {
         int data = (m_bIsTreeLog ? m_sTrees.size() : m_fCombinedTraces[0].length);
         logln("Collected " + data + " lines in combined log");
@@ -27,6 +27,7 @@ import java.util.Map;
 
 import beast.base.core.Description;
 import beast.base.core.Input;
+import beast.base.evolution.tree.BinaryTreeLogReader;
 import beast.base.evolution.tree.Node;
 import beast.base.evolution.tree.Tree;
 import beast.base.evolution.tree.TreeUtils;
@@ -66,15 +67,28 @@ public class TreeTraceAnalysis extends beast.base.inference.Runnable {
 	
 	@Override
 	public void run() throws Exception {
-        List<Tree> trees = null;
-        try {
-            trees = TreeTraceAnalysis.Utils.getTrees(srcInput.get());
-        } catch (Exception e) {
-            System.out.println("Error occurred while parsing input file.");
-            System.exit(1);
-        }
+        if (BinaryTreeLogReader.isBinaryTreeLog(srcInput.get())) {
+            // stream the trees, so they do not all need to be in memory
+            try (BinaryTreeLogReader reader = new BinaryTreeLogReader(srcInput.get())) {
+                int burnin = (int)Math.round(BinaryTreeLogReader.countTrees(srcInput.get())*burnInPercentageInput.get()/100.0);
+                for (int i = 0; i < burnin; i++) {
+                    reader.skip();
+                }
+                while (reader.hasNext()) {
+                    addTree(reader.next());
+                }
+            }
+        } else {
+            List<Tree> trees = null;
+            try {
+                trees = TreeTraceAnalysis.Utils.getTrees(srcInput.get());
+            } catch (Exception e) {
+                System.out.println("Error occurred while parsing input file.");
+                System.exit(1);
+            }
 
-        addAllTrees(trees, burnInPercentageInput.get()/100.0);
+            addAllTrees(trees, burnInPercentageInput.get()/100.0);
+        }
         computeCredibleSet(confidencePercentageInput.get()/100.0, null);
 
         PrintStream out = System.out;
@@ -249,6 +263,15 @@ public class TreeTraceAnalysis extends beast.base.inference.Runnable {
          * @throws IOException 
          */
         public static List<Tree> getTrees (File treeFile) throws IOException {
+            if (BinaryTreeLogReader.isBinaryTreeLog(treeFile)) {
+                List<Tree> trees = new ArrayList<>();
+                try (BinaryTreeLogReader reader = new BinaryTreeLogReader(treeFile)) {
+                    while (reader.hasNext()) {
+                        trees.add(reader.next());
+                    }
+                }
+                return trees;
+            }
             NexusParser parser = new NexusParser();
             parser.parseFile(treeFile);
             return parser.trees;
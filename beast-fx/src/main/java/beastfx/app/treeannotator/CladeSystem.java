@@ -167,6 +167,40 @@ public class CladeSystem {
         return cladeMap;
     }
 
+    /**
+     * @return clade system with the same clades and settings, but without counts
+     * or attribute values, to collect attributes for a subset of the trees in
+     */
+    public CladeSystem copyClades() {
+        CladeSystem copy = new CladeSystem();
+        copy.processSA = processSA;
+        for (BitSet bits : cladeMap.keySet()) {
+            copy.cladeMap.put(bits, copy.new Clade(bits));
+        }
+        return copy;
+    }
+
+    /**
+     * add counts and attribute values of another clade system, as if the trees
+     * added to the other clade system were added to this one after its own trees
+     */
+    public void merge(CladeSystem other) {
+        for (Clade otherClade : other.cladeMap.values()) {
+            Clade clade = cladeMap.get(otherClade.bits);
+            if (clade == null) {
+                clade = new Clade(otherClade.bits);
+                cladeMap.put(otherClade.bits, clade);
+            }
+            clade.setCount(clade.getCount() + otherClade.getCount());
+            if (otherClade.attributeValues != null) {
+                if (clade.attributeValues == null) {
+                    clade.attributeValues = new ArrayList<>();
+                }
+                clade.attributeValues.addAll(otherClade.attributeValues);
+            }
+        }
+    }
+
     public void calculateCladeCredibilities(int totalTreesUsed) {
         for (Clade clade : cladeMap.values()) {
 
@@ -28,6 +28,12 @@ package beastfx.app.treeannotator;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import beastfx.app.tools.Application;
 import beastfx.app.treeannotator.services.NodeHeightSettingService;
@@ -36,6 +42,7 @@ import beastfx.app.treeannotator.services.UserTargetTreeTopologyService;
 import beast.base.core.Description;
 import beast.base.core.Input;
 import beast.base.core.Log;
+import beast.base.evolution.tree.BinaryTreeLogReader;
 import beast.base.evolution.tree.Node;
 import beast.base.evolution.tree.Tree;
 import beast.base.evolution.tree.TreeParser;
@@ -66,6 +73,7 @@ public class TreeAnnotator extends beast.base.inference.Runnable {
     final public Input<Double> hpd2DInput = new Input<> ("hpd2D", "the HPD interval to be used for the bivariate traits");
     final public Input<Boolean> nohpd2DInput = new Input<> ("nohpd2D", "suppress calculation of HPD intervals for the bivariate traits");
     final public Input<Boolean> noSAInput = new Input<> ("noSA", "interpret the tree set as begin from a not being from a sampled ancestor analysis, even if there are zero branch lengths in the tree set");
+    final public Input<Integer> threadsInput = new Input<> ("threads", "number of threads used for counting clades, scoring trees and collecting node information", Runtime.getRuntime().availableProcessors());
     final public Input<List<String>> versionFileInput = new Input<> ("version_file", "Provide a version file containing a list of services to explicitly allow. (Useful for package development.)", new ArrayList<>());
 
     public final static BEASTVersion version = new BEASTVersion();
@@ -490,6 +498,44 @@ public class TreeAnnotator extends beast.base.inference.Runnable {
     		}		
     	}
     }
+
+    /** streams trees from a binary tree log, as written by BinaryTreeLogger **/
+    public class BinaryTreeSet extends TreeSet {
+    	int current = 0;
+    	BinaryTreeLogReader reader;
+
+    	public BinaryTreeSet(String inputFileName, int burninPercentage) throws IOException  {
+    		this.inputFileName = inputFileName;
+    		isNexus = false;
+    		totalTrees = BinaryTreeLogReader.countTrees(new File(inputFileName));
+            burninCount = Math.max(0, (burninPercentage * totalTrees)/100);
+
+            progressStream.println("Processing " + (totalTrees - burninCount) + " trees from file" +
+                    (burninPercentage > 0 ? " after ignoring first " + burninPercentage + "% = " + burninCount + " trees." : "."));
+    	}
+
+    	@Override
+    	public void reset() throws IOException {
+    		if (reader != null) {
+    			reader.close();
+    		}
+    		reader = new BinaryTreeLogReader(new File(inputFileName));
+    		for (current = 0; current < burninCount; current++) {
+    			reader.skip();
+    		}
+    	}
+
+    	@Override
+    	public boolean hasNext() {
+    		return current < totalTrees;
+    	}
+
+    	@Override
+    	public Tree next() throws IOException {
+    		current++;
+    		return reader.next();
+    	}
+    }
     TreeSet treeSet;
 
 
@@ -582,7 +628,10 @@ public class TreeAnnotator extends beast.base.inference.Runnable {
         totalTreesUsed = 0;
 
         try {
-        	if (lowMemory) {
+        	if (BinaryTreeLogReader.isBinaryTreeLog(new File(inputFileName))) {
+        		// trees are decoded one at a time, so low memory mode is implied
+        		treeSet = new BinaryTreeSet(inputFileName, burninPercentage);
+        	} else if (lowMemory) {
         		treeSet = new MemoryFriendlyTreeSet(inputFileName, burninPercentage);
         	} else {
         		treeSet = new FastTreeSet(inputFileName, burninPercentage);
@@ -1645,11 +1694,12 @@ public class TreeAnnotator extends beast.base.inference.Runnable {
 		burninPercentage = burnInPercentageInput.get();
         CladeSystem cladeSystem = new CladeSystem();
 	    try {
-	    	treeSet.reset();
 	    	totalTreesUsed = 0;
+	        // sampled ancestors only affect clades of trees that have them, and all of
+	        // these are processed with sampled ancestors on if it is turned on below
+	        final boolean processSAClades = processSA && !SAmode;
 	        cladeSystem.setProcessSA(false);
-	    	while (treeSet.hasNext()) {
-	    		Tree tree = treeSet.next();
+	        processTrees(tree -> {
 	            tree.getLeafNodeCount();
 	            if (tree.getDirectAncestorNodeCount() > 0 && !SAmode && processSA) {
 	                SAmode = true;
@@ -1661,9 +1711,15 @@ public class TreeAnnotator extends beast.base.inference.Runnable {
 	                }
 	                cladeSystem.setProcessSA(true);
 	            }
-	        	cladeSystem.add(tree, false);
 	            totalTreesUsed++;
-	        }
+	        }, trees -> {
+	        	CladeSystem batchCladeSystem = new CladeSystem();
+	        	batchCladeSystem.setProcessSA(processSAClades);
+	        	for (Tree tree : trees) {
+	        		batchCladeSystem.add(tree, false);
+	        	}
+	        	return batchCladeSystem;
+	        }, cladeSystem::merge);
 	        totalTrees = totalTreesUsed * 100 / (100-Math.max(burninPercentage, 0));
 	    } catch (Exception e) {
 	    	Log.err.println(e.getMessage());
@@ -1700,33 +1756,35 @@ public class TreeAnnotator extends beast.base.inference.Runnable {
         progressStream.println("0              25             50             75            100");
         progressStream.println("|--------------|--------------|--------------|--------------|");
 
-        int stepSize = Math.max(totalTreesUsed / 60, 1);
-        int reported = 0;
-
         // this call increments the clade counts and it shouldn't
         // this is remedied with removeClades call after while loop below
         cladeSystem = new CladeSystem();
         cladeSystem.setProcessSA(processSA);
         cladeSystem.add(targetTree, true);
-        int totalTreesUsedNew = 0;
+        final CladeSystem targetCladeSystem = cladeSystem;
+        final int [] counter = new int[1];
+        final int [] reported = new int[1];
         try {
-            int counter = 0;
-            treeSet.reset();
-            while (treeSet.hasNext()) {
-            	Tree tree = treeSet.next();
-            	if (counter == 0) {
+            processTrees(tree -> {
+            	if (counter[0] == 0) {
                     setupAttributes(tree);
             	}
-                cladeSystem.collectAttributes(tree, attributeNames);
-    			while (reported < 61 && 1000.0*reported < 61000.0 * (counter + 1) / this.totalTreesUsed) {
+    			while (reported[0] < 61 && 1000.0*reported[0] < 61000.0 * (counter[0] + 1) / this.totalTreesUsed) {
   		          	progressStream.print("*");
-  		          	reported++;
+  		          	reported[0]++;
   		          	progressStream.flush();
     			}
-                totalTreesUsedNew++;
-                counter++;
-        	}
-        	
+                counter[0]++;
+            }, trees -> {
+            	// attributes are collected in a copy of the target clades for every batch of trees
+            	CladeSystem batchCladeSystem = targetCladeSystem.copyClades();
+            	for (Tree tree : trees) {
+            		batchCladeSystem.collectAttributes(tree, attributeNames);
+            	}
+            	return batchCladeSystem;
+            }, targetCladeSystem::merge);
+            int totalTreesUsedNew = counter[0];
+
             cladeSystem.removeClades(targetTree.getRoot(), true);
             this.totalTreesUsed = totalTreesUsedNew;
             cladeSystem.calculateCladeCredibilities(totalTreesUsedNew);
@@ -1739,6 +1797,69 @@ public class TreeAnnotator extends beast.base.inference.Runnable {
         return cladeSystem;
     }
     
+    /** number of trees handed to a worker at a time by processTrees **/
+    final static int BATCH_SIZE = 100;
+
+    /**
+     * Process all trees of the tree set in parallel. Trees are read on the calling thread,
+     * where reader is applied to every tree in order. Batches of trees are processed by
+     * worker on threadsInput threads, and the results are passed to merger on the calling
+     * thread in the order of the trees, so the outcome does not depend on the number of threads.
+     * Workers should only read shared data.
+     */
+    public <T> void processTrees(Consumer<Tree> reader, Function<List<Tree>, T> worker, Consumer<T> merger) throws IOException {
+        final int threadCount = Math.max(1, threadsInput.get());
+        treeSet.reset();
+        if (threadCount == 1) {
+            while (treeSet.hasNext()) {
+                merger.accept(worker.apply(nextBatch(reader)));
+            }
+            return;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        // batches being processed, limited so that memory use does not grow with the number of trees
+        final Deque<Future<T>> pending = new ArrayDeque<>();
+        try {
+            while (treeSet.hasNext()) {
+                final List<Tree> batch = nextBatch(reader);
+                pending.add(executor.submit(() -> worker.apply(batch)));
+                if (pending.size() >= 2 * threadCount) {
+                    merger.accept(getResult(pending.poll()));
+                }
+            }
+            while (!pending.isEmpty()) {
+                merger.accept(getResult(pending.poll()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Tree> nextBatch(Consumer<Tree> reader) throws IOException {
+        final List<Tree> batch = new ArrayList<>(BATCH_SIZE);
+        while (batch.size() < BATCH_SIZE && treeSet.hasNext()) {
+            final Tree tree = treeSet.next();
+            reader.accept(tree);
+            batch.add(tree);
+        }
+        return batch;
+    }
+
+    private static <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
     public int getTotalTreesUsed() {return totalTreesUsed;}
     public TreeSet getTreeSet() {return treeSet;}
     public boolean isProcessSA() {return processSA;}
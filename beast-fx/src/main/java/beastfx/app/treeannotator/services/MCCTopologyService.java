@@ -3,6 +3,7 @@ package beastfx.app.treeannotator.services;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.function.Consumer;
 
 import beast.base.evolution.tree.Tree;
 import beastfx.app.treeannotator.CladeSystem;
@@ -14,43 +15,68 @@ public class MCCTopologyService implements TopologySettingService {
 	
 	protected TreeSet treeSet;
 	protected int totalTreesUsed;
+	/** used to score trees in parallel, if set **/
+	protected TreeAnnotator annotator;
 	
 	@Override
 	public Tree setTopology(TreeSet treeSet, PrintStream progressStream, TreeAnnotator annotator) throws IOException {
         progressStream.println("Finding maximum credibility tree...");
 		this.treeSet = treeSet;
 		this.totalTreesUsed = annotator.getTotalTreesUsed();
+		this.annotator = annotator;
 		return summarizeTrees(annotator.getCladeSystem(), false, progressStream);
 	}
 
     protected Tree summarizeTrees(CladeSystem cladeSystem, boolean useSumCladeCredibility, PrintStream progressStream) throws IOException  {
 
-        Tree bestTree = null;
-        double bestScore = Double.NEGATIVE_INFINITY;
+        ScoredTree best = new ScoredTree(null, Double.NEGATIVE_INFINITY);
 
         progressStream.println("Analyzing " + totalTreesUsed + " trees...");
         progressStream.println("0              25             50             75            100");
         progressStream.println("|--------------|--------------|--------------|--------------|");
 
-        int stepSize = Math.max(totalTreesUsed / 60, 1);
-        int reported = 0;
-
-        int counter = 0;
-        treeSet.reset();
-        while (treeSet.hasNext()) {
-        	Tree tree = treeSet.next();
-            double score = scoreTree(tree, cladeSystem, useSumCladeCredibility);
-          if (score > bestScore) {
-              bestTree = tree;
-              bestScore = score;
-          }
-		  while (reported < 61 && 1000.0 * reported < 61000.0 * (counter + 1) / totalTreesUsed) {
+        final int [] reported = new int[1];
+        final int [] counter = new int[1];
+        Consumer<Tree> progress = tree -> {
+		  while (reported[0] < 61 && 1000.0 * reported[0] < 61000.0 * (counter[0] + 1) / totalTreesUsed) {
               progressStream.print("*");
-              reported++;
+              reported[0]++;
               progressStream.flush();
     	  }
-          counter++;
+          counter[0]++;
+        };
+
+        if (annotator != null) {
+        	// trees are scored in parallel, and of the best scoring trees the first one is kept
+        	annotator.processTrees(progress, trees -> {
+        		ScoredTree batchBest = new ScoredTree(null, Double.NEGATIVE_INFINITY);
+        		for (Tree tree : trees) {
+        			double score = scoreTree(tree, cladeSystem, useSumCladeCredibility);
+        			if (score > batchBest.score) {
+        				batchBest = new ScoredTree(tree, score);
+        			}
+        		}
+        		return batchBest;
+        	}, batchBest -> {
+        		if (batchBest.score > best.score) {
+        			best.tree = batchBest.tree;
+        			best.score = batchBest.score;
+        		}
+        	});
+        } else {
+	        treeSet.reset();
+	        while (treeSet.hasNext()) {
+	        	Tree tree = treeSet.next();
+	            double score = scoreTree(tree, cladeSystem, useSumCladeCredibility);
+	            if (score > best.score) {
+	            	best.tree = tree;
+	            	best.score = score;
+	            }
+	            progress.accept(tree);
+	        }
         }
+        Tree bestTree = best.tree;
+        double bestScore = best.score;
         progressStream.println();
         progressStream.println();
         if (useSumCladeCredibility) {
@@ -71,6 +97,16 @@ public class MCCTopologyService implements TopologySettingService {
         }
     }
 
+	private static class ScoredTree {
+		Tree tree;
+		double score;
+
+		ScoredTree(Tree tree, double score) {
+			this.tree = tree;
+			this.score = score;
+		}
+	}
+
 	@Override
 	public String getServiceName() {
 		return "MCC";
@@ -15,6 +15,7 @@ public class MaxSumCladeCrediblityTopologyService extends MCCTopologyService {
         progressStream.println("Finding maximum sum clade credibility tree...");
 		this.treeSet = treeSet;
 		this.totalTreesUsed = annotator.getTotalTreesUsed();
+		this.annotator = annotator;
 		return summarizeTrees(annotator.getCladeSystem(), true, progressStream);
 	}
 	